@@ -14,6 +14,8 @@
 package org.structnetalign;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -26,6 +28,7 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.biojava.bio.structure.align.ce.AbstractUserArgumentProcessor;
 import org.structnetalign.weight.AtomCacheFactory;
+import org.structnetalign.weight.Weight;
 
 /**
  * A command-line interface for Struct-NA's main component.
@@ -68,13 +71,35 @@ public class CLI {
 		boolean writeSteps = cmd.hasOption("write_steps");
 		boolean noCross = cmd.hasOption("no_cross");
 		boolean noMerge = cmd.hasOption("no_merge");
-		runPipeline(pdbDir, nCores, input, output, tau, zeta, xi, noCross, noMerge, writeSteps, report);
+		boolean tiered = cmd.hasOption("tiered");
+		Double saturation = cmd.hasOption("saturation")? Double.parseDouble(cmd.getOptionValue("saturation")) : null;
+		boolean prune = cmd.hasOption("prune");
+		boolean bound = cmd.hasOption("bound");
+		boolean lazy = cmd.hasOption("lazy");
+		Double hedge = cmd.hasOption("hedge")? Double.parseDouble(cmd.getOptionValue("hedge")) : null;
+		boolean forkJoin = cmd.hasOption("fork_join");
+		boolean timeBudgets = cmd.hasOption("time_budgets");
+		int ioThreads = cmd.hasOption("io_threads")? Integer.parseInt(cmd.getOptionValue("io_threads")) : 0;
+		Double cluster = cmd.hasOption("cluster")? Double.parseDouble(cmd.getOptionValue("cluster")) : null;
+		boolean transitive = cmd.hasOption("transitive");
+		File artifacts = cmd.hasOption("artifacts")? new File(cmd.getOptionValue("artifacts")) : null;
+		File homology = cmd.hasOption("graphml_homology")? new File(cmd.getOptionValue("graphml_homology")) : null;
+		File pfam = cmd.hasOption("pfam")? new File(cmd.getOptionValue("pfam")) : null;
+		Long maxAtoms = cmd.hasOption("max_atoms")? Long.parseLong(cmd.getOptionValue("max_atoms")) : null;
+		List<Class<? extends Weight>> recompute = new ArrayList<>();
+		if (cmd.hasOption("recompute")) {
+			for (String name : cmd.getOptionValue("recompute").split(",")) {
+				recompute.add(weightClass(name.trim()));
+			}
+		}
+		runPipeline(pdbDir, nCores, input, output, tau, zeta, xi, noCross, noMerge, writeSteps, report, tiered, saturation, prune, bound, lazy, hedge, forkJoin, timeBudgets, ioThreads, cluster, transitive, artifacts, homology, recompute, pfam, maxAtoms);
 	}
-	private static void runPipeline(String pdbDir, int nCores, File input, File output, double tau, double zeta, int xi, boolean noCross, boolean noMerge, boolean writeSteps, boolean report) {
+	private static void runPipeline(String pdbDir, int nCores, File input, File output, double tau, double zeta, int xi, boolean noCross, boolean noMerge, boolean writeSteps, boolean report, boolean tiered, Double saturation, boolean prune, boolean bound, boolean lazy, Double hedge, boolean forkJoin, boolean timeBudgets, int ioThreads, Double cluster, boolean transitive, File artifacts, File homology, List<Class<? extends Weight>> recompute, File pfam, Long maxAtoms) {
 		if (pdbDir != null) {
 			System.setProperty(AbstractUserArgumentProcessor.PDB_DIR, pdbDir);
 			AtomCacheFactory.setCache(pdbDir);
 		}
+		if (maxAtoms != null) AtomCacheFactory.setMaxAtoms(maxAtoms);
 		PipelineManager man = new PipelineManager();
 		man.setXi(xi);
 		man.setNCores(nCores);
@@ -84,9 +109,35 @@ public class CLI {
 		man.setWriteSteps(writeSteps);
 		man.setNoCross(noCross);
 		man.setNoMerge(noMerge);
+		man.setTiered(tiered);
+		man.setSaturation(saturation);
+		man.setPrune(prune);
+		man.setBound(bound);
+		man.setLazy(lazy);
+		man.setHedge(hedge);
+		man.setForkJoin(forkJoin);
+		man.setTimeBudgets(timeBudgets);
+		man.setIoThreads(ioThreads);
+		man.setClusterIdentity(cluster);
+		man.setTransitive(transitive);
+		man.setArtifactDir(artifacts);
+		man.setHomologyFile(homology);
+		man.setRecompute(recompute);
+		man.setPfamFile(pfam);
 		man.run(input, output);
 	}
 
+	/**
+	 * @return The {@link Weight} in {@code org.structnetalign.weight} called {@code name}, such as {@code CeWeight}
+	 */
+	private static Class<? extends Weight> weightClass(String name) {
+		try {
+			return Class.forName(Weight.class.getPackage().getName() + "." + name).asSubclass(Weight.class);
+		} catch (ClassNotFoundException | ClassCastException e) {
+			throw new IllegalArgumentException(name + " is not a Weight", e);
+		}
+	}
+
 	/**
 	 * Prints an error message for {@code e} that shows causes and suppressed messages recursively. Just a little more
 	 * useful than {@code e.printStackTrace()}.
@@ -123,6 +174,48 @@ public class CLI {
 		options.addOption(OptionBuilder.hasArg(false)
 				.withDescription("Do not run the probability update process.").isRequired(false)
 				.create("no_cross"));
+		options.addOption(OptionBuilder.hasArg(false)
+				.withDescription("Run the cheaper SCOP and sequence weights for every pair first, and then structural alignments only for the pairs that none of them could weight, as the default fallback chain does. Structural alignments that couldn't bring a pair up to tau, given the ceilings in weight/tiered_weights.properties, are skipped too; by default CE and precalculated FATCAT are trusted only to 0.45, so with the default tau they are skipped.").isRequired(false)
+				.create("tiered"));
+		options.addOption(OptionBuilder.hasArg(true)
+				.withDescription("Stop running weights on a pair once its homology probability reaches this value, or once it is at least both tau and zeta. Saves time on well-characterized protein families, but crossing will see slightly lower homology probabilities for those pairs. By default every weight is run.").isRequired(false)
+				.create("saturation"));
+		options.addOption(OptionBuilder.hasArg(false)
+				.withDescription("Don't weight pairs whose homology can't affect crossing or merging, such as pairs of interactors that have no interactions. Only the homology edges that are reported change. This only has an effect with -xi 1, or with -xi 2 and -no_merge; otherwise every pair is kept.").isRequired(false)
+				.create("prune"));
+		options.addOption(OptionBuilder.hasArg(false)
+				.withDescription("Skip a weight when a cheap upper bound, such as one from the sequence lengths, shows it can't bring a pair up to tau, and run the next weight for that pair instead. Since evidence below tau can still add up to more than tau, this can lose homology edges.").isRequired(false)
+				.create("bound"));
+		options.addOption(OptionBuilder.hasArg(false)
+				.withDescription("Compute homology only for the pairs that crossing reaches, when it reaches them, instead of weighting every pair first. Only pairs that share a few short sequence words, a SCOP superfamily, or a Pfam family (with -pfam) are weighted, so distant homologs without annotations can be missed. Much faster for small xi, but merging will only see the homology edges that crossing found.").isRequired(false)
+				.create("lazy"));
+		options.addOption(OptionBuilder.hasArg(true)
+				.withDescription("A percentile between 0 and 100. If a weight has run longer than this percentile of the run times of its kind, start the next weight for that pair alongside it and keep whichever finishes first. Cuts the time spent waiting on slow structure services, at the cost of some extra work. By default nothing is hedged.").isRequired(false)
+				.create("hedge"));
+		options.addOption(OptionBuilder.hasArg(false)
+				.withDescription("Run each pair's weights start to finish in a work-stealing fork/join pool. Scales better on machines with many cores, but -hedge, -time_budgets, -bound, and -io_threads are not applied, and jobs aren't held back to save memory.").isRequired(false)
+				.create("fork_join"));
+		options.addOption(OptionBuilder.hasArg(false)
+				.withDescription("Give up on a structural alignment of a single pair after a time limit (10 minutes for CE, 2 minutes for precalculated FATCAT) and run the next weight for that pair instead, so that one pathological pair can't stall the run. Limits can also be set in weight/time_budgets.properties. By default nothing is cut off.").isRequired(false)
+				.create("time_budgets"));
+		options.addOption(OptionBuilder.hasArg(true)
+				.withDescription("The number of threads for weights that mostly wait on remote services (sequence downloads and precalculated alignments). These then run separately from the structural alignments, which keep the cores. Something like 32 works well; by default everything shares the cores.").isRequired(false)
+				.create("io_threads"));
+		options.addOption(OptionBuilder.hasArg(true)
+				.withDescription("A fractional identity such as 0.9. Cluster the interactors' sequences at this identity before weighting, as CD-HIT does, and align only one representative per cluster by sequence. Much faster for networks with many isoforms and close paralogs; the sequence identity of a pair can then be off by as much as twice one minus this identity. By default every pair is aligned.").isRequired(false)
+				.create("cluster"));
+		options.addOption(OptionBuilder.hasArg(false)
+				.withDescription("Weight every interactor against a few pivot interactors first, then infer homology for the remaining pairs from triangles: two strong homologs of a pivot are taken to be homologous, and a strong homolog of a pivot is taken not to be homologous to anything the pivot isn't. Only pairs that can't be decided this way are aligned. Much faster within large protein families, at some cost in accuracy. Ignored with -tiered.").isRequired(false)
+				.create("transitive"));
+		options.addOption(OptionBuilder.hasArg(true)
+				.withDescription("A directory in which to keep the raw results of sequence and structure alignments across runs. A later run with different scoring parameters (such as the gamma distribution for sequence alignments) then only rescores them instead of aligning again. Alignments with different alignment parameters are kept separately.").isRequired(false)
+				.create("artifacts"));
+		options.addOption(OptionBuilder.hasArg(true)
+				.withDescription("A local Pfam-A regions file, such as Pfam-A.regions.uniprot.tsv.gz, to weight pairs by the Pfam families they share. It is used with -tiered when neither SCOP nor sequence alignment can weight a pair, and with -recompute PfamWeight.").isRequired(false)
+				.create("pfam"));
+		options.addOption(OptionBuilder.hasArg(true)
+				.withDescription("The most alpha carbons to keep in memory across all parsed PDB chains, so that a chain aligned against many others is parsed only once. Raise it if there is memory to spare. Defaults to " + AtomCacheFactory.DEFAULT_MAX_ATOMS + ".").isRequired(false)
+				.create("max_atoms"));
 		options.addOption(OptionBuilder.hasArg(true)
 				.withDescription("Required. The input PSI-MI25 XML file.").isRequired(true)
 				.create("input"));
@@ -145,8 +238,11 @@ public class CLI {
 				.withDescription("Output a GraphML file for each step.").isRequired(false)
 				.create("write_steps"));
 		options.addOption(OptionBuilder.hasArg(true)
-				.withDescription("Skip the weighting process and use the specified GraphML file to indicate homology instead.").isRequired(false)
+				.withDescription("Skip the weighting process and use the specified GraphML file to indicate homology instead. With -write_steps, a run writes hom_evidence.graphml.xml for this purpose; it keeps the evidence from each source, so that -recompute can replace some of it.").isRequired(false)
 				.create("graphml_homology"));
+		options.addOption(OptionBuilder.hasArg(true)
+				.withDescription("With -graphml_homology, a comma-separated list of weights that are new or have changed, such as CeWeight,NeedlemanWunschWeight. Each is run only on the pairs that had its evidence, or that the default chain of weights would have reached it on, and the results are combined with the other evidence in the GraphML file.").isRequired(false)
+				.create("recompute"));
 		return options;
 	}
 
@@ -16,9 +16,19 @@ package org.structnetalign;
 
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * An {@link Edge} that denotes a homologous pair of macromolecules.
+ * <p>
+ * An edge can also keep a ledger of the evidence that went into its weight: the contribution of each source, such as
+ * {@code ScopWeight} or {@code CeWeight}. The weight is then the noisy-OR of the contributions, so when one source
+ * changes or a new one is added, the weight can be recombined without recomputing the others. The ledger is two short
+ * arrays, since an edge rarely has more than a few sources. {@link #setWeight(double)} changes the weight without
+ * touching the ledger.
  * @author dmyersturnbull
  */
 public class HomologyEdge implements Edge {
@@ -27,10 +37,19 @@ public class HomologyEdge implements Edge {
 		SEQUENCE_ALIGNMENT, SEQUENCE_DATABASE, STRUCTURAL_ALIGNMENT, STRUCTURAL_DATABASE;
 	}
 
+	/**
+	 * The source of evidence that an edge had before it had a ledger.
+	 */
+	public static final String UNATTRIBUTED = "unattributed";
+
 	private static NumberFormat nf = new DecimalFormat();
 
+	private double[] contributions; // null until there's evidence
+
 	private int id;
 
+	private String[] sources;
+
 	private double weight;
 
 	public HomologyEdge() {
@@ -41,6 +60,10 @@ public class HomologyEdge implements Edge {
 		super();
 		id = edge.id;
 		weight = edge.weight;
+		if (edge.sources != null) {
+			sources = Arrays.copyOf(edge.sources, edge.sources.length);
+			contributions = Arrays.copyOf(edge.contributions, edge.contributions.length);
+		}
 	}
 
 	public HomologyEdge(int id, double weight) {
@@ -59,6 +82,26 @@ public class HomologyEdge implements Edge {
 		return true;
 	}
 
+	/**
+	 * @return Each source of evidence and its contribution, in the order they were added
+	 */
+	public Map<String, Double> getEvidence() {
+		if (sources == null) return Collections.emptyMap();
+		Map<String, Double> evidence = new LinkedHashMap<>();
+		for (int i = 0; i < sources.length; i++) {
+			evidence.put(sources[i], contributions[i]);
+		}
+		return evidence;
+	}
+
+	/**
+	 * @return The contribution of {@code source}, or null if it hasn't contributed
+	 */
+	public Double getEvidence(String source) {
+		int i = indexOf(source);
+		return i < 0 ? null : contributions[i];
+	}
+
 	@Override
 	public int getId() {
 		return id;
@@ -77,6 +120,77 @@ public class HomologyEdge implements Edge {
 		return result;
 	}
 
+	/**
+	 * Combines {@code contribution} with whatever {@code source} already contributed, by noisy-OR, and recombines the
+	 * weight.
+	 * @see #putEvidence(String, double)
+	 */
+	public void addEvidence(String source, double contribution) {
+		Double existing = getEvidence(source);
+		if (existing != null) contribution = existing + contribution - existing * contribution;
+		putEvidence(source, contribution);
+	}
+
+	/**
+	 * Sets the contribution of {@code source}, replacing any it already made, and recombines the weight. If the edge
+	 * has a weight but no ledger yet, that weight is kept as the contribution of {@link #UNATTRIBUTED}.
+	 */
+	public void putEvidence(String source, double contribution) {
+		if (sources == null && weight != 0) {
+			sources = new String[] { UNATTRIBUTED };
+			contributions = new double[] { weight };
+		}
+		int i = indexOf(source);
+		if (i < 0) {
+			if (sources == null) {
+				sources = new String[1];
+				contributions = new double[1];
+			} else {
+				sources = Arrays.copyOf(sources, sources.length + 1);
+				contributions = Arrays.copyOf(contributions, contributions.length + 1);
+			}
+			i = sources.length - 1;
+			sources[i] = source;
+		}
+		contributions[i] = contribution;
+		recombine();
+	}
+
+	/**
+	 * Sets the weight to the noisy-OR of the contributions in the ledger. Does nothing if there is no ledger.
+	 */
+	public void recombine() {
+		if (sources == null) return;
+		double combined = 0;
+		for (double contribution : contributions) {
+			combined += contribution - combined * contribution;
+		}
+		weight = combined;
+	}
+
+	/**
+	 * Removes the contribution of {@code source}, if it made one, and recombines the weight.
+	 */
+	public void removeEvidence(String source) {
+		int i = indexOf(source);
+		if (i < 0) return;
+		if (sources.length == 1) {
+			sources = null;
+			contributions = null;
+			weight = 0;
+			return;
+		}
+		String[] newSources = new String[sources.length - 1];
+		double[] newContributions = new double[sources.length - 1];
+		System.arraycopy(sources, 0, newSources, 0, i);
+		System.arraycopy(contributions, 0, newContributions, 0, i);
+		System.arraycopy(sources, i + 1, newSources, i, sources.length - i - 1);
+		System.arraycopy(contributions, i + 1, newContributions, i, sources.length - i - 1);
+		sources = newSources;
+		contributions = newContributions;
+		recombine();
+	}
+
 	@Override
 	public void setId(int id) {
 		this.id = id;
@@ -92,4 +206,12 @@ public class HomologyEdge implements Edge {
 		return "Hom(" + id + ", " + nf.format(weight) + ")";
 	}
 
+	private int indexOf(String source) {
+		if (sources == null) return -1;
+		for (int i = 0; i < sources.length; i++) {
+			if (sources[i].equals(source)) return i;
+		}
+		return -1;
+	}
+
 }
@@ -15,17 +15,20 @@
 package org.structnetalign;
 
 import java.io.File;
+import java.io.IOException;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.WeakHashMap;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.biojava.bio.structure.scop.ScopCategory;
 import org.structnetalign.ReportGenerator.DegenerateSetEntry;
 import org.structnetalign.ReportGenerator.UpdateTableEntry;
 import org.structnetalign.cross.CrossingManager;
@@ -41,10 +44,32 @@ import org.structnetalign.util.IdentifierMapping;
 import org.structnetalign.util.IdentifierMappingFactory;
 import org.structnetalign.util.InteractionUpdate;
 import org.structnetalign.util.NetworkUtils;
+import org.structnetalign.weight.AlignmentArtifacts;
+import org.structnetalign.weight.CandidateIndex;
+import org.structnetalign.weight.FallbackWeightCreator;
+import org.structnetalign.weight.ForkJoinWeightManager;
+import org.structnetalign.weight.HedgingPolicy;
+import org.structnetalign.weight.InteractionPairFilter;
+import org.structnetalign.weight.LazyHomologyNeighborhood;
+import org.structnetalign.weight.LedgerWeightCreator;
+import org.structnetalign.weight.NeedlemanWunschWeight;
+import org.structnetalign.weight.PairFilter;
+import org.structnetalign.weight.PfamIndex;
+import org.structnetalign.weight.PfamWeight;
+import org.structnetalign.weight.ResidueCounts;
+import org.structnetalign.weight.ResourcePairMemo;
+import org.structnetalign.weight.SaturationPolicy;
+import org.structnetalign.weight.SequenceClusters;
+import org.structnetalign.weight.SequenceFetcher;
 import org.structnetalign.weight.SimpleWeightCreator;
 import org.structnetalign.weight.SmarterWeightManager;
+import org.structnetalign.weight.TieredWeightManager;
+import org.structnetalign.weight.TransitiveWeightManager;
+import org.structnetalign.weight.VertexCapabilities;
+import org.structnetalign.weight.Weight;
 import org.structnetalign.weight.WeightCreator;
 import org.structnetalign.weight.WeightManager;
+import org.structnetalign.weight.WeightResult;
 
 import psidev.psi.mi.xml.model.EntrySet;
 import edu.uci.ics.jung.graph.UndirectedGraph;
@@ -71,15 +96,32 @@ public class PipelineManager {
 	public static final double ZETA = 0.7;
 	private static final Logger logger = LogManager.getLogger("org.structnetalign");
 
+	private File artifactDir;
+	private boolean bound = false;
+	private Double clusterIdentity;
 	private CrossingManager crossingManager;
 	private MergeManager mergeManager;
 
+	private boolean forkJoin = false;
+	private Double hedge;
+	private File homologyFile;
+	private int ioThreads = 0;
+	private boolean lazy = false;
 	private int nCores;
+	private Double saturation;
 	private boolean noCross;
 	private boolean noMerge;
+	private boolean prune = false;
+	private PairFilter pairFilter;
+	private File pfamFile;
+	private List<Class<? extends Weight>> recompute = new ArrayList<>();
+	private VertexCapabilities capabilities; // only for the default WeightCreators
 	private WeightCreator phi;
 	private boolean report = false;
 	private double tau = TAU;
+	private boolean tiered = false;
+	private boolean timeBudgets = false;
+	private boolean transitive = false;
 
 	private WeightManager weightManager;
 	private boolean writeSteps = false;
@@ -87,6 +129,46 @@ public class PipelineManager {
 
 	private double zeta = ZETA;
 
+	public File getArtifactDir() {
+		return artifactDir;
+	}
+
+	public boolean isBound() {
+		return bound;
+	}
+
+	public Double getClusterIdentity() {
+		return clusterIdentity;
+	}
+
+	public Double getHedge() {
+		return hedge;
+	}
+
+	public File getHomologyFile() {
+		return homologyFile;
+	}
+
+	public int getIoThreads() {
+		return ioThreads;
+	}
+
+	public File getPfamFile() {
+		return pfamFile;
+	}
+
+	public List<Class<? extends Weight>> getRecompute() {
+		return recompute;
+	}
+
+	public boolean isForkJoin() {
+		return forkJoin;
+	}
+
+	public boolean isLazy() {
+		return lazy;
+	}
+
 	public boolean isNoCross() {
 		return noCross;
 	}
@@ -95,10 +177,26 @@ public class PipelineManager {
 		return noMerge;
 	}
 
+	public boolean isPrune() {
+		return prune;
+	}
+
 	public boolean isReport() {
 		return report;
 	}
 
+	public boolean isTiered() {
+		return tiered;
+	}
+
+	public boolean isTimeBudgets() {
+		return timeBudgets;
+	}
+
+	public boolean isTransitive() {
+		return transitive;
+	}
+
 	public boolean isWriteSteps() {
 		return writeSteps;
 	}
@@ -137,6 +235,7 @@ public class PipelineManager {
 		EdgeTrimmer<Integer, HomologyEdge> trimmer = new EdgeTrimmer<>(weighter);
 
 		CleverGraph graph;
+		LazyHomologyNeighborhood lazyHomology = null;
 		{
 			// build the graph
 			EntrySet entrySet = NetworkUtils.readNetwork(input);
@@ -145,10 +244,56 @@ public class PipelineManager {
 
 			// assign weights
 			Map<Integer, String> uniProtIds = NetworkUtils.getUniProtIds(entrySet);
-			weightManager.assignWeights(graph, uniProtIds);
+			ResourcePairMemo.startRun(uniProtIds);
+			if (capabilities != null) capabilities.precompute(uniProtIds);
+			// so that jobs are ordered and admitted by their real sizes from the start
+			if (needsResidueCounts(uniProtIds)) ResidueCounts.prefill(uniProtIds, SequenceFetcher.getInstance());
+			PfamIndex pfamIndex = null;
+			if (pfamFile != null) {
+				PfamIndex index = new PfamIndex();
+				try {
+					index.load(pfamFile, new HashSet<>(uniProtIds.values()));
+				} catch (IOException e) {
+					throw new RuntimeException("Couldn't read Pfam regions from " + pfamFile, e);
+				}
+				PfamWeight.setIndex(index);
+				pfamIndex = index;
+				if (report) {
+					ReportGenerator.getInstance().put("n_pfam", index.size());
+					ReportGenerator.getInstance().put("n_pfam_pairs", index.getSharingPairs(uniProtIds).size());
+				}
+			}
+			if (clusterIdentity != null) {
+				SequenceClusters clusters = new SequenceClusters(clusterIdentity);
+				clusters.cluster(uniProtIds);
+				NeedlemanWunschWeight.setClusters(clusters);
+				if (report) ReportGenerator.getInstance().put("n_clusters", clusters.getNClusters());
+			}
+			if (homologyFile != null) readHomology(graph);
+			if (lazy) {
+				// crossing will compute the weights it needs
+				lazyHomology = new LazyHomologyNeighborhood(graph, uniProtIds, phi, tau);
+				lazyHomology.setPairFilter(pairFilter);
+				// only weight pairs that share sequence words, a SCOP superfamily, or a Pfam family
+				lazyHomology.addCandidateIndex(CandidateIndex.ofSequences(uniProtIds,
+						CandidateIndex.DEFAULT_WORD_LENGTH, CandidateIndex.DEFAULT_MIN_WORDS));
+				lazyHomology.addCandidateIndex(CandidateIndex.ofScop(uniProtIds, ScopCategory.Superfamily));
+				if (pfamIndex != null) lazyHomology.addCandidateIndex(CandidateIndex.ofPfam(pfamIndex, uniProtIds));
+				for (CandidateIndex index : lazyHomology.getCandidateIndexes()) {
+					logger.info("Screening lazy homology by " + index.getName() + " for " + index.size() + " vertices");
+				}
+				if (saturation != null) lazyHomology.setSaturation(new SaturationPolicy(saturation, tau, zeta));
+				((SimpleCrossingManager) crossingManager).setHomology(lazyHomology);
+			} else if (homologyFile == null || !recompute.isEmpty()) {
+				weightManager.assignWeights(graph, uniProtIds);
+			}
 		}
 		System.gc();
 
+		if (writeSteps) { // before trimming, so that a later run can recombine its evidence
+			GraphMLAdaptor.writeHomologyGraph(graph.getHomology(), new File(path + "hom_evidence.graphml.xml"));
+		}
+
 		// trim with tau
 		trimmer.trim(graph.getHomology(), tau);
 
@@ -164,6 +309,9 @@ public class PipelineManager {
 		if (!noCross) {
 			crossingManager.cross(graph);
 		}
+		if (lazyHomology != null) {
+			lazyHomology.materialize(graph);
+		}
 
 		// trim with zeta
 		trimmer.trim(graph.getHomology(), zeta);
@@ -230,10 +378,99 @@ public class PipelineManager {
 		}
 	}
 
+	/**
+	 * @param artifactDir
+	 *            Keep the raw outputs of alignments here across runs, so that changing how they're scored doesn't
+	 *            require realigning; null (the default) doesn't keep them
+	 * @see AlignmentArtifacts
+	 */
+	public void setArtifactDir(File artifactDir) {
+		this.artifactDir = artifactDir;
+	}
+
+	/**
+	 * @param bound
+	 *            Whether to skip a Weight whose upper bound can't bring its pair up to tau, and run the pair's next
+	 *            Weight instead. Off by default, since evidence below tau can still add up to more than tau. Not
+	 *            supported with fork/join.
+	 * @see SmarterWeightManager#setPruneBelow(Double)
+	 */
+	public void setBound(boolean bound) {
+		this.bound = bound;
+	}
+
+	/**
+	 * @param clusterIdentity
+	 *            Cluster the network's sequences at this fractional identity first, and align only one representative
+	 *            per cluster by sequence. Null (the default) aligns every pair.
+	 * @see SequenceClusters
+	 */
+	public void setClusterIdentity(Double clusterIdentity) {
+		this.clusterIdentity = clusterIdentity;
+	}
+
 	public void setCrossingManager(CrossingManager crossingManager) {
 		this.crossingManager = crossingManager;
 	}
 
+	/**
+	 * @param lazy
+	 *            Whether to compute homology weights only when crossing needs them, instead of for every pair
+	 *            beforehand. Only pairs that share sequence words, a SCOP superfamily, or a Pfam family are weighted,
+	 *            so distant homologs without annotations can be missed. Merging will only see the homology edges that
+	 *            crossing reached. Ignored if a
+	 *            WeightManager or CrossingManager is set explicitly.
+	 * @see LazyHomologyNeighborhood
+	 */
+	public void setLazy(boolean lazy) {
+		this.lazy = lazy;
+	}
+
+	/**
+	 * @param forkJoin
+	 *            Whether to run each pair's whole chain of weights in a fork/join worker instead of resubmitting
+	 *            fallbacks from a central thread. Ignored if a WeightManager is set explicitly, or if running tiered.
+	 *            Hedging, time budgets, bounds, and I/O threads are not used in this mode, and a warning is logged for
+	 *            each one that was set. Jobs aren't admitted by memory either.
+	 * @see ForkJoinWeightManager
+	 */
+	public void setForkJoin(boolean forkJoin) {
+		this.forkJoin = forkJoin;
+	}
+
+	/**
+	 * @param hedge
+	 *            Start the next weight for a pair alongside a weight that has run longer than this percentile (0-100)
+	 *            of its class's run times. Null (the default) never hedges. Ignored if a WeightManager is set
+	 *            explicitly.
+	 * @see HedgingPolicy
+	 */
+	public void setHedge(Double hedge) {
+		this.hedge = hedge;
+	}
+
+	/**
+	 * @param homologyFile
+	 *            A homology GraphML file from an earlier run, such as {@code hom_evidence.graphml.xml} from
+	 *            {@link #setWriteSteps(boolean) writeSteps}, to use instead of weighting again. Only the Weights to
+	 *            {@link #setRecompute(List) recompute} are run, and their evidence is recombined with what the file
+	 *            already has. Null (the default) weights every pair from scratch.
+	 */
+	public void setHomologyFile(File homologyFile) {
+		this.homologyFile = homologyFile;
+	}
+
+	/**
+	 * @param ioThreads
+	 *            The number of threads for weights that mostly wait on remote services, kept separate from the nCores
+	 *            threads for structural alignments; 0 (the default) runs everything with nCores threads. Ignored if a
+	 *            WeightManager is set explicitly, or with fork/join.
+	 * @see SmarterWeightManager#setIoThreads(int)
+	 */
+	public void setIoThreads(int ioThreads) {
+		this.ioThreads = ioThreads;
+	}
+
 	public void setMergeManager(MergeManager mergeManager) {
 		this.mergeManager = mergeManager;
 	}
@@ -254,10 +491,53 @@ public class PipelineManager {
 		this.phi = phi;
 	}
 
+	/**
+	 * @param prune
+	 *            Whether to skip weighting pairs whose homology can't affect crossing or merging. Ignored if a
+	 *            WeightManager is set explicitly. Only has an effect with an xi of 1, or an xi of 2 and
+	 *            {@link #setNoMerge(boolean) no merging}; otherwise every pair could matter, and a warning is logged.
+	 * @see InteractionPairFilter
+	 */
+	public void setPrune(boolean prune) {
+		this.prune = prune;
+	}
+
+	/**
+	 * @param pfamFile
+	 *            A Pfam-A regions file, such as {@code Pfam-A.regions.uniprot.tsv.gz}, for {@link PfamWeight}. Null
+	 *            (the default) leaves PfamWeight unable to weight anything.
+	 * @see PfamIndex
+	 */
+	public void setPfamFile(File pfamFile) {
+		this.pfamFile = pfamFile;
+	}
+
+	/**
+	 * @param recompute
+	 *            With a {@link #setHomologyFile(File) homology file}, the Weights that are new or have changed since
+	 *            it was written. Their old evidence is removed from its edges, and each is run on the pairs that had
+	 *            its evidence or that the default chain would have reached it on. Ignored without a homology file.
+	 * @see LedgerWeightCreator
+	 * @see HomologyEdge#getEvidence()
+	 */
+	public void setRecompute(List<Class<? extends Weight>> recompute) {
+		this.recompute = recompute;
+	}
+
 	public void setReport(boolean report) {
 		this.report = report;
 	}
 
+	/**
+	 * @param saturation
+	 *            Stop weighting a pair once its homology probability reaches this value, or once it is at least both
+	 *            tau and zeta. Null (the default) never stops early.
+	 * @see SaturationPolicy
+	 */
+	public void setSaturation(Double saturation) {
+		this.saturation = saturation;
+	}
+
 	/**
 	 * @param tau
 	 *            The minimum threshold to apply to homology edges before doing crossing.
@@ -266,6 +546,37 @@ public class PipelineManager {
 		this.tau = tau;
 	}
 
+	/**
+	 * @param tiered
+	 *            Whether to run the cheap weights for every pair first, and then structural weights only for the pairs
+	 *            that every cheap weight failed on. Ignored if a WeightManager is set explicitly.
+	 * @see TieredWeightManager
+	 */
+	public void setTiered(boolean tiered) {
+		this.tiered = tiered;
+	}
+
+	/**
+	 * @param timeBudgets
+	 *            Whether to cancel a Weight that runs longer than its class's
+	 *            {@link SmarterWeightManager#SUGGESTED_BUDGETS suggested budget} on one pair, and run the pair's next
+	 *            Weight instead. Off by default, since a long alignment is usually just a large one. Ignored if a
+	 *            WeightManager is set explicitly, or with fork/join.
+	 */
+	public void setTimeBudgets(boolean timeBudgets) {
+		this.timeBudgets = timeBudgets;
+	}
+
+	/**
+	 * @param transitive
+	 *            Whether to weight every vertex against a few pivots first, and then run weights only for pairs whose
+	 *            triangle bounds straddle tau. Ignored if a WeightManager is set explicitly, or if running tiered.
+	 * @see TransitiveWeightManager
+	 */
+	public void setTransitive(boolean transitive) {
+		this.transitive = transitive;
+	}
+
 	public void setWeightManager(WeightManager weightManager) {
 		this.weightManager = weightManager;
 	}
@@ -290,17 +601,118 @@ public class PipelineManager {
 		this.zeta = zeta;
 	}
 
+	/**
+	 * @return A {@link SimpleWeightCreator} that maps each vertex's Ids once
+	 */
+	private WeightCreator defaultPhi() {
+		capabilities = new VertexCapabilities();
+		SimpleWeightCreator phi = new SimpleWeightCreator();
+		phi.setCapabilities(capabilities);
+		return phi;
+	}
+
 	/**
 	 * Initializes a new PipelineManager using the default parameters. Once this has been performed, setting of
 	 * variables will have no effect.
 	 */
 	private void init() {
 		if (nCores == 0) nCores = Runtime.getRuntime().availableProcessors() - 1;
+		if (lazy && (weightManager != null || crossingManager != null)) {
+			logger.warn("Not computing weights lazily because a custom manager was set");
+			lazy = false;
+		}
+		if (xi == null) xi = XI;
+		if (artifactDir != null) AlignmentArtifacts.setDirectory(artifactDir);
+		if (prune) {
+			InteractionPairFilter filter = new InteractionPairFilter(xi, !noMerge);
+			if (filter.isNoOp()) {
+				logger.warn("Not pruning pairs, since with xi=" + xi + (noMerge ? "" : " and merging")
+						+ " every pair's homology can affect crossing or merging");
+			} else {
+				pairFilter = filter;
+			}
+		}
+		if (homologyFile != null) {
+			if (lazy || tiered || forkJoin) {
+				logger.warn("Not computing weights lazily, tiered, or with fork/join, because a homology file was set");
+			}
+			lazy = false;
+			tiered = false;
+			forkJoin = false;
+			if (phi == null && !recompute.isEmpty()) {
+				capabilities = new VertexCapabilities();
+				// only where the default chain ran them before; readHomology() fills in the ledgers
+				LedgerWeightCreator phi = new LedgerWeightCreator(recompute, SimpleWeightCreator.CHAIN);
+				phi.setCapabilities(capabilities);
+				this.phi = phi;
+			}
+		}
+		if (lazy && phi == null) phi = defaultPhi();
 		if (weightManager == null) {
-			if (xi == null) xi = XI;
-			if (phi == null) phi = new SimpleWeightCreator();
-			SmarterWeightManager weightManager = new SmarterWeightManager(phi, nCores);
-			this.weightManager = weightManager;
+			if (tiered) {
+				TieredWeightManager weightManager = new TieredWeightManager(tau, nCores);
+				capabilities = new VertexCapabilities();
+				((FallbackWeightCreator) weightManager.getCheap()).setCapabilities(capabilities);
+				((FallbackWeightCreator) weightManager.getExpensive()).setCapabilities(capabilities);
+				weightManager.setPairFilter(pairFilter);
+				if (saturation != null) {
+					weightManager.setSaturation(new SaturationPolicy(saturation, tau, zeta));
+				}
+				if (bound) weightManager.setPruneBelow(tau);
+				if (hedge != null) weightManager.setHedging(new HedgingPolicy(hedge, HedgingPolicy.DEFAULT_MIN_SAMPLES));
+				weightManager.setIoThreads(ioThreads);
+				if (timeBudgets) {
+					for (Map.Entry<Class<? extends Weight>, Long> entry : SmarterWeightManager.SUGGESTED_BUDGETS.entrySet()) {
+						weightManager.setBudget(entry.getKey(), entry.getValue());
+					}
+				}
+				this.weightManager = weightManager;
+			} else if (transitive) {
+				if (phi == null) phi = defaultPhi();
+				TransitiveWeightManager weightManager = new TransitiveWeightManager(phi, tau, nCores);
+				weightManager.setPairFilter(pairFilter);
+				if (saturation != null) {
+					weightManager.setSaturation(new SaturationPolicy(saturation, tau, zeta));
+				}
+				if (bound) weightManager.setPruneBelow(tau);
+				if (hedge != null) weightManager.setHedging(new HedgingPolicy(hedge, HedgingPolicy.DEFAULT_MIN_SAMPLES));
+				weightManager.setIoThreads(ioThreads);
+				if (timeBudgets) {
+					for (Map.Entry<Class<? extends Weight>, Long> entry : SmarterWeightManager.SUGGESTED_BUDGETS.entrySet()) {
+						weightManager.setBudget(entry.getKey(), entry.getValue());
+					}
+				}
+				this.weightManager = weightManager;
+			} else if (forkJoin) {
+				if (phi == null) phi = defaultPhi();
+				// each worker runs a pair's whole chain, so there's no job to hedge, cancel, bound, or move to another pool
+				if (hedge != null) logger.warn("Not hedging, because fork/join runs each pair's Weights one at a time");
+				if (timeBudgets) logger.warn("Not applying time budgets, because fork/join can't cancel a single Weight");
+				if (bound) logger.warn("Not skipping Weights by their upper bounds, which fork/join doesn't support");
+				if (ioThreads > 0) logger.warn("Not using I/O threads; fork/join manages blocking Weights in its own pool");
+				ForkJoinWeightManager weightManager = new ForkJoinWeightManager(phi, nCores);
+				weightManager.setPairFilter(pairFilter);
+				if (saturation != null) {
+					weightManager.setSaturation(new SaturationPolicy(saturation, tau, zeta));
+				}
+				this.weightManager = weightManager;
+			} else {
+				if (phi == null) phi = defaultPhi();
+				SmarterWeightManager weightManager = new SmarterWeightManager(phi, nCores);
+				weightManager.setPairFilter(pairFilter);
+				if (saturation != null) {
+					weightManager.setSaturation(new SaturationPolicy(saturation, tau, zeta));
+				}
+				if (hedge != null) weightManager.setHedging(new HedgingPolicy(hedge, HedgingPolicy.DEFAULT_MIN_SAMPLES));
+				weightManager.setIoThreads(ioThreads);
+				if (bound) weightManager.setPruneBelow(tau);
+				if (timeBudgets) {
+					for (Map.Entry<Class<? extends Weight>, Long> entry : SmarterWeightManager.SUGGESTED_BUDGETS.entrySet()) {
+						weightManager.setBudget(entry.getKey(), entry.getValue());
+					}
+				}
+				this.weightManager = weightManager;
+			}
 		}
 		if (crossingManager == null) {
 			crossingManager = new SimpleCrossingManager(nCores, xi);
@@ -310,6 +722,57 @@ public class PipelineManager {
 		}
 	}
 
+	/**
+	 * @return Whether weighting will run up front with a manager that orders or admits jobs by their
+	 *         {@link ResidueCounts}, on pairs that need more than SCOP
+	 */
+	private boolean needsResidueCounts(Map<Integer, String> uniProtIds) {
+		if (lazy || homologyFile != null && recompute.isEmpty()) return false; // nothing weighted before crossing
+		boolean sized;
+		if (weightManager instanceof SmarterWeightManager) {
+			sized = ((SmarterWeightManager) weightManager).isSizedByResidues();
+		} else {
+			// these run SmarterWeightManagers with the default models
+			sized = weightManager instanceof TieredWeightManager || weightManager instanceof TransitiveWeightManager;
+		}
+		if (!sized) return false;
+		// SCOP comes first in the default chains and weights any pair of SCOP domains, so nothing else would run
+		if (capabilities != null && (tiered || phi instanceof SimpleWeightCreator)) {
+			for (Map.Entry<Integer, String> entry : uniProtIds.entrySet()) {
+				if ((capabilities.get(entry.getKey(), entry.getValue()) & VertexCapabilities.SCOP) == 0) return true;
+			}
+			logger.info("Not fetching sequence lengths, since SCOP can weight every pair");
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Adds the homology edges in the {@link #setHomologyFile(File) homology file} between vertices of {@code graph},
+	 * without the evidence of the Weights to {@link #setRecompute(List) recompute}.
+	 */
+	private void readHomology(CleverGraph graph) {
+		UndirectedGraph<Integer, HomologyEdge> homology = GraphMLAdaptor.readHomologyGraph(homologyFile);
+		int nRead = 0;
+		for (HomologyEdge edge : homology.getEdges()) {
+			Pair<Integer> ends = homology.getEndpoints(edge);
+			if (!graph.getVertices().contains(ends.getFirst()) || !graph.getVertices().contains(ends.getSecond())) {
+				continue;
+			}
+			if (phi instanceof LedgerWeightCreator) {
+				((LedgerWeightCreator) phi).putLedger(ends.getFirst(), ends.getSecond(), edge.getEvidence().keySet());
+			}
+			for (Class<? extends Weight> clazz : recompute) {
+				edge.removeEvidence(WeightResult.sourceOf(clazz));
+			}
+			if (edge.getWeight() == 0) continue;
+			graph.addHomology(edge, ends.getFirst(), ends.getSecond());
+			nRead++;
+		}
+		logger.info("Read " + nRead + " homology edges from " + homologyFile);
+		if (report) ReportGenerator.getInstance().put("n_read", nRead);
+	}
+
 	private void putMerges(List<MergeUpdate> merges, EntrySet entrySet) {
 		Map<Integer, String> uniProtIds = NetworkUtils.getUniProtIds(entrySet);
 		final IdentifierMapping mapping = IdentifierMappingFactory.getMapping();
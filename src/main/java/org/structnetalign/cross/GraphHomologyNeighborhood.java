@@ -0,0 +1,52 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * @author dmyersturnbull
+ */
+package org.structnetalign.cross;
+
+import java.util.Collection;
+
+import org.structnetalign.CleverGraph;
+import org.structnetalign.HomologyEdge;
+
+/**
+ * A {@link HomologyNeighborhood} backed by the homology edges already in a {@link CleverGraph}.
+ * 
+ * @author dmyersturnbull
+ */
+public class GraphHomologyNeighborhood implements HomologyNeighborhood {
+
+	private final CleverGraph graph;
+
+	public GraphHomologyNeighborhood(CleverGraph graph) {
+		this.graph = graph;
+	}
+
+	@Override
+	public Collection<Integer> getNeighbors(int vertex) {
+		return graph.getHomologyNeighbors(vertex);
+	}
+
+	@Override
+	public double getWeight(int a, int b) {
+		HomologyEdge edge = graph.getHomology().findEdge(a, b);
+		if (edge == null) return 0;
+		return edge.getWeight();
+	}
+
+	@Override
+	public boolean isHomologous(int a, int b) {
+		return graph.isHomologous(a, b);
+	}
+
+}
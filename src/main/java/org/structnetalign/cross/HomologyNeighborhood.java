@@ -0,0 +1,41 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * @author dmyersturnbull
+ */
+package org.structnetalign.cross;
+
+import java.util.Collection;
+
+/**
+ * The view of homology that a {@link HomologySearchJob} traverses. Lets crossing run either on homology edges that
+ * were computed beforehand or on weights that are computed only when the traversal reaches them.
+ * 
+ * @author dmyersturnbull
+ * @see GraphHomologyNeighborhood
+ */
+public interface HomologyNeighborhood {
+
+	/**
+	 * @return Every vertex that is homologous to {@code vertex}
+	 */
+	Collection<Integer> getNeighbors(int vertex);
+
+	/**
+	 * @return The weight of the homology between {@code a} and {@code b}; only meaningful if
+	 *         {@link #isHomologous(int, int)} is true
+	 */
+	double getWeight(int a, int b);
+
+	boolean isHomologous(int a, int b);
+
+}
@@ -15,6 +15,7 @@
 
 package org.structnetalign.cross;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Deque;
 import java.util.HashMap;
@@ -28,11 +29,9 @@ import java.util.concurrent.Callable;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.structnetalign.CleverGraph;
-import org.structnetalign.Edge;
 import org.structnetalign.InteractionEdge;
 import org.structnetalign.PipelineProperties;
 
-import edu.uci.ics.jung.graph.UndirectedGraph;
 import edu.uci.ics.jung.graph.util.Pair;
 
 /**
@@ -44,14 +43,24 @@ public class HomologySearchJob implements Callable<InteractionEdgeUpdate> {
 	private static final Logger logger = LogManager.getLogger("org.structnetalign");
 
 	private CleverGraph graph;
+	private final HomologyNeighborhood homology;
 	private int maxDepth = Integer.MAX_VALUE;
 	private final InteractionEdge root;
 	private final int rootA;
 	private final int rootB;
 
 	public HomologySearchJob(InteractionEdge root, CleverGraph graph) {
+		this(root, graph, new GraphHomologyNeighborhood(graph));
+	}
+
+	/**
+	 * @param homology
+	 *            The homology to traverse instead of the homology edges in {@code graph}
+	 */
+	public HomologySearchJob(InteractionEdge root, CleverGraph graph, HomologyNeighborhood homology) {
 		super();
 		this.graph = graph;
+		this.homology = homology;
 		this.root = root;
 		Pair<Integer> pair = graph.getInteraction().getEndpoints(root);
 		rootA = pair.getFirst();
@@ -63,8 +72,8 @@ public class HomologySearchJob implements Callable<InteractionEdgeUpdate> {
 		double score = 0;
 		int nUpdates = 0;
 		InteractionEdgeUpdate update = new InteractionEdgeUpdate(root, rootA, rootB);
-		Map<Integer, Double> distancesToA = findDistances(rootA, graph.getHomology());
-		Map<Integer, Double> distancesToB = findDistances(rootB, graph.getHomology());
+		Map<Integer, Double> distancesToA = findDistances(rootA);
+		Map<Integer, Double> distancesToB = findDistances(rootB);
 		for (Map.Entry<Integer, Double> a : distancesToA.entrySet()) {
 			for (Map.Entry<Integer, Double> b : distancesToB.entrySet()) {
 				InteractionEdge interaction = graph.getInteraction().findEdge(a.getKey(), b.getKey());
@@ -92,28 +101,35 @@ public class HomologySearchJob implements Callable<InteractionEdgeUpdate> {
 		this.maxDepth = maxDepth;
 	}
 
-	private <V, E extends Edge> NavigableMap<V, Double> findDistances(V root, UndirectedGraph<V, E> graph) {
+	/**
+	 * Finds the log-probability of homology between {@code root} and every vertex within {@link #setMaxDepth(int)
+	 * maxDepth} homology edges of it, along a breadth-first search tree.
+	 */
+	private NavigableMap<Integer, Double> findDistances(int root) {
 
-		NavigableMap<V, Double> map = new TreeMap<>();
+		NavigableMap<Integer, Double> map = new TreeMap<>();
 		map.put(root, 1.0);
 
 		// need constant-time get
-		HashSet<V> unvisited = new HashSet<V>(graph.getVertices());
-
-		HashMap<V, V> verticesTaken = new HashMap<>();
-		HashMap<V, E> edgesTaken = new HashMap<>();
-		HashMap<V, Integer> distances = new HashMap<>();
+		HashSet<Integer> visited = new HashSet<>();
+		// vertices in the queue that haven't been visited
+		// a vertex's parent can still change until it's visited
+		HashSet<Integer> waiting = new HashSet<>();
+
+		HashMap<Integer, Integer> verticesTaken = new HashMap<>();
+		HashMap<Integer, Double> weightsTaken = new HashMap<>();
+		HashMap<Integer, Integer> distances = new HashMap<>();
 		distances.put(root, 0);
 
-
-		Deque<V> queue = new LinkedList<V>();
+		Deque<Integer> queue = new LinkedList<>();
 		queue.add(root);
+		waiting.add(root);
 
 		while (!queue.isEmpty()) {
 
-			V vertex = queue.remove();
-			E edge = edgesTaken.get(vertex);
-			unvisited.remove(vertex);
+			int vertex = queue.remove();
+			visited.add(vertex);
+			waiting.remove(vertex);
 
 //			 stop traversing if we're too far
 			int distance = distances.get(vertex);
@@ -121,30 +137,43 @@ public class HomologySearchJob implements Callable<InteractionEdgeUpdate> {
 				logger.trace("Distance of " + distance + " exceeded");
 				continue;
 			}
-			
+
 			double totalWeight = Math.log(1);
-			V parent = verticesTaken.get(vertex);
+			Integer parent = verticesTaken.get(vertex);
 			if (parent != null) { // we're not on the root
-				double weight = Math.log(edge.getWeight());
+				double weight = Math.log(weightsTaken.get(vertex));
 				totalWeight = map.get(parent) + weight;
 			}
 			logger.trace("Weight for " + vertex + " is " + PipelineProperties.getInstance().getDisplayFormatter().format(totalWeight));
 			map.put(vertex, totalWeight);
-			
-			Collection<V> neighbors = graph.getNeighbors(vertex);
-			for (V neighbor : neighbors) {
-				if (unvisited.contains(neighbor)) {
+
+			/*
+			 * Past maxDepth, a newly found vertex would be skipped anyway.
+			 * But a vertex that's already waiting would be pushed past maxDepth, so we still need to check those.
+			 * Only looking at the waiting vertices means we don't need every neighbor of the outermost vertices.
+			 */
+			Collection<Integer> neighbors;
+			if (distance < maxDepth) {
+				neighbors = homology.getNeighbors(vertex);
+			} else {
+				neighbors = new ArrayList<>();
+				for (int other : waiting) {
+					if (other != vertex && homology.isHomologous(vertex, other)) neighbors.add(other);
+				}
+			}
+			for (int neighbor : neighbors) {
+				if (!visited.contains(neighbor)) {
 					queue.add(neighbor);
-					E edgeToNeighbor = graph.findEdge(vertex, neighbor);
+					waiting.add(neighbor);
 					distances.put(neighbor, distance + 1);
 					verticesTaken.put(neighbor, vertex);
-					edgesTaken.put(neighbor, edgeToNeighbor);
+					weightsTaken.put(neighbor, homology.getWeight(vertex, neighbor));
 				}
 			}
 
 		}
 
-		for (Map.Entry<V, Double> entry : map.entrySet()) {
+		for (Map.Entry<Integer, Double> entry : map.entrySet()) {
 			logger.trace("Prob(" + root + ", " + entry.getKey() + ") = " + PipelineProperties.getInstance().getDisplayFormatter().format(Math.exp(entry.getValue())));
 		}
 		return map;
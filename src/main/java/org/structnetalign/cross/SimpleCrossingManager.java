@@ -45,6 +45,7 @@ import org.xml.sax.SAXException;
 public class SimpleCrossingManager implements CrossingManager {
 
 	private static final Logger logger = LogManager.getLogger("org.structnetalign");
+	private HomologyNeighborhood homology;
 	private int maxDepth;
 	private int nCores;
 
@@ -73,6 +74,14 @@ public class SimpleCrossingManager implements CrossingManager {
 		this.maxDepth = maxDepth;
 	}
 
+	/**
+	 * @param homology
+	 *            The homology to traverse; if null (the default), the homology edges of the graph are used
+	 */
+	public void setHomology(HomologyNeighborhood homology) {
+		this.homology = homology;
+	}
+
 	@Override
 	public void cross(CleverGraph graph) {
 
@@ -87,7 +96,8 @@ public class SimpleCrossingManager implements CrossingManager {
 
 			// submit the jobs
 			for (InteractionEdge interaction : graph.getInteraction().getEdges()) {
-				HomologySearchJob job = new HomologySearchJob(interaction, graph);
+				HomologySearchJob job = homology == null ? new HomologySearchJob(interaction, graph)
+						: new HomologySearchJob(interaction, graph, homology);
 				job.setMaxDepth(maxDepth);
 				Future<InteractionEdgeUpdate> result = completion.submit(job);
 				futures.add(result);
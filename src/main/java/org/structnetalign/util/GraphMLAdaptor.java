@@ -20,6 +20,7 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.Map;
 import java.util.TreeSet;
 
 import javax.xml.parsers.ParserConfigurationException;
@@ -60,6 +61,10 @@ public class GraphMLAdaptor {
 		E createEmptyEdge();
 	}
 
+	private static final String EVIDENCE_DESCRIPTION = "evidence";
+
+	private static final String EVIDENCE_LABEL = "e";
+
 	private static final String WEIGHT_DESCRIPTION = "weight";
 
 	private static final String WEIGHT_LABEL = "w";
@@ -177,6 +182,14 @@ public class GraphMLAdaptor {
 		Transformer<HomologyEdge, String> edgeTransformer = getEdgeWeightTransformer();
 		writer.addEdgeData(WEIGHT_LABEL, WEIGHT_DESCRIPTION, null, edgeTransformer);
 
+		// keep the evidence so that the weights can be recombined later
+		for (HomologyEdge edge : graph.getEdges()) {
+			if (!edge.getEvidence().isEmpty()) {
+				writer.addEdgeData(EVIDENCE_LABEL, EVIDENCE_DESCRIPTION, null, getEvidenceTransformer());
+				break;
+			}
+		}
+
 		// assign edge Ids (needed by reader)
 		Transformer<HomologyEdge, String> edgeIdTransformer = getEdgeIdTransformer();
 		writer.setEdgeIDs(edgeIdTransformer);
@@ -245,7 +258,19 @@ public class GraphMLAdaptor {
 				}
 				E edge = factory.createEmptyEdge();
 				edge.setId(id);
-				edge.setWeight(weight);
+				String evidence = metadata.getProperty(EVIDENCE_LABEL);
+				if (edge instanceof HomologyEdge && evidence != null && !evidence.isEmpty()) {
+					for (String entry : evidence.split(";")) {
+						int equals = entry.lastIndexOf('=');
+						try {
+							((HomologyEdge) edge).putEvidence(entry.substring(0, equals),
+									Double.parseDouble(entry.substring(equals + 1)));
+						} catch (NumberFormatException | IndexOutOfBoundsException e) {
+							throw new IllegalArgumentException("The graph has an edge with malformed evidence " + evidence);
+						}
+					}
+				}
+				edge.setWeight(weight); // after the evidence, so that it's exactly what was written
 				return edge;
 			}
 
@@ -258,6 +283,23 @@ public class GraphMLAdaptor {
 		};
 	}
 
+	private static Transformer<HomologyEdge, String> getEvidenceTransformer() {
+		return new Transformer<HomologyEdge, String>() {
+			@Override
+			public String transform(HomologyEdge edge) {
+				Map<String, Double> evidence = edge.getEvidence();
+				if (evidence.isEmpty()) return null;
+				StringBuilder sb = new StringBuilder();
+				for (Map.Entry<String, Double> entry : evidence.entrySet()) {
+					if (sb.length() > 0) sb.append(";");
+					// exactly, and regardless of locale, so that it reads back as the same double
+					sb.append(entry.getKey() + "=" + Double.toString(entry.getValue()));
+				}
+				return sb.toString();
+			}
+		};
+	}
+
 	private static <E extends Edge> Transformer<E, String> getEdgeWeightTransformer() {
 		return new Transformer<E, String>() {
 			@Override
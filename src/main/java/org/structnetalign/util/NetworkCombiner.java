@@ -36,7 +36,6 @@ import org.apache.logging.log4j.Logger;
 import org.biojava.bio.structure.Atom;
 import org.biojava.bio.structure.StructureException;
 import org.biojava.bio.structure.align.ce.AbstractUserArgumentProcessor;
-import org.biojava.bio.structure.align.util.AtomCache;
 import org.biojava3.core.sequence.ProteinSequence;
 import org.biojava3.core.sequence.io.FastaReaderHelper;
 import org.structnetalign.weight.AtomCacheFactory;
@@ -300,9 +299,8 @@ public class NetworkCombiner {
 				return false;
 			}
 
-			final AtomCache cache = AtomCacheFactory.getCache();
 			try {
-				Atom[] ca1 = cache.getAtoms(pdbIdAndChain);
+				Atom[] ca1 = AtomCacheFactory.getAtoms(pdbIdAndChain);
 				if (ca1 == null) throw new StructureException("Structure is null");
 			} catch (IOException | StructureException e) {
 				logger.debug("Couldn't find PDB structure for " + uniProtId, e);
@@ -0,0 +1,249 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.CRC32;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Persists the raw outputs of alignments, such as the fractional identity of a sequence alignment or the TM-score and
+ * RMSD of a structural alignment, by the pair of resources that were aligned. A {@link Weight} that finds its pair
+ * here only needs to transform the stored values into a probability, so changing that transform (for example, the
+ * gamma distribution in {@code nw_weights.properties}) doesn't require realigning anything.
+ * <p>
+ * Each kind of alignment and set of alignment parameters has its own tab-separated file in the
+ * {@link #setDirectory(File) directory}, so changing the parameters of the alignment itself starts a new file. Records
+ * are appended as they are computed, so an interrupted run loses at most the alignments in progress. Nothing is
+ * persisted unless a directory is set.
+ * <p>
+ * Every record ends with a CRC-32 checksum of the rest of its line, and must have the number of values its kind
+ * stores. A record that fails either check, such as one cut off by a crash, is skipped when loading. An unterminated
+ * last line is removed from the file before anything more is appended to it.
+ *
+ * @author dmyersturnbull
+ */
+public class AlignmentArtifacts {
+
+	/**
+	 * Changing this starts new files.
+	 */
+	private static final int FORMAT = 2;
+
+	private static File directory;
+
+	private static final Logger logger = LogManager.getLogger("org.structnetalign");
+
+	private static final ConcurrentMap<String, AlignmentArtifacts> open = new ConcurrentHashMap<>();
+
+	private final File file;
+
+	private final int nValues;
+
+	private final String parameters;
+
+	private Map<String, double[]> records; // loaded on first use
+
+	private BufferedWriter writer;
+
+	/**
+	 * @param nValues
+	 *            The number of values stored for each pair
+	 * @return The artifacts for alignments of kind {@code kind} with {@code parameters}, or null if no directory is
+	 *         set
+	 */
+	public static AlignmentArtifacts forKind(String kind, String parameters, int nValues) {
+		File dir = directory;
+		if (dir == null) return null;
+		String name = kind + "-"
+				+ ResourcePairMemo.digest(parameters + " values=" + nValues + " format=" + FORMAT).substring(0, 12)
+				+ ".tsv";
+		AlignmentArtifacts artifacts = open.get(name);
+		if (artifacts == null) {
+			artifacts = new AlignmentArtifacts(new File(dir, name), parameters, nValues);
+			AlignmentArtifacts existing = open.putIfAbsent(name, artifacts);
+			if (existing != null) artifacts = existing;
+		}
+		return artifacts;
+	}
+
+	public static File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * @param directory
+	 *            Where to keep alignment artifacts across runs; null (the default) doesn't keep them
+	 */
+	public static synchronized void setDirectory(File directory) {
+		for (AlignmentArtifacts artifacts : open.values()) {
+			artifacts.close();
+		}
+		open.clear();
+		if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+			throw new IllegalArgumentException("Couldn't create artifact directory " + directory);
+		}
+		AlignmentArtifacts.directory = directory;
+	}
+
+	AlignmentArtifacts(File file, String parameters, int nValues) {
+		if (nValues < 1) throw new IllegalArgumentException("Artifacts must store at least one value");
+		this.file = file;
+		this.parameters = parameters;
+		this.nValues = nValues;
+	}
+
+	/**
+	 * @return The CRC-32 checksum of {@code record}, in hexadecimal
+	 */
+	static String checksum(String record) {
+		CRC32 crc = new CRC32();
+		crc.update(record.getBytes(Charset.forName("UTF-8")));
+		return Long.toHexString(crc.getValue());
+	}
+
+	public synchronized void close() {
+		if (writer == null) return;
+		try {
+			writer.close();
+		} catch (IOException e) {
+			logger.warn("Couldn't close alignment artifacts " + file, e);
+		}
+		writer = null;
+	}
+
+	/**
+	 * @return The values stored for the unordered pair of {@code resource1} and {@code resource2}, or null if there
+	 *         are none
+	 */
+	public synchronized double[] get(String resource1, String resource2) {
+		load();
+		return records.get(ResourcePairMemo.key(resource1, resource2));
+	}
+
+	/**
+	 * Stores {@code values} for the unordered pair of {@code resource1} and {@code resource2}. Failing to write is
+	 * logged but otherwise ignored, since the values can always be computed again.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             If there aren't as many values as this kind stores
+	 */
+	public synchronized void put(String resource1, String resource2, double... values) {
+		if (values.length != nValues) throw new IllegalArgumentException("Expected " + nValues + " values but got "
+				+ values.length);
+		load();
+		String key = ResourcePairMemo.key(resource1, resource2);
+		if (records.containsKey(key)) return;
+		records.put(key, values);
+		StringBuilder sb = new StringBuilder(key);
+		for (double value : values) {
+			sb.append('\t').append(value);
+		}
+		try {
+			if (writer == null) {
+				boolean isNew = !file.exists();
+				writer = new BufferedWriter(new FileWriter(file, true));
+				if (isNew) {
+					writer.write("# " + parameters);
+					writer.newLine();
+				}
+			}
+			writer.write(sb.toString() + "\t" + checksum(sb.toString()));
+			writer.newLine();
+			writer.flush();
+		} catch (IOException e) {
+			logger.warn("Couldn't write alignment artifacts to " + file, e);
+		}
+	}
+
+	/**
+	 * @return The number of pairs stored
+	 */
+	public synchronized int size() {
+		load();
+		return records.size();
+	}
+
+	/**
+	 * Truncates the file after its last line break, so that a record cut off by a crash isn't joined to the next one
+	 * appended.
+	 */
+	private void dropUnterminatedLine() throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			long end = raf.length();
+			long pos = end;
+			while (pos > 0) {
+				raf.seek(pos - 1);
+				if (raf.read() == '\n') break;
+				pos--;
+			}
+			if (pos < end) {
+				logger.warn("Removing an unterminated line of " + (end - pos) + " bytes from the end of " + file);
+				raf.setLength(pos);
+			}
+		}
+	}
+
+	private void load() {
+		if (records != null) return;
+		records = new HashMap<>();
+		if (!file.exists()) return;
+		int nSkipped = 0;
+		try {
+			dropUnterminatedLine();
+		} catch (IOException e) {
+			logger.warn("Couldn't check the end of " + file, e);
+		}
+		try (BufferedReader br = new BufferedReader(new FileReader(file))) {
+			String line;
+			while ((line = br.readLine()) != null) {
+				if (line.isEmpty() || line.startsWith("#")) continue;
+				String[] parts = line.split("\t");
+				int tab = line.lastIndexOf('\t');
+				if (parts.length != nValues + 2 || !checksum(line.substring(0, tab)).equals(line.substring(tab + 1))) {
+					nSkipped++; // probably cut off or garbled by a crash
+					continue;
+				}
+				try {
+					double[] values = new double[nValues];
+					for (int i = 0; i < nValues; i++) {
+						values[i] = Double.parseDouble(parts[i + 1]);
+					}
+					records.put(parts[0], values);
+				} catch (NumberFormatException e) {
+					nSkipped++;
+				}
+			}
+		} catch (IOException e) {
+			logger.warn("Couldn't read alignment artifacts from " + file, e);
+		}
+		if (nSkipped > 0) logger.warn("Skipped " + nSkipped + " malformed lines in " + file);
+		logger.info("Loaded " + records.size() + " alignment artifacts from " + file);
+	}
+
+}
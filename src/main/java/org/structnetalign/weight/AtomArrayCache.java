@@ -0,0 +1,289 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.biojava.bio.structure.Atom;
+import org.biojava.bio.structure.StructureException;
+import org.biojava.bio.structure.align.util.AtomCache;
+
+/**
+ * Keeps the CA atoms of recently used PDB chains in memory, in front of an {@link AtomCache}, so that a chain aligned
+ * against many others is parsed once rather than once per pair. The cache holds at most a fixed number of atoms in
+ * total, or fewer while a {@link #setLimit(Long) limit} is set. When it's full, it evicts the least frequently used of
+ * the few least recently used chains, so a chain that every batch needs outlives one that was read once. Frequencies
+ * are halved from time to time so that old popularity fades.
+ * <p>
+ * Concurrent requests for the same chain wait for a single parse. A parse that fails is not remembered. The arrays
+ * returned are shared between callers and must not be modified; clone them first to transform the coordinates.
+ *
+ * @author dmyersturnbull
+ */
+public class AtomArrayCache {
+
+	private static class Slot {
+		private int frequency;
+		private final FutureTask<Atom[]> task;
+		private int weight; // set once loaded
+		public Slot(FutureTask<Atom[]> task) {
+			this.task = task;
+		}
+	}
+
+	/**
+	 * The estimated heap kept alive by each cached CA atom, including the residue it belongs to.
+	 */
+	public static final long BYTES_PER_ATOM = 1024;
+
+	/**
+	 * Frequencies are halved once there have been this many hits per cached chain.
+	 */
+	private static final int AGING_PERIOD = 10;
+
+	/**
+	 * The number of least recently used chains considered for eviction.
+	 */
+	private static final int EVICTION_SAMPLE = 5;
+
+	private static final Logger logger = LogManager.getLogger("org.structnetalign");
+
+	private final AtomCache cache;
+
+	private final ConcurrentMap<String, Slot> entries = new ConcurrentHashMap<>();
+
+	/**
+	 * The most atoms kept for now; at most {@link #maxAtoms}.
+	 */
+	private long limit;
+
+	private final long maxAtoms;
+
+	private int nHits;
+
+	/**
+	 * The loaded chains, least recently used first. Guards itself, {@link #limit}, {@link #nHits},
+	 * {@link #totalAtoms}, and each Slot's {@code frequency} and {@code weight}.
+	 */
+	private final LinkedHashMap<String, Slot> order = new LinkedHashMap<>(16, 0.75f, true);
+
+	private long totalAtoms;
+
+	/**
+	 * @param maxAtoms
+	 *            The most CA atoms to keep in total; a chain larger than this is loaded but not kept
+	 */
+	public AtomArrayCache(AtomCache cache, long maxAtoms) {
+		this.cache = cache;
+		this.maxAtoms = maxAtoms;
+		limit = maxAtoms;
+	}
+
+	public void clear() {
+		synchronized (order) {
+			for (Map.Entry<String, Slot> entry : order.entrySet()) {
+				entries.remove(entry.getKey(), entry.getValue());
+			}
+			order.clear();
+			totalAtoms = 0;
+			nHits = 0;
+		}
+	}
+
+	/**
+	 * Returns the CA atoms of {@code pdbIdAndChain}, parsing them if they aren't cached.
+	 *
+	 * @return An array shared with other callers, or null if the AtomCache returned null
+	 */
+	public Atom[] getAtoms(final String pdbIdAndChain) throws IOException, StructureException {
+		while (true) {
+			boolean ours = false;
+			Slot slot = entries.get(pdbIdAndChain);
+			if (slot == null) {
+				Slot created = new Slot(new FutureTask<Atom[]>(new Callable<Atom[]>() {
+					@Override
+					public Atom[] call() throws Exception {
+						return load(pdbIdAndChain);
+					}
+				}));
+				slot = entries.putIfAbsent(pdbIdAndChain, created);
+				if (slot == null) { // we won; everyone else will wait on us
+					slot = created;
+					ours = true;
+					created.task.run();
+				}
+			}
+			Atom[] atoms;
+			try {
+				atoms = slot.task.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				InterruptedIOException thrown = new InterruptedIOException("Interrupted while waiting for "
+						+ pdbIdAndChain + " to be parsed");
+				thrown.initCause(e);
+				throw thrown;
+			} catch (ExecutionException e) {
+				entries.remove(pdbIdAndChain, slot); // let a later call try again
+				// the thread parsing it was cancelled, but we weren't
+				if (!ours && e.getCause() instanceof InterruptedException) continue;
+				if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+				if (e.getCause() instanceof StructureException) throw (StructureException) e.getCause();
+				if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+				if (e.getCause() instanceof Error) throw (Error) e.getCause();
+				throw new StructureException("Could not parse " + pdbIdAndChain, e.getCause());
+			}
+			if (ours) {
+				admit(pdbIdAndChain, slot, atoms);
+			} else {
+				hit(pdbIdAndChain, slot);
+			}
+			return atoms;
+		}
+	}
+
+	/**
+	 * @return The number of CA atoms kept for now, which is at most {@link #getMaxAtoms()}
+	 */
+	public long getLimit() {
+		synchronized (order) {
+			return limit;
+		}
+	}
+
+	/**
+	 * @return The maximum number of CA atoms kept
+	 */
+	public long getMaxAtoms() {
+		return maxAtoms;
+	}
+
+	/**
+	 * @return The number of CA atoms now kept
+	 */
+	public long getTotalAtoms() {
+		synchronized (order) {
+			return totalAtoms;
+		}
+	}
+
+	/**
+	 * Keeps fewer atoms than {@link #getMaxAtoms()} until this is called again, evicting chains now if needed.
+	 * 
+	 * @param limit
+	 *            The most CA atoms to keep, such as what fits in one run's memory; null restores the maximum
+	 */
+	public void setLimit(Long limit) {
+		synchronized (order) {
+			this.limit = limit == null ? maxAtoms : Math.min(limit, maxAtoms);
+			while (totalAtoms > this.limit) {
+				evictOtherThan(null);
+			}
+		}
+	}
+
+	/**
+	 * @return The number of chains that are cached or being parsed
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Parses {@code pdbIdAndChain}. Called at most once at a time per chain.
+	 */
+	protected Atom[] load(String pdbIdAndChain) throws IOException, StructureException {
+		Atom[] atoms = cache.getAtoms(pdbIdAndChain);
+		if (atoms != null) ResidueCounts.putChainLength(pdbIdAndChain, atoms.length);
+		return atoms;
+	}
+
+	/**
+	 * Keeps a newly parsed chain, evicting others if the cache is over its size.
+	 */
+	private void admit(String pdbIdAndChain, Slot slot, Atom[] atoms) {
+		if (atoms == null) {
+			entries.remove(pdbIdAndChain, slot);
+			return;
+		}
+		synchronized (order) {
+			if (atoms.length > limit) {
+				entries.remove(pdbIdAndChain, slot);
+				return;
+			}
+			if (entries.get(pdbIdAndChain) != slot) return; // cleared while we were parsing
+			slot.weight = atoms.length;
+			slot.frequency++;
+			order.put(pdbIdAndChain, slot);
+			totalAtoms += slot.weight;
+			while (totalAtoms > limit) {
+				evictOtherThan(pdbIdAndChain);
+			}
+		}
+	}
+
+	/**
+	 * Evicts the least frequently used of the {@link #EVICTION_SAMPLE} least recently used chains, ignoring
+	 * {@code keep}, which may be null. Must hold the lock on {@link #order}.
+	 */
+	private void evictOtherThan(String keep) {
+		String victim = null;
+		Slot victimSlot = null;
+		int nSampled = 0;
+		Iterator<Map.Entry<String, Slot>> iter = order.entrySet().iterator();
+		while (iter.hasNext() && nSampled < EVICTION_SAMPLE) {
+			Map.Entry<String, Slot> candidate = iter.next();
+			if (candidate.getKey().equals(keep)) continue;
+			if (victimSlot == null || candidate.getValue().frequency < victimSlot.frequency) {
+				victim = candidate.getKey();
+				victimSlot = candidate.getValue();
+			}
+			nSampled++;
+		}
+		if (victim == null) throw new IllegalStateException("Nothing left to evict"); // keep fits on its own
+		order.remove(victim);
+		entries.remove(victim, victimSlot);
+		totalAtoms -= victimSlot.weight;
+		logger.trace("Evicted " + victim + " (" + victimSlot.weight + " atoms) from the atom cache");
+	}
+
+	/**
+	 * Records a use of a chain that was already parsed, or is being parsed.
+	 */
+	private void hit(String pdbIdAndChain, Slot slot) {
+		synchronized (order) {
+			slot.frequency++;
+			order.get(pdbIdAndChain); // moves it to the most recently used end, if it's there
+			nHits++;
+			if (nHits >= AGING_PERIOD * Math.max(order.size(), 1)) {
+				for (Slot cached : order.values()) {
+					cached.frequency /= 2;
+				}
+				nHits = 0;
+			}
+		}
+	}
+
+}
@@ -13,18 +13,110 @@
  */
 package org.structnetalign.weight;
 
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.biojava.bio.structure.Atom;
+import org.biojava.bio.structure.StructureException;
 import org.biojava.bio.structure.align.util.AtomCache;
 
 /**
- * A factory that maintains an AtomCache for getting <a href="http://pdb.org">Protein Data Bank</a> structures.
+ * A factory that maintains an AtomCache for getting <a href="http://pdb.org">Protein Data Bank</a> structures, and an
+ * {@link AtomArrayCache} in front of it that Weights share.
  * @author dmyersturnbull
  *
  */
 public class AtomCacheFactory {
 
+	/**
+	 * The default for the most CA atoms kept in memory; about 2,000 average chains.
+	 */
+	public static final long DEFAULT_MAX_ATOMS = 500000;
+
+	/**
+	 * The Weights that read CA atoms through the shared {@link AtomArrayCache}.
+	 */
+	public static final Set<Class<? extends Weight>> DEFAULT_ATOM_WEIGHTS = new HashSet<>();
+
+	private static final Logger logger = LogManager.getLogger("org.structnetalign");
+
+	private static AtomArrayCache atoms;
+
 	private static AtomCache cache;
+
+	private static long maxAtoms = DEFAULT_MAX_ATOMS;
+
+	static {
+		DEFAULT_ATOM_WEIGHTS.add(CeWeight.class);
+		DEFAULT_ATOM_WEIGHTS.add(PrecalculatedFatcatWeight.class);
+		DEFAULT_ATOM_WEIGHTS.add(SequenceGuidedTmWeight.class);
+	}
 	
-	public static AtomCache getCache() {
+	/**
+	 * Gets the CA atoms of a chain through the shared {@link AtomArrayCache}. The array is shared and must not be
+	 * modified.
+	 */
+	public static Atom[] getAtoms(String pdbIdAndChain) throws IOException, StructureException {
+		return getAtomArrayCache().getAtoms(pdbIdAndChain);
+	}
+
+	public static synchronized AtomArrayCache getAtomArrayCache() {
+		if (atoms == null) atoms = new AtomArrayCache(getCache(), maxAtoms);
+		return atoms;
+	}
+
+	/**
+	 * @return The most CA atoms the shared {@link AtomArrayCache} keeps
+	 */
+	public static synchronized long getMaxAtoms() {
+		return maxAtoms;
+	}
+
+	/**
+	 * @return Whether {@code creator} might create a Weight that reads atoms through the shared {@link AtomArrayCache}
+	 */
+	public static boolean isUsedBy(WeightCreator creator) {
+		if (!(creator instanceof ChainedWeightCreator)) return true;
+		Collection<Class<? extends Weight>> classes = ((ChainedWeightCreator) creator).getWeightClasses();
+		if (classes == null) return true;
+		for (Class<? extends Weight> clazz : classes) {
+			if (DEFAULT_ATOM_WEIGHTS.contains(clazz)) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Restores the shared {@link AtomArrayCache} to its maximum size after a {@link #reserve(WeightCreator, long)}.
+	 */
+	public static synchronized void release() {
+		if (atoms != null) atoms.setLimit(null);
+	}
+
+	/**
+	 * Sets aside memory for the shared {@link AtomArrayCache} for a run of {@code creator}, {@link #release()
+	 * released} when the run ends. For the run, the cache is limited to at most half of {@code memory}.
+	 * 
+	 * @param memory
+	 *            The estimated bytes that the run may use, including the cache
+	 * @return The bytes that a full cache takes for the run, which running jobs can't have; 0 if {@code creator} can't
+	 *         create a Weight that uses the cache
+	 */
+	public static synchronized long reserve(WeightCreator creator, long memory) {
+		if (!isUsedBy(creator)) return 0;
+		long limit = Math.min(maxAtoms, memory / 2 / AtomArrayCache.BYTES_PER_ATOM);
+		if (limit < maxAtoms) {
+			logger.info("Keeping at most " + limit + " atoms in the atom cache during this run, to fit in "
+					+ memory / (1024 * 1024) + " MiB");
+		}
+		getAtomArrayCache().setLimit(limit);
+		return limit * AtomArrayCache.BYTES_PER_ATOM;
+	}
+
+	public static synchronized AtomCache getCache() {
 		if (cache == null) setCache();
 		return cache;
 	}
@@ -36,8 +128,17 @@ public class AtomCacheFactory {
 		setCache(new AtomCache(pdbDir, false));
 	}
 	
-	public static void setCache(AtomCache cache) {
+	public static synchronized void setCache(AtomCache cache) {
 		AtomCacheFactory.cache = cache;
+		atoms = null;
+	}
+
+	/**
+	 * Sets the most CA atoms the shared {@link AtomArrayCache} keeps, emptying it.
+	 */
+	public static synchronized void setMaxAtoms(long maxAtoms) {
+		AtomCacheFactory.maxAtoms = maxAtoms;
+		atoms = null;
 	}
 	
 }
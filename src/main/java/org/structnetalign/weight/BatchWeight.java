@@ -0,0 +1,45 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import java.util.List;
+
+/**
+ * A {@link Weight} that can share its setup with other Weights of the same class. A {@link WeightBatch} calls
+ * {@link #prepareBatch(List)} once and then calls each Weight in the batch on the same thread, so inputs such as a
+ * query structure or a set of sequences are loaded once instead of once per pair.
+ * 
+ * @author dmyersturnbull
+ */
+public interface BatchWeight extends Weight {
+
+	/**
+	 * @return The input that this Weight could share with a batch, such as its first PDB chain, already mapped from its
+	 *         first UniProt Id; Weights of the same class with the same key can run in one batch. Null if there's
+	 *         nothing to share yet.
+	 */
+	String getBatchKey();
+
+	/**
+	 * Loads the inputs shared by {@code batch} and hands them to each Weight in it. Every Weight in {@code batch} is of
+	 * the same class as this one and has already had {@link #setIds(int, int, String, String)} called; usually they
+	 * also share their first vertex. Setting new Ids on a Weight discards what was prepared for it.
+	 * 
+	 * @throws Exception
+	 *             If the shared inputs couldn't be loaded; each Weight will then load its own inputs when called
+	 */
+	void prepareBatch(List<? extends Weight> batch) throws Exception;
+
+}
@@ -0,0 +1,34 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+/**
+ * A {@link Weight} that can cheaply say how high its result could possibly be, before doing any real work. A
+ * {@link WeightManager} can then skip it when even that can't make a difference, such as when it can't reach tau.
+ * 
+ * @author dmyersturnbull
+ * @see SmarterWeightManager#setPruneBelow(Double)
+ */
+public interface BoundedWeight extends Weight {
+
+	/**
+	 * Called after {@link #setIds(int, int, String, String)}, usually on the thread that submits the Weight, so this
+	 * should neither block for long nor load structures.
+	 * 
+	 * @return The highest weight that {@link #call()} could return for the current pair; 1 if nothing is known
+	 */
+	double upperBound();
+
+}
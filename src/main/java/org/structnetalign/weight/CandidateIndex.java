@@ -0,0 +1,251 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.biojava.bio.structure.scop.ScopCategory;
+import org.biojava.bio.structure.scop.ScopDomain;
+import org.biojava3.core.sequence.ProteinSequence;
+import org.structnetalign.util.IdentifierMappingFactory;
+
+/**
+ * A cheap screen for which pairs of vertices could be homologous, so that a {@link LazyHomologyNeighborhood} doesn't
+ * have to weight a vertex against every other. Each vertex is given a set of keys, such as the words in its sequence,
+ * its Pfam-A families, or its SCOP superfamily, and the vertices are bucketed by key. The candidates of a vertex are
+ * the vertices that share at least {@code minShared} keys with it, which are found from its buckets rather than by
+ * comparing every pair.
+ * <p>
+ * A vertex that was never {@link #put(int, int...) put} has no keys, so this index can't say anything about it; see
+ * {@link #contains(int)}.
+ *
+ * @author dmyersturnbull
+ */
+public class CandidateIndex {
+
+	public static final int DEFAULT_MIN_WORDS = 2;
+
+	public static final int DEFAULT_WORD_LENGTH = 4;
+
+	private static final String AMINO_ACIDS = "ACDEFGHIKLMNPQRSTVWY"; // anything else is one more letter
+
+	private static final Logger logger = LogManager.getLogger("org.structnetalign");
+
+	private final Map<Integer, List<Integer>> buckets = new HashMap<>();
+
+	private final Map<Integer, int[]> keys = new HashMap<>();
+
+	private final int minShared;
+
+	private final String name;
+
+	/**
+	 * Indexes the Pfam-A families of each vertex in {@code uniProtIds} that has any. Vertices that share a family are
+	 * candidates.
+	 */
+	public static CandidateIndex ofPfam(PfamIndex pfam, Map<Integer, String> uniProtIds) {
+		CandidateIndex index = new CandidateIndex("Pfam", 1);
+		for (Map.Entry<Integer, String> entry : uniProtIds.entrySet()) {
+			if (entry.getValue() == null) continue;
+			int[] families = pfam.getFamilies(entry.getValue());
+			if (families != null) index.put(entry.getKey(), families);
+		}
+		return index;
+	}
+
+	/**
+	 * Indexes the SCOP {@code category} (such as the superfamily) of each vertex in {@code uniProtIds} that maps to a
+	 * SCOP domain. Vertices in the same one are candidates. This catches structural homologs too distant to share
+	 * many words.
+	 */
+	public static CandidateIndex ofScop(Map<Integer, String> uniProtIds, ScopCategory category) {
+		CandidateIndex index = new CandidateIndex("SCOP " + category.name().toLowerCase(), 1);
+		for (Map.Entry<Integer, String> entry : uniProtIds.entrySet()) {
+			if (entry.getValue() == null) continue;
+			String scopId = IdentifierMappingFactory.getMapping().uniProtToScop(entry.getValue());
+			if (scopId == null) continue;
+			ScopDomain domain = ScopWeight.getSCOP().getDomainByScopID(scopId);
+			if (domain == null) continue;
+			index.put(entry.getKey(), ScopWeight.sunIdOfCategory(domain, category));
+		}
+		return index;
+	}
+
+	/**
+	 * Fetches the sequence of every vertex in {@code uniProtIds} and indexes them with
+	 * {@link #ofWords(Map, int, int)}. Vertices whose sequences can't be fetched are left out.
+	 */
+	public static CandidateIndex ofSequences(Map<Integer, String> uniProtIds, int wordLength, int minShared) {
+		Set<String> ids = new LinkedHashSet<>(uniProtIds.values());
+		ids.remove(null);
+		Map<String, ProteinSequence> fetched;
+		try {
+			fetched = SequenceFetcher.getInstance().getSequences(ids);
+		} catch (IOException e) {
+			// a batch failed, so find out which ones we can get
+			logger.warn("Could not fetch every sequence to index", e);
+			fetched = new HashMap<>();
+			for (String id : ids) {
+				try {
+					fetched.put(id, SequenceFetcher.getInstance().getSequence(id));
+				} catch (IOException e1) {
+					logger.debug("Not indexing " + id + " because its sequence couldn't be fetched", e1);
+				}
+			}
+		}
+		Map<Integer, String> sequences = new HashMap<>();
+		for (Map.Entry<Integer, String> entry : uniProtIds.entrySet()) {
+			ProteinSequence sequence = fetched.get(entry.getValue());
+			if (sequence != null) sequences.put(entry.getKey(), sequence.getSequenceAsString());
+		}
+		return ofWords(sequences, wordLength, minShared);
+	}
+
+	/**
+	 * Indexes the distinct words of length {@code wordLength} in each sequence. Two unrelated sequences of 300 residues
+	 * share about half a word of length 4 on average, while two that are 40% identical share about 8.
+	 *
+	 * @param sequences
+	 *            The sequence of each vertex, as a string of one-letter codes
+	 * @param minShared
+	 *            The fewest distinct words two sequences must share to be candidates
+	 */
+	public static CandidateIndex ofWords(Map<Integer, String> sequences, int wordLength, int minShared) {
+		if (wordLength < 1 || wordLength > 7) throw new IllegalArgumentException("The word length must be from 1 to 7");
+		CandidateIndex index = new CandidateIndex("words of length " + wordLength, minShared);
+		for (Map.Entry<Integer, String> entry : sequences.entrySet()) {
+			index.put(entry.getKey(), words(entry.getValue(), wordLength));
+		}
+		return index;
+	}
+
+	/**
+	 * @return The distinct words of length {@code wordLength} in {@code sequence}, each as a number in base 21
+	 */
+	static int[] words(String sequence, int wordLength) {
+		Set<Integer> words = new HashSet<>();
+		for (int i = 0; i + wordLength <= sequence.length(); i++) {
+			int word = 0;
+			for (int j = i; j < i + wordLength; j++) {
+				int letter = AMINO_ACIDS.indexOf(Character.toUpperCase(sequence.charAt(j)));
+				word = word * 21 + (letter < 0 ? 20 : letter);
+			}
+			words.add(word);
+		}
+		int[] array = new int[words.size()];
+		int i = 0;
+		for (int word : words) {
+			array[i++] = word;
+		}
+		return array;
+	}
+
+	/**
+	 * @param name
+	 *            What the keys are, for logging
+	 * @param minShared
+	 *            The fewest keys two vertices must share to be candidates
+	 */
+	public CandidateIndex(String name, int minShared) {
+		if (minShared < 1) throw new IllegalArgumentException("Vertices must share at least one key");
+		this.name = name;
+		this.minShared = minShared;
+	}
+
+	/**
+	 * @return Whether {@code vertex} has keys in this index
+	 */
+	public boolean contains(int vertex) {
+		return keys.containsKey(vertex);
+	}
+
+	/**
+	 * @return The vertices other than {@code vertex} that share at least {@code minShared} keys with it, or an empty
+	 *         set if it isn't {@link #contains(int) in} this index
+	 */
+	public Set<Integer> getCandidates(int vertex) {
+		Set<Integer> candidates = new HashSet<>();
+		int[] mine = keys.get(vertex);
+		if (mine == null) return candidates;
+		Map<Integer, Integer> shared = new HashMap<>();
+		for (int key : mine) {
+			for (int other : buckets.get(key)) {
+				if (other == vertex) continue;
+				Integer n = shared.get(other);
+				n = n == null ? 1 : n + 1;
+				shared.put(other, n);
+				if (n == minShared) candidates.add(other);
+			}
+		}
+		return candidates;
+	}
+
+	public int getMinShared() {
+		return minShared;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Gives {@code vertex} these keys, replacing any it had.
+	 */
+	public void put(int vertex, int... keys) {
+		int[] sorted = keys.clone();
+		Arrays.sort(sorted);
+		int n = 0;
+		for (int i = 0; i < sorted.length; i++) {
+			if (i == 0 || sorted[i] != sorted[i - 1]) sorted[n++] = sorted[i];
+		}
+		int[] old = this.keys.put(vertex, Arrays.copyOf(sorted, n));
+		if (old != null) {
+			for (int key : old) {
+				buckets.get(key).remove((Integer) vertex);
+			}
+		}
+		for (int i = 0; i < n; i++) {
+			List<Integer> bucket = buckets.get(sorted[i]);
+			if (bucket == null) {
+				bucket = new ArrayList<>();
+				buckets.put(sorted[i], bucket);
+			}
+			bucket.add(vertex);
+		}
+	}
+
+	/**
+	 * @return The number of vertices in this index
+	 */
+	public int size() {
+		return keys.size();
+	}
+
+	@Override
+	public String toString() {
+		return "CandidateIndex [name=" + name + ", minShared=" + minShared + ", size=" + keys.size() + "]";
+	}
+
+}
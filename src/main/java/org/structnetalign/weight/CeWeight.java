@@ -16,6 +16,7 @@ package org.structnetalign.weight;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.List;
 import java.util.Properties;
 
 import org.biojava.bio.structure.Atom;
@@ -26,8 +27,8 @@ import org.biojava.bio.structure.align.ce.CeParameters;
 import org.biojava.bio.structure.align.ce.ConfigStrucAligParams;
 import org.biojava.bio.structure.align.model.AFPChain;
 import org.biojava.bio.structure.align.util.AFPChainScorer;
-import org.biojava.bio.structure.align.util.AtomCache;
 import org.structnetalign.util.IdentifierMappingFactory;
+import org.structnetalign.weight.WeightResult.Status;
 
 /**
  * A {@link Weight} that uses the <a href="http://www.ncbi.nlm.nih.gov/pubmed/9796821">Combinatorial Extension</a>
@@ -35,45 +36,84 @@ import org.structnetalign.util.IdentifierMappingFactory;
  * 
  * @author dmyersturnbull
  */
-public class CeWeight implements AlignmentWeight {
+public class CeWeight implements AlignmentWeight, BatchWeight {
 
 	/**
-	 * A factory that instantiates a new StructureAlignment for each new alignment. Useful for concurrency: use
-	 * precisely 1 StructureAlignment object per concurrent alignment.
+	 * A factory that gives a StructureAlignment for each new alignment. Useful for concurrency: use precisely 1
+	 * StructureAlignment object per concurrent alignment.
 	 */
 	public static abstract class AlgorithmGiver {
+
+		/**
+		 * @return An AlgorithmGiver that configures one CeMain per thread and gives it out again for each alignment on
+		 *         that thread, since a thread runs one alignment at a time
+		 */
 		public static AlgorithmGiver getDefault() {
 			return new AlgorithmGiver() {
 				@Override
 				public StructureAlignment getAlgorithm() {
-					CeMain ceSymm = new CeMain();
-					ConfigStrucAligParams params = ceSymm.getParameters();
-					if (params instanceof CeParameters) {
-						CeParameters ceparams = (CeParameters) params;
-						ceparams.setScoringStrategy(CeParameters.SEQUENCE_CONSERVATION);
-						if (SEQUENCE_WEIGHT != null) ceparams.setSeqWeight(SEQUENCE_WEIGHT); // note the use of sequence
-																								// weight
-						if (GAP_OPEN != null) ceparams.setGapOpen(GAP_OPEN);
-						if (GAP_EXTEND != null) ceparams.setGapExtension(GAP_EXTEND);
-						if (MAX_GAP_SIZE != null) ceparams.setMaxGapSize(MAX_GAP_SIZE);
-						ceSymm.setParameters(ceparams);
-					}
-					return ceSymm;
+					return PER_THREAD.get();
 				}
 			};
 		}
 
+		/**
+		 * @return A new CeMain with the parameters from {@code ce_weights.properties}
+		 */
+		static CeMain newCeMain() {
+			CeMain ceSymm = new CeMain();
+			ConfigStrucAligParams params = ceSymm.getParameters();
+			if (params instanceof CeParameters) {
+				CeParameters ceparams = (CeParameters) params;
+				ceparams.setScoringStrategy(CeParameters.SEQUENCE_CONSERVATION);
+				if (SEQUENCE_WEIGHT != null) ceparams.setSeqWeight(SEQUENCE_WEIGHT); // note the use of sequence
+																						// weight
+				if (GAP_OPEN != null) ceparams.setGapOpen(GAP_OPEN);
+				if (GAP_EXTEND != null) ceparams.setGapExtension(GAP_EXTEND);
+				if (MAX_GAP_SIZE != null) ceparams.setMaxGapSize(MAX_GAP_SIZE);
+				ceSymm.setParameters(ceparams);
+			}
+			return ceSymm;
+		}
+
 		public abstract StructureAlignment getAlgorithm();
+
+		/**
+		 * @return Everything that affects the alignments, so that {@link AlignmentArtifacts} are only reused for the
+		 *         same parameters
+		 */
+		public String getParameters() {
+			StructureAlignment alignment = getAlgorithm();
+			return alignment.getAlgorithmName() + " " + alignment.getVersion() + " sequence_weight=" + SEQUENCE_WEIGHT
+					+ " gap_open=" + GAP_OPEN + " gap_extend=" + GAP_EXTEND + " max_gap_size=" + MAX_GAP_SIZE;
+		}
 	}
 
+	/**
+	 * CeMain keeps no state between alignments, so each thread can reuse its own.
+	 */
+	private static final ThreadLocal<CeMain> PER_THREAD = new ThreadLocal<CeMain>() {
+		@Override
+		protected CeMain initialValue() {
+			return AlgorithmGiver.newCeMain();
+		}
+	};
+
 	private static Double GAP_EXTEND;
 	private static Double GAP_OPEN;
 	private static Integer MAX_GAP_SIZE;
 
+	/**
+	 * TM-scores by pair of PDB chains.
+	 */
+	private static final ResourcePairMemo<Double> MEMO = new ResourcePairMemo<>();
+
 	private static Double SEQUENCE_WEIGHT = 2.0;
 
 	private AlgorithmGiver algorithm;
 
+	private Atom[] preparedCa1; // shared with the rest of a batch
+
 	private String pdbIdAndChain1;
 
 	private String pdbIdAndChain2;
@@ -140,30 +180,105 @@ public class CeWeight implements AlignmentWeight {
 
 	@Override
 	public WeightResult call() throws Exception {
-		final AtomCache cache = AtomCacheFactory.getCache();
-		Atom[] ca1, ca2;
-		try {
-			ca1 = cache.getAtoms(pdbIdAndChain1);
-		} catch (IOException | StructureException e) {
-			throw new WeightException("Could not parse structure for PDB entry " + pdbIdAndChain1 + " for "
-					+ uniProtId1, e, v1, v2, uniProtId1, uniProtId2, true, true);
+		if (pdbIdAndChain1.equals(pdbIdAndChain2)) { // a chain aligns perfectly with itself
+			return new WeightResult(1, v1, v2, uniProtId1, uniProtId2, this.getClass());
+		}
+		Double tmScore = MEMO.get(pdbIdAndChain1, uniProtId1, pdbIdAndChain2, uniProtId2,
+				new ResourcePairMemo.Comparison<Double>() {
+					@Override
+					public Double compare(boolean reversed) throws Exception {
+						return computeTmScore(reversed);
+					}
+				});
+		if (tmScore == null) return WeightResult.failed(Status.NO_SCORE, "TM-score not calculated for the alignment of "
+				+ pdbIdAndChain1 + " against " + pdbIdAndChain2, v1, v2, uniProtId1, uniProtId2, this.getClass());
+		return new WeightResult(tmScore, v1, v2, uniProtId1, uniProtId2, this.getClass());
+	}
+
+	/**
+	 * @param reversed
+	 *            Whether to align the second chain against the first
+	 * @return The TM-score of the alignment, or null if it wasn't calculated
+	 */
+	private Double computeTmScore(boolean reversed) throws Exception {
+		AlignmentArtifacts artifacts = AlignmentArtifacts.forKind("ce", algorithm.getParameters(), 3);
+		if (artifacts != null) {
+			double[] stored = artifacts.get(pdbIdAndChain1, pdbIdAndChain2);
+			if (stored != null) return stored[0] == -1 ? null : stored[0];
+		}
+		Atom[] ca1 = preparedCa1, ca2;
+		if (ca1 == null) {
+			try {
+				ca1 = AtomCacheFactory.getAtoms(pdbIdAndChain1);
+			} catch (IOException | StructureException e) {
+				throw new WeightException("Could not parse structure for PDB entry " + pdbIdAndChain1 + " for "
+						+ uniProtId1, e, v1, v2, uniProtId1, uniProtId2, true, true);
+			}
 		}
 		try {
-			ca2 = cache.getAtoms(pdbIdAndChain2);
+			ca2 = AtomCacheFactory.getAtoms(pdbIdAndChain2);
 		} catch (IOException | StructureException e) {
 			throw new WeightException("Could not parse structure for PDB entry " + pdbIdAndChain2 + " for "
 					+ uniProtId2, e, v1, v2, uniProtId1, uniProtId2, true, true);
 		}
+		ResidueCounts.putChainLength(pdbIdAndChain1, ca1.length);
+		ResidueCounts.putChainLength(pdbIdAndChain2, ca2.length);
+		// CE itself can't be interrupted, so this is the last chance to stop if we've been cancelled
+		if (Thread.interrupted()) throw new InterruptedException("Cancelled before aligning " + pdbIdAndChain1
+				+ " against " + pdbIdAndChain2);
 		AFPChain afpChain;
 		try {
-			afpChain = align(ca1, ca2);
+			afpChain = reversed ? align(ca2, pdbIdAndChain2, ca1, pdbIdAndChain1) : align(ca1, pdbIdAndChain1, ca2,
+					pdbIdAndChain2);
 		} catch (IOException | StructureException e) {
 			throw new WeightException("Could not align " + pdbIdAndChain1 + " against " + pdbIdAndChain2, e, v1, v2,
 					uniProtId1, uniProtId2, true, true);
 		}
-		if (afpChain.getTMScore() == -1) throw new WeightException("TM-score not calculated for the alignment of "
-				+ pdbIdAndChain1 + " against " + pdbIdAndChain2, v1, v2, uniProtId1, uniProtId2, true, true);
-		return new WeightResult(afpChain.getTMScore(), v1, v2, uniProtId1, uniProtId2, this.getClass());
+		if (artifacts != null) artifacts.put(pdbIdAndChain1, pdbIdAndChain2, afpChain.getTMScore(),
+				afpChain.getTotalRmsdOpt(), afpChain.getOptLength());
+		if (afpChain.getTMScore() == -1) return null;
+		return afpChain.getTMScore();
+	}
+
+	@Override
+	public String getBatchKey() {
+		return pdbIdAndChain1;
+	}
+
+	public String getPdbIdAndChain1() {
+		return pdbIdAndChain1;
+	}
+
+	public String getPdbIdAndChain2() {
+		return pdbIdAndChain2;
+	}
+
+	/**
+	 * Loads the first structure once for every Weight in {@code batch} that shares it. CE doesn't modify the first
+	 * structure, so one copy can be aligned against each second structure in turn, with this thread's CeMain.
+	 */
+	@Override
+	public void prepareBatch(List<? extends Weight> batch) throws Exception {
+		Atom[] ca1 = AtomCacheFactory.getAtoms(pdbIdAndChain1);
+		for (Weight weight : batch) {
+			CeWeight ce = (CeWeight) weight;
+			if (pdbIdAndChain1.equals(ce.pdbIdAndChain1)) ce.preparedCa1 = ca1;
+		}
+	}
+
+	/**
+	 * Like {@link #setIds(int, int, String, String)}, but with PDB Ids that were already mapped, such as by
+	 * {@link VertexCapabilities}.
+	 */
+	public void setIds(int v1, int v2, String uniProtId1, String uniProtId2, String pdbIdAndChain1,
+			String pdbIdAndChain2) {
+		this.v1 = v1;
+		this.v2 = v2;
+		this.uniProtId1 = uniProtId1;
+		this.uniProtId2 = uniProtId2;
+		preparedCa1 = null;
+		this.pdbIdAndChain1 = pdbIdAndChain1;
+		this.pdbIdAndChain2 = pdbIdAndChain2;
 	}
 
 	@Override
@@ -173,22 +288,23 @@ public class CeWeight implements AlignmentWeight {
 		this.v2 = v2;
 		this.uniProtId1 = uniProtId1;
 		this.uniProtId2 = uniProtId2;
+		preparedCa1 = null;
 
 		pdbIdAndChain1 = IdentifierMappingFactory.getMapping().uniProtToPdb(uniProtId1);
-		if (pdbIdAndChain1 == null) throw new WeightException("Could not find PDB Id for " + uniProtId1, v1, v2,
+		if (pdbIdAndChain1 == null) throw WeightException.expected("Could not find PDB Id for " + uniProtId1, v1, v2,
 				uniProtId1, uniProtId2, true, true);
 		pdbIdAndChain2 = IdentifierMappingFactory.getMapping().uniProtToPdb(uniProtId2);
-		if (pdbIdAndChain2 == null) throw new WeightException("Could not find PDB Id for " + uniProtId2, v1, v2,
+		if (pdbIdAndChain2 == null) throw WeightException.expected("Could not find PDB Id for " + uniProtId2, v1, v2,
 				uniProtId1, uniProtId2, true, true);
 
 	}
 
-	private AFPChain align(Atom[] ca1, Atom[] ca2) throws StructureException, IOException {
+	private AFPChain align(Atom[] ca1, String name1, Atom[] ca2, String name2) throws StructureException, IOException {
 		if (!sanityCheckPreAlign(ca1, ca2)) throw new IllegalArgumentException("Can't align using same structure.");
 		AFPChain afpChain = algorithm.getAlgorithm().align(ca1, ca2);
 		if (afpChain == null) return null;
-		afpChain.setName1(pdbIdAndChain1);
-		afpChain.setName2(pdbIdAndChain2);
+		afpChain.setName1(name1);
+		afpChain.setName2(name2);
 		double realTmScore = AFPChainScorer.getTMScore(afpChain, ca1, ca2);
 		afpChain.setTMScore(realTmScore);
 		return afpChain;
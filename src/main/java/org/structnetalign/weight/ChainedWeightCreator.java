@@ -0,0 +1,33 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import java.util.Collection;
+
+/**
+ * A {@link WeightCreator} that knows in advance which classes of {@link Weight} it can create, so that a
+ * {@link WeightManager} can skip setting up for Weights that will never run, such as reserving memory for the
+ * {@link AtomArrayCache}. A WeightCreator that isn't one is assumed to create anything.
+ * 
+ * @author dmyersturnbull
+ */
+public interface ChainedWeightCreator extends WeightCreator {
+
+	/**
+	 * @return Every class of Weight that this might create, or null if that isn't known
+	 */
+	Collection<Class<? extends Weight>> getWeightClasses();
+
+}
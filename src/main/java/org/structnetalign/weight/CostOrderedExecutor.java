@@ -0,0 +1,239 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A fixed-size thread pool that runs the most expensive {@link Weight Weights} first, according to a
+ * {@link WeightCostModel}. Running long jobs first keeps one long alignment from being left at the end while the other
+ * threads sit idle. Jobs with the same cost run in the order they were submitted. The executor also remembers when
+ * each job started and finished, so that callers can tell how long a job has been running.
+ * <p>
+ * Given a {@link WeightMemoryModel} and a memory budget, a job also has to acquire its estimated memory from a shared
+ * budget before it runs. That way a few huge structure alignments run with less company than many small ones, instead
+ * of every thread running at once and pushing the heap into long garbage collections. A job larger than the whole
+ * budget gets the whole budget to itself.
+ * <p>
+ * Jobs must be given through {@code submit}; {@link #execute(Runnable)} only accepts tasks created by this executor.
+ * A job that is rejected, or dropped from the queue by {@link #shutdownNow()}, is cancelled, and so are the Weights of a
+ * {@link WeightBatch} that is cancelled, rejected, or dropped before it reaches them.
+ * 
+ * @author dmyersturnbull
+ */
+public class CostOrderedExecutor extends ThreadPoolExecutor {
+
+	private class CostedTask<V> extends FutureTask<V> implements Comparable<CostedTask<?>> {
+
+		private final WeightBatch batch; // or null
+		private final double cost;
+		private final int permits;
+		private final long sequence;
+		private volatile long started = -1;
+		private volatile long finished = -1;
+
+		public CostedTask(Callable<V> callable, double cost, int permits, long sequence) {
+			super(callable);
+			batch = callable instanceof WeightBatch ? (WeightBatch) callable : null;
+			this.cost = cost;
+			this.permits = permits;
+			this.sequence = sequence;
+		}
+
+		public CostedTask(Runnable runnable, V result, double cost, long sequence) {
+			super(runnable, result);
+			batch = null;
+			this.cost = cost;
+			this.permits = 0;
+			this.sequence = sequence;
+		}
+
+		/**
+		 * Once a batch has run, this only cancels the Weights it didn't get to.
+		 */
+		@Override
+		protected void done() {
+			if (batch != null) batch.cancel();
+		}
+
+		@Override
+		public int compareTo(CostedTask<?> other) {
+			int c = Double.compare(other.cost, cost); // most expensive first
+			if (c != 0) return c;
+			return Long.compare(sequence, other.sequence);
+		}
+
+		@Override
+		public void run() {
+			if (isCancelled()) return; // don't wait for memory we won't use
+			if (memory != null && permits > 0) {
+				try {
+					memory.acquire(permits);
+				} catch (InterruptedException e) {
+					cancel(false); // we're shutting down
+					return;
+				}
+			}
+			started = System.nanoTime();
+			running.add(this);
+			try {
+				super.run();
+			} finally {
+				finished = System.nanoTime();
+				running.remove(this);
+				if (memory != null && permits > 0) memory.release(permits);
+			}
+		}
+
+	}
+
+	private static final long BYTES_PER_PERMIT = 1024 * 1024;
+
+	private final WeightCostModel costModel;
+
+	private final Semaphore memory;
+
+	private final WeightMemoryModel memoryModel;
+
+	private final int totalPermits;
+
+	private final Set<CostedTask<?>> running = Collections
+			.newSetFromMap(new ConcurrentHashMap<CostedTask<?>, Boolean>());
+
+	private final AtomicLong sequence = new AtomicLong(0);
+
+	/**
+	 * @param costModel
+	 *            Null means every job has the same cost, so jobs run in the order they were submitted
+	 */
+	public CostOrderedExecutor(int nThreads, WeightCostModel costModel) {
+		this(nThreads, costModel, null, 0);
+	}
+
+	/**
+	 * @param costModel
+	 *            Null means every job has the same cost, so jobs run in the order they were submitted
+	 * @param memoryModel
+	 *            Null means jobs don't need to acquire memory before running
+	 * @param memoryBudget
+	 *            The total estimated memory, in bytes, that running jobs may use at once
+	 */
+	public CostOrderedExecutor(int nThreads, WeightCostModel costModel, WeightMemoryModel memoryModel,
+			long memoryBudget) {
+		super(nThreads, nThreads, 0L, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<Runnable>(),
+				new RejectedExecutionHandler() {
+					@Override
+					public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+						if (r instanceof Future) ((Future<?>) r).cancel(false);
+						throw new RejectedExecutionException("Task " + r + " rejected from " + executor);
+					}
+				});
+		this.costModel = costModel;
+		this.memoryModel = memoryModel;
+		if (memoryModel != null) {
+			totalPermits = (int) Math.max(1, Math.min(Integer.MAX_VALUE, memoryBudget / BYTES_PER_PERMIT));
+			memory = new Semaphore(totalPermits, true); // fair, so that large jobs aren't starved by small ones
+		} else {
+			totalPermits = 0;
+			memory = null;
+		}
+	}
+
+	/**
+	 * Also cancels the jobs that never started, so that nothing waits on them.
+	 */
+	@Override
+	public List<Runnable> shutdownNow() {
+		List<Runnable> dropped = super.shutdownNow();
+		for (Runnable r : dropped) {
+			if (r instanceof Future) ((Future<?>) r).cancel(false);
+		}
+		return dropped;
+	}
+
+	public WeightCostModel getCostModel() {
+		return costModel;
+	}
+
+	public WeightMemoryModel getMemoryModel() {
+		return memoryModel;
+	}
+
+	/**
+	 * @return The jobs that are running right now
+	 */
+	public Collection<Future<?>> getRunning() {
+		return new ArrayList<Future<?>>(running);
+	}
+
+	/**
+	 * @return How long {@code future} ran, or how long it has been running if it hasn't finished, in nanoseconds; -1
+	 *         if it hasn't started or wasn't submitted to this executor
+	 */
+	public long getRunTime(Future<?> future) {
+		if (!(future instanceof CostedTask)) return -1;
+		CostedTask<?> task = (CostedTask<?>) future;
+		long started = task.started;
+		if (started == -1) return -1;
+		long finished = task.finished;
+		return (finished == -1 ? System.nanoTime() : finished) - started;
+	}
+
+	/**
+	 * A {@link WeightBatch} costs as much as all of its Weights together, and needs as much memory as the largest,
+	 * since they run one at a time.
+	 */
+	@Override
+	protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+		List<? extends Weight> weights;
+		if (callable instanceof Weight) {
+			weights = Collections.singletonList((Weight) callable);
+		} else if (callable instanceof WeightBatch) {
+			weights = ((WeightBatch) callable).getWeights();
+		} else {
+			weights = Collections.emptyList();
+		}
+		double cost = 0;
+		long bytes = 0;
+		for (Weight weight : weights) {
+			if (costModel != null) cost += costModel.estimateCost(weight);
+			if (memoryModel != null) bytes = Math.max(bytes, memoryModel.estimateMemory(weight));
+		}
+		int permits = (int) Math.min(totalPermits, (bytes + BYTES_PER_PERMIT - 1) / BYTES_PER_PERMIT);
+		return new CostedTask<T>(callable, cost, permits, sequence.getAndIncrement());
+	}
+
+	@Override
+	protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+		return new CostedTask<T>(runnable, value, 0, sequence.getAndIncrement());
+	}
+
+}
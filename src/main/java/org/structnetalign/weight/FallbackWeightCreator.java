@@ -0,0 +1,145 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A {@link WeightCreator} that tries a fixed list of {@link Weight} classes in order, moving on to the next class
+ * whenever a Weight fails. Like {@link SimpleWeightCreator}, but the chain is given by the caller. Each class must
+ * have a public no-argument constructor.
+ * <p>
+ * An {@link #setIndependent(boolean) independent} creator instead runs every class in the list on each pair, so that
+ * each contributes its own evidence.
+ *
+ * @author dmyersturnbull
+ */
+public class FallbackWeightCreator implements ChainedWeightCreator {
+
+	private static final Logger logger = LogManager.getLogger("org.structnetalign");
+
+	private VertexCapabilities capabilities;
+
+	private final List<Class<? extends Weight>> chain;
+
+	private boolean independent;
+
+	@SafeVarargs
+	public FallbackWeightCreator(Class<? extends Weight>... chain) {
+		this(Arrays.asList(chain));
+	}
+
+	public FallbackWeightCreator(List<Class<? extends Weight>> chain) {
+		this.chain = new ArrayList<Class<? extends Weight>>(chain);
+	}
+
+	public VertexCapabilities getCapabilities() {
+		return capabilities;
+	}
+
+	public List<Class<? extends Weight>> getChain() {
+		return chain;
+	}
+
+	@Override
+	public Collection<Class<? extends Weight>> getWeightClasses() {
+		return chain;
+	}
+
+	@Override
+	public List<Weight> initialWeights(int a, int b, String uniProtIdA, String uniProtIdB) {
+		if (independent) {
+			List<Weight> list = new ArrayList<Weight>(chain.size());
+			for (Class<? extends Weight> clazz : chain) {
+				Weight weight = init(clazz, a, b, uniProtIdA, uniProtIdB);
+				if (weight != null) list.add(weight);
+			}
+			return list;
+		}
+		List<Weight> list = new ArrayList<Weight>(1);
+		Weight weight = nthUsable(a, b, uniProtIdA, uniProtIdB, 0);
+		if (weight != null) list.add(weight);
+		return list;
+	}
+
+	public boolean isIndependent() {
+		return independent;
+	}
+
+	/**
+	 * Returns the {@code n}th Weight in the chain that could be initialized for {@code a} and {@code b}, where the
+	 * 0th is the one returned by {@link #initialWeights(int, int, String, String)}. Weights that can't be initialized
+	 * are skipped without counting as a failure.
+	 */
+	@Override
+	public Weight nextWeight(int a, int b, String uniProtIdA, String uniProtIdB, int n, boolean isFail,
+			Class<? extends Weight> failed) {
+		if (!isFail || independent) return null;
+		return nthUsable(a, b, uniProtIdA, uniProtIdB, n);
+	}
+
+	private Weight nthUsable(int a, int b, String uniProtIdA, String uniProtIdB, int n) {
+		int usable = 0;
+		for (Class<? extends Weight> clazz : chain) {
+			Weight weight = init(clazz, a, b, uniProtIdA, uniProtIdB);
+			if (weight == null) continue;
+			if (usable == n) return weight;
+			usable++;
+		}
+		return null;
+	}
+
+	/**
+	 * @param capabilities
+	 *            Used to skip Weights that can't apply to a pair, without mapping Ids again for every pair; null means
+	 *            each Weight maps its own Ids
+	 */
+	public void setCapabilities(VertexCapabilities capabilities) {
+		this.capabilities = capabilities;
+	}
+
+	/**
+	 * @param independent
+	 *            Run every class on each pair at once, instead of the next only when one fails
+	 */
+	public void setIndependent(boolean independent) {
+		this.independent = independent;
+	}
+
+	private Weight init(Class<? extends Weight> clazz, int a, int b, String uniProtIdA, String uniProtIdB) {
+		if (capabilities != null) return capabilities.create(clazz, a, b, uniProtIdA, uniProtIdB);
+		Weight weight;
+		try {
+			weight = clazz.newInstance();
+		} catch (InstantiationException | IllegalAccessException e) {
+			throw new IllegalArgumentException("Couldn't instantiate weight " + clazz.getSimpleName(), e);
+		}
+		try {
+			weight.setIds(a, b, uniProtIdA, uniProtIdB);
+			return weight;
+		} catch (Exception e) {
+			logger.debug("Couldn't create weight " + clazz.getSimpleName() + " for (" + uniProtIdA + ", "
+					+ uniProtIdB + ")");
+			return null;
+		}
+	}
+
+}
@@ -0,0 +1,286 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.structnetalign.CleverGraph;
+import org.structnetalign.HomologyEdge;
+import org.structnetalign.PipelineProperties;
+import org.structnetalign.ReportGenerator;
+
+/**
+ * A {@link WeightManager} that runs on a {@link ForkJoinPool}. The pairs are numbered, and a range of pairs is split
+ * in half recursively until it is no larger than the {@link #setGrain(int) grain}. Each pair's whole
+ * {@link WeightCreator} chain then runs in the worker that owns it, through a {@link WeightChain}, so fallbacks don't
+ * have to go through a central thread. Idle workers steal unsplit ranges from busy ones.
+ * <p>
+ * Each pair's combined weight is added to the homology graph as soon as its chain finishes, under a lock, so results
+ * are never held for all pairs at once. Otherwise workers only read the graph; a {@link PairFilter} should only look at
+ * interactions.
+ * <p>
+ * Weights that mostly wait on remote services, listed by {@link #setBlocking(Class, boolean)}, run as a
+ * {@link ForkJoinPool.ManagedBlocker}, so the pool can start another worker to keep the cores busy while one waits.
+ * <p>
+ * Jobs aren't admitted by memory, but the shared {@link AtomArrayCache} is limited for the run just as it is by
+ * {@link SmarterWeightManager} with its default memory budget.
+ * 
+ * @author dmyersturnbull
+ */
+public class ForkJoinWeightManager implements WeightManager {
+
+	/**
+	 * Weights a range of pairs, numbered row by row over the sorted vertices.
+	 */
+	private class PairRangeTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final long end;
+		private final long start;
+
+		public PairRangeTask(long start, long end) {
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+
+			if (end - start > grain) {
+				long middle = start + (end - start) / 2;
+				PairRangeTask left = new PairRangeTask(start, middle);
+				PairRangeTask right = new PairRangeTask(middle, end);
+				left.fork();
+				right.compute();
+				left.join();
+				return;
+			}
+
+			if (start >= end) return;
+
+			// find the row (first vertex) of the first pair
+			int n = vertices.size();
+			int i = 0;
+			long rowStart = 0;
+			while (rowStart + (n - 1 - i) <= start) {
+				rowStart += n - 1 - i;
+				i++;
+			}
+			int j = i + 1 + (int) (start - rowStart);
+
+			for (long k = start; k < end; k++) {
+				int a = vertices.get(i);
+				int b = vertices.get(j);
+				List<WeightResult> results = weigh(a, b);
+				if (!results.isEmpty()) combine(a, b, results);
+				j++;
+				if (j == n) {
+					i++;
+					j = i + 1;
+				}
+			}
+		}
+
+	}
+
+	public static final int DEFAULT_GRAIN = 16;
+
+	/**
+	 * The Weights that spend most of their time waiting on remote services: RCSB for
+	 * {@link PrecalculatedFatcatWeight}. {@link NeedlemanWunschWeight} isn't one, because its alignment needs a core
+	 * and memory once its sequences arrive, and a compensating worker would run another alignment alongside it.
+	 */
+	public static final Set<Class<? extends Weight>> DEFAULT_BLOCKING = new HashSet<>();
+
+	private static final Logger logger = LogManager.getLogger("org.structnetalign");
+
+	static {
+		DEFAULT_BLOCKING.add(PrecalculatedFatcatWeight.class);
+	}
+
+	private Set<Class<? extends Weight>> blocking;
+
+	private WeightCreator creator;
+
+	private int grain = DEFAULT_GRAIN;
+
+	private int nCores;
+
+	private PairFilter pairFilter;
+
+	private SaturationPolicy saturation = SaturationPolicy.never();
+
+	// the state of the current run
+	private int createdIndex;
+	private CleverGraph graph;
+	private int nUpdates;
+	private Map<Integer, String> uniProtIds;
+	private List<Integer> vertices; // sorted
+
+	public ForkJoinWeightManager(WeightCreator creator, int nCores) {
+		this.creator = creator;
+		this.nCores = nCores;
+		blocking = new HashSet<>(DEFAULT_BLOCKING);
+	}
+
+	@Override
+	public void assignWeights(CleverGraph graph, Map<Integer, String> uniProtIds) {
+
+		if (ReportGenerator.getInstance() != null) {
+			ReportGenerator.getInstance().putInWeighted("manager", this.getClass().getSimpleName());
+		}
+
+		this.graph = graph;
+		this.uniProtIds = uniProtIds;
+		vertices = new ArrayList<>(graph.getVertices());
+		Collections.sort(vertices); // so that a < b for every pair
+		long nPairs = (long) vertices.size() * (vertices.size() - 1) / 2;
+
+		logger.info("Starting weight assignment of " + nPairs + " pairs with " + nCores + " cores");
+		ForkJoinPool pool = new ForkJoinPool(nCores);
+		// jobs aren't admitted by memory here, but the atom cache still shouldn't take what they need
+		AtomCacheFactory.reserve(creator, (long) (Runtime.getRuntime().maxMemory()
+				* SmarterWeightManager.DEFAULT_MEMORY_FRACTION));
+
+		createdIndex = graph.calcLastHomologyId() + 1; // another WeightManager may have run first
+		nUpdates = 0;
+		try {
+			pool.invoke(new PairRangeTask(0, nPairs));
+		} finally {
+			pool.shutdownNow();
+			AtomCacheFactory.release();
+			this.graph = null;
+			this.uniProtIds = null;
+			vertices = null;
+		}
+
+		logger.info("Added " + graph.getHomologyCount() + " homology edges");
+		if (ReportGenerator.getInstance() != null) {
+			ReportGenerator.getInstance().putInWeighted("n_updates", nUpdates);
+		}
+	}
+
+	public Set<Class<? extends Weight>> getBlocking() {
+		return blocking;
+	}
+
+	public WeightCreator getCreator() {
+		return creator;
+	}
+
+	public int getGrain() {
+		return grain;
+	}
+
+	public int getnCores() {
+		return nCores;
+	}
+
+	public PairFilter getPairFilter() {
+		return pairFilter;
+	}
+
+	public SaturationPolicy getSaturation() {
+		return saturation;
+	}
+
+	/**
+	 * Sets whether {@code clazz} mostly waits on remote services, and so should run as a
+	 * {@link ForkJoinPool.ManagedBlocker}.
+	 */
+	public void setBlocking(Class<? extends Weight> clazz, boolean isBlocking) {
+		if (isBlocking) {
+			blocking.add(clazz);
+		} else {
+			blocking.remove(clazz);
+		}
+	}
+
+	public void setCreator(WeightCreator creator) {
+		this.creator = creator;
+	}
+
+	/**
+	 * @param grain
+	 *            The largest number of pairs that a task weights itself instead of splitting
+	 */
+	public void setGrain(int grain) {
+		if (grain < 1) throw new IllegalArgumentException("The grain must be at least 1");
+		this.grain = grain;
+	}
+
+	/**
+	 * @param pairFilter
+	 *            Skips pairs that don't need to be weighted; null means weight every pair
+	 */
+	public void setPairFilter(PairFilter pairFilter) {
+		this.pairFilter = pairFilter;
+	}
+
+	public void setSaturation(SaturationPolicy saturation) {
+		this.saturation = saturation;
+	}
+
+	/**
+	 * Adds each of {@code results} to the evidence of the homology edge between {@code a} and {@code b}, creating the
+	 * edge if needed.
+	 */
+	private synchronized void combine(int a, int b, List<WeightResult> results) {
+		HomologyEdge existing = graph.getHomology().findEdge(a, b);
+		if (existing != null) {
+			for (WeightResult result : results) {
+				existing.addEvidence(result.getSource(), result.getWeight());
+			}
+		} else {
+			HomologyEdge edge = new HomologyEdge(createdIndex++, 0);
+			for (WeightResult result : results) {
+				edge.addEvidence(result.getSource(), result.getWeight());
+			}
+			graph.addHomology(edge, a, b);
+			logger.debug("Added homology edge (" + a + ", " + b + ", "
+					+ PipelineProperties.getInstance().getOutputFormatter().format(edge.getWeight()) + ")");
+		}
+		nUpdates++;
+	}
+
+	private List<WeightResult> weigh(int a, int b) {
+		if (pairFilter != null && !pairFilter.accept(graph, a, b)) {
+			logger.trace("Pruned pair (" + a + ", " + b + ")");
+			return Collections.emptyList();
+		}
+		String uniProtIdA = uniProtIds.get(a);
+		String uniProtIdB = uniProtIds.get(b);
+		if (uniProtIdA == null) {
+			logger.error("Could not get UniProt Id for Id#" + a);
+			return Collections.emptyList();
+		}
+		if (uniProtIdB == null) {
+			logger.error("Could not get UniProt Id for Id#" + b);
+			return Collections.emptyList();
+		}
+		return WeightChain.run(creator, saturation, a, b, uniProtIdA, uniProtIdB, blocking);
+	}
+
+}
@@ -43,6 +43,24 @@ public class GammaScorer {
 		this.lambda = lambda;
 	}
 
+	/**
+	 * @return The fractional identity at which {@link #score(SequencePair, double)} peaks, which may be outside [0, 1]
+	 */
+	public double getPeak() {
+		return (alpha > 1 ? (alpha - 1) * lambda : 0) - beta;
+	}
+
+	/**
+	 * The density rises up to its {@link #getPeak() peak} and falls after it, so a cap on the identity only lowers this
+	 * if the cap is below the peak. For {@link #forBlosum62()}, the peak is just below 0, so the highest score is that
+	 * of no identity whatever the cap.
+	 * 
+	 * @return The highest score for any fractional identity from {@code from} to {@code to}
+	 */
+	public double maxScore(double from, double to) {
+		return score(null, Math.min(Math.max(getPeak(), from), to));
+	}
+
 	public double score(SequencePair<ProteinSequence, AminoAcidCompound> pair, double score) {
 		GammaDistribution dist = new GammaDistribution(alpha, lambda);
 		return dist.density(score + beta);
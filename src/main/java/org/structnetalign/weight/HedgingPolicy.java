@@ -0,0 +1,109 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decides when a {@link Weight} has been running long enough that the next Weight in the {@link WeightCreator}'s chain
+ * should be started alongside it, rather than after it fails. A job is hedged once it has run longer than the given
+ * percentile of the run times seen so far for its class. Until a class has {@link #getMinSamples() enough samples},
+ * its jobs are not hedged.
+ * <p>
+ * Hedging trades extra work for lower tail latency: a hedged job whose primary would have succeeded anyway is wasted.
+ * 
+ * @author dmyersturnbull
+ */
+public class HedgingPolicy {
+
+	public static final int DEFAULT_MIN_SAMPLES = 20;
+
+	public static final double DEFAULT_PERCENTILE = 95;
+
+	private static final int MAX_SAMPLES = 1000;
+
+	private final int minSamples;
+
+	private final double percentile;
+
+	private final Map<Class<? extends Weight>, LinkedList<Long>> samples = new HashMap<>();
+
+	public HedgingPolicy() {
+		this(DEFAULT_PERCENTILE, DEFAULT_MIN_SAMPLES);
+	}
+
+	/**
+	 * @param percentile
+	 *            Between 0 and 100
+	 * @param minSamples
+	 *            The number of run times needed for a class before its jobs can be hedged
+	 */
+	public HedgingPolicy(double percentile, int minSamples) {
+		if (percentile < 0 || percentile > 100) throw new IllegalArgumentException("Percentile " + percentile
+				+ " is not between 0 and 100");
+		this.percentile = percentile;
+		this.minSamples = minSamples;
+	}
+
+	/**
+	 * @return The run time in nanoseconds after which a job of class {@code clazz} should be hedged, or
+	 *         {@link Long#MAX_VALUE} if there aren't enough samples yet
+	 */
+	public synchronized long getDelay(Class<? extends Weight> clazz) {
+		List<Long> list = samples.get(clazz);
+		if (list == null || list.size() < minSamples || list.isEmpty()) return Long.MAX_VALUE;
+		List<Long> sorted = new ArrayList<>(list);
+		Collections.sort(sorted);
+		int index = (int) Math.ceil(percentile / 100.0 * sorted.size()) - 1;
+		return sorted.get(Math.max(0, index));
+	}
+
+	public int getMinSamples() {
+		return minSamples;
+	}
+
+	public double getPercentile() {
+		return percentile;
+	}
+
+	/**
+	 * Remembers that a job of class {@code clazz} finished, successfully or not, after {@code nanos} nanoseconds. Only
+	 * the most recent run times are kept.
+	 */
+	public synchronized void record(Class<? extends Weight> clazz, long nanos) {
+		LinkedList<Long> list = samples.get(clazz);
+		if (list == null) {
+			list = new LinkedList<>();
+			samples.put(clazz, list);
+		}
+		list.add(nanos);
+		if (list.size() > MAX_SAMPLES) list.removeFirst();
+	}
+
+	public boolean shouldHedge(Class<? extends Weight> clazz, long runTime) {
+		return runTime > getDelay(clazz);
+	}
+
+	@Override
+	public String toString() {
+		return "HedgingPolicy(percentile=" + percentile + ", minSamples=" + minSamples + ")";
+	}
+
+}
@@ -0,0 +1,83 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import java.util.HashSet;
+
+import org.structnetalign.CleverGraph;
+
+/**
+ * A {@link PairFilter} that rejects pairs whose homology can never affect crossing or merging.
+ * <p>
+ * Crossing uses a homology edge only if it lies on a path of at most xi homology edges between two vertices that have
+ * interactions. Such a path needs an extra edge for each end of the pair that has no interactions, so a pair with
+ * <em>k</em> lonely vertices is only useful if 1+<em>k</em> &le; xi. Merging only ever groups vertices that have
+ * exactly the same interaction neighbors, so when merging is enabled those pairs are kept regardless of xi.
+ * <p>
+ * Two vertices without interactions have the same (empty) set of neighbors, so with merging enabled a pair is only
+ * rejected if exactly one of its vertices is lonely and xi is 1. Without merging, only pairs with a lonely vertex are
+ * rejected, and only if xi is at most 2. With the default xi of 2 and merging enabled, nothing is rejected; see
+ * {@link #isNoOp()}.
+ * 
+ * @author dmyersturnbull
+ */
+public class InteractionPairFilter implements PairFilter {
+
+	private boolean merging;
+
+	private int xi;
+
+	/**
+	 * @param xi
+	 *            The maximum search depth used for crossing
+	 * @param merging
+	 *            Whether degenerate vertices will be merged later
+	 */
+	public InteractionPairFilter(int xi, boolean merging) {
+		this.xi = xi;
+		this.merging = merging;
+	}
+
+	@Override
+	public boolean accept(CleverGraph graph, int a, int b) {
+		int nLonely = 0;
+		if (graph.interactionDegree(a) == 0) nLonely++;
+		if (graph.interactionDegree(b) == 0) nLonely++;
+		if (1 + nLonely <= xi) return true;
+		return merging && sameInteractionNeighbors(graph, a, b);
+	}
+
+	public int getXi() {
+		return xi;
+	}
+
+	public boolean isMerging() {
+		return merging;
+	}
+
+	/**
+	 * @return Whether this filter accepts every pair, whatever the graph
+	 */
+	public boolean isNoOp() {
+		return xi >= 3 || xi == 2 && merging;
+	}
+
+	private static boolean sameInteractionNeighbors(CleverGraph graph, int a, int b) {
+		if (graph.interactionDegree(a) != graph.interactionDegree(b)) return false;
+		return new HashSet<Integer>(graph.getInteractionNeighbors(a)).equals(new HashSet<Integer>(
+				graph.getInteractionNeighbors(b)));
+	}
+
+}
@@ -0,0 +1,255 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.structnetalign.CleverGraph;
+import org.structnetalign.HomologyEdge;
+import org.structnetalign.ReportGenerator;
+import org.structnetalign.cross.HomologyNeighborhood;
+
+import edu.uci.ics.jung.graph.util.Pair;
+
+/**
+ * A {@link HomologyNeighborhood} that computes the weight of a pair only when crossing first asks for it, and then
+ * remembers it. Lets crossing with a small xi run without weighting every pair beforehand.
+ * <p>
+ * The candidate neighbors of a vertex are the other vertices with UniProt Ids that the {@link PairFilter} (if any)
+ * accepts and that pass the {@link CandidateIndex CandidateIndexes}, if any were added: a pair passes if an index that
+ * contains both vertices finds them, or if no index contains both. Without an index, every pair that crossing asks about
+ * is weighted, which for a connected network is nearly every pair. An index trades accuracy for speed, since a pair it
+ * screens out is never weighted: sequence words miss distant homologs, and SCOP and Pfam miss unannotated ones. A
+ * candidate is a neighbor if its combined weight is nonzero and at least tau, which matches the homology
+ * edges that would survive the tau trim after eager weighting. Weights for a pair are run in the order a
+ * {@link WeightCreator} gives them by a {@link WeightChain} and combined with noisy-OR. Concurrent
+ * requests for the same pair wait for a single computation.
+ * <p>
+ * After crossing, {@link #materialize(CleverGraph)} adds the homology edges that were computed to the graph. Note
+ * that merging will then only see those edges.
+ *
+ * @author dmyersturnbull
+ */
+public class LazyHomologyNeighborhood implements HomologyNeighborhood {
+
+	private static final Logger logger = LogManager.getLogger("org.structnetalign");
+
+	private final List<Integer> candidates;
+
+	private final List<CandidateIndex> indexes = new ArrayList<>();
+
+	private final WeightCreator creator;
+
+	private final CleverGraph graph;
+
+	private final ConcurrentMap<Integer, Collection<Integer>> neighbors = new ConcurrentHashMap<>();
+
+	private PairFilter pairFilter;
+
+	private SaturationPolicy saturation = SaturationPolicy.never();
+
+	private final double tau;
+
+	private final Map<Integer, String> uniProtIds;
+
+	private final ConcurrentMap<Pair<Integer>, Future<List<WeightResult>>> weights = new ConcurrentHashMap<>();
+
+	public LazyHomologyNeighborhood(CleverGraph graph, Map<Integer, String> uniProtIds, WeightCreator creator,
+			double tau) {
+		this.graph = graph;
+		this.uniProtIds = uniProtIds;
+		this.creator = creator;
+		this.tau = tau;
+		candidates = new ArrayList<>();
+		for (int v : graph.getVertices()) {
+			if (uniProtIds.get(v) != null) {
+				candidates.add(v);
+			} else {
+				logger.error("Could not get UniProt Id for Id#" + v);
+			}
+		}
+	}
+
+	/**
+	 * Adds a screen for candidate neighbors. Must be called before crossing starts.
+	 */
+	public void addCandidateIndex(CandidateIndex index) {
+		indexes.add(index);
+	}
+
+	@Override
+	public Collection<Integer> getNeighbors(int vertex) {
+		Collection<Integer> found = neighbors.get(vertex);
+		if (found != null) return found;
+		List<Integer> list = new ArrayList<>();
+		for (int candidate : getCandidates(vertex)) {
+			if (isHomologous(vertex, candidate)) list.add(candidate);
+		}
+		found = neighbors.putIfAbsent(vertex, list);
+		return found == null ? list : found;
+	}
+
+	/**
+	 * @return The vertices that {@code vertex} will be weighted against when its neighbors are needed
+	 */
+	public List<Integer> getCandidates(int vertex) {
+		if (indexes.isEmpty()) return candidates;
+		Set<Integer> found = new HashSet<>();
+		List<CandidateIndex> containing = new ArrayList<>(indexes.size());
+		for (CandidateIndex index : indexes) {
+			if (index.contains(vertex)) {
+				found.addAll(index.getCandidates(vertex));
+				containing.add(index);
+			}
+		}
+		List<Integer> list = new ArrayList<>();
+		for (int candidate : candidates) {
+			if (candidate == vertex) continue;
+			if (found.contains(candidate)) {
+				list.add(candidate);
+				continue;
+			}
+			boolean screened = false; // by an index that knows about both
+			for (CandidateIndex index : containing) {
+				if (index.contains(candidate)) {
+					screened = true;
+					break;
+				}
+			}
+			if (!screened) list.add(candidate);
+		}
+		return list;
+	}
+
+	public List<CandidateIndex> getCandidateIndexes() {
+		return indexes;
+	}
+
+	/**
+	 * @return The number of pairs whose weights have been computed or are being computed
+	 */
+	public int getNComputed() {
+		return weights.size();
+	}
+
+	public PairFilter getPairFilter() {
+		return pairFilter;
+	}
+
+	public SaturationPolicy getSaturation() {
+		return saturation;
+	}
+
+	@Override
+	public double getWeight(int a, int b) {
+		return WeightChain.combine(getResults(a, b));
+	}
+
+	@Override
+	public boolean isHomologous(int a, int b) {
+		if (a == b) return false;
+		if (uniProtIds.get(a) == null || uniProtIds.get(b) == null) return false;
+		if (pairFilter != null && !pairFilter.accept(graph, Math.min(a, b), Math.max(a, b))) return false;
+		double weight = getWeight(a, b);
+		return weight > 0 && weight >= tau;
+	}
+
+	/**
+	 * Adds a homology edge to {@code graph} for every computed pair that is {@link #isHomologous(int, int)
+	 * homologous}.
+	 *
+	 * @return The number of homology edges added
+	 */
+	public int materialize(CleverGraph graph) {
+		int createdIndex = graph.calcLastHomologyId() + 1;
+		int nAdded = 0;
+		for (Map.Entry<Pair<Integer>, Future<List<WeightResult>>> entry : weights.entrySet()) {
+			int a = entry.getKey().getFirst();
+			int b = entry.getKey().getSecond();
+			if (!entry.getValue().isDone() || !isHomologous(a, b)) continue;
+			if (graph.getHomology().findEdge(a, b) != null) continue;
+			HomologyEdge edge = new HomologyEdge(createdIndex++, 0);
+			for (WeightResult result : getResults(a, b)) {
+				edge.addEvidence(result.getSource(), result.getWeight());
+			}
+			graph.addHomology(edge, a, b);
+			nAdded++;
+		}
+		logger.info("Computed weights for " + weights.size() + " pairs and added " + nAdded + " homology edges");
+		if (ReportGenerator.getInstance() != null) {
+			ReportGenerator.getInstance().putInWeighted("manager", this.getClass().getSimpleName());
+			ReportGenerator.getInstance().putInWeighted("n_computed", weights.size());
+		}
+		return nAdded;
+	}
+
+	public void setPairFilter(PairFilter pairFilter) {
+		this.pairFilter = pairFilter;
+	}
+
+	public void setSaturation(SaturationPolicy saturation) {
+		this.saturation = saturation;
+	}
+
+	private List<WeightResult> compute(int a, int b) {
+		return WeightChain.run(creator, saturation, a, b, uniProtIds.get(a), uniProtIds.get(b));
+	}
+
+	/**
+	 * @return The results that make up the weight of {@code (a, b)}, computing them if needed
+	 */
+	private List<WeightResult> getResults(int a, int b) {
+		final Pair<Integer> pair = a < b ? new Pair<Integer>(a, b) : new Pair<Integer>(b, a);
+		Future<List<WeightResult>> future = weights.get(pair);
+		if (future == null) {
+			FutureTask<List<WeightResult>> task = new FutureTask<>(new Callable<List<WeightResult>>() {
+				@Override
+				public List<WeightResult> call() throws Exception {
+					return compute(pair.getFirst(), pair.getSecond());
+				}
+			});
+			future = weights.putIfAbsent(pair, task);
+			if (future == null) { // we won; everyone else will wait on us
+				future = task;
+				task.run();
+			}
+		}
+		while (true) {
+			try {
+				return future.get();
+			} catch (InterruptedException e) {
+				logger.warn("A thread was interrupted while waiting to get a weight. Retrying.", e);
+			} catch (ExecutionException e) {
+				logger.error("Encountered an unknown error trying to get a weight.", e);
+				return Collections.emptyList();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,143 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.structnetalign.HomologyEdge;
+
+import edu.uci.ics.jung.graph.util.Pair;
+
+/**
+ * A {@link WeightCreator} that updates a homology graph from an earlier run in which only some Weight classes have
+ * changed. Each changed class runs only on the pairs it ran on before: those whose {@link HomologyEdge#getEvidence()
+ * ledger} held its evidence, and those that the fallback chain the earlier run used would have reached it on, because
+ * no class before it in the chain left evidence. A class that isn't in the chain is treated as if it came last. The
+ * classes that run on a pair run together, and each contributes its own evidence.
+ * <p>
+ * A Weight that succeeded with 0 leaves no evidence, so a pair may be rerun where the chain actually stopped early, but
+ * never the other way around.
+ *
+ * @author dmyersturnbull
+ */
+public class LedgerWeightCreator implements ChainedWeightCreator {
+
+	private static final Logger logger = LogManager.getLogger("org.structnetalign");
+
+	private VertexCapabilities capabilities;
+
+	private final List<Class<? extends Weight>> chain;
+
+	private final Map<Pair<Integer>, Set<String>> ledgers = new HashMap<>();
+
+	private final List<Class<? extends Weight>> recompute;
+
+	/**
+	 * @param recompute
+	 *            The Weight classes that are new or have changed
+	 * @param chain
+	 *            The fallback chain of the earlier run, such as {@link SimpleWeightCreator#CHAIN}
+	 */
+	public LedgerWeightCreator(List<Class<? extends Weight>> recompute, List<Class<? extends Weight>> chain) {
+		this.recompute = new ArrayList<Class<? extends Weight>>(recompute);
+		this.chain = new ArrayList<Class<? extends Weight>>(chain);
+	}
+
+	public VertexCapabilities getCapabilities() {
+		return capabilities;
+	}
+
+	@Override
+	public Collection<Class<? extends Weight>> getWeightClasses() {
+		return recompute;
+	}
+
+	@Override
+	public List<Weight> initialWeights(int a, int b, String uniProtIdA, String uniProtIdB) {
+		Set<String> ledger = ledgers.get(new Pair<Integer>(Math.min(a, b), Math.max(a, b)));
+		if (ledger == null) ledger = Collections.emptySet();
+		List<Weight> list = new ArrayList<Weight>(1);
+		for (Class<? extends Weight> clazz : recompute) {
+			if (!wouldRun(clazz, ledger)) continue;
+			Weight weight = init(clazz, a, b, uniProtIdA, uniProtIdB);
+			if (weight != null) list.add(weight);
+		}
+		return list;
+	}
+
+	@Override
+	public Weight nextWeight(int a, int b, String uniProtIdA, String uniProtIdB, int n, boolean isFail,
+			Class<? extends Weight> failed) {
+		return null;
+	}
+
+	/**
+	 * Records the sources of evidence that the earlier run left on {@code (a, b)}. Must be called before the evidence
+	 * of the classes to recompute is removed. A pair without a ledger is treated as having had no evidence.
+	 */
+	public void putLedger(int a, int b, Collection<String> sources) {
+		ledgers.put(new Pair<Integer>(Math.min(a, b), Math.max(a, b)), new HashSet<>(sources));
+	}
+
+	/**
+	 * @param capabilities
+	 *            Used to skip Weights that can't apply to a pair, without mapping Ids again for every pair; null means
+	 *            each Weight maps its own Ids
+	 */
+	public void setCapabilities(VertexCapabilities capabilities) {
+		this.capabilities = capabilities;
+	}
+
+	/**
+	 * @return Whether the earlier run ran {@code clazz} on a pair with {@code ledger}, as far as can be told
+	 */
+	boolean wouldRun(Class<? extends Weight> clazz, Set<String> ledger) {
+		if (ledger.contains(WeightResult.sourceOf(clazz))) return true;
+		int index = chain.indexOf(clazz);
+		if (index < 0) index = chain.size();
+		for (int i = 0; i < index; i++) {
+			if (ledger.contains(WeightResult.sourceOf(chain.get(i)))) return false; // the chain stopped there
+		}
+		return true;
+	}
+
+	private Weight init(Class<? extends Weight> clazz, int a, int b, String uniProtIdA, String uniProtIdB) {
+		if (capabilities != null) return capabilities.create(clazz, a, b, uniProtIdA, uniProtIdB);
+		Weight weight;
+		try {
+			weight = clazz.newInstance();
+		} catch (InstantiationException | IllegalAccessException e) {
+			throw new IllegalArgumentException("Couldn't instantiate weight " + clazz.getSimpleName(), e);
+		}
+		try {
+			weight.setIds(a, b, uniProtIdA, uniProtIdB);
+			return weight;
+		} catch (Exception e) {
+			logger.debug("Couldn't create weight " + clazz.getSimpleName() + " for (" + uniProtIdA + ", "
+					+ uniProtIdB + ")");
+			return null;
+		}
+	}
+
+}
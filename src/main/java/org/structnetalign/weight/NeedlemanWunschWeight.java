@@ -16,8 +16,12 @@ package org.structnetalign.weight;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.URL;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -31,16 +35,20 @@ import org.biojava3.alignment.template.SequencePair;
 import org.biojava3.alignment.template.SubstitutionMatrix;
 import org.biojava3.core.sequence.ProteinSequence;
 import org.biojava3.core.sequence.compound.AminoAcidCompound;
-import org.biojava3.core.sequence.io.FastaReaderHelper;
+import org.structnetalign.weight.WeightResult.Status;
 
 /**
  * A {@link Weight} that uses the <a href="http://linkinghub.elsevier.com/retrieve/pii/0022-2836(70)90057-4">global
  * sequence alignment</a> algorithm of Needleman and Wunsch and a {@link GammaScorer gamma distribution} for scoring.
+ * If {@link #setClusters(SequenceClusters) clusters} are set, members of different clusters are scored by aligning
+ * their representatives instead, and members of the same cluster by their identities to its representative.
  * 
  * @author dmyersturnbull
  * 
  */
-public class NeedlemanWunschWeight implements AlignmentWeight {
+public class NeedlemanWunschWeight implements AlignmentWeight, BatchWeight, BoundedWeight {
+
+	private static SequenceClusters clusters;
 
 	private static GammaScorer GAMMA = GammaScorer.forBlosum62();
 
@@ -50,7 +58,18 @@ public class NeedlemanWunschWeight implements AlignmentWeight {
 
 	private static SubstitutionMatrix<AminoAcidCompound> MATRIX = SubstitutionMatrixHelper.getBlosum62();
 
-	private static String URL;
+	/**
+	 * Alignment outputs by pair of sequence digests.
+	 */
+	private static final ResourcePairMemo<double[]> MEMO = new ResourcePairMemo<>();
+
+	/**
+	 * Everything that affects an alignment, as opposed to how it is scored.
+	 */
+	private static String PARAMETERS;
+
+	private ProteinSequence sequence1;
+	private ProteinSequence sequence2;
 
 	private String uniProtId1;
 	private String uniProtId2;
@@ -87,56 +106,205 @@ public class NeedlemanWunschWeight implements AlignmentWeight {
 			GAMMA = new GammaScorer(Double.parseDouble(alpha), Double.parseDouble(beta), Double.parseDouble(lambda));
 			logger.info("Setting new gamma distribution (" + alpha + "," + beta + "," + lambda + ")");
 		}
+		PARAMETERS = "matrix=" + MATRIX.getName() + " gap_open=" + GAP_PENALTY.getOpenPenalty() + " gap_extend="
+				+ GAP_PENALTY.getExtensionPenalty();
 
 	}
 
-	static {
-		Properties props = new Properties();
-		ClassLoader loader = Thread.currentThread().getContextClassLoader();
-		InputStream stream = loader.getResourceAsStream("databases.properties");
-		try {
-			props.load(stream);
-		} catch (IOException e) {
-			throw new RuntimeException("Couldn't open databases property file", e);
-		}
-		URL = props.getProperty("uniprot_url");
+	@Override
+	public double assignWeight(int v1, int v2, String uniProtId1, String uniProtId2) throws Exception {
+		setIds(v1, v2, uniProtId1, uniProtId2);
+		return call().getWeight();
+	}
+
+	/**
+	 * @return The fractional identity of {@code a} and {@code b} when aligned with this class's parameters
+	 */
+	static double identity(ProteinSequence a, ProteinSequence b) {
+		return align(a, b)[0];
+	}
+
+	/**
+	 * @return The fractional identity of an alignment
+	 */
+	static double identity(SequencePair<ProteinSequence, AminoAcidCompound> pair) {
+		PairwiseSequenceScorer<ProteinSequence, AminoAcidCompound> scorer = new FractionalIdentityScorer<>(pair);
+		return (double) scorer.getScore() / (double) scorer.getMaxScore();
+	}
+
+	/**
+	 * @return The alignment of {@code a} and {@code b} with this class's parameters
+	 */
+	static SequencePair<ProteinSequence, AminoAcidCompound> alignPair(ProteinSequence a, ProteinSequence b) {
+		return newAligner(a, b).getPair();
+	}
+
+	/**
+	 * @return Everything that affects an alignment with this class's parameters
+	 */
+	static String getParameters() {
+		return PARAMETERS;
+	}
+
+	/**
+	 * @return The fractional identity, length, and raw score of the alignment of {@code a} and {@code b}
+	 */
+	private static double[] align(ProteinSequence a, ProteinSequence b) {
+		NeedlemanWunsch<ProteinSequence, AminoAcidCompound> alg = newAligner(a, b);
+		SequencePair<ProteinSequence, AminoAcidCompound> pair = alg.getPair();
+		return new double[] { identity(pair), pair.getLength(), alg.getScore() };
+	}
+
+	private static NeedlemanWunsch<ProteinSequence, AminoAcidCompound> newAligner(ProteinSequence a, ProteinSequence b) {
+		NeedlemanWunsch<ProteinSequence, AminoAcidCompound> alg = new NeedlemanWunsch<>(a, b, GAP_PENALTY, MATRIX);
+		alg.setQuery(a);
+		alg.setTarget(b);
+		return alg;
+	}
+
+	static GammaScorer getGamma() {
+		return GAMMA;
 	}
 
-	private static ProteinSequence getSequenceForId(String uniProtId) throws Exception {
-		try (InputStream stream = new URL(String.format(URL, uniProtId)).openStream()) {
-			return FastaReaderHelper.readFastaProteinSequence(stream).get(uniProtId); // why does this throw Exception?
+	/**
+	 * Replaces the scoring from the properties file, for testing.
+	 */
+	static void setGamma(GammaScorer gamma) {
+		GAMMA = gamma;
+	}
+
+	public static SequenceClusters getClusters() {
+		return clusters;
+	}
+
+	/**
+	 * @param clusters
+	 *            Clusters of the network's sequences, or null (the default) to align every pair
+	 */
+	public static void setClusters(SequenceClusters clusters) {
+		NeedlemanWunschWeight.clusters = clusters;
+	}
+
+	@Override
+	public WeightResult call() throws Exception {
+		ProteinSequence a = sequence1, b = sequence2;
+		final SequenceClusters clusters = NeedlemanWunschWeight.clusters;
+		boolean clustered = clusters != null && clusters.contains(v1) && clusters.contains(v2);
+		// only actual alignments of this pair are kept, not what clustering estimated
+		AlignmentArtifacts artifacts = clustered ? null : AlignmentArtifacts.forKind("nw", PARAMETERS, 3);
+		if (artifacts != null) {
+			double[] stored = artifacts.get(uniProtId1, uniProtId2);
+			if (stored != null) {
+				return new WeightResult(GAMMA.score(null, stored[0]), v1, v2, uniProtId1, uniProtId2, this.getClass());
+			}
 		}
+		if (clustered) {
+			a = clusters.getSequence(v1);
+			b = clusters.getSequence(v2);
+		}
+		if (a == null || b == null) {
+			try {
+				// both in one request if neither has been fetched yet
+				Map<String, ProteinSequence> sequences = SequenceFetcher.getInstance().getSequences(
+						Arrays.asList(uniProtId1, uniProtId2));
+				a = sequences.get(uniProtId1);
+				b = sequences.get(uniProtId2);
+			} catch (IOException e) {
+				logger.debug("Could not get FASTA sequences for " + uniProtId1 + " and " + uniProtId2, e);
+				return WeightResult.failed(Status.MISSING_INPUT, "Could not get FASTA sequences for " + uniProtId1
+						+ " and " + uniProtId2 + ": " + e.getMessage(), v1, v2, uniProtId1, uniProtId2, this.getClass());
+			}
+		}
+		ResidueCounts.putSequenceLength(uniProtId1, a.getLength());
+		ResidueCounts.putSequenceLength(uniProtId2, b.getLength());
+		if (clustered) {
+			int rep1 = clusters.getRepresentative(v1);
+			int rep2 = clusters.getRepresentative(v2);
+			if (rep1 == rep2) {
+				// exact if either is the representative; otherwise off by no more than the error bound
+				double identity = Math.min(clusters.getIdentity(v1), clusters.getIdentity(v2));
+				return new WeightResult(GAMMA.score(null, identity), v1, v2, uniProtId1, uniProtId2, this.getClass());
+			}
+			a = clusters.getSequence(rep1);
+			b = clusters.getSequence(rep2);
+		}
+		String string1 = a.getSequenceAsString();
+		String string2 = b.getSequenceAsString();
+		if (string1.equals(string2)) { // identical sequences have a fractional identity of 1
+			return new WeightResult(GAMMA.score(null, 1), v1, v2, uniProtId1, uniProtId2, this.getClass());
+		}
+		final ProteinSequence query = a, target = b;
+		double[] alignment = MEMO.get(ResourcePairMemo.digest(string1), uniProtId1, ResourcePairMemo.digest(string2),
+				uniProtId2, new ResourcePairMemo.Comparison<double[]>() {
+					@Override
+					public double[] compare(boolean reversed) throws Exception {
+						if (Thread.interrupted()) throw new InterruptedException("Cancelled before aligning "
+								+ uniProtId1 + " against " + uniProtId2);
+						return reversed ? align(target, query) : align(query, target);
+					}
+				});
+		if (artifacts != null) artifacts.put(uniProtId1, uniProtId2, alignment);
+		return new WeightResult(GAMMA.score(null, alignment[0]), v1, v2, uniProtId1, uniProtId2, this.getClass());
 	}
 
+	/**
+	 * Fetches the sequences of every pair in {@code batch} together.
+	 */
 	@Override
-	public double assignWeight(int v1, int v2, String uniProtId1, String uniProtId2) throws Exception {
-		setIds(v1, v2, uniProtId1, uniProtId2);
-		return call().getWeight();
+	public void prepareBatch(List<? extends Weight> batch) throws Exception {
+		Set<String> ids = new LinkedHashSet<>();
+		for (Weight weight : batch) {
+			NeedlemanWunschWeight nw = (NeedlemanWunschWeight) weight;
+			if (clusters != null && clusters.contains(nw.v1) && clusters.contains(nw.v2)) continue; // already have them
+			ids.add(nw.uniProtId1);
+			ids.add(nw.uniProtId2);
+		}
+		Map<String, ProteinSequence> sequences = SequenceFetcher.getInstance().getSequences(ids);
+		for (Weight weight : batch) {
+			NeedlemanWunschWeight nw = (NeedlemanWunschWeight) weight;
+			nw.sequence1 = sequences.get(nw.uniProtId1);
+			nw.sequence2 = sequences.get(nw.uniProtId2);
+		}
 	}
 
+	/**
+	 * An alignment can't have more identities than the shorter sequence has residues, nor be shorter than the longer
+	 * sequence, so the ratio of the lengths caps the fractional identity, and this is the highest score up to that cap.
+	 * The cap is only used if both lengths are already known, and only lowers the bound if it's below the
+	 * {@link GammaScorer#getPeak() peak} of the gamma distribution. The Webber and Barton distribution peaks just below
+	 * no identity, so with it this is the score of no identity for every pair.
+	 */
 	@Override
-	public WeightResult call() throws Exception {
-		ProteinSequence a, b;
-		try {
-			a = getSequenceForId(uniProtId1);
-		} catch (Exception e) {
-			throw new WeightException("Could not get FASTA sequence for " + uniProtId1, v1, v2, uniProtId1, uniProtId2, true,
-					false);
+	public double upperBound() {
+		Integer length1, length2;
+		if (sequence1 != null && sequence2 != null) {
+			length1 = sequence1.getLength();
+			length2 = sequence2.getLength();
+		} else if (clusters != null && clusters.contains(v1) && clusters.contains(v2)) {
+			length1 = clusters.getSequence(v1).getLength();
+			length2 = clusters.getSequence(v2).getLength();
+		} else {
+			length1 = ResidueCounts.getSequenceLength(uniProtId1);
+			length2 = ResidueCounts.getSequenceLength(uniProtId2);
 		}
-		try {
-			b = getSequenceForId(uniProtId2);
-		} catch (Exception e) {
-			throw new WeightException("Could not get FASTA sequence for " + uniProtId1, v1, v2, uniProtId1, uniProtId2, true,
-					false);
+		double maxIdentity = 1;
+		if (length1 != null && length2 != null && length1 > 0 && length2 > 0) {
+			maxIdentity = (double) Math.min(length1, length2) / (double) Math.max(length1, length2);
 		}
-		NeedlemanWunsch<ProteinSequence, AminoAcidCompound> alg = new NeedlemanWunsch<>(a, b, GAP_PENALTY, MATRIX);
-		alg.setQuery(a);
-		alg.setTarget(b);
-		SequencePair<ProteinSequence, AminoAcidCompound> pair = alg.getPair();
-		PairwiseSequenceScorer<ProteinSequence, AminoAcidCompound> scorer = new FractionalIdentityScorer<>(pair);
-		double score = (double) scorer.getScore() / (double) scorer.getMaxScore();
-		double prob = GAMMA.score(pair, score);
-		return new WeightResult(prob, v1, v2, uniProtId1, uniProtId2, this.getClass());
+		return GAMMA.maxScore(0, maxIdentity);
+	}
+
+	@Override
+	public String getBatchKey() {
+		return uniProtId1;
+	}
+
+	public String getUniProtId1() {
+		return uniProtId1;
+	}
+
+	public String getUniProtId2() {
+		return uniProtId2;
 	}
 
 	@Override
@@ -145,5 +313,7 @@ public class NeedlemanWunschWeight implements AlignmentWeight {
 		this.v2 = v2;
 		this.uniProtId1 = uniProtId1;
 		this.uniProtId2 = uniProtId2;
+		sequence1 = null;
+		sequence2 = null;
 	}
 }
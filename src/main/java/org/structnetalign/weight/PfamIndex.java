@@ -0,0 +1,202 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import edu.uci.ics.jung.graph.util.Pair;
+
+/**
+ * The <a href="http://pfam.sanger.ac.uk/">Pfam-A</a> families of each UniProt accession, read from a local regions
+ * file such as {@code Pfam-A.regions.uniprot.tsv.gz}. Each line of the file has a UniProt accession in its first
+ * column and a Pfam-A accession, such as {@code PF00069}, in a later one; other columns and lines are ignored. A family
+ * is kept as the number in its accession, and the families of each protein as a sorted array without duplicates, so
+ * two proteins are compared by merging two short arrays.
+ *
+ * @author dmyersturnbull
+ */
+public class PfamIndex {
+
+	private static final Logger logger = LogManager.getLogger("org.structnetalign");
+
+	private final Map<String, int[]> families = new HashMap<>();
+
+	/**
+	 * @return The number of families in both {@code a} and {@code b}, which must be sorted
+	 */
+	public static int countShared(int[] a, int[] b) {
+		int n = 0;
+		int i = 0, j = 0;
+		while (i < a.length && j < b.length) {
+			if (a[i] < b[j]) {
+				i++;
+			} else if (a[i] > b[j]) {
+				j++;
+			} else {
+				n++;
+				i++;
+				j++;
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * @return The number in a Pfam-A accession such as {@code PF00069.20}, or -1 if it isn't one
+	 */
+	static int parseFamily(String accession) {
+		if (!accession.startsWith("PF")) return -1;
+		int end = accession.indexOf('.');
+		if (end < 0) end = accession.length();
+		if (end == 2) return -1;
+		for (int i = 2; i < end; i++) {
+			if (!Character.isDigit(accession.charAt(i))) return -1;
+		}
+		return Integer.parseInt(accession.substring(2, end));
+	}
+
+	/**
+	 * @return The sorted families of {@code uniProtId}, or null if it has none
+	 */
+	public int[] getFamilies(String uniProtId) {
+		return families.get(uniProtId);
+	}
+
+	/**
+	 * Finds every pair of vertices that share a family, by bucketing the vertices by family instead of comparing
+	 * every pair.
+	 *
+	 * @return The number of families each such pair shares, with the lower vertex first
+	 */
+	public Map<Pair<Integer>, Integer> getSharingPairs(Map<Integer, String> uniProtIds) {
+		Map<Integer, List<Integer>> buckets = new HashMap<>();
+		for (Map.Entry<Integer, String> entry : uniProtIds.entrySet()) {
+			if (entry.getValue() == null) continue;
+			int[] mine = families.get(entry.getValue());
+			if (mine == null) continue;
+			for (int family : mine) {
+				List<Integer> bucket = buckets.get(family);
+				if (bucket == null) {
+					bucket = new ArrayList<>();
+					buckets.put(family, bucket);
+				}
+				bucket.add(entry.getKey());
+			}
+		}
+		Map<Pair<Integer>, Integer> pairs = new LinkedHashMap<>();
+		for (List<Integer> bucket : buckets.values()) {
+			for (int i = 0; i < bucket.size(); i++) {
+				for (int j = i + 1; j < bucket.size(); j++) {
+					int a = Math.min(bucket.get(i), bucket.get(j));
+					int b = Math.max(bucket.get(i), bucket.get(j));
+					Pair<Integer> pair = new Pair<Integer>(a, b);
+					Integer n = pairs.get(pair);
+					pairs.put(pair, n == null ? 1 : n + 1);
+				}
+			}
+		}
+		return pairs;
+	}
+
+	/**
+	 * Reads a regions file, which may be gzipped.
+	 *
+	 * @param only
+	 *            Only keep these UniProt accessions, to save memory; null keeps every one
+	 */
+	public void load(File file, Set<String> only) throws IOException {
+		InputStream stream = new FileInputStream(file);
+		if (file.getName().endsWith(".gz")) stream = new GZIPInputStream(stream);
+		Map<String, int[]> growing = new HashMap<>(); // the last element is the number used
+		int nLines = 0;
+		try (BufferedReader br = new BufferedReader(new InputStreamReader(stream, Charset.forName("UTF-8")))) {
+			String line;
+			while ((line = br.readLine()) != null) {
+				if (line.isEmpty() || line.startsWith("#")) continue;
+				String[] parts = line.split("\t");
+				String uniProtId = parts[0];
+				int version = uniProtId.indexOf('.');
+				if (version >= 0) uniProtId = uniProtId.substring(0, version);
+				if (only != null && !only.contains(uniProtId)) continue;
+				int family = -1;
+				for (int i = 1; i < parts.length && family < 0; i++) {
+					family = parseFamily(parts[i]);
+				}
+				if (family < 0) continue; // probably the header
+				int[] array = growing.get(uniProtId);
+				if (array == null) {
+					array = new int[3];
+					growing.put(uniProtId, array);
+				} else if (array[array.length - 1] == array.length - 1) {
+					array = Arrays.copyOf(array, array.length * 2);
+					array[array.length - 1] = array.length / 2 - 1;
+					growing.put(uniProtId, array);
+				}
+				array[array[array.length - 1]++] = family;
+				nLines++;
+			}
+		}
+		for (Map.Entry<String, int[]> entry : growing.entrySet()) {
+			int[] array = entry.getValue();
+			put(entry.getKey(), Arrays.copyOf(array, array[array.length - 1]));
+		}
+		logger.info("Read " + nLines + " Pfam-A regions for " + growing.size() + " proteins from " + file);
+	}
+
+	/**
+	 * Adds {@code families} to those of {@code uniProtId}.
+	 */
+	public void put(String uniProtId, int... families) {
+		int[] existing = this.families.get(uniProtId);
+		int[] all;
+		if (existing == null) {
+			all = Arrays.copyOf(families, families.length);
+		} else {
+			all = Arrays.copyOf(existing, existing.length + families.length);
+			System.arraycopy(families, 0, all, existing.length, families.length);
+		}
+		Arrays.sort(all);
+		int n = 0;
+		for (int i = 0; i < all.length; i++) {
+			if (i == 0 || all[i] != all[i - 1]) all[n++] = all[i];
+		}
+		this.families.put(uniProtId, Arrays.copyOf(all, n));
+	}
+
+	/**
+	 * @return The number of proteins with at least one family
+	 */
+	public int size() {
+		return families.size();
+	}
+
+}
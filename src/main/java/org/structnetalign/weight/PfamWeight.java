@@ -14,24 +14,88 @@
  */
 package org.structnetalign.weight;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+import org.structnetalign.weight.WeightResult.Status;
+
 /**
  * A {@link Weight} that uses the <a href="http://pfam.sanger.ac.uk/">Pfam</a> sequence-based protein family database.
+ * Two proteins with the same set of Pfam-A families get {@link #DEFAULT_WEIGHT}, and two that share only some get that
+ * times the Jaccard index of their sets. The families come from a local {@link PfamIndex}, so this takes microseconds.
+ * <p>
+ * Pfam-A doesn't cover every protein, so sharing no family isn't evidence against homology: those pairs fail with
+ * {@link Status#NO_SCORE}, and the next Weight in the chain is tried. Proteins without any family can't be weighted at
+ * all.
  * @author dmyersturnbull
  */
-public class PfamWeight implements RelationWeight {
+public class PfamWeight implements RelationWeight, BoundedWeight {
+
+	/**
+	 * The weight of two proteins with the same families.
+	 */
+	public static final double DEFAULT_WEIGHT;
+
+	private static PfamIndex index;
+
+	static {
+		Properties props = new Properties();
+		ClassLoader loader = Thread.currentThread().getContextClassLoader();
+		InputStream stream = loader.getResourceAsStream("weight/pfam_weights.properties");
+		try {
+			props.load(stream);
+		} catch (IOException e) {
+			throw new RuntimeException("Couldn't open Pfam weights property file", e);
+		}
+		DEFAULT_WEIGHT = Double.parseDouble(props.getProperty("same"));
+	}
+
+	private int[] families1;
+	private int[] families2;
 
 	private int v1;
 	private int v2;
 
 	private String uniProtId1;
 	private String uniProtId2;
-	
+
+	private final double weight;
+
+	public static PfamIndex getIndex() {
+		return index;
+	}
+
+	/**
+	 * @param index
+	 *            The families to use; null (the default) means every PfamWeight fails
+	 */
+	public static void setIndex(PfamIndex index) {
+		PfamWeight.index = index;
+	}
+
+	public PfamWeight() {
+		this(DEFAULT_WEIGHT);
+	}
+
+	public PfamWeight(double weight) {
+		this.weight = weight;
+	}
+
 	@Override
 	public void setIds(int v1, int v2, String uniProtId1, String uniProtId2) throws WeightException {
 		this.v1 = v1;
 		this.v2 = v2;
 		this.uniProtId1 = uniProtId1;
 		this.uniProtId2 = uniProtId2;
+		if (index == null) throw WeightException.expected("There is no Pfam index", v1, v2, uniProtId1, uniProtId2,
+				false, false);
+		families1 = index.getFamilies(uniProtId1);
+		if (families1 == null) throw WeightException.expected("Could not find Pfam families for " + uniProtId1, v1, v2,
+				uniProtId1, uniProtId2, false, false);
+		families2 = index.getFamilies(uniProtId2);
+		if (families2 == null) throw WeightException.expected("Could not find Pfam families for " + uniProtId2, v1, v2,
+				uniProtId1, uniProtId2, false, false);
 	}
 
 	@Override
@@ -42,9 +106,23 @@ public class PfamWeight implements RelationWeight {
 
 	@Override
 	public WeightResult call() throws Exception {
-		// in all honesty, I won't finish this
-		// but we can put a TODO here anyway
-		return new WeightResult(0, v1, v2, uniProtId1, uniProtId2, this.getClass());
+		int shared = PfamIndex.countShared(families1, families2);
+		if (shared == 0) return WeightResult.failed(Status.NO_SCORE, "No Pfam family in common", v1, v2, uniProtId1,
+				uniProtId2, this.getClass());
+		return new WeightResult(score(shared), v1, v2, uniProtId1, uniProtId2, this.getClass());
+	}
+
+	/**
+	 * The weight itself, since it's so cheap.
+	 */
+	@Override
+	public double upperBound() {
+		int shared = PfamIndex.countShared(families1, families2);
+		return shared == 0 ? 1 : score(shared); // a failure lets the next Weight run
+	}
+
+	private double score(int shared) {
+		return weight * shared / (families1.length + families2.length - shared);
 	}
 
 }
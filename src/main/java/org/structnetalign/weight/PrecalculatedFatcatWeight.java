@@ -17,20 +17,17 @@ package org.structnetalign.weight;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
-import java.net.URL;
-import java.net.URLConnection;
 import java.util.Properties;
 
-import org.apache.commons.io.IOUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.biojava.bio.structure.Atom;
 import org.biojava.bio.structure.StructureException;
 import org.biojava.bio.structure.align.model.AFPChain;
 import org.biojava.bio.structure.align.util.AFPChainScorer;
-import org.biojava.bio.structure.align.util.AtomCache;
 import org.biojava.bio.structure.align.xml.AFPChainXMLParser;
 import org.structnetalign.util.IdentifierMappingFactory;
+import org.structnetalign.weight.WeightResult.Status;
 
 /**
  * A simple {@link AlignmentWeight} that downloads pre-calculated FATCAT structural alignments from <a
@@ -49,6 +46,11 @@ public class PrecalculatedFatcatWeight implements AlignmentWeight {
 	private static String PARAM;
 	private static int TIMEOUT = DEFAULT_TIMEOUT;
 
+	/**
+	 * TM-scores by pair of PDB chains.
+	 */
+	private static final ResourcePairMemo<Double> MEMO = new ResourcePairMemo<>();
+
 	private String pdbIdAndChain1;
 
 	private String pdbIdAndChain2;
@@ -95,23 +97,53 @@ public class PrecalculatedFatcatWeight implements AlignmentWeight {
 
 	@Override
 	public WeightResult call() throws Exception {
-		final AtomCache cache = AtomCacheFactory.getCache();
+		if (pdbIdAndChain1.equals(pdbIdAndChain2)) { // a chain aligns perfectly with itself
+			return new WeightResult(1, v1, v2, uniProtId1, uniProtId2, this.getClass());
+		}
+		Double tmScore = MEMO.get(pdbIdAndChain1, uniProtId1, pdbIdAndChain2, uniProtId2,
+				new ResourcePairMemo.Comparison<Double>() {
+					@Override
+					public Double compare(boolean reversed) throws Exception {
+						return computeTmScore(reversed);
+					}
+				});
+		if (tmScore == null) return WeightResult.failed(Status.NO_SCORE, "No TM-score for the alignment of "
+				+ pdbIdAndChain1 + " against " + pdbIdAndChain2, v1, v2, uniProtId1, uniProtId2, this.getClass());
+		return new WeightResult(tmScore, v1, v2, uniProtId1, uniProtId2, this.getClass());
+	}
+
+	/**
+	 * @param reversed
+	 *            Whether to load the alignment of the second chain against the first
+	 * @return The TM-score of the alignment, or null if RCSB didn't have one
+	 */
+	private Double computeTmScore(boolean reversed) throws Exception {
+		AlignmentArtifacts artifacts = AlignmentArtifacts.forKind("fatcat", BASE_URL + " " + PARAM, 3);
+		if (artifacts != null) {
+			double[] stored = artifacts.get(pdbIdAndChain1, pdbIdAndChain2);
+			if (stored != null) return stored[0] == -1 ? null : stored[0];
+		}
 		Atom[] ca1, ca2;
 		try {
-			ca1 = cache.getAtoms(pdbIdAndChain1);
+			ca1 = AtomCacheFactory.getAtoms(pdbIdAndChain1);
 		} catch (IOException | StructureException e) {
 			throw new WeightException("Could not parse structure for PDB entry " + pdbIdAndChain1 + " for "
 					+ uniProtId1, e, v1, v2, uniProtId1, uniProtId2, true, true);
 		}
 		try {
-			ca2 = cache.getAtoms(pdbIdAndChain2);
+			ca2 = AtomCacheFactory.getAtoms(pdbIdAndChain2);
 		} catch (IOException | StructureException e) {
 			throw new WeightException("Could not parse structure for PDB entry " + pdbIdAndChain2 + " for "
 					+ uniProtId2, e, v1, v2, uniProtId1, uniProtId2, true, true);
 		}
+		ResidueCounts.putChainLength(pdbIdAndChain1, ca1.length);
+		ResidueCounts.putChainLength(pdbIdAndChain2, ca2.length);
+		if (Thread.interrupted()) throw new InterruptedException("Cancelled before loading the alignment of "
+				+ pdbIdAndChain1 + " against " + pdbIdAndChain2);
 		AFPChain afpChain;
 		try {
-			afpChain = load(pdbIdAndChain1, pdbIdAndChain2, ca1, ca2);
+			afpChain = reversed ? load(pdbIdAndChain2, pdbIdAndChain1, ca2, ca1) : load(pdbIdAndChain1,
+					pdbIdAndChain2, ca1, ca2);
 		} catch (MalformedURLException e) {
 			throw new WeightException("Could not create URL for " + pdbIdAndChain2 + " for " + uniProtId2, e, v1, v2,
 					uniProtId1, uniProtId2, true, true);
@@ -122,9 +154,38 @@ public class PrecalculatedFatcatWeight implements AlignmentWeight {
 			throw new WeightException("Could not get complete AFPChain for " + pdbIdAndChain2 + " for " + uniProtId2,
 					e, v1, v2, uniProtId1, uniProtId2, true, true);
 		}
-		if (afpChain.getTMScore() == -1) throw new WeightException("TM-score not calculated for the alignment of "
-				+ pdbIdAndChain1 + " against " + pdbIdAndChain2, v1, v2, uniProtId1, uniProtId2, true, true);
-		return new WeightResult(afpChain.getTMScore(), v1, v2, uniProtId1, uniProtId2, this.getClass());
+		if (artifacts != null) {
+			if (afpChain == null) {
+				artifacts.put(pdbIdAndChain1, pdbIdAndChain2, -1, -1, -1);
+			} else {
+				artifacts.put(pdbIdAndChain1, pdbIdAndChain2, afpChain.getTMScore(), afpChain.getTotalRmsdOpt(),
+						afpChain.getOptLength());
+			}
+		}
+		if (afpChain == null || afpChain.getTMScore() == -1) return null;
+		return afpChain.getTMScore();
+	}
+
+	public String getPdbIdAndChain1() {
+		return pdbIdAndChain1;
+	}
+
+	public String getPdbIdAndChain2() {
+		return pdbIdAndChain2;
+	}
+
+	/**
+	 * Like {@link #setIds(int, int, String, String)}, but with PDB Ids that were already mapped, such as by
+	 * {@link VertexCapabilities}.
+	 */
+	public void setIds(int v1, int v2, String uniProtId1, String uniProtId2, String pdbIdAndChain1,
+			String pdbIdAndChain2) {
+		this.v1 = v1;
+		this.v2 = v2;
+		this.uniProtId1 = uniProtId1;
+		this.uniProtId2 = uniProtId2;
+		this.pdbIdAndChain1 = pdbIdAndChain1;
+		this.pdbIdAndChain2 = pdbIdAndChain2;
 	}
 
 	@Override
@@ -136,26 +197,23 @@ public class PrecalculatedFatcatWeight implements AlignmentWeight {
 		this.uniProtId2 = uniProtId2;
 
 		pdbIdAndChain1 = IdentifierMappingFactory.getMapping().uniProtToPdb(uniProtId1);
-		if (pdbIdAndChain1 == null) throw new WeightException("Could not find PDB Id for " + uniProtId1, v1, v2,
+		if (pdbIdAndChain1 == null) throw WeightException.expected("Could not find PDB Id for " + uniProtId1, v1, v2,
 				uniProtId1, uniProtId2, true, true);
 		pdbIdAndChain2 = IdentifierMappingFactory.getMapping().uniProtToPdb(uniProtId2);
-		if (pdbIdAndChain2 == null) throw new WeightException("Could not find PDB Id for " + uniProtId2, v1, v2,
+		if (pdbIdAndChain2 == null) throw WeightException.expected("Could not find PDB Id for " + uniProtId2, v1, v2,
 				uniProtId1, uniProtId2, true, true);
 
 	}
 
-	private AFPChain load(String id1, String id2, Atom[] ca1, Atom[] ca2) throws IOException, StructureException, WeightException {
-		URL url = new URL(BASE_URL + "&" + PARAM + "=" + id1 + "&" + PARAM + "=" + id2);
-		URLConnection conn = url.openConnection();
-		conn.setReadTimeout(TIMEOUT);
+	/**
+	 * @return The alignment with its TM-score set, or null if RCSB didn't return one
+	 */
+	private AFPChain load(String id1, String id2, Atom[] ca1, Atom[] ca2) throws IOException, StructureException {
+		String url = BASE_URL + "&" + PARAM + "=" + id1 + "&" + PARAM + "=" + id2;
 		logger.debug("Loading AFPChain from URL " + url);
-		String string;
-		try (InputStream is = conn.getInputStream()) {
-			string = IOUtils.toString(is, "UTF-8"); // thanks Apache Commons!
-		}
+		String string = RemoteFetcher.getInstance().fetch(url, TIMEOUT, true);
 		AFPChain afpChain = AFPChainXMLParser.fromXML(string, ca1, ca2);
-		if (afpChain == null) throw new WeightException("Got null AFPChain for " + uniProtId2, v1, v2,
-				uniProtId1, uniProtId2, true, true);
+		if (afpChain == null) return null;
 		// now we need to rotate to make the structure match the alignment
 		double tmScore = AFPChainScorer.getTMScore(afpChain, ca1, ca2);
 		afpChain.setTMScore(tmScore);
@@ -0,0 +1,204 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Downloads text resources for {@link Weight Weights} that use remote services. Concurrent requests for the same URL
+ * share a single download, and completed bodies are kept in a bounded least-recently-used cache, so a run makes one
+ * round-trip per distinct resource rather than one per pair.
+ * <p>
+ * Bodies are always read to the end and the stream closed without disconnecting, which lets
+ * {@link HttpURLConnection} return the connection to its keep-alive pool. The size of that pool is raised to
+ * {@link #KEEP_ALIVE_CONNECTIONS} unless {@code http.maxConnections} was already set.
+ *
+ * @author dmyersturnbull
+ */
+public class RemoteFetcher {
+
+	public static final int DEFAULT_MAX_CACHED = 10000;
+
+	public static final int DEFAULT_TIMEOUT = 10 * 1000;
+
+	public static final int KEEP_ALIVE_CONNECTIONS = 20;
+
+	private static RemoteFetcher instance;
+
+	private static final Logger logger = LogManager.getLogger("org.structnetalign");
+
+	static {
+		if (System.getProperty("http.maxConnections") == null) {
+			System.setProperty("http.maxConnections", String.valueOf(KEEP_ALIVE_CONNECTIONS));
+		}
+	}
+
+	private final Map<String, String> cache;
+
+	private final ConcurrentMap<String, FutureTask<String>> inFlight = new ConcurrentHashMap<>();
+
+	private final AtomicInteger nRequests = new AtomicInteger(0);
+
+	private final int timeout;
+
+	public static synchronized RemoteFetcher getInstance() {
+		if (instance == null) setInstance(new RemoteFetcher());
+		return instance;
+	}
+
+	public static synchronized void setInstance(RemoteFetcher instance) {
+		RemoteFetcher.instance = instance;
+	}
+
+	public RemoteFetcher() {
+		this(DEFAULT_MAX_CACHED, DEFAULT_TIMEOUT);
+	}
+
+	/**
+	 * @param maxCached
+	 *            The maximum number of response bodies to remember
+	 * @param timeout
+	 *            The default connect and read timeout in milliseconds
+	 */
+	public RemoteFetcher(final int maxCached, int timeout) {
+		this.timeout = timeout;
+		cache = new LinkedHashMap<String, String>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+				return size() > maxCached;
+			}
+		};
+	}
+
+	/**
+	 * Forgets every cached response.
+	 */
+	public void clear() {
+		synchronized (cache) {
+			cache.clear();
+		}
+	}
+
+	/**
+	 * Returns the body of {@code url}, using the default timeout and remembering the result.
+	 */
+	public String fetch(String url) throws IOException {
+		return fetch(url, timeout, true);
+	}
+
+	/**
+	 * Returns the body of {@code url}. If another thread is already downloading it, waits for that download instead of
+	 * starting a new one. Failures are not remembered, so a later call will try again.
+	 *
+	 * @param timeout
+	 *            The connect and read timeout in milliseconds
+	 * @param remember
+	 *            Whether to cache the body; callers that keep their own parsed copy can pass false
+	 */
+	public String fetch(final String url, final int timeout, final boolean remember) throws IOException {
+		String body;
+		synchronized (cache) {
+			body = cache.get(url);
+		}
+		if (body != null) return body;
+		FutureTask<String> task = new FutureTask<>(new Callable<String>() {
+			@Override
+			public String call() throws Exception {
+				String body = download(url, timeout);
+				if (remember) {
+					synchronized (cache) {
+						cache.put(url, body);
+					}
+				}
+				return body;
+			}
+		});
+		FutureTask<String> existing = inFlight.putIfAbsent(url, task);
+		if (existing == null) { // we won; everyone else will wait on us
+			existing = task;
+			try {
+				task.run();
+			} finally {
+				inFlight.remove(url, task);
+			}
+		} else {
+			logger.trace("Waiting on an in-flight request for " + url);
+		}
+		try {
+			return existing.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for " + url);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+			throw new IOException("Could not fetch " + url, e.getCause());
+		}
+	}
+
+	/**
+	 * @return The number of requests that actually went over the network
+	 */
+	public int getNRequests() {
+		return nRequests.get();
+	}
+
+	public int getTimeout() {
+		return timeout;
+	}
+
+	private String download(String url, int timeout) throws IOException {
+		nRequests.incrementAndGet();
+		logger.debug("Fetching " + url);
+		URLConnection conn = new URL(url).openConnection();
+		conn.setConnectTimeout(timeout);
+		conn.setReadTimeout(timeout);
+		try (InputStream is = conn.getInputStream()) {
+			return IOUtils.toString(is, "UTF-8");
+		} catch (IOException e) {
+			// the error body has to be read too, or the connection can't be reused
+			if (conn instanceof HttpURLConnection) {
+				InputStream es = ((HttpURLConnection) conn).getErrorStream();
+				if (es != null) {
+					try {
+						IOUtils.toByteArray(es);
+					} catch (IOException ignored) {
+					} finally {
+						IOUtils.closeQuietly(es);
+					}
+				}
+			}
+			throw e;
+		}
+	}
+
+}
@@ -0,0 +1,109 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.biojava3.core.sequence.ProteinSequence;
+import org.structnetalign.util.IdentifierMappingFactory;
+
+/**
+ * Remembers the lengths of sequences and structures that have been loaded, so that the cost of later
+ * {@link Weight Weights} on the same proteins can be estimated without loading them again. Callers that already know
+ * lengths (from the input network, for example) can also put them here beforehand, and
+ * {@link #prefill(Map, SequenceFetcher)} fetches every sequence before weighting starts, so that the first jobs are
+ * scheduled and admitted with real sizes instead of {@link SimpleWeightCostModel#DEFAULT_LENGTH}.
+ * 
+ * @author dmyersturnbull
+ * @see SimpleWeightCostModel
+ */
+public class ResidueCounts {
+
+	private static final ConcurrentMap<String, Integer> chainLengths = new ConcurrentHashMap<>();
+
+	private static final Logger logger = LogManager.getLogger("org.structnetalign");
+
+	private static final ConcurrentMap<String, Integer> sequenceLengths = new ConcurrentHashMap<>();
+
+	/**
+	 * @return The number of CA atoms in the chain, or null if it isn't known
+	 */
+	public static Integer getChainLength(String pdbIdAndChain) {
+		if (pdbIdAndChain == null) return null;
+		return chainLengths.get(pdbIdAndChain);
+	}
+
+	/**
+	 * @return The length of the UniProt sequence, or null if it isn't known
+	 */
+	public static Integer getSequenceLength(String uniProtId) {
+		if (uniProtId == null) return null;
+		return sequenceLengths.get(uniProtId);
+	}
+
+	/**
+	 * Fetches the sequences of {@code uniProtIds} whose lengths aren't known, in batches, and records their lengths. A
+	 * PDB chain whose length isn't known yet is given the length of the sequence it's mapped from, which is rarely much
+	 * smaller; parsing the structure later records the real length. Sequences that can't be fetched are skipped, so
+	 * their sizes are still estimated with the default.
+	 *
+	 * @return The number of sequence lengths recorded
+	 */
+	public static int prefill(Map<Integer, String> uniProtIds, SequenceFetcher fetcher) {
+		Set<String> ids = new LinkedHashSet<>();
+		for (String id : uniProtIds.values()) {
+			if (id != null && !sequenceLengths.containsKey(id)) ids.add(id);
+		}
+		List<String> missing = new ArrayList<>(ids);
+		int nFilled = 0;
+		for (int i = 0; i < missing.size(); i += fetcher.getBatchSize()) {
+			List<String> batch = missing.subList(i, Math.min(i + fetcher.getBatchSize(), missing.size()));
+			Map<String, ProteinSequence> sequences;
+			try {
+				sequences = fetcher.getSequences(batch);
+			} catch (IOException e) {
+				logger.debug("Couldn't fetch a batch of " + batch.size() + " sequences to estimate sizes", e);
+				continue;
+			}
+			for (Map.Entry<String, ProteinSequence> entry : sequences.entrySet()) {
+				int length = entry.getValue().getLength();
+				putSequenceLength(entry.getKey(), length);
+				nFilled++;
+				String pdbIdAndChain = IdentifierMappingFactory.getMapping().uniProtToPdb(entry.getKey());
+				if (pdbIdAndChain != null) chainLengths.putIfAbsent(pdbIdAndChain, length);
+			}
+		}
+		logger.info("Found the lengths of " + nFilled + " of " + missing.size() + " unknown sequences");
+		return nFilled;
+	}
+
+	public static void putChainLength(String pdbIdAndChain, int length) {
+		chainLengths.put(pdbIdAndChain, length);
+	}
+
+	public static void putSequenceLength(String uniProtId, int length) {
+		sequenceLengths.put(uniProtId, length);
+	}
+
+}
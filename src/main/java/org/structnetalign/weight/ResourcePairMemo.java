@@ -0,0 +1,245 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Remembers scores, or other results of comparing two resources, by the pair of resources that were compared, such as
+ * two PDB chains or two sequences, rather than by the pair of vertices. Several interactors often share a UniProt Id,
+ * and different UniProt Ids can map to the same chain, so this lets an alignment run once per distinct pair of
+ * resources.
+ * <p>
+ * Only pairs with a shared resource can come up again, so only those are remembered. A resource is shared if its
+ * UniProt Id belongs to more than one vertex of the current {@link #startRun(Map) run}, or once it has been seen with
+ * two different UniProt Ids. At most a fixed number of pairs are kept, the oldest being forgotten first, and
+ * {@link #startRun(Map)} forgets everything.
+ * <p>
+ * The pair is unordered, but a score need not be symmetric, so it's always computed with the resources in the same
+ * order, whichever order they were asked for in. Concurrent requests for the same pair wait for a single computation.
+ * A computation that throws is not remembered.
+ *
+ * @author dmyersturnbull
+ */
+public class ResourcePairMemo<T> {
+
+	/**
+	 * Compares two resources.
+	 */
+	public static interface Comparison<T> {
+		/**
+		 * @param reversed
+		 *            Whether to compare the second resource against the first, rather than the first against the second
+		 * @return The score, or null if there isn't one
+		 */
+		T compare(boolean reversed) throws Exception;
+	}
+
+	public static final int DEFAULT_MAX_PAIRS = 100000;
+
+	private static final Set<ResourcePairMemo<?>> instances = Collections
+			.newSetFromMap(new WeakHashMap<ResourcePairMemo<?>, Boolean>());
+
+	/**
+	 * Stands for a resource seen with more than one UniProt Id, which no UniProt Id looks like.
+	 */
+	private static final String SHARED = "*";
+
+	private static volatile Set<String> sharedIds = Collections.emptySet();
+
+	private final ConcurrentMap<String, String> idsByResource = new ConcurrentHashMap<>();
+
+	private final int maxPairs;
+
+	private final Queue<String> order = new ConcurrentLinkedQueue<>(); // oldest first, for forgetting
+
+	private final ConcurrentMap<String, Future<T>> scores = new ConcurrentHashMap<>();
+
+	/**
+	 * Forgets what every ResourcePairMemo remembers, and notes which UniProt Ids belong to more than one vertex of the
+	 * next run.
+	 */
+	public static void startRun(Map<Integer, String> uniProtIds) {
+		Map<String, Integer> counts = new HashMap<>();
+		for (String id : uniProtIds.values()) {
+			if (id == null) continue;
+			Integer n = counts.get(id);
+			counts.put(id, n == null ? 1 : n + 1);
+		}
+		Set<String> shared = new HashSet<>();
+		for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+			if (entry.getValue() > 1) shared.add(entry.getKey());
+		}
+		sharedIds = shared;
+		synchronized (instances) {
+			for (ResourcePairMemo<?> memo : instances) {
+				memo.clear();
+			}
+		}
+	}
+
+	/**
+	 * @return A short, stable stand-in for {@code sequence}, to use as a resource
+	 */
+	public static String digest(String sequence) {
+		MessageDigest md;
+		try {
+			md = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException("SHA-1 isn't available", e); // every JVM must have it
+		}
+		byte[] bytes = md.digest(sequence.getBytes(Charset.forName("UTF-8")));
+		StringBuilder sb = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			sb.append(String.format("%02x", b));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @return A key for the unordered pair of {@code resource1} and {@code resource2}
+	 */
+	static String key(String resource1, String resource2) {
+		if (resource1.compareTo(resource2) > 0) return resource2 + "|" + resource1;
+		return resource1 + "|" + resource2;
+	}
+
+	public ResourcePairMemo() {
+		this(DEFAULT_MAX_PAIRS);
+	}
+
+	/**
+	 * @param maxPairs
+	 *            The most pairs to remember at once
+	 */
+	public ResourcePairMemo(int maxPairs) {
+		if (maxPairs < 1) throw new IllegalArgumentException("A memo must remember at least one pair");
+		this.maxPairs = maxPairs;
+		synchronized (instances) {
+			instances.add(this);
+		}
+	}
+
+	public void clear() {
+		scores.clear();
+		order.clear();
+		idsByResource.clear();
+	}
+
+	/**
+	 * Returns the score of {@code resource1} against {@code resource2}, computing it with {@code comparison} if it
+	 * isn't remembered. The comparison is reversed if {@code resource2} comes first in lexicographical order.
+	 *
+	 * @param uniProtId1
+	 *            The UniProt Id that {@code resource1} was mapped from, or null
+	 * @param uniProtId2
+	 *            The UniProt Id that {@code resource2} was mapped from, or null
+	 * @throws Exception
+	 *             Whatever {@code comparison} threw, here or in the thread that ran it
+	 */
+	public T get(String resource1, String uniProtId1, String resource2, String uniProtId2,
+			final Comparison<T> comparison) throws Exception {
+		final boolean reversed = resource1.compareTo(resource2) > 0;
+		// both, so that each is noted
+		boolean shared = isShared(resource1, uniProtId1) | isShared(resource2, uniProtId2);
+		if (!shared) return comparison.compare(reversed);
+		String key = key(resource1, resource2);
+		while (true) {
+			boolean ours = false;
+			Future<T> future = scores.get(key);
+			if (future == null) {
+				FutureTask<T> task = new FutureTask<>(new Callable<T>() {
+					@Override
+					public T call() throws Exception {
+						return comparison.compare(reversed);
+					}
+				});
+				future = scores.putIfAbsent(key, task);
+				if (future == null) { // we won; everyone else will wait on us
+					future = task;
+					ours = true;
+					order.add(key);
+					forgetOldest();
+					task.run();
+				}
+			}
+			try {
+				return future.get();
+			} catch (ExecutionException e) {
+				scores.remove(key, future); // let a later call try again
+				// the thread computing it was cancelled, but we weren't
+				if (!ours && e.getCause() instanceof InterruptedException) continue;
+				if (e.getCause() instanceof Exception) throw (Exception) e.getCause();
+				throw e;
+			}
+		}
+	}
+
+	public int getMaxPairs() {
+		return maxPairs;
+	}
+
+	/**
+	 * @return The number of pairs that have been computed or are being computed
+	 */
+	public int size() {
+		return scores.size();
+	}
+
+	/**
+	 * Forgets the oldest pairs until no more than {@link #getMaxPairs() maxPairs} are left. Anyone already waiting on
+	 * one still gets its score.
+	 */
+	private void forgetOldest() {
+		while (scores.size() > maxPairs) {
+			String oldest = order.poll();
+			if (oldest == null) return;
+			scores.remove(oldest);
+		}
+	}
+
+	/**
+	 * Notes that {@code resource} was mapped from {@code uniProtId}.
+	 *
+	 * @return Whether more than one vertex maps to {@code resource}, as far as is known
+	 */
+	private boolean isShared(String resource, String uniProtId) {
+		if (uniProtId == null) return SHARED.equals(idsByResource.get(resource));
+		String seen = idsByResource.putIfAbsent(resource, uniProtId);
+		if (SHARED.equals(seen)) return true;
+		if (seen != null && !seen.equals(uniProtId)) {
+			idsByResource.put(resource, SHARED);
+			return true;
+		}
+		return sharedIds.contains(uniProtId);
+	}
+
+}
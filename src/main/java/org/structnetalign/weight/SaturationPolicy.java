@@ -0,0 +1,73 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+/**
+ * Decides when a pair's noisy-OR combined weight is high enough that running more {@link Weight Weights} on it isn't
+ * worthwhile. Since noisy-OR never decreases, a pair is saturated once its weight reaches the {@link #getCeiling()
+ * ceiling}, or once it is at or above every threshold (tau and zeta) that will later be applied to it.
+ * <p>
+ * Note that a saturated pair's weight can still be lower than it would have been if every Weight had run. That only
+ * matters to crossing, which uses the weights themselves.
+ *
+ * @author dmyersturnbull
+ */
+public class SaturationPolicy {
+
+	private double ceiling;
+
+	private double[] thresholds;
+
+	/**
+	 * @return A policy that never saturates a pair before its weight reaches 1
+	 */
+	public static SaturationPolicy never() {
+		return new SaturationPolicy(1);
+	}
+
+	/**
+	 * @param ceiling
+	 *            Stop once a pair's weight reaches this value
+	 * @param thresholds
+	 *            Stop once a pair's weight is at or above all of these, typically tau and zeta
+	 */
+	public SaturationPolicy(double ceiling, double... thresholds) {
+		this.ceiling = ceiling;
+		this.thresholds = thresholds;
+	}
+
+	public double getCeiling() {
+		return ceiling;
+	}
+
+	public boolean isSaturated(double weight) {
+		if (weight >= ceiling) return true;
+		if (thresholds.length == 0) return false;
+		for (double threshold : thresholds) {
+			if (weight < threshold) return false;
+		}
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("SaturationPolicy(ceiling=" + ceiling);
+		for (double threshold : thresholds) {
+			sb.append(", " + threshold);
+		}
+		return sb.append(")").toString();
+	}
+
+}
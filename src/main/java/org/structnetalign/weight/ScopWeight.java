@@ -19,6 +19,7 @@ import java.io.InputStream;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 
@@ -27,6 +28,7 @@ import org.biojava.bio.structure.scop.ScopDatabase;
 import org.biojava.bio.structure.scop.ScopDomain;
 import org.structnetalign.util.BasicScop;
 import org.structnetalign.util.IdentifierMappingFactory;
+import org.structnetalign.weight.WeightResult.Status;
 
 /**
  * A {@link Weight} that uses the <a href="http://scop.berkeley.edu">Structural Classification of Proteins</a> to
@@ -35,10 +37,12 @@ import org.structnetalign.util.IdentifierMappingFactory;
  * @author dmyersturnbull
  * 
  */
-public class ScopWeight implements RelationWeight {
+public class ScopWeight implements RelationWeight, BatchWeight, BoundedWeight {
 
 	public static final Map<ScopCategory, Double> DEFAULT_WEIGHTS = new HashMap<ScopCategory, Double>();
 
+	private ScopDomain preparedDomain1; // shared with the rest of a batch
+
 	private String scopId1;
 
 	private String scopId2;
@@ -73,11 +77,11 @@ public class ScopWeight implements RelationWeight {
 	 * 
 	 * @return
 	 */
-	private static synchronized ScopDatabase getSCOP() {
+	static synchronized ScopDatabase getSCOP() {
 		return BasicScop.getScop();
 	}
 
-	private static int sunIdOfCategory(ScopDomain domain, ScopCategory category) {
+	static int sunIdOfCategory(ScopDomain domain, ScopCategory category) {
 		switch (category) {
 		case Class:
 			return domain.getClassId();
@@ -116,13 +120,48 @@ public class ScopWeight implements RelationWeight {
 	public WeightResult call() throws Exception {
 
 		final ScopDatabase scop = ScopWeight.getSCOP();
-		ScopDomain domain1 = scop.getDomainByScopID(scopId1);
-		if (domain1 == null) throw new WeightException("Could not find SCOP id for " + uniProtId1, v1, v2, uniProtId1,
-				uniProtId2, false, true);
+		ScopDomain domain1 = preparedDomain1 != null ? preparedDomain1 : scop.getDomainByScopID(scopId1);
+		if (domain1 == null) return WeightResult.failed(Status.MISSING_INPUT, "Could not find SCOP domain " + scopId1
+				+ " for " + uniProtId1, v1, v2, uniProtId1, uniProtId2, this.getClass());
 		ScopDomain domain2 = scop.getDomainByScopID(scopId2);
-		if (domain2 == null) throw new WeightException("Could not find SCOP id for " + uniProtId2, v1, v2, uniProtId1,
-				uniProtId2, false, true);
+		if (domain2 == null) return WeightResult.failed(Status.MISSING_INPUT, "Could not find SCOP domain " + scopId2
+				+ " for " + uniProtId2, v1, v2, uniProtId1, uniProtId2, this.getClass());
+
+		return new WeightResult(score(domain1, domain2), v1, v2, uniProtId1, uniProtId2, this.getClass());
+
+	}
+
+	@Override
+	public String getBatchKey() {
+		return scopId1;
+	}
+
+	/**
+	 * The weight itself, since looking up two domains is cheap. Domains in different classes get 0.
+	 */
+	@Override
+	public double upperBound() {
+		final ScopDatabase scop = ScopWeight.getSCOP();
+		ScopDomain domain1 = preparedDomain1 != null ? preparedDomain1 : scop.getDomainByScopID(scopId1);
+		ScopDomain domain2 = scop.getDomainByScopID(scopId2);
+		if (domain1 == null || domain2 == null) return 1; // let it fail on its own
+		return score(domain1, domain2);
+	}
+
+	/**
+	 * Looks up the first domain once for every Weight in {@code batch} that shares it.
+	 */
+	@Override
+	public void prepareBatch(List<? extends Weight> batch) throws Exception {
+		ScopDomain domain1 = ScopWeight.getSCOP().getDomainByScopID(scopId1);
+		if (domain1 == null) return; // let each Weight fail on its own
+		for (Weight weight : batch) {
+			ScopWeight sw = (ScopWeight) weight;
+			if (scopId1.equals(sw.scopId1)) sw.preparedDomain1 = domain1;
+		}
+	}
 
+	private double score(ScopDomain domain1, ScopDomain domain2) {
 		// we need to iterate in reverse order (most specific first)
 		ScopCategory[] categories = ScopCategory.values();
 		Collections.reverse(Arrays.asList(categories));
@@ -130,12 +169,24 @@ public class ScopWeight implements RelationWeight {
 			int categoryId1 = sunIdOfCategory(domain1, category);
 			int categoryId2 = sunIdOfCategory(domain2, category);
 			if (categoryId1 == categoryId2 && weights.get(category) != null) {
-				return new WeightResult(weights.get(category), v1, v2, uniProtId1, uniProtId2, this.getClass());
+				return weights.get(category);
 			}
 		}
+		return 0;
+	}
 
-		return new WeightResult(0.0, v1, v2, uniProtId1, uniProtId2, this.getClass());
-
+	/**
+	 * Like {@link #setIds(int, int, String, String)}, but with SCOP Ids that were already mapped, such as by
+	 * {@link VertexCapabilities}.
+	 */
+	public void setIds(int v1, int v2, String uniProtId1, String uniProtId2, String scopId1, String scopId2) {
+		this.v1 = v1;
+		this.v2 = v2;
+		this.uniProtId1 = uniProtId1;
+		this.uniProtId2 = uniProtId2;
+		preparedDomain1 = null;
+		this.scopId1 = scopId1;
+		this.scopId2 = scopId2;
 	}
 
 	@Override
@@ -145,12 +196,13 @@ public class ScopWeight implements RelationWeight {
 		this.v2 = v2;
 		this.uniProtId1 = uniProtId1;
 		this.uniProtId2 = uniProtId2;
+		preparedDomain1 = null;
 
 		scopId1 = IdentifierMappingFactory.getMapping().uniProtToScop(uniProtId1);
-		if (scopId1 == null) throw new WeightException("Could not find SCOP id for " + uniProtId1, v1, v2, uniProtId1,
+		if (scopId1 == null) throw WeightException.expected("Could not find SCOP Id for " + uniProtId1, v1, v2, uniProtId1,
 				uniProtId2, false, true);
 		scopId2 = IdentifierMappingFactory.getMapping().uniProtToScop(uniProtId2);
-		if (scopId2 == null) throw new WeightException("Could not find SCOP id for " + uniProtId2, v1, v2, uniProtId1,
+		if (scopId2 == null) throw WeightException.expected("Could not find SCOP Id for " + uniProtId2, v1, v2, uniProtId1,
 				uniProtId2, false, true);
 
 	}
@@ -0,0 +1,290 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.biojava3.core.sequence.ProteinSequence;
+
+/**
+ * Greedily clusters the sequences of a network at an identity threshold, in the manner of <a
+ * href="http://bioinformatics.oxfordjournals.org/content/22/13/1658">CD-HIT</a>, so that {@link NeedlemanWunschWeight}
+ * only needs to align cluster representatives. Sequences are taken from longest to shortest; each becomes a member of
+ * the first representative it is at least {@code identity} identical to, or a new representative if there is none.
+ * Representatives are only aligned against a sequence if they share enough words of length {@code wordLength} to
+ * possibly reach the threshold.
+ * <p>
+ * Treating {@code 1 - identity} as a distance, the identity of two members differs from that of their representatives
+ * by at most {@link #getErrorBound(int, int)}, which is never more than {@code 2 * (1 - identity)}.
+ *
+ * @author dmyersturnbull
+ */
+public class SequenceClusters {
+
+	public static final double DEFAULT_IDENTITY = 0.9;
+
+	private static final String AMINO_ACIDS = "ACDEFGHIKLMNPQRSTVWY"; // anything else is one more letter
+
+	private static final Logger logger = LogManager.getLogger("org.structnetalign");
+
+	private final double identity;
+
+	private final Map<Integer, Double> identities = new HashMap<>();
+
+	private int nClusters;
+
+	private final Map<Integer, Integer> representatives = new HashMap<>();
+
+	private final Map<Integer, ProteinSequence> sequences = new HashMap<>();
+
+	private final int wordLength;
+
+	/**
+	 * @return The word length CD-HIT recommends for {@code identity}
+	 */
+	public static int defaultWordLength(double identity) {
+		if (identity >= 0.7) return 5;
+		if (identity >= 0.6) return 4;
+		if (identity >= 0.5) return 3;
+		return 2;
+	}
+
+	public SequenceClusters() {
+		this(DEFAULT_IDENTITY);
+	}
+
+	public SequenceClusters(double identity) {
+		this(identity, defaultWordLength(identity));
+	}
+
+	/**
+	 * @param identity
+	 *            The minimum fractional identity of a member to its representative
+	 * @param wordLength
+	 *            The length of the words used to screen representatives, from 1 to 7
+	 */
+	public SequenceClusters(double identity, int wordLength) {
+		if (identity <= 0 || identity > 1) throw new IllegalArgumentException("The identity must be in (0, 1]");
+		if (wordLength < 1 || wordLength > 7) throw new IllegalArgumentException("The word length must be from 1 to 7");
+		this.identity = identity;
+		this.wordLength = wordLength;
+	}
+
+	/**
+	 * Fetches the sequence of every vertex in {@code uniProtIds} and clusters them. Vertices whose sequences can't be
+	 * fetched are left out, and are aligned as usual.
+	 */
+	public void cluster(Map<Integer, String> uniProtIds) {
+		Set<String> ids = new LinkedHashSet<>(uniProtIds.values());
+		ids.remove(null);
+		Map<String, ProteinSequence> fetched;
+		try {
+			fetched = SequenceFetcher.getInstance().getSequences(ids);
+		} catch (IOException e) {
+			// a batch failed, so find out which ones we can get
+			logger.warn("Could not fetch every sequence to cluster", e);
+			fetched = new HashMap<>();
+			for (String id : ids) {
+				try {
+					fetched.put(id, SequenceFetcher.getInstance().getSequence(id));
+				} catch (IOException e1) {
+					logger.debug("Not clustering " + id + " because its sequence couldn't be fetched", e1);
+				}
+			}
+		}
+		Map<Integer, ProteinSequence> byVertex = new HashMap<>();
+		for (Map.Entry<Integer, String> entry : uniProtIds.entrySet()) {
+			ProteinSequence sequence = fetched.get(entry.getValue());
+			if (sequence != null) byVertex.put(entry.getKey(), sequence);
+		}
+		clusterSequences(byVertex);
+	}
+
+	/**
+	 * Clusters the vertices in {@code sequences} by their sequences.
+	 */
+	public void clusterSequences(Map<Integer, ProteinSequence> sequences) {
+
+		List<Integer> vertices = new ArrayList<>(sequences.keySet());
+		final Map<Integer, ProteinSequence> lookup = sequences;
+		Collections.sort(vertices, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer o1, Integer o2) {
+				int c = Integer.compare(lookup.get(o2).getLength(), lookup.get(o1).getLength());
+				if (c != 0) return c;
+				return o1.compareTo(o2);
+			}
+		});
+
+		List<Integer> reps = new ArrayList<>();
+		Map<String, Integer> repsByString = new HashMap<>();
+		// word -> {index in reps, count in that rep}
+		Map<Integer, List<int[]>> index = new HashMap<>();
+		int nAligned = 0;
+
+		for (int vertex : vertices) {
+
+			ProteinSequence sequence = sequences.get(vertex);
+			String string = sequence.getSequenceAsString();
+			this.sequences.put(vertex, sequence);
+
+			// identical sequences don't need a screen or an alignment
+			Integer same = repsByString.get(string);
+			if (same != null) {
+				representatives.put(vertex, same);
+				identities.put(vertex, 1.0);
+				continue;
+			}
+
+			Map<Integer, Integer> words = countWords(string);
+
+			// count the words shared with each representative
+			int[] shared = new int[reps.size()];
+			for (Map.Entry<Integer, Integer> word : words.entrySet()) {
+				List<int[]> postings = index.get(word.getKey());
+				if (postings == null) continue;
+				for (int[] posting : postings) {
+					shared[posting[0]] += Math.min(word.getValue(), posting[1]);
+				}
+			}
+
+			// a mismatched residue breaks at most wordLength words
+			int length = string.length();
+			double minShared = length - wordLength + 1 - wordLength * (1 - identity) * length;
+			List<Integer> candidates = new ArrayList<>();
+			for (int i = 0; i < shared.length; i++) {
+				// a longer representative has at least this many unmatched residues
+				int repLength = this.sequences.get(reps.get(i)).getLength();
+				if (shared[i] >= minShared && length >= identity * repLength) candidates.add(i);
+			}
+			final int[] sharedCounts = shared;
+			Collections.sort(candidates, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer o1, Integer o2) {
+					int c = Integer.compare(sharedCounts[o2], sharedCounts[o1]);
+					if (c != 0) return c;
+					return o1.compareTo(o2);
+				}
+			});
+
+			Integer found = null;
+			for (int i : candidates) {
+				int rep = reps.get(i);
+				double value = NeedlemanWunschWeight.identity(this.sequences.get(rep), sequence);
+				nAligned++;
+				if (value >= identity) {
+					representatives.put(vertex, rep);
+					identities.put(vertex, value);
+					found = rep;
+					break;
+				}
+			}
+
+			if (found == null) {
+				int i = reps.size();
+				reps.add(vertex);
+				repsByString.put(string, vertex);
+				representatives.put(vertex, vertex);
+				identities.put(vertex, 1.0);
+				for (Map.Entry<Integer, Integer> word : words.entrySet()) {
+					List<int[]> postings = index.get(word.getKey());
+					if (postings == null) {
+						postings = new ArrayList<>();
+						index.put(word.getKey(), postings);
+					}
+					postings.add(new int[] { i, word.getValue() });
+				}
+			}
+		}
+
+		nClusters = reps.size();
+		logger.info("Clustered " + vertices.size() + " sequences into " + nClusters + " clusters at "
+				+ (int) (identity * 100) + "% identity with " + nAligned + " alignments");
+	}
+
+	/**
+	 * @return Whether {@code vertex} was clustered
+	 */
+	public boolean contains(int vertex) {
+		return representatives.containsKey(vertex);
+	}
+
+	/**
+	 * @return The most that the identity of {@code a} and {@code b} can differ from the identity of their
+	 *         representatives
+	 */
+	public double getErrorBound(int a, int b) {
+		return 1 - identities.get(a) + 1 - identities.get(b);
+	}
+
+	public double getIdentity() {
+		return identity;
+	}
+
+	/**
+	 * @return The fractional identity of {@code vertex} to its representative
+	 */
+	public double getIdentity(int vertex) {
+		return identities.get(vertex);
+	}
+
+	public int getNClusters() {
+		return nClusters;
+	}
+
+	/**
+	 * @return The vertex that represents the cluster of {@code vertex}, which may be {@code vertex} itself
+	 */
+	public int getRepresentative(int vertex) {
+		return representatives.get(vertex);
+	}
+
+	public ProteinSequence getSequence(int vertex) {
+		return sequences.get(vertex);
+	}
+
+	public int getWordLength() {
+		return wordLength;
+	}
+
+	/**
+	 * @return The number of times each word occurs in {@code sequence}, by its code in base 21
+	 */
+	private Map<Integer, Integer> countWords(String sequence) {
+		Map<Integer, Integer> words = new HashMap<>();
+		for (int i = 0; i + wordLength <= sequence.length(); i++) {
+			int code = 0;
+			for (int j = i; j < i + wordLength; j++) {
+				int letter = AMINO_ACIDS.indexOf(Character.toUpperCase(sequence.charAt(j)));
+				if (letter < 0) letter = AMINO_ACIDS.length();
+				code = code * (AMINO_ACIDS.length() + 1) + letter;
+			}
+			Integer count = words.get(code);
+			words.put(code, count == null ? 1 : count + 1);
+		}
+		return words;
+	}
+
+}
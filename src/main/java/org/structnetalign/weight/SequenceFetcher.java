@@ -0,0 +1,225 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.biojava3.core.sequence.ProteinSequence;
+import org.biojava3.core.sequence.io.FastaReaderHelper;
+
+/**
+ * Gets <a href="http://uniprot.org">UniProt</a> sequences through a {@link RemoteFetcher}. Each sequence is fetched
+ * at most once per run: concurrent requests for the same Id wait for a single download, and parsed sequences are
+ * remembered. When a batch URL is configured, Ids that are missing are fetched together in a single request of up to
+ * {@link #getBatchSize() batchSize} Ids.
+ * <p>
+ * The URLs are read from {@code databases.properties}. The batch URL's {@code %s} is replaced by the Ids joined with
+ * {@code uniprot_batch_separator}.
+ *
+ * @author dmyersturnbull
+ */
+public class SequenceFetcher {
+
+	public static final int DEFAULT_BATCH_SIZE = 100;
+
+	private static String BATCH_SEPARATOR;
+
+	private static String BATCH_URL;
+
+	private static SequenceFetcher instance;
+
+	private static final Logger logger = LogManager.getLogger("org.structnetalign");
+
+	private static String URL;
+
+	static {
+		Properties props = new Properties();
+		ClassLoader loader = Thread.currentThread().getContextClassLoader();
+		InputStream stream = loader.getResourceAsStream("databases.properties");
+		try {
+			props.load(stream);
+		} catch (IOException e) {
+			throw new RuntimeException("Couldn't open databases property file", e);
+		}
+		URL = props.getProperty("uniprot_url");
+		BATCH_URL = props.getProperty("uniprot_batch_url");
+		BATCH_SEPARATOR = props.getProperty("uniprot_batch_separator", ",");
+	}
+
+	private int batchSize = DEFAULT_BATCH_SIZE;
+
+	private final String batchSeparator;
+
+	private final String batchUrl;
+
+	private final RemoteFetcher fetcher;
+
+	private final ConcurrentMap<String, SettableFuture<ProteinSequence>> sequences = new ConcurrentHashMap<>();
+
+	private final String url;
+
+	public static synchronized SequenceFetcher getInstance() {
+		if (instance == null) setInstance(new SequenceFetcher());
+		return instance;
+	}
+
+	public static synchronized void setInstance(SequenceFetcher instance) {
+		SequenceFetcher.instance = instance;
+	}
+
+	public SequenceFetcher() {
+		this(RemoteFetcher.getInstance(), URL, BATCH_URL, BATCH_SEPARATOR);
+	}
+
+	/**
+	 * @param url
+	 *            The URL of a single sequence, with {@code %s} for the UniProt Id
+	 * @param batchUrl
+	 *            The URL of several sequences, with {@code %s} for the joined Ids; null to fetch one at a time
+	 * @param batchSeparator
+	 *            Joins Ids in {@code batchUrl}
+	 */
+	public SequenceFetcher(RemoteFetcher fetcher, String url, String batchUrl, String batchSeparator) {
+		this.fetcher = fetcher;
+		this.url = url;
+		this.batchUrl = batchUrl;
+		this.batchSeparator = batchSeparator;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * @return The sequence of {@code uniProtId}
+	 * @throws IOException
+	 *             If the sequence couldn't be fetched or wasn't in the response
+	 */
+	public ProteinSequence getSequence(String uniProtId) throws IOException {
+		List<String> ids = new ArrayList<>(1);
+		ids.add(uniProtId);
+		return getSequences(ids).get(uniProtId);
+	}
+
+	/**
+	 * Gets every sequence in {@code uniProtIds}, fetching the ones nobody has fetched yet in as few requests as
+	 * possible.
+	 *
+	 * @return A map from each UniProt Id to its sequence
+	 * @throws IOException
+	 *             If any sequence couldn't be fetched
+	 */
+	public Map<String, ProteinSequence> getSequences(Collection<String> uniProtIds) throws IOException {
+		Map<String, SettableFuture<ProteinSequence>> promises = new LinkedHashMap<>();
+		List<String> mine = new ArrayList<>();
+		for (String id : uniProtIds) {
+			if (promises.containsKey(id)) continue;
+			SettableFuture<ProteinSequence> promise = new SettableFuture<>();
+			SettableFuture<ProteinSequence> existing = sequences.putIfAbsent(id, promise);
+			if (existing == null) {
+				mine.add(id);
+				existing = promise;
+			}
+			promises.put(id, existing);
+		}
+		for (int i = 0; i < mine.size(); i += batchSize) {
+			List<String> batch = mine.subList(i, Math.min(i + batchSize, mine.size()));
+			load(batch, promises);
+		}
+		Map<String, ProteinSequence> found = new LinkedHashMap<>();
+		for (Map.Entry<String, SettableFuture<ProteinSequence>> entry : promises.entrySet()) {
+			try {
+				found.put(entry.getKey(), entry.getValue().get());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for the sequence of " + entry.getKey());
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+				throw new IOException("Could not get the sequence of " + entry.getKey(), e.getCause());
+			}
+		}
+		return found;
+	}
+
+	public void setBatchSize(int batchSize) {
+		if (batchSize < 1) throw new IllegalArgumentException("The batch size must be at least 1");
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Fetches {@code ids} and completes their promises. A promise that fails is also forgotten, so the Id can be
+	 * retried later.
+	 */
+	private void load(List<String> ids, Map<String, SettableFuture<ProteinSequence>> promises) {
+		Map<String, ProteinSequence> parsed;
+		try {
+			if (batchUrl != null && ids.size() > 1) {
+				StringBuilder sb = new StringBuilder();
+				for (String id : ids) {
+					if (sb.length() > 0) sb.append(batchSeparator);
+					sb.append(id);
+				}
+				logger.debug("Fetching " + ids.size() + " sequences in one request");
+				parsed = parse(fetcher.fetch(String.format(batchUrl, sb.toString()), fetcher.getTimeout(), false));
+			} else {
+				parsed = new LinkedHashMap<>();
+				for (String id : ids) {
+					parsed.putAll(parse(fetcher.fetch(String.format(url, id), fetcher.getTimeout(), false)));
+				}
+			}
+		} catch (IOException | RuntimeException e) {
+			for (String id : ids) {
+				promises.get(id).setException(e);
+				sequences.remove(id, promises.get(id));
+			}
+			return;
+		}
+		for (String id : ids) {
+			ProteinSequence sequence = parsed.get(id);
+			if (sequence != null) {
+				promises.get(id).set(sequence);
+			} else {
+				promises.get(id).setException(new IOException("UniProt returned no sequence for " + id));
+				sequences.remove(id, promises.get(id));
+			}
+		}
+	}
+
+	private Map<String, ProteinSequence> parse(String fasta) throws IOException {
+		try (InputStream stream = new ByteArrayInputStream(fasta.getBytes(Charset.forName("UTF-8")))) {
+			return FastaReaderHelper.readFastaProteinSequence(stream); // why does this throw Exception?
+		} catch (IOException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IOException("Could not parse FASTA", e);
+		}
+	}
+
+}
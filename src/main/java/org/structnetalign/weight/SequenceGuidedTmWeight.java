@@ -0,0 +1,349 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.LUDecomposition;
+import org.apache.commons.math3.linear.MatrixUtils;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.apache.commons.math3.linear.SingularValueDecomposition;
+import org.biojava.bio.structure.Atom;
+import org.biojava.bio.structure.StructureException;
+import org.biojava.bio.structure.StructureTools;
+import org.biojava3.alignment.template.SequencePair;
+import org.biojava3.core.sequence.ProteinSequence;
+import org.biojava3.core.sequence.compound.AminoAcidCompound;
+import org.structnetalign.util.IdentifierMappingFactory;
+import org.structnetalign.weight.WeightResult.Status;
+
+/**
+ * A {@link Weight} that estimates the TM-score of two structures without a structural search. The sequences of their
+ * chains are aligned with the parameters of {@link NeedlemanWunschWeight}, the alpha carbons of the aligned residues
+ * are superposed with the Kabsch algorithm, and the TM-score of that superposition is the weight. The superposition is
+ * then refined a few times using only the pairs closer than the TM-score's distance scale, as the TM-score program
+ * does. Past the sequence alignment, the cost is linear in the length of the alignment.
+ * <p>
+ * A sequence alignment only finds the right residue pairs when the sequences are similar enough, so pairs whose
+ * identity is below {@link #DEFAULT_MIN_IDENTITY} fail with {@link Status#NO_SCORE}, leaving them to {@link CeWeight}.
+ * Like CeWeight, the TM-score is normalized by the shorter chain.
+ *
+ * @author dmyersturnbull
+ */
+public class SequenceGuidedTmWeight implements AlignmentWeight, BatchWeight {
+
+	/**
+	 * The lowest fractional sequence identity at which the sequence alignment is trusted.
+	 */
+	public static final double DEFAULT_MIN_IDENTITY;
+
+	/**
+	 * How many times the superposition is refined.
+	 */
+	public static final int DEFAULT_REFINEMENTS;
+
+	/**
+	 * TM-score, fractional identity, and number of aligned residues by pair of PDB chains.
+	 */
+	private static final ResourcePairMemo<double[]> MEMO = new ResourcePairMemo<>();
+
+	static {
+		Properties props = new Properties();
+		ClassLoader loader = Thread.currentThread().getContextClassLoader();
+		InputStream stream = loader.getResourceAsStream("weight/seq_tm_weights.properties");
+		try {
+			props.load(stream);
+		} catch (IOException e) {
+			throw new RuntimeException("Couldn't open sequence-guided TM-score property file", e);
+		}
+		DEFAULT_MIN_IDENTITY = Double.parseDouble(props.getProperty("min_identity"));
+		DEFAULT_REFINEMENTS = Integer.parseInt(props.getProperty("refinements"));
+	}
+
+	private final double minIdentity;
+
+	private String pdbIdAndChain1;
+	private String pdbIdAndChain2;
+
+	private Atom[] preparedCa1; // shared with the rest of a batch
+
+	private final int refinements;
+
+	private String uniProtId1;
+	private String uniProtId2;
+
+	private int v1;
+	private int v2;
+
+	/**
+	 * @return The sequence of the residues that {@code ca} belong to, with X for anything unusual
+	 */
+	static ProteinSequence sequenceOf(Atom[] ca) {
+		StringBuilder sb = new StringBuilder(ca.length);
+		for (Atom atom : ca) {
+			Character letter = StructureTools.get1LetterCode(atom.getGroup().getPDBName());
+			sb.append(letter == null ? 'X' : letter);
+		}
+		return new ProteinSequence(sb.toString());
+	}
+
+	/**
+	 * Superposes the points in {@code y} onto the corresponding points in {@code x}, using only the pairs in
+	 * {@code use}, with the Kabsch algorithm.
+	 *
+	 * @return Every point in {@code y}, moved
+	 */
+	static double[][] superpose(double[][] x, double[][] y, boolean[] use) {
+		double[] xc = new double[3];
+		double[] yc = new double[3];
+		int n = 0;
+		for (int i = 0; i < x.length; i++) {
+			if (!use[i]) continue;
+			for (int j = 0; j < 3; j++) {
+				xc[j] += x[i][j];
+				yc[j] += y[i][j];
+			}
+			n++;
+		}
+		for (int j = 0; j < 3; j++) {
+			xc[j] /= n;
+			yc[j] /= n;
+		}
+		// the covariance of the centered points
+		RealMatrix h = new Array2DRowRealMatrix(3, 3);
+		for (int i = 0; i < x.length; i++) {
+			if (!use[i]) continue;
+			for (int j = 0; j < 3; j++) {
+				for (int k = 0; k < 3; k++) {
+					h.addToEntry(j, k, (y[i][j] - yc[j]) * (x[i][k] - xc[k]));
+				}
+			}
+		}
+		SingularValueDecomposition svd = new SingularValueDecomposition(h);
+		RealMatrix u = svd.getU();
+		RealMatrix v = svd.getV();
+		// don't reflect
+		RealMatrix d = MatrixUtils.createRealIdentityMatrix(3);
+		if (new LUDecomposition(v.multiply(u.transpose())).getDeterminant() < 0) d.setEntry(2, 2, -1);
+		RealMatrix rotation = v.multiply(d).multiply(u.transpose());
+		double[][] moved = new double[y.length][];
+		for (int i = 0; i < y.length; i++) {
+			double[] centered = new double[3];
+			for (int j = 0; j < 3; j++) {
+				centered[j] = y[i][j] - yc[j];
+			}
+			moved[i] = rotation.operate(centered);
+			for (int j = 0; j < 3; j++) {
+				moved[i][j] += xc[j];
+			}
+		}
+		return moved;
+	}
+
+	/**
+	 * @return The best TM-score of {@code y} superposed onto {@code x}, where {@code x[i]} and {@code y[i]} are aligned
+	 *         residues, and {@code length} is the length to normalize by
+	 */
+	static double tmScore(double[][] x, double[][] y, int length, int refinements) {
+		double d0 = Math.max(0.5, 1.24 * Math.cbrt(length - 15) - 1.8);
+		boolean[] use = new boolean[x.length];
+		Arrays.fill(use, true);
+		double best = 0;
+		for (int round = 0; round <= refinements; round++) {
+			double[][] moved = superpose(x, y, use);
+			double sum = 0;
+			boolean[] close = new boolean[x.length];
+			int nClose = 0;
+			for (int i = 0; i < x.length; i++) {
+				double d2 = 0;
+				for (int j = 0; j < 3; j++) {
+					d2 += (x[i][j] - moved[i][j]) * (x[i][j] - moved[i][j]);
+				}
+				sum += 1 / (1 + d2 / (d0 * d0));
+				if (d2 < d0 * d0) {
+					close[i] = true;
+					nClose++;
+				}
+			}
+			best = Math.max(best, sum / length);
+			if (nClose < 3 || Arrays.equals(close, use)) break; // nothing new to superpose
+			use = close;
+		}
+		return best;
+	}
+
+	public SequenceGuidedTmWeight() {
+		this(DEFAULT_MIN_IDENTITY, DEFAULT_REFINEMENTS);
+	}
+
+	/**
+	 * @param minIdentity
+	 *            Pairs whose fractional sequence identity is lower fail
+	 * @param refinements
+	 *            How many times to superpose again using only the pairs that are already close
+	 */
+	public SequenceGuidedTmWeight(double minIdentity, int refinements) {
+		this.minIdentity = minIdentity;
+		this.refinements = refinements;
+	}
+
+	@Override
+	public double assignWeight(int v1, int v2, String uniProtId1, String uniProtId2) throws Exception {
+		setIds(v1, v2, uniProtId1, uniProtId2);
+		return call().getWeight();
+	}
+
+	@Override
+	public WeightResult call() throws Exception {
+		if (pdbIdAndChain1.equals(pdbIdAndChain2)) { // a chain superposes perfectly with itself
+			return new WeightResult(1, v1, v2, uniProtId1, uniProtId2, this.getClass());
+		}
+		double[] result = MEMO.get(pdbIdAndChain1, uniProtId1, pdbIdAndChain2, uniProtId2,
+				new ResourcePairMemo.Comparison<double[]>() {
+					@Override
+					public double[] compare(boolean reversed) throws Exception {
+						return reversed ? compute(pdbIdAndChain2, uniProtId2, null, pdbIdAndChain1, uniProtId1)
+								: compute(pdbIdAndChain1, uniProtId1, preparedCa1, pdbIdAndChain2, uniProtId2);
+					}
+				});
+		if (result[1] < minIdentity) return WeightResult.failed(Status.NO_SCORE, "The sequences of " + pdbIdAndChain1
+				+ " and " + pdbIdAndChain2 + " are too different to guide a superposition", v1, v2, uniProtId1,
+				uniProtId2, this.getClass());
+		if (result[0] == -1) return WeightResult.failed(Status.NO_SCORE, "Too few residues of " + pdbIdAndChain1
+				+ " and " + pdbIdAndChain2 + " were aligned", v1, v2, uniProtId1, uniProtId2, this.getClass());
+		return new WeightResult(result[0], v1, v2, uniProtId1, uniProtId2, this.getClass());
+	}
+
+	@Override
+	public String getBatchKey() {
+		return pdbIdAndChain1;
+	}
+
+	public String getPdbIdAndChain1() {
+		return pdbIdAndChain1;
+	}
+
+	public String getPdbIdAndChain2() {
+		return pdbIdAndChain2;
+	}
+
+	/**
+	 * Loads the first structure once for every Weight in {@code batch} that shares it.
+	 */
+	@Override
+	public void prepareBatch(List<? extends Weight> batch) throws Exception {
+		Atom[] ca1 = AtomCacheFactory.getAtoms(pdbIdAndChain1);
+		for (Weight weight : batch) {
+			SequenceGuidedTmWeight tm = (SequenceGuidedTmWeight) weight;
+			if (pdbIdAndChain1.equals(tm.pdbIdAndChain1)) tm.preparedCa1 = ca1;
+		}
+	}
+
+	/**
+	 * Like {@link #setIds(int, int, String, String)}, but with PDB Ids that were already mapped, such as by
+	 * {@link VertexCapabilities}.
+	 */
+	public void setIds(int v1, int v2, String uniProtId1, String uniProtId2, String pdbIdAndChain1,
+			String pdbIdAndChain2) {
+		this.v1 = v1;
+		this.v2 = v2;
+		this.uniProtId1 = uniProtId1;
+		this.uniProtId2 = uniProtId2;
+		preparedCa1 = null;
+		this.pdbIdAndChain1 = pdbIdAndChain1;
+		this.pdbIdAndChain2 = pdbIdAndChain2;
+	}
+
+	@Override
+	public void setIds(int v1, int v2, String uniProtId1, String uniProtId2) throws WeightException {
+		this.v1 = v1;
+		this.v2 = v2;
+		this.uniProtId1 = uniProtId1;
+		this.uniProtId2 = uniProtId2;
+		preparedCa1 = null;
+		pdbIdAndChain1 = IdentifierMappingFactory.getMapping().uniProtToPdb(uniProtId1);
+		if (pdbIdAndChain1 == null) throw WeightException.expected("Could not find PDB Id for " + uniProtId1, v1, v2,
+				uniProtId1, uniProtId2, true, true);
+		pdbIdAndChain2 = IdentifierMappingFactory.getMapping().uniProtToPdb(uniProtId2);
+		if (pdbIdAndChain2 == null) throw WeightException.expected("Could not find PDB Id for " + uniProtId2, v1, v2,
+				uniProtId1, uniProtId2, true, true);
+	}
+
+	/**
+	 * Aligns {@code name1} against {@code name2}, which may be this weight's chains in either order.
+	 *
+	 * @param prepared
+	 *            The CA atoms of {@code name1} if they're already loaded, or null
+	 * @return The TM-score, or -1 if too few residues were aligned; the fractional identity; and the number of aligned
+	 *         residues
+	 */
+	private double[] compute(String name1, String id1, Atom[] prepared, String name2, String id2) throws Exception {
+		AlignmentArtifacts artifacts = AlignmentArtifacts.forKind("seqtm", NeedlemanWunschWeight.getParameters()
+				+ " refinements=" + refinements, 3);
+		if (artifacts != null) {
+			double[] stored = artifacts.get(name1, name2);
+			if (stored != null) return stored;
+		}
+		Atom[] ca1 = prepared, ca2;
+		if (ca1 == null) {
+			try {
+				ca1 = AtomCacheFactory.getAtoms(name1);
+			} catch (IOException | StructureException e) {
+				throw new WeightException("Could not parse structure for PDB entry " + name1 + " for " + id1, e, v1,
+						v2, uniProtId1, uniProtId2, true, true);
+			}
+		}
+		try {
+			ca2 = AtomCacheFactory.getAtoms(name2);
+		} catch (IOException | StructureException e) {
+			throw new WeightException("Could not parse structure for PDB entry " + name2 + " for " + id2, e, v1, v2,
+					uniProtId1, uniProtId2, true, true);
+		}
+		ResidueCounts.putChainLength(name1, ca1.length);
+		ResidueCounts.putChainLength(name2, ca2.length);
+		if (Thread.interrupted()) throw new InterruptedException("Cancelled before aligning " + name1 + " against "
+				+ name2);
+
+		SequencePair<ProteinSequence, AminoAcidCompound> pair = NeedlemanWunschWeight.alignPair(sequenceOf(ca1),
+				sequenceOf(ca2));
+		double identity = NeedlemanWunschWeight.identity(pair);
+
+		// the coordinates of each pair of aligned residues
+		double[][] x = new double[pair.getLength()][];
+		double[][] y = new double[pair.getLength()][];
+		int n = 0;
+		for (int i = 1; i <= pair.getLength(); i++) {
+			if (pair.getQuery().isGap(i) || pair.getTarget().isGap(i)) continue;
+			x[n] = ca1[pair.getIndexInQueryAt(i) - 1].getCoords();
+			y[n] = ca2[pair.getIndexInTargetAt(i) - 1].getCoords();
+			n++;
+		}
+
+		double tmScore = -1;
+		if (n >= 3) {
+			tmScore = tmScore(Arrays.copyOf(x, n), Arrays.copyOf(y, n), Math.min(ca1.length, ca2.length),
+					refinements);
+		}
+		double[] result = new double[] { tmScore, identity, n };
+		if (artifacts != null) artifacts.put(name1, name2, result);
+		return result;
+	}
+
+}
@@ -0,0 +1,100 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A Future that is completed by whoever computes its value, rather than by running a task. Only the first of
+ * {@link #set(Object)}, {@link #setException(Throwable)}, and {@link #cancel(boolean)} has any effect.
+ *
+ * @author dmyersturnbull
+ */
+public class SettableFuture<V> implements Future<V> {
+
+	private boolean cancelled;
+
+	private final CountDownLatch done = new CountDownLatch(1);
+
+	private Throwable failure;
+
+	private V value;
+
+	/**
+	 * Completes this Future as cancelled. There's nothing to interrupt, so {@code mayInterruptIfRunning} is ignored.
+	 */
+	@Override
+	public synchronized boolean cancel(boolean mayInterruptIfRunning) {
+		if (isDone()) return false;
+		cancelled = true;
+		done.countDown();
+		return true;
+	}
+
+	@Override
+	public V get() throws InterruptedException, ExecutionException {
+		done.await();
+		return report();
+	}
+
+	@Override
+	public V get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+		if (!done.await(timeout, unit)) throw new TimeoutException();
+		return report();
+	}
+
+	@Override
+	public synchronized boolean isCancelled() {
+		return cancelled;
+	}
+
+	@Override
+	public boolean isDone() {
+		return done.getCount() == 0;
+	}
+
+	/**
+	 * @return Whether this call completed the Future
+	 */
+	public synchronized boolean set(V value) {
+		if (isDone()) return false;
+		this.value = value;
+		done.countDown();
+		return true;
+	}
+
+	/**
+	 * @return Whether this call completed the Future
+	 */
+	public synchronized boolean setException(Throwable failure) {
+		if (failure == null) throw new IllegalArgumentException("The failure can't be null");
+		if (isDone()) return false;
+		this.failure = failure;
+		done.countDown();
+		return true;
+	}
+
+	private synchronized V report() throws ExecutionException {
+		if (cancelled) throw new CancellationException();
+		if (failure != null) throw new ExecutionException(failure);
+		return value;
+	}
+
+}
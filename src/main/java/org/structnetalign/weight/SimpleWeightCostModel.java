@@ -0,0 +1,72 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+/**
+ * A {@link WeightCostModel} based on the sizes of the proteins involved:
+ * <ul>
+ * <li>{@link CeWeight}: the product of the numbers of residues in the two structures</li>
+ * <li>{@link NeedlemanWunschWeight}: the product of the sequence lengths</li>
+ * <li>{@link SequenceGuidedTmWeight}: the product of the numbers of residues, for its sequence alignment</li>
+ * <li>{@link PrecalculatedFatcatWeight}: the sum of the numbers of residues, since it only downloads and rescores</li>
+ * <li>Anything else: a small constant, since {@link RelationWeight RelationWeights} are database lookups</li>
+ * </ul>
+ * Sizes come from {@link ResidueCounts}; unknown sizes are assumed to be {@link #DEFAULT_LENGTH}. The coefficients are
+ * rough relative timings, not measurements.
+ * 
+ * @author dmyersturnbull
+ */
+public class SimpleWeightCostModel implements WeightCostModel {
+
+	public static final int DEFAULT_LENGTH = 250;
+
+	private static final double CE_COEFFICIENT = 20;
+	private static final double FATCAT_COEFFICIENT = 50;
+	private static final double NW_COEFFICIENT = 1;
+	private static final double OTHER_COST = 1;
+
+	private static int chainLength(String pdbIdAndChain) {
+		Integer length = ResidueCounts.getChainLength(pdbIdAndChain);
+		return length == null ? DEFAULT_LENGTH : length;
+	}
+
+	private static int sequenceLength(String uniProtId) {
+		Integer length = ResidueCounts.getSequenceLength(uniProtId);
+		return length == null ? DEFAULT_LENGTH : length;
+	}
+
+	@Override
+	public double estimateCost(Weight weight) {
+		if (weight instanceof CeWeight) {
+			CeWeight ce = (CeWeight) weight;
+			return CE_COEFFICIENT * chainLength(ce.getPdbIdAndChain1()) * chainLength(ce.getPdbIdAndChain2());
+		}
+		if (weight instanceof PrecalculatedFatcatWeight) {
+			PrecalculatedFatcatWeight fatcat = (PrecalculatedFatcatWeight) weight;
+			return FATCAT_COEFFICIENT
+					* (chainLength(fatcat.getPdbIdAndChain1()) + chainLength(fatcat.getPdbIdAndChain2()));
+		}
+		if (weight instanceof SequenceGuidedTmWeight) {
+			SequenceGuidedTmWeight tm = (SequenceGuidedTmWeight) weight;
+			return NW_COEFFICIENT * chainLength(tm.getPdbIdAndChain1()) * chainLength(tm.getPdbIdAndChain2());
+		}
+		if (weight instanceof NeedlemanWunschWeight) {
+			NeedlemanWunschWeight nw = (NeedlemanWunschWeight) weight;
+			return NW_COEFFICIENT * sequenceLength(nw.getUniProtId1()) * sequenceLength(nw.getUniProtId2());
+		}
+		return OTHER_COST;
+	}
+
+}
@@ -15,6 +15,9 @@
 package org.structnetalign.weight;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 import org.apache.logging.log4j.LogManager;
@@ -31,41 +34,54 @@ import org.apache.logging.log4j.Logger;
  * @author dmyersturnbull
  *
  */
-public class SimpleWeightCreator implements WeightCreator {
+public class SimpleWeightCreator implements ChainedWeightCreator {
+
+	/**
+	 * The Weight classes in the order they're tried.
+	 */
+	public static final List<Class<? extends Weight>> CHAIN = Collections.unmodifiableList(Arrays
+			.<Class<? extends Weight>> asList(ScopWeight.class, NeedlemanWunschWeight.class,
+					PrecalculatedFatcatWeight.class, CeWeight.class));
 
 	private static final Logger logger = LogManager.getLogger("org.structnetalign");
 
+	private VertexCapabilities capabilities;
+
 	@Override
 	public Weight nextWeight(int a, int b, String uniProtIdA, String uniProtIdB, int n, boolean isFail, Class<? extends Weight> failed) {
 
-		if (!isFail) return null;
-		
-		Weight weight = null;
+		if (!isFail || n < 1 || n > CHAIN.size()) return null;
 
-		// try SCOP
-		if (n == 1) {
-			weight = init(new ScopWeight(), a, b, uniProtIdA, uniProtIdB);
-		}
+		// SCOP, then NW, then pre-calculated FATCAT, then CE
+		return init(CHAIN.get(n - 1), a, b, uniProtIdA, uniProtIdB);
+	}
 
-		// try NW
-		if (n == 2) {
-			weight = init(new NeedlemanWunschWeight(), a, b, uniProtIdA, uniProtIdB);
-		}
-		
-		// try pre-calculated FATCAT
-		if (n == 3) {
-			weight = init(new PrecalculatedFatcatWeight(), a, b, uniProtIdA, uniProtIdB);
-		}
+	public VertexCapabilities getCapabilities() {
+		return capabilities;
+	}
 
-		// try CE
-		if (n == 4) {
-			weight = init(new CeWeight(), a, b, uniProtIdA, uniProtIdB);
-		}
-		
-		return weight;
+	@Override
+	public Collection<Class<? extends Weight>> getWeightClasses() {
+		return CHAIN;
+	}
+
+	/**
+	 * @param capabilities
+	 *            Used to skip Weights that can't apply to a pair, without mapping Ids again for every pair; null means
+	 *            each Weight maps its own Ids
+	 */
+	public void setCapabilities(VertexCapabilities capabilities) {
+		this.capabilities = capabilities;
 	}
 
-	private Weight init(Weight weight, int a, int b, String uniProtIdA, String uniProtIdB) {
+	private Weight init(Class<? extends Weight> clazz, int a, int b, String uniProtIdA, String uniProtIdB) {
+		if (capabilities != null) return capabilities.create(clazz, a, b, uniProtIdA, uniProtIdB);
+		Weight weight;
+		try {
+			weight = clazz.newInstance();
+		} catch (InstantiationException | IllegalAccessException e) {
+			throw new IllegalArgumentException("Couldn't instantiate weight " + clazz.getSimpleName(), e);
+		}
 		try {
 			weight.setIds(a, b, uniProtIdA, uniProtIdB);
 			return weight;
@@ -0,0 +1,82 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+/**
+ * A {@link WeightMemoryModel} based on the sizes of the proteins involved, with sizes taken from
+ * {@link ResidueCounts}:
+ * <ul>
+ * <li>{@link CeWeight}: both structures, plus CE's two intra-chain distance matrices and its inter-chain matrix</li>
+ * <li>{@link SequenceGuidedTmWeight}: both structures, plus the dynamic programming matrices of its sequence
+ * alignment</li>
+ * <li>{@link PrecalculatedFatcatWeight}: both structures</li>
+ * <li>{@link NeedlemanWunschWeight}: the dynamic programming matrices</li>
+ * <li>Anything else: a small constant</li>
+ * </ul>
+ * The per-residue and per-cell sizes are rough; they only need to be good enough to keep several large jobs from
+ * running at once.
+ * 
+ * @author dmyersturnbull
+ */
+public class SimpleWeightMemoryModel implements WeightMemoryModel {
+
+	/**
+	 * Atom[] only holds CA atoms, but each one keeps its whole Structure reachable.
+	 */
+	private static final long BYTES_PER_RESIDUE = 4 * 1024;
+
+	private static final long BYTES_PER_MATRIX_CELL = 8;
+
+	private static final long BYTES_PER_NW_CELL = 16;
+
+	private static final long OTHER_BYTES = 64 * 1024;
+
+	private static long chainLength(String pdbIdAndChain) {
+		Integer length = ResidueCounts.getChainLength(pdbIdAndChain);
+		return length == null ? SimpleWeightCostModel.DEFAULT_LENGTH : length;
+	}
+
+	private static long sequenceLength(String uniProtId) {
+		Integer length = ResidueCounts.getSequenceLength(uniProtId);
+		return length == null ? SimpleWeightCostModel.DEFAULT_LENGTH : length;
+	}
+
+	@Override
+	public long estimateMemory(Weight weight) {
+		if (weight instanceof CeWeight) {
+			CeWeight ce = (CeWeight) weight;
+			long n1 = chainLength(ce.getPdbIdAndChain1());
+			long n2 = chainLength(ce.getPdbIdAndChain2());
+			return BYTES_PER_RESIDUE * (n1 + n2) + BYTES_PER_MATRIX_CELL * (n1 * n1 + n2 * n2 + n1 * n2);
+		}
+		if (weight instanceof SequenceGuidedTmWeight) {
+			SequenceGuidedTmWeight tm = (SequenceGuidedTmWeight) weight;
+			long n1 = chainLength(tm.getPdbIdAndChain1());
+			long n2 = chainLength(tm.getPdbIdAndChain2());
+			return BYTES_PER_RESIDUE * (n1 + n2) + BYTES_PER_NW_CELL * n1 * n2;
+		}
+		if (weight instanceof PrecalculatedFatcatWeight) {
+			PrecalculatedFatcatWeight fatcat = (PrecalculatedFatcatWeight) weight;
+			return BYTES_PER_RESIDUE
+					* (chainLength(fatcat.getPdbIdAndChain1()) + chainLength(fatcat.getPdbIdAndChain2()));
+		}
+		if (weight instanceof NeedlemanWunschWeight) {
+			NeedlemanWunschWeight nw = (NeedlemanWunschWeight) weight;
+			return BYTES_PER_NW_CELL * sequenceLength(nw.getUniProtId1()) * sequenceLength(nw.getUniProtId2());
+		}
+		return OTHER_BYTES;
+	}
+
+}
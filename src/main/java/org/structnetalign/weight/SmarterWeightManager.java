@@ -14,18 +14,29 @@
  */
 package org.structnetalign.weight;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.CompletionService;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorCompletionService;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -33,21 +44,199 @@ import org.structnetalign.CleverGraph;
 import org.structnetalign.HomologyEdge;
 import org.structnetalign.PipelineProperties;
 import org.structnetalign.ReportGenerator;
+import org.structnetalign.weight.WeightResult.Status;
 
 import edu.uci.ics.jung.graph.util.Pair;
 
+/**
+ * A multithreaded {@link WeightManager} that asks a {@link WeightCreator} which {@link Weight Weights} to run for each
+ * pair, and asks it again whenever a Weight fails. Weights on the same pair are combined with noisy-OR. Once a pair is
+ * {@link SaturationPolicy saturated}, its remaining Weights are cancelled and the WeightCreator is no longer consulted
+ * for it.
+ * <p>
+ * Jobs are run most expensive first according to a {@link WeightCostModel}, so that a few long structural alignments
+ * don't end up running alone at the end. The order in which results are combined doesn't depend on this.
+ * <p>
+ * With a {@link HedgingPolicy}, a job that runs unusually long for its class gets the next Weight in the chain started
+ * alongside it. Whichever of the two succeeds first is used and the other is cancelled; if both fail, the chain
+ * continues as usual.
+ * <p>
+ * A job that runs longer than its class's {@link #setBudget(Class, Long) time budget} is cancelled and treated as a
+ * failure, so that one bad pair can't stall the whole step. Budgets are read from
+ * {@code weight/time_budgets.properties}, which sets none by default; {@link #SUGGESTED_BUDGETS} are a starting point.
+ * Cancelling interrupts the job's thread; Weights that don't check for interruption keep their thread busy until they
+ * finish, but their result is ignored.
+ * <p>
+ * Jobs also acquire their estimated memory from a {@link #setMemoryBudget(Long) memory budget} before running, so
+ * that several alignments of huge structures don't run at once. If the WeightCreator can create a Weight that uses the
+ * shared {@link AtomArrayCache}, the cache is paid for out of the same budget, and limited to half of it for the run.
+ * <p>
+ * Pairs are enumerated lazily, and at most {@link #setMaxInFlight(Integer) a bounded number} of jobs are submitted but
+ * not yet combined at any time. Each job is released as soon as its result is combined, so memory use during this
+ * step does not grow with the number of pairs.
+ * <p>
+ * Optionally, Weights that mostly wait on remote services run in a separate, larger {@link #setIoThreads(int) I/O
+ * pool}, so that they neither hold cores that CE needs nor wait behind CE for a thread.
+ * <p>
+ * Jobs for {@link BatchWeight BatchWeights} of the same class with the same {@link BatchWeight#getBatchKey() batch
+ * key}, such as CE on the same first PDB chain, run together in a {@link WeightBatch}, which loads their shared inputs
+ * once. Initial jobs are grouped as pairs are enumerated. Jobs that a WeightCreator falls back to are held until
+ * {@link #setBatchSize(int) a batch} of them has the same key, or until the results ahead of them have been combined.
+ * Jobs in a batch are combined just like other jobs, but they aren't hedged or held to their time budgets
+ * individually.
+ * <p>
+ * With a {@link #setPruneBelow(Double) pruning threshold}, a {@link BoundedWeight} whose upper bound can't bring its
+ * pair up to the threshold isn't run at all. It counts as having failed with {@link WeightResult.Status#SKIPPED}, so the
+ * WeightCreator moves on to its next Weight for that pair. Pruning is off by default: with noisy-OR, evidence below the
+ * threshold can still add up with later evidence, so this can lose edges that would have survived the tau trim.
+ * <p>
+ * Each edge records what each Weight class contributed in its {@link HomologyEdge#getEvidence() ledger}. Run on a
+ * homology graph from an earlier run, with a WeightCreator for only a new or changed Weight class, this updates the
+ * graph at the cost of that class's jobs alone; remove a changed class's old evidence first.
+ * 
+ * @author dmyersturnbull
+ */
 public class SmarterWeightManager implements WeightManager {
 
+	/**
+	 * A submitted Weight and what became of it.
+	 */
+	private static class Job {
+		private final int a;
+		private final int b;
+		private final double cost;
+		private Future<WeightResult> future;
+		private Job hedge; // the next Weight, started speculatively because this one was slow
+		private Job hedged; // the job that this one is a hedge for
+		private boolean expired; // cancelled for running over its budget
+		private boolean hedgeTried;
+		private boolean superseded; // its partner's result was used instead
+		private final Weight weight;
+
+		public Job(Weight weight, int a, int b, double cost) {
+			this.weight = weight;
+			this.a = a;
+			this.b = b;
+			this.cost = cost;
+		}
+	}
+
+	public static final Map<Class<? extends Weight>, Long> DEFAULT_BUDGETS = new HashMap<>();
+
+	/**
+	 * The fraction of the maximum heap that running jobs may use if no memory budget is set.
+	 */
+	public static final double DEFAULT_MEMORY_FRACTION = 0.5;
+
+	/**
+	 * The number of jobs per core that may be submitted but not yet combined, if no maximum is set.
+	 */
+	public static final int DEFAULT_JOBS_PER_CORE = 64;
+
+	/**
+	 * The most {@link BatchWeight BatchWeights} that run together in one {@link WeightBatch}, if no size is set.
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 32;
+
+	/**
+	 * The Weights that spend most of their time waiting on remote services: RCSB for
+	 * {@link PrecalculatedFatcatWeight}. {@link NeedlemanWunschWeight} also fetches from UniProt, but its alignment
+	 * matrix grows with the product of the sequence lengths, so it stays in the CPU pool where its memory is admitted.
+	 */
+	public static final Set<Class<? extends Weight>> DEFAULT_IO_BOUND = new HashSet<>();
+
+	/**
+	 * Time budgets that stop a pathological CE or FATCAT pair from stalling a run, without cutting off ordinary ones.
+	 * Not applied unless set; see {@link #setBudget(Class, Long)}.
+	 */
+	public static final Map<Class<? extends Weight>, Long> SUGGESTED_BUDGETS = new HashMap<>();
+
 	private static final Logger logger = LogManager.getLogger("org.structnetalign");
 
+	private static final long POLL_MILLIS = 100;
+
+	static {
+		Properties props = new Properties();
+		ClassLoader loader = Thread.currentThread().getContextClassLoader();
+		InputStream stream = loader.getResourceAsStream("weight/time_budgets.properties");
+		try {
+			props.load(stream);
+		} catch (IOException e) {
+			throw new RuntimeException("Couldn't open time budgets property file", e);
+		}
+		String ce = props.getProperty("ce_budget");
+		if (ce != null) DEFAULT_BUDGETS.put(CeWeight.class, Long.parseLong(ce));
+		String fatcat = props.getProperty("precalc_fatcat_budget");
+		if (fatcat != null) DEFAULT_BUDGETS.put(PrecalculatedFatcatWeight.class, Long.parseLong(fatcat));
+		String nw = props.getProperty("nw_budget");
+		if (nw != null) DEFAULT_BUDGETS.put(NeedlemanWunschWeight.class, Long.parseLong(nw));
+		String scop = props.getProperty("scop_budget");
+		if (scop != null) DEFAULT_BUDGETS.put(ScopWeight.class, Long.parseLong(scop));
+		DEFAULT_IO_BOUND.add(PrecalculatedFatcatWeight.class);
+		SUGGESTED_BUDGETS.put(CeWeight.class, 600000L);
+		SUGGESTED_BUDGETS.put(PrecalculatedFatcatWeight.class, 120000L);
+	}
+
+	private Map<Class<? extends Weight>, Long> budgets;
+
+	private WeightCostModel costModel = new SimpleWeightCostModel();
+
 	private WeightCreator creator;
 
+	private HedgingPolicy hedging;
+
+	private Set<Class<? extends Weight>> ioBound;
+
+	private int ioThreads = 0;
+
+	private Long memoryBudget;
+
+	private WeightMemoryModel memoryModel = new SimpleWeightMemoryModel();
+
+	private int batchSize = DEFAULT_BATCH_SIZE;
+
 	private int nCores;
 
+	private PairFilter pairFilter;
+
+	private Double pruneBelow;
+
+	private SaturationPolicy saturation = SaturationPolicy.never();
+
+	private Integer maxInFlight;
+
+	private Set<Pair<Integer>> unweighted = new HashSet<>();
+
+	// the state of the current run
+	private Map<Future<?>, Job> byFuture;
+	private CleverGraph graph;
+	private Deque<Job> jobs; // submitted but not yet combined, in the order they'll be combined
+	private Map<String, List<Job>> held; // fallback jobs waiting for a batch, by batch key
+	private Map<Pair<Integer>, Integer> nAttempted;
+	private int nBatched;
+	private int nBounded;
+	private int nExpired;
+	private int nextA;
+	private int nextB;
+	private int nHedged;
+	private int nPruned;
+	private int nSaturated;
+	private int nSubmitted;
+	private long nVisited;
+	private Map<Pair<Integer>, List<Job>> pending;
+	private CostOrderedExecutor ioPool;
+	private CostOrderedExecutor pool;
+	private Set<Pair<Integer>> saturated;
+	private Set<Pair<Integer>> succeeded; // pairs still pending on which some Weight has succeeded
+	private Map<Integer, String> uniProtIds;
+	private List<Integer> allVertices; // sorted
+
 	public SmarterWeightManager(WeightCreator creator, int nCores) {
 		super();
 		this.creator = creator;
 		this.nCores = nCores;
+		budgets = new HashMap<>(DEFAULT_BUDGETS);
+		ioBound = new HashSet<>(DEFAULT_IO_BOUND);
 	}
 
 	@Override
@@ -59,73 +248,66 @@ public class SmarterWeightManager implements WeightManager {
 
 		// make a thread pool
 		logger.info("Starting weight assignment with " + nCores + " cores");
-		ExecutorService pool = Executors.newFixedThreadPool(nCores);
+		long memory = memoryBudget != null ? memoryBudget : (long) (Runtime.getRuntime().maxMemory()
+				* DEFAULT_MEMORY_FRACTION);
+		memory -= AtomCacheFactory.reserve(creator, memory);
+		pool = new CostOrderedExecutor(nCores, costModel, memoryModel, memory);
+		if (ioThreads > 0) {
+			logger.info("Running " + ioBound.size() + " I/O-bound weights with " + ioThreads + " threads");
+			ioPool = new CostOrderedExecutor(ioThreads, costModel);
+		}
 
 		try {
 
-			CompletionService<WeightResult> completion = new ExecutorCompletionService<>(pool);
-			List<Future<WeightResult>> futures = new ArrayList<>();
-			Map<Pair<Integer>, Integer> nAttempted = new HashMap<>();
-
-			// let's submit the jobs
-			// iterate over all pairs of vertices
-			for (int a : graph.getVertices()) {
-				for (int b : graph.getVertices()) {
-
-					if (a >= b) {
-						continue; // homology had damn well better be reflexive and symmetric!
-					}
-
-					// initialize every nAttempted
-					nAttempted.put(new Pair<Integer>(a, b), 0);
+			this.graph = graph;
+			this.uniProtIds = uniProtIds;
+			allVertices = new ArrayList<>(graph.getVertices());
+			Collections.sort(allVertices); // so that a < b for every pair we enumerate
+			nextA = 0;
+			nextB = 1;
+			nVisited = 0;
+			jobs = new ArrayDeque<>();
+			byFuture = new HashMap<>();
+			held = new LinkedHashMap<>();
+			nAttempted = new HashMap<>();
+			pending = new HashMap<>();
+			saturated = new HashSet<>();
+			succeeded = new HashSet<>();
+			unweighted = new HashSet<>();
+			nHedged = 0;
+			nExpired = 0;
+			nPruned = 0;
+			nSaturated = 0;
+			nBounded = 0;
+			nSubmitted = 0;
+			int inFlight = maxInFlight != null ? maxInFlight : nCores * DEFAULT_JOBS_PER_CORE;
+			long nPairs = (long) allVertices.size() * (allVertices.size() - 1) / 2;
 
-					final String uniProtIdA = uniProtIds.get(a);
-					final String uniProtIdB = uniProtIds.get(b);
-
-					if (uniProtIdA == null) {
-						logger.error("Could not get UniProt Id for Id#" + a);
-						continue;
-					}
-					if (uniProtIdB == null) {
-						logger.error("Could not get UniProt Id for Id#" + b);
-						continue;
-					}
-
-					logger.trace("Weighting " + uniProtIdA + " against " + uniProtIdB + " (" + a + ", " + b + ")");
-
-					List<Weight> weights = creator.initialWeights(a, b, uniProtIdA, uniProtIdB);
-					if (weights != null) {
-						for (Weight weight : weights) {
-							if (weight != null) {
-								Future<WeightResult> future = completion.submit(weight);
-								futures.add(future);
-								logger.debug("Running weight " + weight.getClass().getSimpleName() + " for " + uniProtIdA
-										+ " against " + uniProtIdB + " (" + a + ", " + b + ")");
-							} else { // this means the WeightCreator is behaving strangely
-								logger.warn("Null weight included for " + uniProtIdA
-										+ " against " + uniProtIdB + " (" + a + ", " + b + ")");
-							}
-						}
-					} else { // the WeightCreator doesn't want to run any weights
-						logger.debug("No weights selected for " + uniProtIdA
-								+ " against " + uniProtIdB + " (" + a + ", " + b + ")");
-					}
-
-				}
-			}
-
-			logger.info("Submitted " + futures.size() + " jobs to " + nCores + " cores");
+			logger.info("Weighting " + nPairs + " pairs with at most " + inFlight + " jobs in flight");
 
 			/*
-			 *  Now respond to completion.
+			 * Pairs are enumerated and their jobs submitted as jobs finish, so only about inFlight jobs are held at
+			 * once. Results are combined in the order the jobs were submitted.
 			 */
 
 			int nUpdates = 0;
+			int nCancelled = 0;
+
+			// there usually aren't any homology edges yet, but another WeightManager may have run first
+			int createdIndex = graph.calcLastHomologyId() + 1;
+
+			// finish() releases the job once it has been combined, even when we continue
+			forfutures: for (Job job = next(inFlight); job != null; job = finish(job, inFlight)) {
 
-			int createdIndex = 0; // there shouldn't be any homology edges yet
-			forfutures: for (int i = 0; i < futures.size(); i++) {
+				// everything ahead of it has been combined, so stop waiting for more jobs to batch with
+				if (job.future == null) releaseHeld();
 
-				Future<WeightResult> future = futures.get(i);
+				Future<WeightResult> future = job.future;
+
+				if (job.superseded) {
+					future.cancel(true);
+					continue; // we already used its partner's result
+				}
 
 				WeightResult result = null;
 				try {
@@ -135,12 +317,21 @@ public class SmarterWeightManager implements WeightManager {
 					// Use the flag instead of future == null because future.get() may actually return null
 					while (result == null) {
 						try {
-							result = future.get();
+							result = await(job);
+							recordRunTime(job);
+							if (result.isFailed()) {
+								logger.trace("Job (" + job.a + ", " + job.b + ") failed with " + result.getStatus() + ": "
+										+ result.getReason());
+								fail(job); // like a WeightException, but without the cost of throwing one
+								continue forfutures;
+							}
 							double prob = result.getWeight();
 							int vertexA = result.getV1();
 							int vertexB = result.getV2();
 							logger.trace("Job (" + vertexA + ", " + vertexB + ") returned with weight "
 									+ PipelineProperties.getInstance().getOutputFormatter().format(prob));
+							supersedeHedge(job);
+							succeeded.add(new Pair<Integer>(job.a, job.b));
 							if (prob == 0) {
 								continue forfutures; // don't both updating with 0
 							}
@@ -149,28 +340,16 @@ public class SmarterWeightManager implements WeightManager {
 						}
 					}
 
-				} catch (ExecutionException e) {
+				} catch (CancellationException e) {
+					if (job.expired) fail(job); // treat it like any other failure
+					continue; // otherwise its pair was saturated, or its hedge won
 
-					if (e.getCause() != null && e.getCause() instanceof WeightException) {
+				} catch (ExecutionException e) {
 
-						WeightException myE = (WeightException) e.getCause();
-						int a = myE.getA();
-						int b = myE.getB();
-						String uniProtIdA = myE.getUniProtIdA();
-						String uniProtIdB = myE.getUniProtIdB();
-						int n = nAttempted.get(new Pair<Integer>(myE.getA(), myE.getB())) + 1;
-						nAttempted.put(new Pair<Integer>(myE.getA(), myE.getB()), n);
-
-						logger.trace("Failed on " + uniProtIdA + " against " + uniProtIdB + " (" + a + ", " + b + ")");
-
-						Weight weight = creator.nextWeight(a, b, uniProtIdA, uniProtIdB, n, true, null);
-						if (weight != null) { // null means "we're done"
-							Future<WeightResult> newFuture = completion.submit(weight);
-							futures.add(newFuture);
-							logger.debug("Running relation " + weight.getClass().getSimpleName() + " for " + uniProtIdA
-									+ " against " + uniProtIdB + " (" + a + ", " + b + ")");
-						}
+					recordRunTime(job);
 
+					if (e.getCause() != null && e.getCause() instanceof WeightException) {
+						fail(job);
 					} else {
 						logger.error("Encountered an unknown error trying to get a weight.", e);
 					}
@@ -184,43 +363,77 @@ public class SmarterWeightManager implements WeightManager {
 				int a = result.getV1();
 				int b = result.getV2();
 				double prob = result.getWeight();
+				Pair<Integer> pair = new Pair<Integer>(a, b);
 
-				// the creator might want to add another even if it didn't fail
-				int n = nAttempted.get(new Pair<Integer>(a, b)) + 1;
-				nAttempted.put(new Pair<Integer>(a, b), n);
-				Weight weight = creator.nextWeight(a, b, result.getA(), result.getB(), n, false, null);
-				if (weight != null) { // null means "we're done"
-					Future<WeightResult> newFuture = completion.submit(weight);
-					futures.add(newFuture);
-					logger.debug("Running relation " + weight.getClass().getSimpleName() + " for " + result.getA()
-							+ " against " + result.getB() + " (" + a + ", " + b + ")");
-				}
+				// this job finished before we could cancel it; ignore it so that the result doesn't depend on timing
+				if (saturated.contains(pair)) continue;
 
 				Collection<Integer> vertices = Arrays.asList(a, b);
 
 				// there may already be an edge there
 				HomologyEdge existing = graph.getHomology().findEdge(a, b);
+				if (result.getSubmitter() == null) result.setSubmitter(job.weight.getClass());
 				if (existing != null) {
 					// (a+b-ab) + c - c*(a+b-ab) = a + b + c - ab - ac - bc + abc
-					existing.setWeight(existing.getWeight() + prob - existing.getWeight() * prob);
+					existing.addEvidence(result.getSource(), prob);
 					logger.debug("["
 							+ PipelineProperties.getInstance().getOutputFormatter()
-							.format((float) createdIndex / (float) (futures.size() + createdIndex) * 100.0)
+							.format((float) nVisited / (float) nPairs * 100.0)
 							+ "%] Updated homology edge (" + a + ", " + b + ", "
 							+ PipelineProperties.getInstance().getOutputFormatter().format(existing.getWeight())
 							+ ") with weight " + PipelineProperties.getInstance().getOutputFormatter().format(prob));
 				} else {
-					HomologyEdge edge = new HomologyEdge(createdIndex++, prob);
+					HomologyEdge edge = new HomologyEdge(createdIndex++, 0);
+					edge.addEvidence(result.getSource(), prob);
 					graph.addHomologies(edge, vertices);
 					logger.debug("Added homology edge (" + a + ", " + b + ", "
 							+ PipelineProperties.getInstance().getOutputFormatter().format(prob) + ")");
 				}
 				nUpdates++;
 
+				// stop running weights on this pair if more can't make a difference
+				double combined = graph.getHomology().findEdge(a, b).getWeight();
+				if (saturation.isSaturated(combined)) {
+					if (saturated.add(pair)) nSaturated++; // finish() forgets the pair once it's done
+					List<Job> others = pending.get(pair);
+					if (others != null) {
+						for (Job other : others) {
+							if (cancel(other)) nCancelled++;
+						}
+					}
+					logger.debug("Pair (" + a + ", " + b + ") is saturated at "
+							+ PipelineProperties.getInstance().getOutputFormatter().format(combined));
+					continue;
+				}
+
+				// the creator might want to add another even if it didn't fail
+				int n = nAttempted.get(pair) + 1;
+				nAttempted.put(pair, n);
+				Weight weight = creator.nextWeight(a, b, result.getA(), result.getB(), n, false, null);
+				if (weight != null) { // null means "we're done"
+					submit(weight, a, b);
+					logger.debug("Running relation " + weight.getClass().getSimpleName() + " for " + result.getA()
+							+ " against " + result.getB() + " (" + a + ", " + b + ")");
+				}
+
 			}
+			logger.info("Submitted " + nSubmitted + " jobs to " + nCores + " cores");
+			if (pairFilter != null) logger.info("Pruned " + nPruned + " pairs");
 			logger.info("Added " + graph.getHomologyCount() + " homology edges");
+			if (nBatched > 0) logger.info("Ran " + nBatched + " jobs in batches");
+			if (pruneBelow != null) logger.info("Skipped " + nBounded + " jobs that couldn't reach " + pruneBelow);
+			if (hedging != null) logger.info("Hedged " + nHedged + " slow jobs");
+			if (nExpired > 0) logger.info("Cancelled " + nExpired + " jobs that ran over their time budgets");
+			logger.info("Cancelled " + nCancelled + " jobs on " + nSaturated + " saturated pairs");
 			if (ReportGenerator.getInstance() != null) {
+				ReportGenerator.getInstance().putInWeighted("n_pruned", nPruned);
 				ReportGenerator.getInstance().putInWeighted("n_updates", nUpdates);
+				ReportGenerator.getInstance().putInWeighted("n_cancelled", nCancelled);
+				ReportGenerator.getInstance().putInWeighted("n_saturated", nSaturated);
+				ReportGenerator.getInstance().putInWeighted("n_batched", nBatched);
+				ReportGenerator.getInstance().putInWeighted("n_bounded", nBounded);
+				ReportGenerator.getInstance().putInWeighted("n_hedged", nHedged);
+				ReportGenerator.getInstance().putInWeighted("n_expired", nExpired);
 			}
 
 			int maxHomologyDegree = 0;
@@ -243,6 +456,20 @@ public class SmarterWeightManager implements WeightManager {
 
 		} finally {
 			pool.shutdownNow();
+			pool = null;
+			if (ioPool != null) ioPool.shutdownNow();
+			ioPool = null;
+			AtomCacheFactory.release();
+			this.graph = null;
+			allVertices = null;
+			jobs = null;
+			byFuture = null;
+			held = null;
+			nAttempted = null;
+			pending = null;
+			saturated = null;
+			succeeded = null;
+			this.uniProtIds = null;
 
 			int count = Thread.activeCount() - 1;
 			if (count > 0) {
@@ -251,16 +478,628 @@ public class SmarterWeightManager implements WeightManager {
 		}
 	}
 
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public Map<Class<? extends Weight>, Long> getBudgets() {
+		return budgets;
+	}
+
+	public WeightCostModel getCostModel() {
+		return costModel;
+	}
+
 	public WeightCreator getCreator() {
 		return creator;
 	}
 
+	public HedgingPolicy getHedging() {
+		return hedging;
+	}
+
+	public Set<Class<? extends Weight>> getIoBound() {
+		return ioBound;
+	}
+
+	public int getIoThreads() {
+		return ioThreads;
+	}
+
+	public Integer getMaxInFlight() {
+		return maxInFlight;
+	}
+
+	public Long getMemoryBudget() {
+		return memoryBudget;
+	}
+
+	public WeightMemoryModel getMemoryModel() {
+		return memoryModel;
+	}
+
 	public int getnCores() {
 		return nCores;
 	}
 
+	public PairFilter getPairFilter() {
+		return pairFilter;
+	}
+
+	public Double getPruneBelow() {
+		return pruneBelow;
+	}
+
+	public SaturationPolicy getSaturation() {
+		return saturation;
+	}
+
+	/**
+	 * @return The pairs of the last run on which every Weight failed, or for which the WeightCreator had no Weights
+	 */
+	public Set<Pair<Integer>> getUnweighted() {
+		return unweighted;
+	}
+
+	/**
+	 * @return Whether the cost or memory model estimates jobs from {@link ResidueCounts}, so that filling them in
+	 *         before a run is worthwhile
+	 */
+	public boolean isSizedByResidues() {
+		return costModel instanceof SimpleWeightCostModel || memoryModel instanceof SimpleWeightMemoryModel;
+	}
+
+	/**
+	 * @param batchSize
+	 *            The most {@link BatchWeight BatchWeights} to run together; 1 runs every job on its own
+	 */
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Sets the longest that a Weight of class {@code clazz} may run on one pair before it is cancelled and treated as
+	 * a failure.
+	 * 
+	 * @param millis
+	 *            Null means no limit
+	 */
+	public void setBudget(Class<? extends Weight> clazz, Long millis) {
+		if (millis == null) {
+			budgets.remove(clazz);
+		} else {
+			budgets.put(clazz, millis);
+		}
+	}
+
+	/**
+	 * @param costModel
+	 *            Decides which jobs run first; null means run them in the order they were submitted
+	 */
+	public void setCostModel(WeightCostModel costModel) {
+		this.costModel = costModel;
+	}
+
 	public void setCreator(WeightCreator creator) {
 		this.creator = creator;
 	}
 
+	/**
+	 * @param hedging
+	 *            Decides when to start a slow job's fallback alongside it; null means never
+	 */
+	public void setHedging(HedgingPolicy hedging) {
+		this.hedging = hedging;
+	}
+
+	/**
+	 * Sets whether Weights of class {@code clazz} run in the I/O pool when there is one. The I/O pool doesn't admit
+	 * jobs by {@link #setMemoryBudget(Long) memory}, so Weights that need much of it should stay out.
+	 */
+	public void setIoBound(Class<? extends Weight> clazz, boolean ioBound) {
+		if (ioBound) {
+			this.ioBound.add(clazz);
+		} else {
+			this.ioBound.remove(clazz);
+		}
+	}
+
+	/**
+	 * @param ioThreads
+	 *            The number of threads for a separate pool that runs I/O-bound Weights, so that jobs waiting on remote
+	 *            services don't hold the cores that CPU-bound alignments need; 0 (the default) runs everything in one
+	 *            pool
+	 */
+	public void setIoThreads(int ioThreads) {
+		this.ioThreads = ioThreads;
+	}
+
+	/**
+	 * @param maxInFlight
+	 *            The most jobs that may be submitted but not yet combined into the graph; null means
+	 *            {@link #DEFAULT_JOBS_PER_CORE} per core
+	 */
+	public void setMaxInFlight(Integer maxInFlight) {
+		this.maxInFlight = maxInFlight;
+	}
+
+	/**
+	 * @param memoryBudget
+	 *            The estimated memory in bytes that running jobs and the shared {@link AtomArrayCache} may use at
+	 *            once; null means {@link #DEFAULT_MEMORY_FRACTION} of the maximum heap
+	 */
+	public void setMemoryBudget(Long memoryBudget) {
+		this.memoryBudget = memoryBudget;
+	}
+
+	/**
+	 * @param memoryModel
+	 *            Null means jobs run as soon as a thread is free, regardless of size
+	 */
+	public void setMemoryModel(WeightMemoryModel memoryModel) {
+		this.memoryModel = memoryModel;
+	}
+
+	/**
+	 * @param pairFilter
+	 *            Skips pairs that don't need to be weighted; null means weight every pair
+	 */
+	public void setPairFilter(PairFilter pairFilter) {
+		this.pairFilter = pairFilter;
+	}
+
+	/**
+	 * @param pruneBelow
+	 *            Don't run a {@link BoundedWeight} if the noisy-OR of its upper bound with its pair's current weight is
+	 *            below this, usually tau, and run the pair's next Weight instead; null (the default) runs every Weight
+	 */
+	public void setPruneBelow(Double pruneBelow) {
+		this.pruneBelow = pruneBelow;
+	}
+
+	public void setSaturation(SaturationPolicy saturation) {
+		this.saturation = saturation;
+	}
+
+	/**
+	 * Waits for {@code job} to finish. With hedging or time budgets, this also periodically hedges slow jobs, cancels
+	 * jobs that are over budget, and gives up on {@code job} if its hedge has already succeeded.
+	 */
+	private WeightResult await(Job job) throws InterruptedException, ExecutionException {
+		if (hedging == null && budgets.isEmpty()) return job.future.get();
+		while (true) {
+			try {
+				return job.future.get(POLL_MILLIS, TimeUnit.MILLISECONDS);
+			} catch (TimeoutException e) {
+				if (job.hedge != null && succeeded(job.hedge.future)) {
+					// the hedge won; if this cancel loses the race, we'll just get the primary's result
+					logger.debug("Hedge for (" + job.a + ", " + job.b + ") finished first");
+					job.future.cancel(true);
+				}
+				cancelExpiredJobs();
+				if (hedging != null) hedgeSlowJobs();
+			}
+		}
+	}
+
+	/**
+	 * @return Whether {@code weight} is a {@link BoundedWeight} that can't bring {@code (a, b)} up to
+	 *         {@link #setPruneBelow(Double) pruneBelow}
+	 */
+	private boolean cannotReach(Weight weight, int a, int b) {
+		if (pruneBelow == null || !(weight instanceof BoundedWeight)) return false;
+		HomologyEdge existing = graph.getHomology().findEdge(a, b);
+		double current = existing == null ? 0 : existing.getWeight();
+		double bound = ((BoundedWeight) weight).upperBound();
+		return 1 - (1 - current) * (1 - bound) < pruneBelow;
+	}
+
+	/**
+	 * Cancels every running job that has run longer than its class's time budget.
+	 */
+	private void cancelExpiredJobs() {
+		if (budgets.isEmpty()) return;
+		for (Future<?> future : running()) {
+			Job job = byFuture.get(future);
+			if (job == null || job.expired) continue;
+			Long budget = budgets.get(job.weight.getClass());
+			if (budget == null) continue;
+			long runTime = executorFor(job.weight).getRunTime(future);
+			if (runTime <= TimeUnit.MILLISECONDS.toNanos(budget)) continue;
+			job.expired = true;
+			if (future.cancel(true)) {
+				nExpired++;
+				logger.warn(job.weight.getClass().getSimpleName() + " on " + uniProtIds.get(job.a) + " against "
+						+ uniProtIds.get(job.b) + " (" + job.a + ", " + job.b + ") ran over its budget of " + budget
+						+ "ms");
+			} else {
+				job.expired = false; // it finished just in time
+			}
+		}
+	}
+
+	/**
+	 * Asks the WeightCreator what to run after {@code job} failed.
+	 */
+	private void fail(Job job) {
+
+		int a = job.a;
+		int b = job.b;
+		String uniProtIdA = uniProtIds.get(a);
+		String uniProtIdB = uniProtIds.get(b);
+		Pair<Integer> pair = new Pair<Integer>(a, b);
+
+		logger.trace("Failed on " + uniProtIdA + " against " + uniProtIdB + " (" + a + ", " + b + ")");
+
+		if (job.hedge != null) {
+			logger.trace("Hedge for (" + a + ", " + b + ") is already running the next weight");
+			return;
+		}
+
+		int n = nAttempted.get(pair) + 1;
+		nAttempted.put(pair, n);
+
+		if (saturated.contains(pair)) return;
+
+		Weight weight = creator.nextWeight(a, b, uniProtIdA, uniProtIdB, n, true, null);
+		if (weight != null) { // null means "we're done"
+			submitFallback(weight, a, b);
+			logger.debug("Running relation " + weight.getClass().getSimpleName() + " for " + uniProtIdA
+					+ " against " + uniProtIdB + " (" + a + ", " + b + ")");
+		}
+	}
+
+	/**
+	 * Starts the next Weight alongside every running job that has run longer than its {@link HedgingPolicy} allows.
+	 */
+	private void hedgeSlowJobs() {
+		for (Future<?> future : running()) {
+			Job job = byFuture.get(future);
+			if (job == null || job.hedgeTried || job.hedged != null) continue;
+			Pair<Integer> pair = new Pair<Integer>(job.a, job.b);
+			if (saturated.contains(pair)) continue;
+			long runTime = executorFor(job.weight).getRunTime(future);
+			if (!hedging.shouldHedge(job.weight.getClass(), runTime)) continue;
+			job.hedgeTried = true;
+			String uniProtIdA = uniProtIds.get(job.a);
+			String uniProtIdB = uniProtIds.get(job.b);
+			// ask for the weight we'd have gotten if the job had failed
+			int n = nAttempted.get(pair) + 1;
+			Weight weight = creator.nextWeight(job.a, job.b, uniProtIdA, uniProtIdB, n, true, job.weight.getClass());
+			if (weight == null) continue; // nothing to fall back to
+			if (cannotReach(weight, job.a, job.b)) continue; // it would only race the job with a 0
+			nAttempted.put(pair, n);
+			job.hedge = submit(weight, job.a, job.b);
+			job.hedge.hedged = job;
+			nHedged++;
+			logger.debug("Hedging " + job.weight.getClass().getSimpleName() + " with "
+					+ weight.getClass().getSimpleName() + " for " + uniProtIdA + " against " + uniProtIdB + " ("
+					+ job.a + ", " + job.b + ")");
+		}
+	}
+
+	/**
+	 * @return The pool that should run {@code weight}
+	 */
+	private CostOrderedExecutor executorFor(Weight weight) {
+		if (ioPool != null && ioBound.contains(weight.getClass())) return ioPool;
+		return pool;
+	}
+
+	/**
+	 * Releases {@code job}, which has been combined into the graph or given up on, and returns the next job.
+	 */
+	private Job finish(Job job, int inFlight) {
+		byFuture.remove(job.future);
+		Pair<Integer> pair = new Pair<Integer>(job.a, job.b);
+		List<Job> forPair = pending.get(pair);
+		if (forPair != null) {
+			forPair.remove(job);
+			if (forPair.isEmpty()) { // nothing else can happen to this pair
+				pending.remove(pair);
+				nAttempted.remove(pair);
+				saturated.remove(pair);
+				if (!succeeded.remove(pair)) unweighted.add(pair);
+			}
+		}
+		return next(inFlight);
+	}
+
+	/**
+	 * @return The next job to combine, after submitting more if there's room; null if there are no more
+	 */
+	private Job next(int inFlight) {
+		if (jobs.size() < inFlight) refill(inFlight);
+		return jobs.poll();
+	}
+
+	/**
+	 * @return The jobs running in either pool
+	 */
+	private List<Future<?>> running() {
+		List<Future<?>> running = new ArrayList<>(pool.getRunning());
+		if (ioPool != null) running.addAll(ioPool.getRunning());
+		return running;
+	}
+
+	private void recordRunTime(Job job) {
+		if (hedging == null) return;
+		long runTime = executorFor(job.weight).getRunTime(job.future);
+		if (runTime >= 0) hedging.record(job.weight.getClass(), runTime);
+	}
+
+	/**
+	 * Enumerates pairs and submits their initial Weights until {@code inFlight} jobs are in flight or every pair has
+	 * been enumerated.
+	 */
+	private void refill(int inFlight) {
+
+		List<Job> batch = new ArrayList<>();
+
+		while (jobs.size() + batch.size() < inFlight && nextA < allVertices.size() - 1) {
+
+			// homology had damn well better be reflexive and symmetric!
+			int a = allVertices.get(nextA);
+			int b = allVertices.get(nextB);
+			nVisited++;
+			nextB++;
+			if (nextB == allVertices.size()) {
+				nextA++;
+				nextB = nextA + 1;
+			}
+
+			if (pairFilter != null && !pairFilter.accept(graph, a, b)) {
+				logger.trace("Pruned pair (" + a + ", " + b + ")");
+				nPruned++;
+				continue;
+			}
+
+			final String uniProtIdA = uniProtIds.get(a);
+			final String uniProtIdB = uniProtIds.get(b);
+
+			if (uniProtIdA == null) {
+				logger.error("Could not get UniProt Id for Id#" + a);
+				continue;
+			}
+			if (uniProtIdB == null) {
+				logger.error("Could not get UniProt Id for Id#" + b);
+				continue;
+			}
+
+			logger.trace("Weighting " + uniProtIdA + " against " + uniProtIdB + " (" + a + ", " + b + ")");
+
+			int nBefore = batch.size();
+			List<Weight> weights = creator.initialWeights(a, b, uniProtIdA, uniProtIdB);
+			if (weights != null) {
+				for (Weight weight : weights) {
+					if (weight != null) {
+						double cost = costModel == null ? 0 : costModel.estimateCost(weight);
+						batch.add(new Job(weight, a, b, cost));
+						logger.debug("Running weight " + weight.getClass().getSimpleName() + " for " + uniProtIdA
+								+ " against " + uniProtIdB + " (" + a + ", " + b + ")");
+					} else { // this means the WeightCreator is behaving strangely
+						logger.warn("Null weight included for " + uniProtIdA + " against " + uniProtIdB + " (" + a
+								+ ", " + b + ")");
+					}
+				}
+			} else { // the WeightCreator doesn't want to run any weights
+				logger.debug("No weights selected for " + uniProtIdA + " against " + uniProtIdB + " (" + a + ", "
+						+ b + ")");
+			}
+			if (batch.size() == nBefore) unweighted.add(new Pair<Integer>(a, b));
+
+		}
+
+		// submit the most expensive jobs first, but keep jobs in pair order so that results are combined in the
+		// same order regardless of cost
+		List<Job> toRun = new ArrayList<>(batch.size());
+		for (Job job : batch) {
+			if (!skipIfBounded(job)) toRun.add(job);
+		}
+		List<List<Job>> byCost = group(toRun);
+		final Map<List<Job>, Double> costs = new HashMap<>();
+		for (List<Job> group : byCost) {
+			double cost = 0;
+			for (Job job : group) cost += job.cost;
+			costs.put(group, cost);
+		}
+		Collections.sort(byCost, new Comparator<List<Job>>() {
+			@Override
+			public int compare(List<Job> o1, List<Job> o2) {
+				return Double.compare(costs.get(o2), costs.get(o1));
+			}
+		});
+		for (List<Job> group : byCost) {
+			submit(group);
+		}
+		for (Job job : batch) {
+			track(job);
+		}
+	}
+
+	/**
+	 * Groups {@link BatchWeight BatchWeights} of the same class with the same {@link #batchKey(Job) batch key} into
+	 * batches of at most {@link #setBatchSize(int) batchSize}. Every other job is in a group of its own.
+	 */
+	private List<List<Job>> group(List<Job> batch) {
+		List<List<Job>> groups = new ArrayList<>();
+		Map<String, List<Job>> open = new HashMap<>();
+		for (Job job : batch) {
+			if (batchSize < 2 || !(job.weight instanceof BatchWeight)) {
+				groups.add(Collections.singletonList(job));
+				continue;
+			}
+			String key = batchKey(job);
+			List<Job> group = open.get(key);
+			if (group == null || group.size() == batchSize) {
+				group = new ArrayList<>();
+				open.put(key, group);
+				groups.add(group);
+			}
+			group.add(job);
+		}
+		return groups;
+	}
+
+	/**
+	 * @return A key shared by jobs that can run in one batch: the class of {@code job}'s BatchWeight and its
+	 *         {@link BatchWeight#getBatchKey() batch key}, or else its first UniProt Id, or else its first vertex
+	 */
+	private String batchKey(Job job) {
+		String key = ((BatchWeight) job.weight).getBatchKey();
+		if (key == null) key = uniProtIds.get(job.a);
+		if (key == null) key = "#" + job.a;
+		return job.weight.getClass().getName() + "#" + key;
+	}
+
+	/**
+	 * Cancels {@code job}, which may still be {@link #held}.
+	 * 
+	 * @return Whether it was cancelled before it finished
+	 */
+	private boolean cancel(Job job) {
+		if (job.future != null) return job.future.cancel(false);
+		List<Job> group = held.get(batchKey(job));
+		group.remove(job);
+		if (group.isEmpty()) held.remove(batchKey(job));
+		FutureTask<WeightResult> cancelled = new FutureTask<>(job.weight);
+		cancelled.cancel(false);
+		job.future = cancelled;
+		byFuture.put(cancelled, job);
+		return true;
+	}
+
+	/**
+	 * Submits every held fallback job, in batches of whatever size they've reached.
+	 */
+	private void releaseHeld() {
+		List<List<Job>> groups = new ArrayList<>(held.values());
+		held.clear();
+		for (List<Job> group : groups) {
+			submitHeld(group);
+		}
+	}
+
+	/**
+	 * Runs a Weight that the WeightCreator fell back to. A {@link BatchWeight} is held until enough fallback jobs share
+	 * its {@link #batchKey(Job) batch key} to fill a batch, or until the loop that combines results reaches it.
+	 */
+	private void submitFallback(Weight weight, int a, int b) {
+		if (batchSize < 2 || !(weight instanceof BatchWeight)) {
+			submit(weight, a, b);
+			return;
+		}
+		Job job = new Job(weight, a, b, 0);
+		if (skipIfBounded(job)) {
+			track(job);
+			return;
+		}
+		String key = batchKey(job);
+		List<Job> group = held.get(key);
+		if (group == null) {
+			group = new ArrayList<>();
+			held.put(key, group);
+		}
+		group.add(job);
+		track(job);
+		if (group.size() == batchSize) {
+			held.remove(key);
+			submitHeld(group);
+		}
+	}
+
+	private void submitHeld(List<Job> group) {
+		submit(group);
+		for (Job job : group) {
+			byFuture.put(job.future, job);
+		}
+	}
+
+	/**
+	 * Submits the jobs in {@code group} as a single {@link WeightBatch}, or on their own if there's only one.
+	 */
+	private void submit(List<Job> group) {
+		if (group.size() == 1) {
+			Job job = group.get(0);
+			job.future = executorFor(job.weight).submit(job.weight);
+			return;
+		}
+		List<BatchWeight> weights = new ArrayList<>(group.size());
+		for (Job job : group) {
+			weights.add((BatchWeight) job.weight);
+		}
+		WeightBatch weightBatch = new WeightBatch(weights);
+		executorFor(group.get(0).weight).submit(weightBatch);
+		List<Future<WeightResult>> futures = weightBatch.getFutures();
+		for (int i = 0; i < group.size(); i++) {
+			group.get(i).future = futures.get(i);
+		}
+		nBatched += group.size();
+	}
+
+	private Job submit(Weight weight, int a, int b) {
+		Job job = new Job(weight, a, b, 0);
+		if (!skipIfBounded(job)) job.future = executorFor(weight).submit(weight);
+		track(job);
+		return job;
+	}
+
+	/**
+	 * Instead of submitting {@code job}, gives it a {@link WeightResult.Status#SKIPPED skipped} result if its Weight's
+	 * upper bound can't bring its pair up to {@link #setPruneBelow(Double) pruneBelow}. Like any other failure, this
+	 * moves the pair on to its next Weight.
+	 * 
+	 * @return Whether {@code job} was skipped
+	 */
+	private boolean skipIfBounded(final Job job) {
+		if (!cannotReach(job.weight, job.a, job.b)) return false;
+		final String uniProtIdA = uniProtIds.get(job.a);
+		final String uniProtIdB = uniProtIds.get(job.b);
+		FutureTask<WeightResult> skipped = new FutureTask<>(new Callable<WeightResult>() {
+			@Override
+			public WeightResult call() throws Exception {
+				return WeightResult.failed(Status.SKIPPED, "Couldn't reach " + pruneBelow, job.a, job.b, uniProtIdA,
+						uniProtIdB, job.weight.getClass());
+			}
+		});
+		skipped.run();
+		job.future = skipped;
+		nBounded++;
+		logger.trace("Skipped " + job.weight.getClass().getSimpleName() + " on (" + job.a + ", " + job.b
+				+ ") because it can't reach " + pruneBelow);
+		return true;
+	}
+
+	/**
+	 * {@code job} succeeded, so its hedge (if any) is no longer needed.
+	 */
+	private void supersedeHedge(Job job) {
+		if (job.hedge == null) return;
+		job.hedge.superseded = true;
+		job.hedge.future.cancel(true);
+	}
+
+	private static boolean succeeded(Future<WeightResult> future) {
+		if (!future.isDone() || future.isCancelled()) return false;
+		try {
+			return !future.get().isFailed();
+		} catch (InterruptedException | ExecutionException e) {
+			return false;
+		}
+	}
+
+	private void track(Job job) {
+		jobs.add(job);
+		nSubmitted++;
+		if (job.future != null) byFuture.put(job.future, job); // otherwise it's held
+		Pair<Integer> pair = new Pair<Integer>(job.a, job.b);
+		if (!nAttempted.containsKey(pair)) nAttempted.put(pair, 0);
+		List<Job> forPair = pending.get(pair);
+		if (forPair == null) {
+			forPair = new ArrayList<>();
+			pending.put(pair, forPair);
+		}
+		forPair.add(job);
+	}
+
 }
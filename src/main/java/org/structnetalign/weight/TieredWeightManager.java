@@ -0,0 +1,337 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.structnetalign.CleverGraph;
+import org.structnetalign.HomologyEdge;
+import org.structnetalign.PipelineManager;
+import org.structnetalign.ReportGenerator;
+
+import edu.uci.ics.jung.graph.util.Pair;
+
+/**
+ * A {@link WeightManager} that runs weights in two tiers. The cheap tier (by default {@link ScopWeight} falling back
+ * to {@link NeedlemanWunschWeight}, and then to {@link PfamWeight} if there's a {@link PfamIndex}) is run for every
+ * pair. The expensive tier (by default {@link SequenceGuidedTmWeight} falling back to {@link PrecalculatedFatcatWeight}
+ * and then to {@link CeWeight}) is then run only as a fallback, for the pairs on which every cheap weight failed, just
+ * as a single fallback chain would reach it. Running the cheap tier for every pair first lets its jobs share batches
+ * and keeps the cores free for the structural alignments afterward.
+ * <p>
+ * Of those pairs, the expensive tier also skips the ones whose noisy-OR upper bound can't reach tau. The upper bound
+ * of a pair with current weight <em>s</em> is 1 - (1-<em>s</em>)&prod;(1-<em>c<sub>i</sub></em>), where
+ * <em>c<sub>i</sub></em> is the {@link #setCeiling(Class, double) ceiling} of each expensive weight. A Weight with no
+ * ceiling is assumed to be able to return 1. Ceilings are read from {@code weight/tiered_weights.properties}. By
+ * default CE and precalculated FATCAT, whose TM-scores only say that two chains share a fold, are trusted to just below
+ * the default tau, so at that tau a pair that only they could weight is skipped. A {@link BoundedWeight} whose own
+ * upper bound for the pair is lower than its ceiling uses that instead. Since every homology edge below tau is removed
+ * before crossing anyway, and the ceilings are trusted, skipping these pairs does not change which edges survive the
+ * trim.
+ *
+ * @author dmyersturnbull
+ */
+public class TieredWeightManager implements WeightManager {
+
+	/**
+	 * Decorates the expensive tier's {@link WeightCreator} so that it refuses pairs that can't reach tau. This is only
+	 * called from the thread that updates the graph, so reading the current homology weight is safe.
+	 */
+	private class BoundedWeightCreator implements ChainedWeightCreator {
+
+		private final WeightCreator creator;
+		private final CleverGraph graph;
+
+		public BoundedWeightCreator(WeightCreator creator, CleverGraph graph) {
+			this.creator = creator;
+			this.graph = graph;
+		}
+
+		@Override
+		public Collection<Class<? extends Weight>> getWeightClasses() {
+			if (creator instanceof ChainedWeightCreator) return ((ChainedWeightCreator) creator).getWeightClasses();
+			return null;
+		}
+
+		@Override
+		public List<Weight> initialWeights(int a, int b, String uniProtIdA, String uniProtIdB) {
+			List<Weight> weights = creator.initialWeights(a, b, uniProtIdA, uniProtIdB);
+			if (weights == null || weights.isEmpty()) return weights;
+			if (!canReachTau(graph, a, b, weights)) {
+				nSkipped++;
+				logger.trace("Skipping expensive weights for " + uniProtIdA + " against " + uniProtIdB + " (" + a
+						+ ", " + b + ")");
+				return new ArrayList<Weight>(0);
+			}
+			return weights;
+		}
+
+		@Override
+		public Weight nextWeight(int a, int b, String uniProtIdA, String uniProtIdB, int n, boolean isFail,
+				Class<? extends Weight> failed) {
+			Weight weight = creator.nextWeight(a, b, uniProtIdA, uniProtIdB, n, isFail, failed);
+			if (weight == null) return null;
+			List<Weight> weights = new ArrayList<Weight>(1);
+			weights.add(weight);
+			if (!canReachTau(graph, a, b, weights)) return null;
+			return weight;
+		}
+
+	}
+
+	public static final Map<Class<? extends Weight>, Double> DEFAULT_CEILINGS = new HashMap<>();
+
+	private static final Logger logger = LogManager.getLogger("org.structnetalign");
+
+	static {
+		Properties props = new Properties();
+		ClassLoader loader = Thread.currentThread().getContextClassLoader();
+		InputStream stream = loader.getResourceAsStream("weight/tiered_weights.properties");
+		try {
+			props.load(stream);
+		} catch (IOException e) {
+			throw new RuntimeException("Couldn't open tiered weights property file", e);
+		}
+		String ce = props.getProperty("ce_ceiling");
+		if (ce != null) DEFAULT_CEILINGS.put(CeWeight.class, Double.parseDouble(ce));
+		String fatcat = props.getProperty("precalc_fatcat_ceiling");
+		if (fatcat != null) DEFAULT_CEILINGS.put(PrecalculatedFatcatWeight.class, Double.parseDouble(fatcat));
+	}
+
+	/**
+	 * Time budgets for both tiers that override {@link SmarterWeightManager SmarterWeightManager's} defaults.
+	 */
+	private Map<Class<? extends Weight>, Long> budgets = new HashMap<>();
+
+	private WeightCreator cheap;
+
+	private Map<Class<? extends Weight>, Double> ceilings;
+
+	private WeightCreator expensive;
+
+	private HedgingPolicy hedging;
+
+	private int ioThreads = 0;
+
+	private int nCores;
+
+	private int nSkipped;
+
+	private PairFilter pairFilter;
+
+	private Double pruneBelow;
+
+	private SaturationPolicy saturation;
+
+	private double tau;
+
+	public TieredWeightManager(double tau, int nCores) {
+		this(new FallbackWeightCreator(ScopWeight.class, NeedlemanWunschWeight.class, PfamWeight.class),
+				new FallbackWeightCreator(SequenceGuidedTmWeight.class, PrecalculatedFatcatWeight.class, CeWeight.class),
+				tau, nCores);
+	}
+
+	public TieredWeightManager(int nCores) {
+		this(PipelineManager.TAU, nCores);
+	}
+
+	public TieredWeightManager(WeightCreator cheap, WeightCreator expensive, double tau, int nCores) {
+		super();
+		this.cheap = cheap;
+		this.expensive = expensive;
+		this.tau = tau;
+		this.nCores = nCores;
+		ceilings = new HashMap<>(DEFAULT_CEILINGS);
+	}
+
+	@Override
+	public void assignWeights(CleverGraph graph, Map<Integer, String> uniProtIds) {
+
+		nSkipped = 0;
+
+		logger.info("Running cheap weights for all pairs");
+		SmarterWeightManager cheapManager = new SmarterWeightManager(cheap, nCores);
+		cheapManager.setPairFilter(pairFilter);
+		cheapManager.setIoThreads(ioThreads);
+		cheapManager.setPruneBelow(pruneBelow);
+		cheapManager.setSaturation(saturation);
+		for (Map.Entry<Class<? extends Weight>, Long> entry : budgets.entrySet()) {
+			cheapManager.setBudget(entry.getKey(), entry.getValue());
+		}
+		cheapManager.assignWeights(graph, uniProtIds);
+
+		// the cheap manager already applied the pair filter
+		final Set<Pair<Integer>> unweighted = cheapManager.getUnweighted();
+		logger.info("Running expensive weights for the " + unweighted.size()
+				+ " pairs that cheap weights couldn't weight, if they can reach tau=" + tau);
+		SmarterWeightManager expensiveManager = new SmarterWeightManager(new BoundedWeightCreator(expensive, graph),
+				nCores);
+		expensiveManager.setPairFilter(new PairFilter() {
+			@Override
+			public boolean accept(CleverGraph graph, int a, int b) {
+				return unweighted.contains(new Pair<Integer>(a, b));
+			}
+		});
+		expensiveManager.setHedging(hedging);
+		expensiveManager.setIoThreads(ioThreads);
+		expensiveManager.setPruneBelow(pruneBelow);
+		expensiveManager.setSaturation(saturation);
+		for (Map.Entry<Class<? extends Weight>, Long> entry : budgets.entrySet()) {
+			expensiveManager.setBudget(entry.getKey(), entry.getValue());
+		}
+		expensiveManager.assignWeights(graph, uniProtIds);
+
+		logger.info("Skipped expensive weights for " + nSkipped + " pairs");
+		if (ReportGenerator.getInstance() != null) {
+			ReportGenerator.getInstance().putInWeighted("manager", this.getClass().getSimpleName());
+			ReportGenerator.getInstance().putInWeighted("n_skipped", nSkipped);
+		}
+	}
+
+	/**
+	 * @return Whether the noisy-OR combination of the current weight of {@code (a, b)} with {@code weights} could
+	 *         reach tau
+	 */
+	boolean canReachTau(CleverGraph graph, int a, int b, List<Weight> weights) {
+		HomologyEdge existing = graph.getHomology().findEdge(a, b);
+		double complement = existing == null ? 1 : 1 - existing.getWeight();
+		for (Weight weight : weights) {
+			Double ceiling = ceilings.get(weight.getClass());
+			double bound = ceiling != null ? ceiling : 1;
+			if (weight instanceof BoundedWeight) bound = Math.min(bound, ((BoundedWeight) weight).upperBound());
+			complement *= 1 - bound;
+		}
+		return 1 - complement >= tau;
+	}
+
+	public Map<Class<? extends Weight>, Double> getCeilings() {
+		return ceilings;
+	}
+
+	public WeightCreator getCheap() {
+		return cheap;
+	}
+
+	public WeightCreator getExpensive() {
+		return expensive;
+	}
+
+	public HedgingPolicy getHedging() {
+		return hedging;
+	}
+
+	public int getIoThreads() {
+		return ioThreads;
+	}
+
+	public int getnCores() {
+		return nCores;
+	}
+
+	/**
+	 * @return The number of pairs for which the last run skipped the expensive tier
+	 */
+	public int getNSkipped() {
+		return nSkipped;
+	}
+
+	public PairFilter getPairFilter() {
+		return pairFilter;
+	}
+
+	public Double getPruneBelow() {
+		return pruneBelow;
+	}
+
+	public SaturationPolicy getSaturation() {
+		return saturation;
+	}
+
+	public double getTau() {
+		return tau;
+	}
+
+	/**
+	 * @see SmarterWeightManager#setBudget(Class, Long)
+	 */
+	public void setBudget(Class<? extends Weight> clazz, Long millis) {
+		budgets.put(clazz, millis);
+	}
+
+	/**
+	 * Sets the maximum weight that {@code clazz} is trusted to return.
+	 */
+	public void setCeiling(Class<? extends Weight> clazz, double ceiling) {
+		ceilings.put(clazz, ceiling);
+	}
+
+	public void setCheap(WeightCreator cheap) {
+		this.cheap = cheap;
+	}
+
+	public void setExpensive(WeightCreator expensive) {
+		this.expensive = expensive;
+	}
+
+	/**
+	 * @param hedging
+	 *            Used for the expensive tier, whose remote and structural weights have long tails; null means never
+	 *            hedge
+	 */
+	public void setHedging(HedgingPolicy hedging) {
+		this.hedging = hedging;
+	}
+
+	/**
+	 * @see SmarterWeightManager#setIoThreads(int)
+	 */
+	public void setIoThreads(int ioThreads) {
+		this.ioThreads = ioThreads;
+	}
+
+	public void setPairFilter(PairFilter pairFilter) {
+		this.pairFilter = pairFilter;
+	}
+
+	/**
+	 * @see SmarterWeightManager#setPruneBelow(Double)
+	 */
+	public void setPruneBelow(Double pruneBelow) {
+		this.pruneBelow = pruneBelow;
+	}
+
+	/**
+	 * @param saturation
+	 *            Used for both tiers; null (the default) runs every Weight in each tier's chain
+	 */
+	public void setSaturation(SaturationPolicy saturation) {
+		this.saturation = saturation;
+	}
+
+	public void setTau(double tau) {
+		this.tau = tau;
+	}
+
+}
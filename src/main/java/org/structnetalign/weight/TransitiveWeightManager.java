@@ -0,0 +1,340 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.structnetalign.CleverGraph;
+import org.structnetalign.HomologyEdge;
+import org.structnetalign.PipelineManager;
+import org.structnetalign.ReportGenerator;
+
+import edu.uci.ics.jung.graph.util.Pair;
+
+/**
+ * A {@link WeightManager} that infers most homology weights from triangles instead of running {@link Weight Weights}
+ * on every pair. Every vertex is first weighted against a few evenly spaced pivot vertices. Treating 1 - <em>w</em>
+ * as a distance, each pivot <em>p</em> then bounds the weight of a remaining pair <em>(a, b)</em> between
+ * <em>w(a,p)</em> + <em>w(b,p)</em> - 1 and 1 - |<em>w(a,p)</em> - <em>w(b,p)</em>|. A pair is:
+ * <ul>
+ * <li>skipped if its upper bound is below tau, since its edge would be trimmed anyway;</li>
+ * <li>given its lower bound as an inferred weight if that is at least tau;</li>
+ * <li>weighted as usual if its bounds straddle tau.</li>
+ * </ul>
+ * Homology weights aren't true distances, so this is a heuristic: two strong homologs of one pivot are usually
+ * homologous, and a strong homolog of a pivot is usually not homologous to something the pivot isn't. Inferred
+ * weights are conservative, and pairs are only bounded by pivots for which both weights are known; a pair whose
+ * Weights all failed tells us nothing.
+ *
+ * @author dmyersturnbull
+ */
+public class TransitiveWeightManager implements WeightManager {
+
+	/**
+	 * Decides which of the remaining pairs need to be weighted, and remembers the weights it inferred. This is only
+	 * called from the thread that updates the graph, and only reads edges to pivots, which no longer change.
+	 */
+	private class TriangleFilter implements PairFilter {
+
+		private final Map<Pair<Integer>, Double> inferred = new LinkedHashMap<>();
+
+		@Override
+		public boolean accept(CleverGraph graph, int a, int b) {
+			if (pivots.contains(a) || pivots.contains(b)) return false; // already weighted
+			if (pairFilter != null && !pairFilter.accept(graph, a, b)) return false;
+			double lower = 0;
+			double upper = 1;
+			for (int p : pivots) {
+				Double weightA = known(graph, a, p);
+				if (weightA == null) continue;
+				Double weightB = known(graph, b, p);
+				if (weightB == null) continue;
+				lower = Math.max(lower, weightA + weightB - 1);
+				upper = Math.min(upper, 1 - Math.abs(weightA - weightB));
+			}
+			if (lower > upper) return true; // the pivots disagree, so find out
+			if (upper < tau) {
+				nSkipped++;
+				return false;
+			}
+			if (lower >= tau) {
+				inferred.put(new Pair<Integer>(a, b), lower);
+				return false;
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Remembers which pairs were attempted, and which ran out of Weights without one succeeding, so that a missing
+	 * edge can be told apart from a failure.
+	 */
+	private class RecordingWeightCreator implements ChainedWeightCreator {
+
+		private final WeightCreator creator;
+
+		public RecordingWeightCreator(WeightCreator creator) {
+			this.creator = creator;
+		}
+
+		@Override
+		public Collection<Class<? extends Weight>> getWeightClasses() {
+			if (creator instanceof ChainedWeightCreator) return ((ChainedWeightCreator) creator).getWeightClasses();
+			return null;
+		}
+
+		@Override
+		public List<Weight> initialWeights(int a, int b, String uniProtIdA, String uniProtIdB) {
+			List<Weight> weights = creator.initialWeights(a, b, uniProtIdA, uniProtIdB);
+			if (weights != null && !weights.isEmpty()) attempted.add(new Pair<Integer>(a, b));
+			return weights;
+		}
+
+		@Override
+		public Weight nextWeight(int a, int b, String uniProtIdA, String uniProtIdB, int n, boolean isFail,
+				Class<? extends Weight> failed) {
+			Weight weight = creator.nextWeight(a, b, uniProtIdA, uniProtIdB, n, isFail, failed);
+			// a hedge names the Weight it's for; an actual failure doesn't
+			if (weight == null && isFail && failed == null) exhausted.add(new Pair<Integer>(a, b));
+			return weight;
+		}
+
+	}
+
+	public static final int DEFAULT_N_PIVOTS = 16;
+
+	/**
+	 * The source of the evidence for inferred edges.
+	 */
+	public static final String INFERRED = "inferred";
+
+	private static final Logger logger = LogManager.getLogger("org.structnetalign");
+
+	/**
+	 * Time budgets for both passes that override {@link SmarterWeightManager SmarterWeightManager's} defaults.
+	 */
+	private Map<Class<? extends Weight>, Long> budgets = new HashMap<>();
+
+	private WeightCreator creator;
+
+	private HedgingPolicy hedging;
+
+	private int ioThreads = 0;
+
+	private int nCores;
+
+	private Double pruneBelow;
+
+	private SaturationPolicy saturation;
+
+	private int nPivots = DEFAULT_N_PIVOTS;
+
+	private PairFilter pairFilter;
+
+	private double tau;
+
+	// the state of the current run
+	private Set<Pair<Integer>> attempted;
+	private Set<Pair<Integer>> exhausted;
+	private int nSkipped;
+	private Set<Integer> pivots;
+
+	public TransitiveWeightManager(WeightCreator creator, double tau, int nCores) {
+		super();
+		this.creator = creator;
+		this.tau = tau;
+		this.nCores = nCores;
+	}
+
+	public TransitiveWeightManager(WeightCreator creator, int nCores) {
+		this(creator, PipelineManager.TAU, nCores);
+	}
+
+	@Override
+	public void assignWeights(final CleverGraph graph, Map<Integer, String> uniProtIds) {
+
+		List<Integer> vertices = new ArrayList<>(graph.getVertices());
+		Collections.sort(vertices);
+		pivots = new HashSet<>();
+		int k = Math.min(nPivots, vertices.size());
+		for (int i = 0; i < k; i++) {
+			pivots.add(vertices.get(i * vertices.size() / k));
+		}
+		attempted = new HashSet<>();
+		exhausted = new HashSet<>();
+		nSkipped = 0;
+
+		try {
+
+			logger.info("Weighting " + vertices.size() + " vertices against " + pivots.size() + " pivots");
+			SmarterWeightManager pivotManager = new SmarterWeightManager(new RecordingWeightCreator(creator), nCores);
+			pivotManager.setPairFilter(new PairFilter() {
+				@Override
+				public boolean accept(CleverGraph graph, int a, int b) {
+					if (!pivots.contains(a) && !pivots.contains(b)) return false;
+					return pairFilter == null || pairFilter.accept(graph, a, b);
+				}
+			});
+			pivotManager.setHedging(hedging);
+			pivotManager.setIoThreads(ioThreads);
+			for (Map.Entry<Class<? extends Weight>, Long> entry : budgets.entrySet()) {
+				pivotManager.setBudget(entry.getKey(), entry.getValue());
+			}
+			pivotManager.assignWeights(graph, uniProtIds);
+
+			logger.info("Weighting remaining pairs whose bounds straddle tau=" + tau);
+			TriangleFilter triangles = new TriangleFilter();
+			SmarterWeightManager restManager = new SmarterWeightManager(creator, nCores);
+			restManager.setPairFilter(triangles);
+			restManager.setHedging(hedging);
+			restManager.setIoThreads(ioThreads);
+			restManager.setPruneBelow(pruneBelow);
+			restManager.setSaturation(saturation);
+			for (Map.Entry<Class<? extends Weight>, Long> entry : budgets.entrySet()) {
+				restManager.setBudget(entry.getKey(), entry.getValue());
+			}
+			restManager.assignWeights(graph, uniProtIds);
+
+			// only add these now so that they don't collide with the Ids of edges added above
+			int id = graph.calcLastHomologyId() + 1;
+			for (Map.Entry<Pair<Integer>, Double> entry : triangles.inferred.entrySet()) {
+				Pair<Integer> pair = entry.getKey();
+				HomologyEdge edge = new HomologyEdge(id++, 0);
+				edge.putEvidence(INFERRED, entry.getValue());
+				graph.addHomologies(edge, Arrays.asList(pair.getFirst(), pair.getSecond()));
+			}
+
+			logger.info("Inferred " + triangles.inferred.size() + " homology edges and skipped " + nSkipped
+					+ " pairs that couldn't reach tau");
+			if (ReportGenerator.getInstance() != null) {
+				ReportGenerator.getInstance().putInWeighted("manager", this.getClass().getSimpleName());
+				ReportGenerator.getInstance().putInWeighted("n_inferred", triangles.inferred.size());
+				ReportGenerator.getInstance().putInWeighted("n_skipped", nSkipped);
+			}
+
+		} finally {
+			attempted = null;
+			exhausted = null;
+			pivots = null;
+		}
+	}
+
+	public WeightCreator getCreator() {
+		return creator;
+	}
+
+	public HedgingPolicy getHedging() {
+		return hedging;
+	}
+
+	public int getIoThreads() {
+		return ioThreads;
+	}
+
+	public int getnCores() {
+		return nCores;
+	}
+
+	public int getNPivots() {
+		return nPivots;
+	}
+
+	public PairFilter getPairFilter() {
+		return pairFilter;
+	}
+
+	public double getTau() {
+		return tau;
+	}
+
+	/**
+	 * @see SmarterWeightManager#setBudget(Class, Long)
+	 */
+	public void setBudget(Class<? extends Weight> clazz, Long millis) {
+		budgets.put(clazz, millis);
+	}
+
+	public void setCreator(WeightCreator creator) {
+		this.creator = creator;
+	}
+
+	public void setHedging(HedgingPolicy hedging) {
+		this.hedging = hedging;
+	}
+
+	/**
+	 * @see SmarterWeightManager#setIoThreads(int)
+	 */
+	public void setIoThreads(int ioThreads) {
+		this.ioThreads = ioThreads;
+	}
+
+	/**
+	 * @param nPivots
+	 *            The number of vertices that every vertex is weighted against; more pivots give tighter bounds but
+	 *            cost more pairs up front
+	 */
+	public void setNPivots(int nPivots) {
+		if (nPivots < 1) throw new IllegalArgumentException("There must be at least one pivot");
+		this.nPivots = nPivots;
+	}
+
+	public void setPairFilter(PairFilter pairFilter) {
+		this.pairFilter = pairFilter;
+	}
+
+	/**
+	 * @see SmarterWeightManager#setPruneBelow(Double)
+	 */
+	public void setPruneBelow(Double pruneBelow) {
+		this.pruneBelow = pruneBelow;
+	}
+
+	/**
+	 * @param saturation
+	 *            Used only for the pairs left after the pivots, since pivot weights must be complete to bound anything;
+	 *            null (the default) runs every Weight
+	 */
+	public void setSaturation(SaturationPolicy saturation) {
+		this.saturation = saturation;
+	}
+
+	public void setTau(double tau) {
+		this.tau = tau;
+	}
+
+	/**
+	 * @return The weight of {@code (a, b)}, 0 if it was weighted but got no edge, or null if it's unknown
+	 */
+	private Double known(CleverGraph graph, int a, int b) {
+		HomologyEdge edge = graph.getHomology().findEdge(a, b);
+		if (edge != null) return edge.getWeight();
+		Pair<Integer> pair = a < b ? new Pair<Integer>(a, b) : new Pair<Integer>(b, a);
+		if (attempted.contains(pair) && !exhausted.contains(pair)) return 0.0;
+		return null;
+	}
+
+}
@@ -0,0 +1,225 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.biojava.bio.structure.Atom;
+import org.biojava.bio.structure.StructureException;
+import org.structnetalign.util.IdentifierMappingFactory;
+
+/**
+ * Records, for each vertex, which inputs {@link Weight Weights} can use: a sequence, a PDB chain, a SCOP domain, and
+ * a parsable structure. Each vertex is mapped through {@link IdentifierMappingFactory} once, rather than once per pair
+ * in {@link Weight#setIds(int, int, String, String)}. A {@link WeightCreator} can then tell whether a Weight applies
+ * to a pair from the bitwise AND of the two records, and {@link #create(Class, int, int, String, String) create} it
+ * with the Ids already mapped.
+ * <p>
+ * By default, a vertex is assumed to have a sequence if it has a UniProt Id and a parsable structure if it has a PDB
+ * chain. {@link #setCheckStructures(boolean)} loads each structure once to make sure.
+ *
+ * @author dmyersturnbull
+ */
+public class VertexCapabilities {
+
+	private static class Entry {
+		private final int mask;
+		private final String pdbIdAndChain;
+		private final String scopId;
+
+		public Entry(int mask, String pdbIdAndChain, String scopId) {
+			this.mask = mask;
+			this.pdbIdAndChain = pdbIdAndChain;
+			this.scopId = scopId;
+		}
+	}
+
+	public static final int SEQUENCE = 1;
+
+	public static final int PDB = 2;
+
+	public static final int SCOP = 4;
+
+	public static final int STRUCTURE = 8;
+
+	/**
+	 * The capabilities that both vertices need for each Weight class. Classes not listed are always tried.
+	 */
+	public static final Map<Class<? extends Weight>, Integer> DEFAULT_REQUIREMENTS = new HashMap<>();
+
+	private static final Logger logger = LogManager.getLogger("org.structnetalign");
+
+	static {
+		DEFAULT_REQUIREMENTS.put(ScopWeight.class, SCOP);
+		DEFAULT_REQUIREMENTS.put(NeedlemanWunschWeight.class, SEQUENCE);
+		DEFAULT_REQUIREMENTS.put(PfamWeight.class, SEQUENCE);
+		DEFAULT_REQUIREMENTS.put(PrecalculatedFatcatWeight.class, PDB | STRUCTURE);
+		DEFAULT_REQUIREMENTS.put(CeWeight.class, PDB | STRUCTURE);
+		DEFAULT_REQUIREMENTS.put(SequenceGuidedTmWeight.class, PDB | STRUCTURE);
+	}
+
+	private boolean checkStructures;
+
+	private final ConcurrentMap<Integer, Entry> entries = new ConcurrentHashMap<>();
+
+	private final Map<Class<? extends Weight>, Integer> requirements;
+
+	public VertexCapabilities() {
+		requirements = new HashMap<>(DEFAULT_REQUIREMENTS);
+	}
+
+	/**
+	 * @return Whether every capability that {@code clazz} requires is shared by {@code a} and {@code b}
+	 */
+	public boolean canRun(Class<? extends Weight> clazz, int a, int b, String uniProtIdA, String uniProtIdB) {
+		Integer required = requirements.get(clazz);
+		if (required == null) return true;
+		int shared = get(a, uniProtIdA) & get(b, uniProtIdB);
+		return (shared & required) == required;
+	}
+
+	/**
+	 * Instantiates {@code clazz} for {@code a} and {@code b} without mapping their Ids again.
+	 *
+	 * @return The new Weight, or null if {@code a} and {@code b} don't have what it needs
+	 */
+	public Weight create(Class<? extends Weight> clazz, int a, int b, String uniProtIdA, String uniProtIdB) {
+		if (!canRun(clazz, a, b, uniProtIdA, uniProtIdB)) return null;
+		Weight weight;
+		try {
+			weight = clazz.newInstance();
+		} catch (InstantiationException | IllegalAccessException e) {
+			throw new IllegalArgumentException("Couldn't instantiate weight " + clazz.getSimpleName(), e);
+		}
+		get(a, uniProtIdA); // make sure both have entries
+		get(b, uniProtIdB);
+		Entry entryA = entries.get(a);
+		Entry entryB = entries.get(b);
+		boolean havePdb = entryA.pdbIdAndChain != null && entryB.pdbIdAndChain != null;
+		boolean haveScop = entryA.scopId != null && entryB.scopId != null;
+		if (weight instanceof CeWeight && havePdb) {
+			((CeWeight) weight).setIds(a, b, uniProtIdA, uniProtIdB, entryA.pdbIdAndChain, entryB.pdbIdAndChain);
+		} else if (weight instanceof PrecalculatedFatcatWeight && havePdb) {
+			((PrecalculatedFatcatWeight) weight).setIds(a, b, uniProtIdA, uniProtIdB, entryA.pdbIdAndChain,
+					entryB.pdbIdAndChain);
+		} else if (weight instanceof SequenceGuidedTmWeight && havePdb) {
+			((SequenceGuidedTmWeight) weight).setIds(a, b, uniProtIdA, uniProtIdB, entryA.pdbIdAndChain,
+					entryB.pdbIdAndChain);
+		} else if (weight instanceof ScopWeight && haveScop) {
+			((ScopWeight) weight).setIds(a, b, uniProtIdA, uniProtIdB, entryA.scopId, entryB.scopId);
+		} else {
+			try {
+				weight.setIds(a, b, uniProtIdA, uniProtIdB);
+			} catch (WeightException e) {
+				logger.debug("Couldn't create weight " + clazz.getSimpleName() + " for (" + uniProtIdA + ", "
+						+ uniProtIdB + ")");
+				return null;
+			}
+		}
+		return weight;
+	}
+
+	/**
+	 * @return The capabilities of {@code vertex}, as a bitwise OR of {@link #SEQUENCE}, {@link #PDB}, {@link #SCOP},
+	 *         and {@link #STRUCTURE}
+	 */
+	public int get(int vertex, String uniProtId) {
+		Entry entry = entries.get(vertex);
+		if (entry == null) {
+			entry = compute(uniProtId);
+			Entry existing = entries.putIfAbsent(vertex, entry);
+			if (existing != null) entry = existing;
+		}
+		return entry.mask;
+	}
+
+	public Map<Class<? extends Weight>, Integer> getRequirements() {
+		return requirements;
+	}
+
+	public boolean isCheckStructures() {
+		return checkStructures;
+	}
+
+	/**
+	 * Computes the record of every vertex in {@code uniProtIds} that doesn't have one yet. Vertices that are missed
+	 * here are computed the first time they are needed.
+	 */
+	public void precompute(Map<Integer, String> uniProtIds) {
+		int[] counts = new int[4];
+		for (Map.Entry<Integer, String> entry : uniProtIds.entrySet()) {
+			int mask = get(entry.getKey(), entry.getValue());
+			for (int i = 0; i < counts.length; i++) {
+				if ((mask & 1 << i) != 0) counts[i]++;
+			}
+		}
+		logger.info("Of " + uniProtIds.size() + " vertices, " + counts[0] + " have sequences, " + counts[1]
+				+ " have PDB chains, " + counts[2] + " have SCOP domains, and " + counts[3]
+				+ " have parsable structures");
+	}
+
+	/**
+	 * @param checkStructures
+	 *            Whether to load each vertex's structure once to make sure it can be parsed, rather than assume it can
+	 */
+	public void setCheckStructures(boolean checkStructures) {
+		this.checkStructures = checkStructures;
+	}
+
+	/**
+	 * Sets the capabilities that both vertices must have for {@code clazz} to run on them.
+	 *
+	 * @param required
+	 *            A bitwise OR of capabilities; null means {@code clazz} is always tried
+	 */
+	public void setRequirement(Class<? extends Weight> clazz, Integer required) {
+		if (required == null) {
+			requirements.remove(clazz);
+		} else {
+			requirements.put(clazz, required);
+		}
+	}
+
+	private Entry compute(String uniProtId) {
+		if (uniProtId == null) return new Entry(0, null, null);
+		int mask = SEQUENCE;
+		String pdbIdAndChain = IdentifierMappingFactory.getMapping().uniProtToPdb(uniProtId);
+		if (pdbIdAndChain != null) {
+			mask |= PDB;
+			if (!checkStructures || isParsable(pdbIdAndChain)) mask |= STRUCTURE;
+		}
+		String scopId = IdentifierMappingFactory.getMapping().uniProtToScop(uniProtId);
+		if (scopId != null) mask |= SCOP;
+		return new Entry(mask, pdbIdAndChain, scopId);
+	}
+
+	private boolean isParsable(String pdbIdAndChain) {
+		try {
+			Atom[] ca = AtomCacheFactory.getAtoms(pdbIdAndChain);
+			ResidueCounts.putChainLength(pdbIdAndChain, ca.length);
+			return ca.length > 0;
+		} catch (IOException | StructureException | RuntimeException e) {
+			logger.debug("Could not parse structure for PDB entry " + pdbIdAndChain, e);
+			return false;
+		}
+	}
+
+}
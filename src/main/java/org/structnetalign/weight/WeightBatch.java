@@ -0,0 +1,96 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A block of {@link BatchWeight BatchWeights} of the same class that run together on one thread. Each Weight still
+ * has its own {@link #getFutures() Future}, which gets the Weight's result or exception, and can be cancelled on its
+ * own before the batch reaches it. If the batch itself never runs or stops early, because it was cancelled, rejected,
+ * or dropped from a queue, whoever held it must {@link #cancel()} it so that nobody waits forever on those Futures;
+ * {@link CostOrderedExecutor} does so.
+ * 
+ * @author dmyersturnbull
+ */
+public class WeightBatch implements Callable<Void> {
+
+	private static final Logger logger = LogManager.getLogger("org.structnetalign");
+
+	private final List<FutureTask<WeightResult>> tasks;
+
+	private final List<BatchWeight> weights;
+
+	/**
+	 * @param weights
+	 *            Weights of the same class whose Ids have already been set
+	 */
+	public WeightBatch(List<BatchWeight> weights) {
+		if (weights.isEmpty()) throw new IllegalArgumentException("A batch needs at least one weight");
+		this.weights = weights;
+		tasks = new ArrayList<>(weights.size());
+		for (BatchWeight weight : weights) {
+			tasks.add(new FutureTask<WeightResult>(weight));
+		}
+	}
+
+	@Override
+	public Void call() throws Exception {
+		try {
+			weights.get(0).prepareBatch(weights);
+		} catch (Exception e) {
+			logger.warn("Could not prepare a batch of " + weights.size() + " "
+					+ weights.get(0).getClass().getSimpleName() + " weights; running them separately", e);
+		}
+		for (FutureTask<WeightResult> task : tasks) {
+			if (Thread.currentThread().isInterrupted()) { // the batch itself was cancelled
+				cancel();
+				break;
+			}
+			task.run(); // does nothing if it was cancelled
+			// cancelling this Weight interrupted us, but that shouldn't cancel the rest
+			if (task.isCancelled()) Thread.interrupted();
+		}
+		return null;
+	}
+
+	/**
+	 * Cancels every Weight in this batch that hasn't finished, interrupting none of them.
+	 */
+	public void cancel() {
+		for (FutureTask<WeightResult> task : tasks) {
+			task.cancel(false);
+		}
+	}
+
+	/**
+	 * @return A Future for each Weight, in the same order
+	 */
+	public List<Future<WeightResult>> getFutures() {
+		return new ArrayList<Future<WeightResult>>(tasks);
+	}
+
+	public List<BatchWeight> getWeights() {
+		return weights;
+	}
+
+}
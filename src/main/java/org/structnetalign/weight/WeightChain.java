@@ -0,0 +1,151 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.structnetalign.PipelineProperties;
+
+/**
+ * Runs a {@link WeightCreator}'s chain of {@link Weight Weights} for a single pair in the calling thread. Follows the
+ * same rules as {@link SmarterWeightManager}: a failure asks the creator for the next Weight, a result of 0 ends that
+ * branch of the chain, and the chain stops once the noisy-OR of the results is {@link SaturationPolicy saturated}.
+ * The results are returned with their sources rather than combined, so that callers can keep the evidence ledger of
+ * the {@link org.structnetalign.HomologyEdge HomologyEdge} they build.
+ * 
+ * @author dmyersturnbull
+ */
+public class WeightChain {
+
+	/**
+	 * Calls a Weight that waits on I/O, so that a {@link ForkJoinPool} can make up for the blocked worker.
+	 */
+	private static class BlockingCall implements ForkJoinPool.ManagedBlocker {
+		private boolean done;
+		private WeightResult result;
+		private Exception thrown;
+		private final Weight weight;
+		public BlockingCall(Weight weight) {
+			this.weight = weight;
+		}
+		@Override
+		public boolean block() {
+			try {
+				result = weight.call();
+			} catch (Exception e) {
+				thrown = e;
+			}
+			done = true;
+			return true;
+		}
+		@Override
+		public boolean isReleasable() {
+			return done;
+		}
+	}
+
+	private static final Logger logger = LogManager.getLogger("org.structnetalign");
+
+	/**
+	 * @return The noisy-OR of the weights in {@code results}
+	 */
+	public static double combine(List<WeightResult> results) {
+		double score = 0;
+		for (WeightResult result : results) {
+			score += result.getWeight() - score * result.getWeight();
+		}
+		return score;
+	}
+
+	/**
+	 * @return The nonzero results for {@code (a, b)} in the order they were computed, each with its submitter set; empty
+	 *         if every Weight failed or returned 0
+	 */
+	public static List<WeightResult> run(WeightCreator creator, SaturationPolicy saturation, int a, int b, String uniProtIdA,
+			String uniProtIdB) {
+		return run(creator, saturation, a, b, uniProtIdA, uniProtIdB, Collections.<Class<? extends Weight>> emptySet());
+	}
+
+	/**
+	 * Like {@link #run(WeightCreator, SaturationPolicy, int, int, String, String)}, but calls Weights of the classes in
+	 * {@code blocking} through {@link ForkJoinPool#managedBlock(ForkJoinPool.ManagedBlocker)}. From a thread outside a
+	 * ForkJoinPool, they're simply called.
+	 */
+	public static List<WeightResult> run(WeightCreator creator, SaturationPolicy saturation, int a, int b,
+			String uniProtIdA, String uniProtIdB, Set<Class<? extends Weight>> blocking) {
+
+		Deque<Weight> queue = new LinkedList<>();
+		List<Weight> initial = creator.initialWeights(a, b, uniProtIdA, uniProtIdB);
+		if (initial != null) queue.addAll(initial);
+
+		List<WeightResult> results = new ArrayList<>();
+		double score = 0;
+		int n = 0;
+		while (!queue.isEmpty()) {
+
+			Weight weight = queue.remove();
+			if (weight == null) continue;
+			n++;
+
+			WeightResult result;
+			try {
+				result = blocking.contains(weight.getClass()) ? callBlocking(weight) : weight.call();
+			} catch (WeightException e) {
+				result = null;
+			} catch (Exception e) {
+				logger.error("Encountered an unknown error trying to get a weight.", e);
+				continue;
+			}
+			if (result == null || result.isFailed()) {
+				logger.trace("Failed on " + uniProtIdA + " against " + uniProtIdB + " (" + a + ", " + b + ")");
+				Weight next = creator.nextWeight(a, b, uniProtIdA, uniProtIdB, n, true, null);
+				if (next != null) queue.add(next);
+				continue;
+			}
+			double prob = result.getWeight();
+
+			if (prob == 0) continue; // as in SmarterWeightManager, a 0 ends this branch of the chain
+
+			if (result.getSubmitter() == null) result.setSubmitter(weight.getClass());
+			results.add(result);
+			score += prob - score * prob;
+			if (saturation.isSaturated(score)) break;
+
+			// the creator might want to add another even if it didn't fail
+			Weight next = creator.nextWeight(a, b, uniProtIdA, uniProtIdB, n, false, null);
+			if (next != null) queue.add(next);
+		}
+
+		logger.debug("Computed weight (" + a + ", " + b + ", "
+				+ PipelineProperties.getInstance().getOutputFormatter().format(score) + ")");
+		return results;
+	}
+
+	private static WeightResult callBlocking(Weight weight) throws Exception {
+		BlockingCall call = new BlockingCall(weight);
+		ForkJoinPool.managedBlock(call); // block() doesn't throw InterruptedException, so neither does this
+		if (call.thrown != null) throw call.thrown;
+		return call.result;
+	}
+
+}
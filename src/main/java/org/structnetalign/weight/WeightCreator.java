@@ -16,6 +16,13 @@ package org.structnetalign.weight;
 
 import java.util.List;
 
+/**
+ * Decides which {@link Weight Weights} to run on each pair, and which to run next when one fails. Managers that use a
+ * {@link SaturationPolicy} stop calling {@link #nextWeight(int, int, String, String, int, boolean, Class)} for a pair
+ * once it is saturated, so implementations can put cheap Weights first and rely on expensive ones being skipped.
+ * 
+ * @author dmyersturnbull
+ */
 public interface WeightCreator {
 
 	/**
@@ -15,7 +15,10 @@
 package org.structnetalign.weight;
 
 /**
- * A failure to initialize a {@link Weight}. Calling code needs to handle these well.
+ * A failure to initialize a {@link Weight}. Calling code needs to handle these well. Expected failures that are
+ * thrown rather than returned as a failed {@link WeightResult}, such as a missing Id in
+ * {@link Weight#setIds(int, int, String, String)}, should be created with
+ * {@link #expected(String, int, int, String, String, boolean, boolean)}, which skips the stack trace.
  * 
  * @author dmyersturnbull
  */
@@ -63,6 +66,25 @@ public class WeightException extends Exception {
 		this.isStructure = isStructure;
 	}
 
+	private WeightException(String message, int a, int b, String uniProtIdA, String uniProtIdB, boolean isAlignment,
+			boolean isStructure, boolean writableStackTrace) {
+		super(message, null, false, writableStackTrace);
+		this.a = a;
+		this.b = b;
+		this.uniProtIdA = uniProtIdA;
+		this.uniProtIdB = uniProtIdB;
+		this.isAlignment = isAlignment;
+		this.isStructure = isStructure;
+	}
+
+	/**
+	 * @return A WeightException without a stack trace, for routine failures where the trace would only cost time
+	 */
+	public static WeightException expected(String message, int a, int b, String uniProtIdA, String uniProtIdB,
+			boolean isAlignment, boolean isStructure) {
+		return new WeightException(message, a, b, uniProtIdA, uniProtIdB, isAlignment, isStructure, false);
+	}
+
 	public String getUniProtIdA() {
 		return uniProtIdA;
 	}
@@ -14,20 +14,48 @@
  */
 package org.structnetalign.weight;
 
+import org.structnetalign.HomologyEdge;
 import org.structnetalign.PipelineProperties;
 
 /**
- * The result of a single attempt to ascertain degree or probability of homology between two proteins.
+ * The result of a single attempt to ascertain degree or probability of homology between two proteins. An attempt that
+ * fails for an expected reason, such as a protein with no SCOP domain, returns a {@link #failed(Status, String, int,
+ * int, String, String, Class) failed} result instead of throwing, so that callers can move on to the next
+ * {@link Weight} without the cost of an exception. A failed result has a weight of 0.
  * 
  * @author dmyersturnbull
  * 
  */
 public class WeightResult {
 
+	public static enum Status {
+		/**
+		 * The Weight ran and returned a weight, which may be 0.
+		 */
+		SUCCESS,
+		/**
+		 * Something the Weight needs, such as an Id, a sequence, or a domain, isn't available for one of the proteins.
+		 */
+		MISSING_INPUT,
+		/**
+		 * The Weight ran but couldn't produce a score.
+		 */
+		NO_SCORE,
+		/**
+		 * The Weight wasn't run, because its {@link BoundedWeight#upperBound() upper bound} showed it couldn't make a
+		 * difference.
+		 */
+		SKIPPED;
+	}
+
 	private String a;
 
 	private String b;
 
+	private String reason;
+
+	private Status status = Status.SUCCESS;
+
 	private Class<? extends Weight> submitter;
 
 	private int v1;
@@ -46,6 +74,18 @@ public class WeightResult {
 		this.submitter = submitter;
 	}
 
+	/**
+	 * @return A result that says why {@code submitter} couldn't weight {@code (v1, v2)}
+	 */
+	public static WeightResult failed(Status status, String reason, int v1, int v2, String a, String b,
+			Class<? extends Weight> submitter) {
+		if (status == Status.SUCCESS) throw new IllegalArgumentException("A failed result needs a failure status");
+		WeightResult result = new WeightResult(0, v1, v2, a, b, submitter);
+		result.status = status;
+		result.reason = reason;
+		return result;
+	}
+
 	public String getA() {
 		return a;
 	}
@@ -54,6 +94,33 @@ public class WeightResult {
 		return b;
 	}
 
+	/**
+	 * @return Why the Weight failed, or null if it didn't
+	 */
+	public String getReason() {
+		return reason;
+	}
+
+	/**
+	 * @return The name of {@code submitter} as a source of evidence in a {@link HomologyEdge#getEvidence() ledger}
+	 */
+	public static String sourceOf(Class<? extends Weight> submitter) {
+		String name = submitter.getSimpleName();
+		return name.isEmpty() ? submitter.getName() : name; // anonymous classes have no simple name
+	}
+
+	/**
+	 * @return The name of the submitter as a source of evidence
+	 * @see #sourceOf(Class)
+	 */
+	public String getSource() {
+		return sourceOf(submitter);
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
 	/**
 	 * @return class that determined this WeightResult
 	 */
@@ -73,6 +140,10 @@ public class WeightResult {
 		return weight;
 	}
 
+	public boolean isFailed() {
+		return status != Status.SUCCESS;
+	}
+
 	public void setA(String a) {
 		this.a = a;
 	}
@@ -91,6 +162,8 @@ public class WeightResult {
 
 	@Override
 	public String toString() {
+		if (isFailed()) return submitter.getSimpleName() + ": (" + a + ", " + b + ") failed with " + status + ": "
+				+ reason;
 		return submitter.getSimpleName() + ": (" + a + ", " + b + ") --> "
 				+ PipelineProperties.getInstance().getOutputFormatter().format(weight);
 	}
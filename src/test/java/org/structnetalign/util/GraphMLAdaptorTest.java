@@ -86,6 +86,41 @@ public class GraphMLAdaptorTest {
 		assertTrue("XML output for homology graph differs from expected", isSimilar);
 	}
 
+	@Test
+	public void testEvidence() throws IOException {
+		CleverGraph clever = new CleverGraph();
+		clever.addVertex(0);
+		clever.addVertex(2);
+		clever.addVertex(4);
+		HomologyEdge edge = new HomologyEdge(0, 0);
+		edge.putEvidence("ScopWeight", 0.4);
+		edge.putEvidence("CeWeight", 0.5);
+		clever.addHomology(edge, 0, 2);
+		HomologyEdge precise = new HomologyEdge(2, 0);
+		precise.putEvidence("NeedlemanWunschWeight", 0.38289031877776783);
+		clever.addHomology(precise, 0, 4);
+		clever.addHomology(new HomologyEdge(1, 0.3), 2, 4);
+		File file = File.createTempFile("hom_evidence", ".graphml.xml");
+		file.deleteOnExit();
+		GraphMLAdaptor.writeHomologyGraph(clever.getHomology(), file);
+		UndirectedGraph<Integer, HomologyEdge> graph = GraphMLAdaptor.readHomologyGraph(file);
+		HomologyEdge read = graph.findEdge(0, 2);
+		assertEquals(0.7, read.getWeight(), 0.000001);
+		assertEquals(0.4, read.getEvidence("ScopWeight"), 0.000001);
+		assertEquals(0.5, read.getEvidence("CeWeight"), 0.000001);
+		assertEquals("The evidence didn't round-trip exactly", 0.38289031877776783,
+				graph.findEdge(0, 4).getEvidence("NeedlemanWunschWeight"), 0);
+		read.putEvidence("CeWeight", 0.2); // CE changed
+		assertEquals(0.52, read.getWeight(), 0.000001);
+		read.removeEvidence("ScopWeight");
+		assertEquals(0.2, read.getWeight(), 0.000001);
+		HomologyEdge plain = graph.findEdge(2, 4);
+		assertTrue(plain.getEvidence().isEmpty());
+		plain.addEvidence("CeWeight", 0.5); // the old weight is kept as its own source
+		assertEquals(0.65, plain.getWeight(), 0.000001);
+		assertEquals(0.3, plain.getEvidence(HomologyEdge.UNATTRIBUTED), 0.000001);
+	}
+
 	@Test
 	public void testWriteInterationGraph() throws IOException, SAXException {
 		CleverGraph clever = new CleverGraph();
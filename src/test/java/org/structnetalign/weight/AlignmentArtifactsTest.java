@@ -0,0 +1,106 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.Test;
+
+public class AlignmentArtifactsTest {
+
+	private static final double PRECISION = 0.000001;
+
+	@Test
+	public void testPersistence() throws IOException {
+		File file = File.createTempFile("artifacts", ".tsv");
+		file.delete();
+		file.deleteOnExit();
+		AlignmentArtifacts artifacts = new AlignmentArtifacts(file, "test", 3);
+		artifacts.put("1abc.A", "1abc.B", 0.7, 1.5, 120);
+		artifacts.put("1abc.B", "1abc.A", 0.1, 0.1, 0.1); // already there
+		artifacts.close();
+		try (FileWriter fw = new FileWriter(file, true)) {
+			// a garbled record, and one with a valid checksum but too few values
+			fw.write("1abc.A|1abc.C\t0.3\t1.2\t17\tdeadbeef\n");
+			fw.write("1abc.A|1abc.D\t0.3\t" + AlignmentArtifacts.checksum("1abc.A|1abc.D\t0.3") + "\n");
+		}
+		AlignmentArtifacts reloaded = new AlignmentArtifacts(file, "test", 3);
+		assertEquals("A malformed line should have been skipped", 1, reloaded.size());
+		assertArrayEquals(new double[] { 0.7, 1.5, 120 }, reloaded.get("1abc.B", "1abc.A"), PRECISION);
+		assertNull(reloaded.get("1abc.A", "1abc.C"));
+		assertNull(reloaded.get("1abc.A", "1abc.D"));
+		try {
+			reloaded.put("1abc.A", "1abc.E", 0.5);
+			fail("A record with the wrong number of values was stored");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testTruncated() throws IOException {
+		File file = File.createTempFile("artifacts", ".tsv");
+		file.delete();
+		file.deleteOnExit();
+		AlignmentArtifacts artifacts = new AlignmentArtifacts(file, "test", 3);
+		artifacts.put("1abc.A", "1abc.B", 0.7, 1.5, 120);
+		artifacts.put("1abc.A", "1abc.C", 0.6, 2.5, 110);
+		artifacts.close();
+		// cut the last record off partway through, as a crash might
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(raf.length() - 5);
+		}
+		AlignmentArtifacts reloaded = new AlignmentArtifacts(file, "test", 3);
+		assertEquals("A cut-off line should have been dropped", 1, reloaded.size());
+		assertNull(reloaded.get("1abc.A", "1abc.C"));
+		reloaded.put("1abc.A", "1abc.C", 0.6, 2.5, 110);
+		reloaded.close();
+		AlignmentArtifacts again = new AlignmentArtifacts(file, "test", 3);
+		assertEquals("A record appended after a cut-off line was lost", 2, again.size());
+		assertArrayEquals(new double[] { 0.6, 2.5, 110 }, again.get("1abc.C", "1abc.A"), PRECISION);
+	}
+
+	@Test
+	public void testByParameters() throws IOException {
+		File dir = File.createTempFile("artifacts", "");
+		dir.delete();
+		assertNull(AlignmentArtifacts.forKind("nw", "matrix=BLOSUM62", 3));
+		AlignmentArtifacts.setDirectory(dir);
+		try {
+			AlignmentArtifacts artifacts = AlignmentArtifacts.forKind("nw", "matrix=BLOSUM62", 3);
+			assertSame(artifacts, AlignmentArtifacts.forKind("nw", "matrix=BLOSUM62", 3));
+			assertNotSame(artifacts, AlignmentArtifacts.forKind("nw", "matrix=PAM250", 3));
+			artifacts.put("P00001", "P00002", 0.5, 100, 42);
+			assertNull(AlignmentArtifacts.forKind("nw", "matrix=PAM250", 3).get("P00001", "P00002"));
+		} finally {
+			AlignmentArtifacts.setDirectory(null);
+			for (File file : dir.listFiles()) {
+				file.delete();
+			}
+			dir.delete();
+		}
+	}
+
+}
@@ -0,0 +1,159 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.biojava.bio.structure.Atom;
+import org.junit.Test;
+
+public class AtomArrayCacheTest {
+
+	/**
+	 * Gives each chain as many atoms as the number after its dot, and counts how many times each was parsed.
+	 */
+	private static class CountingCache extends AtomArrayCache {
+		private final Map<String, AtomicInteger> nLoads = new ConcurrentHashMap<>();
+		public CountingCache(long maxAtoms) {
+			super(null, maxAtoms);
+		}
+		public int getLoads(String pdbIdAndChain) {
+			AtomicInteger n = nLoads.get(pdbIdAndChain);
+			return n == null ? 0 : n.get();
+		}
+		@Override
+		protected Atom[] load(String pdbIdAndChain) throws IOException {
+			if (pdbIdAndChain.startsWith("fail")) throw new IOException("Couldn't parse");
+			nLoads.putIfAbsent(pdbIdAndChain, new AtomicInteger(0));
+			nLoads.get(pdbIdAndChain).incrementAndGet();
+			try {
+				Thread.sleep(50);
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			}
+			return new Atom[Integer.parseInt(pdbIdAndChain.substring(pdbIdAndChain.lastIndexOf('.') + 1))];
+		}
+	}
+
+	@Test
+	public void testBounded() throws Exception {
+		CountingCache cache = new CountingCache(100);
+		cache.getAtoms("a.40");
+		cache.getAtoms("b.40");
+		assertEquals(80, cache.getTotalAtoms());
+		cache.getAtoms("c.40"); // a is the least recently used
+		assertEquals(80, cache.getTotalAtoms());
+		assertEquals(2, cache.size());
+		cache.getAtoms("a.40");
+		assertEquals("An evicted chain wasn't parsed again", 2, cache.getLoads("a.40"));
+		cache.getAtoms("huge.500");
+		cache.getAtoms("huge.500");
+		assertEquals("A chain larger than the cache was kept", 2, cache.getLoads("huge.500"));
+		assertEquals(80, cache.getTotalAtoms());
+	}
+
+	@Test
+	public void testLimit() throws Exception {
+		CountingCache cache = new CountingCache(100);
+		cache.getAtoms("a.40");
+		cache.getAtoms("b.40");
+		cache.setLimit(50L);
+		assertEquals("The cache wasn't shrunk to its limit", 40, cache.getTotalAtoms());
+		cache.getAtoms("c.60");
+		cache.getAtoms("c.60");
+		assertEquals("A chain over the limit was kept", 2, cache.getLoads("c.60"));
+		cache.setLimit(null);
+		assertEquals(100, cache.getLimit());
+		cache.getAtoms("c.60");
+		assertEquals(100, cache.getTotalAtoms());
+	}
+
+	@Test
+	public void testUsedBy() {
+		assertTrue(AtomCacheFactory.isUsedBy(new SimpleWeightCreator()));
+		assertFalse(AtomCacheFactory.isUsedBy(new FallbackWeightCreator(ScopWeight.class, NeedlemanWunschWeight.class)));
+		assertTrue(AtomCacheFactory.isUsedBy(new FallbackWeightCreator(ScopWeight.class, CeWeight.class)));
+		assertEquals(0, AtomCacheFactory.reserve(new FallbackWeightCreator(ScopWeight.class), 1024 * 1024 * 1024));
+	}
+
+	@Test
+	public void testFrequent() throws Exception {
+		CountingCache cache = new CountingCache(100);
+		Atom[] popular = cache.getAtoms("popular.40");
+		for (int i = 0; i < 5; i++) {
+			assertSame(popular, cache.getAtoms("popular.40"));
+		}
+		cache.getAtoms("once.40");
+		cache.getAtoms("twice.40"); // popular is older, but once is used less
+		assertSame(popular, cache.getAtoms("popular.40"));
+		assertEquals(1, cache.getLoads("popular.40"));
+		cache.getAtoms("once.40");
+		assertEquals(2, cache.getLoads("once.40"));
+	}
+
+	@Test
+	public void testFailuresForgotten() throws Exception {
+		CountingCache cache = new CountingCache(100);
+		try {
+			cache.getAtoms("fail.10");
+			fail("The exception was swallowed");
+		} catch (IOException e) {
+			// expected
+		}
+		assertEquals(0, cache.size());
+		Atom[] atoms = cache.getAtoms("a.10");
+		cache.clear();
+		assertNotSame(atoms, cache.getAtoms("a.10"));
+	}
+
+	@Test
+	public void testOncePerChain() throws Exception {
+		final CountingCache cache = new CountingCache(1000);
+		ExecutorService pool = Executors.newFixedThreadPool(6);
+		List<Future<Atom[]>> futures = new ArrayList<>();
+		for (int i = 0; i < 6; i++) {
+			futures.add(pool.submit(new Callable<Atom[]>() {
+				@Override
+				public Atom[] call() throws Exception {
+					return cache.getAtoms("1abc.A.30");
+				}
+			}));
+		}
+		Atom[] first = futures.get(0).get();
+		for (Future<Atom[]> future : futures) {
+			assertSame(first, future.get());
+		}
+		pool.shutdown();
+		assertEquals("The same chain was parsed more than once", 1, cache.getLoads("1abc.A.30"));
+		assertEquals(30, cache.getTotalAtoms());
+	}
+
+}
@@ -0,0 +1,57 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class CandidateIndexTest {
+
+	@Test
+	public void testPut() {
+		CandidateIndex index = new CandidateIndex("test", 2);
+		index.put(1, 5, 6, 6, 7);
+		index.put(2, 6, 7);
+		index.put(3, 7, 8);
+		assertEquals(new HashSet<>(Arrays.asList(2)), index.getCandidates(1));
+		assertTrue(index.getCandidates(3).isEmpty());
+		index.put(2, 8); // replaces its old keys
+		assertTrue(index.getCandidates(1).isEmpty());
+		assertTrue(index.getCandidates(4).isEmpty());
+		assertFalse(index.contains(4));
+		assertEquals(3, index.size());
+	}
+
+	@Test
+	public void testWords() {
+		Map<Integer, String> sequences = new HashMap<>();
+		sequences.put(1, "MKTAYIAKQRQISFVKSHFSRQ");
+		sequences.put(2, "MKTAYIAKQRQLSFVKSHFSRQ"); // one substitution
+		sequences.put(3, "GGWLPNDEECHGGWLPNDEECH");
+		CandidateIndex index = CandidateIndex.ofWords(sequences, 4, 2);
+		assertEquals(new HashSet<>(Arrays.asList(2)), index.getCandidates(1));
+		assertTrue(index.getCandidates(3).isEmpty());
+		assertEquals("Repeated words were counted twice", 6, CandidateIndex.words("AAAAAXCDEA", 4).length);
+	}
+
+}
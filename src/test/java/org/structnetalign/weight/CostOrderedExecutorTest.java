@@ -0,0 +1,210 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class CostOrderedExecutorTest {
+
+	private static class CostedWeight implements Weight {
+		private final double cost;
+		private final List<Double> ran;
+		public CostedWeight(double cost, List<Double> ran) {
+			this.cost = cost;
+			this.ran = ran;
+		}
+		@Override
+		public WeightResult call() throws Exception {
+			ran.add(cost);
+			return new WeightResult(cost, 0, 0, null, null, CostedWeight.class);
+		}
+		@Override
+		public double assignWeight(int v1, int v2, String uniProtId1, String uniProtId2) throws Exception {
+			return call().getWeight();
+		}
+		@Override
+		public void setIds(int v1, int v2, String uniProtId1, String uniProtId2) throws WeightException {
+		}
+	}
+
+	private static class BatchedWeight extends CostedWeight implements BatchWeight {
+		public BatchedWeight(double cost, List<Double> ran) {
+			super(cost, ran);
+		}
+		@Override
+		public String getBatchKey() {
+			return null;
+		}
+		@Override
+		public void prepareBatch(List<? extends Weight> batch) throws Exception {
+		}
+	}
+
+	private static WeightBatch batchOf(int n, List<Double> ran) {
+		List<BatchWeight> weights = new ArrayList<>();
+		for (int i = 0; i < n; i++) {
+			weights.add(new BatchedWeight(i, ran));
+		}
+		return new WeightBatch(weights);
+	}
+
+	@Test
+	public void testMostExpensiveFirst() throws Exception {
+		WeightCostModel model = new WeightCostModel() {
+			@Override
+			public double estimateCost(Weight weight) {
+				return ((CostedWeight) weight).cost;
+			}
+		};
+		CostOrderedExecutor pool = new CostOrderedExecutor(1, model);
+		try {
+			// hold the only thread so that everything else has to wait in the queue
+			final CountDownLatch latch = new CountDownLatch(1);
+			Future<?> blocker = pool.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					latch.await();
+					return null;
+				}
+			});
+			List<Double> ran = Collections.synchronizedList(new ArrayList<Double>());
+			List<Future<WeightResult>> futures = new ArrayList<>();
+			for (double cost : new double[] {1, 3, 2, 3}) {
+				futures.add(pool.submit(new CostedWeight(cost, ran)));
+			}
+			latch.countDown();
+			blocker.get();
+			for (Future<WeightResult> future : futures) {
+				future.get();
+			}
+			assertEquals(Arrays.asList(3.0, 3.0, 2.0, 1.0), ran);
+			assertEquals(1, futures.get(0).get().getWeight(), 0);
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testBatchInterrupted() throws Exception {
+		final List<Double> ran = Collections.synchronizedList(new ArrayList<Double>());
+		List<BatchWeight> weights = new ArrayList<>();
+		weights.add(new BatchedWeight(0, ran) {
+			@Override
+			public WeightResult call() throws Exception {
+				Thread.currentThread().interrupt(); // as if the whole batch were cancelled while this ran
+				return super.call();
+			}
+		});
+		weights.add(new BatchedWeight(1, ran));
+		weights.add(new BatchedWeight(2, ran));
+		WeightBatch batch = new WeightBatch(weights);
+		try {
+			batch.call();
+		} finally {
+			Thread.interrupted();
+		}
+		assertEquals(Arrays.asList(0.0), ran);
+		List<Future<WeightResult>> futures = batch.getFutures();
+		assertEquals(0, futures.get(0).get().getWeight(), 0);
+		assertTrue("A Weight ran after its batch was interrupted", futures.get(1).isCancelled());
+		assertTrue("A Weight ran after its batch was interrupted", futures.get(2).isCancelled());
+	}
+
+	@Test
+	public void testBatchNeverRun() throws Exception {
+		List<Double> ran = Collections.synchronizedList(new ArrayList<Double>());
+		CostOrderedExecutor pool = new CostOrderedExecutor(1, null);
+		// hold the only thread so that the batches have to wait in the queue
+		final CountDownLatch latch = new CountDownLatch(1);
+		pool.submit(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				latch.await();
+				return null;
+			}
+		});
+		WeightBatch cancelled = batchOf(3, ran);
+		pool.submit(cancelled).cancel(false);
+		WeightBatch dropped = batchOf(3, ran);
+		pool.submit(dropped);
+		pool.shutdownNow();
+		WeightBatch rejected = batchOf(3, ran);
+		try {
+			pool.submit(rejected);
+			fail("A batch was accepted after shutting down");
+		} catch (RejectedExecutionException e) {
+			// expected
+		}
+		for (WeightBatch batch : Arrays.asList(cancelled, dropped, rejected)) {
+			for (Future<WeightResult> future : batch.getFutures()) {
+				assertTrue("A Weight in a batch that never ran would be waited on forever", future.isCancelled());
+			}
+		}
+		assertEquals(0, ran.size());
+	}
+
+	@Test
+	public void testMemoryBudget() throws Exception {
+		final AtomicInteger nRunning = new AtomicInteger(0);
+		final AtomicInteger maxRunning = new AtomicInteger(0);
+		WeightMemoryModel model = new WeightMemoryModel() {
+			@Override
+			public long estimateMemory(Weight weight) {
+				return ((CostedWeight) weight).cost == 0 ? 10 * 1024 * 1024 : 1024 * 1024;
+			}
+		};
+		CostOrderedExecutor pool = new CostOrderedExecutor(4, null, model, 2 * 1024 * 1024);
+		try {
+			List<Future<WeightResult>> futures = new ArrayList<>();
+			for (int i = 0; i < 8; i++) {
+				futures.add(pool.submit(new CostedWeight(1, Collections.synchronizedList(new ArrayList<Double>())) {
+					@Override
+					public WeightResult call() throws Exception {
+						int n = nRunning.incrementAndGet();
+						synchronized (maxRunning) {
+							if (n > maxRunning.get()) maxRunning.set(n);
+						}
+						Thread.sleep(50);
+						nRunning.decrementAndGet();
+						return super.call();
+					}
+				}));
+			}
+			// larger than the whole budget, but should still run
+			futures.add(pool.submit(new CostedWeight(0, new ArrayList<Double>())));
+			for (Future<WeightResult> future : futures) {
+				future.get();
+			}
+			assertTrue("Too many jobs ran at once: " + maxRunning.get(), maxRunning.get() <= 2);
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+}
@@ -0,0 +1,84 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.structnetalign.HomologyEdge;
+
+import edu.uci.ics.jung.graph.UndirectedGraph;
+
+public class ForkJoinWeightManagerTest {
+
+	@Test
+	public void testWithFailure() {
+		ForkJoinWeightManager manager = new ForkJoinWeightManager(SmarterWeightManagerTest.failingCreator(), 2);
+		UndirectedGraph<Integer,HomologyEdge> hom = WeightManagerTest.testSimple(manager);
+		SmarterWeightManagerTest.assertWithFailure(hom);
+	}
+
+	@Test
+	public void testWithFailedResults() {
+		ForkJoinWeightManager manager = new ForkJoinWeightManager(SmarterWeightManagerTest.failingCreator(true), 2);
+		UndirectedGraph<Integer,HomologyEdge> hom = WeightManagerTest.testSimple(manager);
+		SmarterWeightManagerTest.assertWithFailure(hom);
+	}
+
+	@Test
+	public void testSplitting() {
+		ForkJoinWeightManager manager = new ForkJoinWeightManager(SmarterWeightManagerTest.failingCreator(), 4);
+		manager.setGrain(1); // every pair gets its own task
+		UndirectedGraph<Integer,HomologyEdge> hom = WeightManagerTest.testSimple(manager);
+		SmarterWeightManagerTest.assertWithFailure(hom);
+	}
+
+	@Test
+	public void testBlocking() {
+		WeightCreator creator = new WeightCreator() {
+			@Override
+			public Weight nextWeight(int a, int b, String uniProtIdA, String uniProtIdB, int n, boolean isFail, Class<? extends Weight> failed) {
+				return null;
+			}
+			@Override
+			public List<Weight> initialWeights(int a, int b, String uniProtIdA, String uniProtIdB) {
+				List<Weight> weights = new ArrayList<Weight>(1);
+				Weight weight = new SmarterWeightManagerTest.WaitingWeight();
+				try {
+					weight.setIds(a, b, uniProtIdA, uniProtIdB);
+				} catch (WeightException e) {
+					throw new RuntimeException(e);
+				}
+				weights.add(weight);
+				return weights;
+			}
+		};
+		ForkJoinWeightManager manager = new ForkJoinWeightManager(creator, 1);
+		manager.setGrain(1);
+		manager.setBlocking(SmarterWeightManagerTest.WaitingWeight.class, true);
+		long start = System.currentTimeMillis();
+		UndirectedGraph<Integer,HomologyEdge> hom = WeightManagerTest.testSimple(manager);
+		// with only the single worker this would take 3 seconds
+		assertTrue("Waiting weights should have run together", System.currentTimeMillis() - start < 2000);
+		assertEquals("Wrong number of homology edges", 15, hom.getEdgeCount());
+		assertEquals(0.3, hom.findEdge(1, 2).getWeight(), 0.001);
+		assertEquals(0.3, hom.findEdge(1, 2).getEvidence(WeightResult.sourceOf(SmarterWeightManagerTest.WaitingWeight.class)), 0.001);
+	}
+
+}
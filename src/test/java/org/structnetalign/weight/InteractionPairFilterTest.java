@@ -0,0 +1,79 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.structnetalign.CleverGraph;
+import org.structnetalign.InteractionEdge;
+
+public class InteractionPairFilterTest {
+
+	private CleverGraph graph;
+
+	@Before
+	public void setUp() {
+		graph = new CleverGraph();
+		for (int v = 1; v <= 6; v++) {
+			graph.addVertex(v);
+		}
+		graph.addInteraction(new InteractionEdge(1, 0.5), 1, 2);
+		graph.addInteraction(new InteractionEdge(2, 0.5), 3, 2);
+		// 5 and 6 have no interactions
+		graph.addInteraction(new InteractionEdge(3, 0.5), 4, 1);
+	}
+
+	@Test
+	public void testCrossingOnly() {
+		InteractionPairFilter xi1 = new InteractionPairFilter(1, false);
+		assertTrue(xi1.accept(graph, 1, 4));
+		assertFalse(xi1.accept(graph, 1, 5));
+		assertFalse(xi1.accept(graph, 5, 6));
+		InteractionPairFilter xi2 = new InteractionPairFilter(2, false);
+		assertTrue(xi2.accept(graph, 1, 5));
+		assertFalse(xi2.accept(graph, 5, 6));
+		InteractionPairFilter xi3 = new InteractionPairFilter(3, false);
+		assertTrue(xi3.accept(graph, 5, 6));
+	}
+
+	@Test
+	public void testMerging() {
+		InteractionPairFilter filter = new InteractionPairFilter(0, true);
+		assertTrue(filter.accept(graph, 5, 6));
+		assertFalse(filter.accept(graph, 1, 5));
+		assertFalse(filter.accept(graph, 1, 2));
+		assertFalse(filter.accept(graph, 1, 3)); // 1 also interacts with 4
+		graph.addInteraction(new InteractionEdge(4, 0.5), 4, 3);
+		assertTrue(filter.accept(graph, 1, 3));
+	}
+
+	@Test
+	public void testNoOp() {
+		InteractionPairFilter defaults = new InteractionPairFilter(2, true);
+		assertTrue(defaults.isNoOp());
+		for (int a = 1; a <= 6; a++) {
+			for (int b = a + 1; b <= 6; b++) {
+				assertTrue(defaults.accept(graph, a, b));
+			}
+		}
+		assertFalse(new InteractionPairFilter(2, false).isNoOp());
+		assertFalse(new InteractionPairFilter(1, true).isNoOp());
+		assertTrue(new InteractionPairFilter(3, false).isNoOp());
+	}
+
+}
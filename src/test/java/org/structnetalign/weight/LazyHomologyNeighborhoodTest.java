@@ -0,0 +1,137 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.structnetalign.CleverGraph;
+import org.structnetalign.HomologyEdge;
+import org.structnetalign.InteractionEdge;
+import org.structnetalign.cross.SimpleCrossingManager;
+
+public class LazyHomologyNeighborhoodTest {
+
+	private static final double PRECISION = 0.001;
+
+	private Map<Integer, String> uniProtIds;
+
+	private CleverGraph graph;
+
+	private InteractionEdge root;
+
+	private WeightCreator creator;
+
+	@Before
+	public void setUp() {
+		graph = new CleverGraph();
+		uniProtIds = new HashMap<>();
+		for (int v = 1; v <= 8; v++) {
+			graph.addVertex(v);
+			uniProtIds.put(v, "P0000" + v);
+		}
+		root = new InteractionEdge(1, 0.5);
+		graph.addInteraction(root, 1, 3);
+		graph.addInteraction(new InteractionEdge(2, 0.5), 2, 4);
+		graph.addInteraction(new InteractionEdge(3, 0.5), 5, 6);
+
+		creator = new WeightCreator() {
+			@Override
+			public Weight nextWeight(int a, int b, String uniProtIdA, String uniProtIdB, int n, boolean isFail, Class<? extends Weight> failed) {
+				return null;
+			}
+			@Override
+			public List<Weight> initialWeights(int a, int b, String uniProtIdA, String uniProtIdB) {
+				List<Weight> weights = new ArrayList<Weight>(1);
+				boolean close = a == 1 && b == 2 || a == 3 && b == 4;
+				Weight weight = SmarterWeightManagerTest.reallySimpleWeight(close ? 0.8 : 0.1, null);
+				try {
+					weight.setIds(a, b, uniProtIdA, uniProtIdB);
+				} catch (WeightException e) {
+					throw new RuntimeException(e);
+				}
+				weights.add(weight);
+				return weights;
+			}
+		};
+
+	}
+
+	@Test
+	public void testCross() {
+
+		LazyHomologyNeighborhood lazy = new LazyHomologyNeighborhood(graph, uniProtIds, creator, 0.5);
+		SimpleCrossingManager cross = new SimpleCrossingManager(2, 1);
+		cross.setHomology(lazy);
+		cross.cross(graph);
+
+		// 7 and 8 have no interactions, so nothing ever asks about them as a pair
+		assertEquals("Wrong number of pairs weighted", 27, lazy.getNComputed());
+		assertTrue(lazy.isHomologous(1, 2));
+		assertFalse(lazy.isHomologous(1, 3));
+		assertEquals(0.5 + 0.5*0.8*0.8 - 0.5*0.5*0.8*0.8, root.getWeight(), PRECISION);
+
+		assertEquals(2, lazy.materialize(graph));
+		assertNotNull(graph.getHomology().findEdge(1, 2));
+		assertNotNull(graph.getHomology().findEdge(3, 4));
+		assertEquals(0.8, graph.getHomology().findEdge(3, 4).getWeight(), PRECISION);
+		assertEquals(1, graph.getHomology().findEdge(3, 4).getEvidence().size());
+		assertNull(graph.getHomology().findEdge(3, 4).getEvidence(HomologyEdge.UNATTRIBUTED));
+	}
+
+	@Test
+	public void testScreened() {
+
+		// 1 and 2 share a family, as do 3 and 4; 5 has none of its own; 6 isn't annotated at all
+		CandidateIndex index = new CandidateIndex("test", 1);
+		index.put(1, 10, 11);
+		index.put(2, 11);
+		index.put(3, 20);
+		index.put(4, 20, 21);
+		index.put(5, 30);
+		index.put(7, 10);
+		index.put(8, 40);
+
+		LazyHomologyNeighborhood lazy = new LazyHomologyNeighborhood(graph, uniProtIds, creator, 0.5);
+		lazy.addCandidateIndex(index);
+		assertEquals(new HashSet<>(Arrays.asList(2, 6, 7)), new HashSet<>(lazy.getCandidates(1)));
+		assertEquals(new HashSet<>(Arrays.asList(1, 6)), new HashSet<>(lazy.getCandidates(2)));
+		// nothing is known about 6, so it can't be screened
+		assertEquals(new HashSet<>(Arrays.asList(1, 2, 3, 4, 5, 7, 8)), new HashSet<>(lazy.getCandidates(6)));
+
+		SimpleCrossingManager cross = new SimpleCrossingManager(2, 1);
+		cross.setHomology(lazy);
+		cross.cross(graph);
+
+		// the 7 pairs with 6, and the 3 others that share a family, rather than 27
+		assertEquals("Wrong number of pairs weighted", 10, lazy.getNComputed());
+		assertEquals(0.5 + 0.5*0.8*0.8 - 0.5*0.5*0.8*0.8, root.getWeight(), PRECISION);
+		assertEquals(2, lazy.materialize(graph));
+		assertEquals(0.8, graph.getHomology().findEdge(3, 4).getWeight(), PRECISION);
+	}
+
+}
@@ -0,0 +1,73 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class LedgerWeightCreatorTest {
+
+	public static class First extends SmarterWeightManagerTest.SlowWeight {
+	}
+
+	public static class Second extends SmarterWeightManagerTest.SlowWeight {
+	}
+
+	public static class Third extends SmarterWeightManagerTest.SlowWeight {
+	}
+
+	public static class Extra extends SmarterWeightManagerTest.SlowWeight {
+	}
+
+	private static List<Class<? extends Weight>> classesOf(List<Weight> weights) {
+		List<Class<? extends Weight>> classes = new ArrayList<>();
+		for (Weight weight : weights) {
+			classes.add(weight.getClass());
+		}
+		return classes;
+	}
+
+	@Test
+	public void test() {
+		List<Class<? extends Weight>> chain = Arrays.<Class<? extends Weight>> asList(First.class, Second.class,
+				Third.class);
+		LedgerWeightCreator creator = new LedgerWeightCreator(Arrays.<Class<? extends Weight>> asList(Second.class,
+				Extra.class), chain);
+		creator.putLedger(2, 1, Arrays.asList("First")); // the chain stopped at First
+		creator.putLedger(1, 3, Arrays.asList("Second"));
+		creator.putLedger(1, 4, Arrays.asList("Third", "Extra"));
+		creator.putLedger(1, 5, Collections.<String> emptyList());
+
+		assertTrue(creator.initialWeights(1, 2, "P00001", "P00002").isEmpty());
+		assertEquals(Arrays.asList(Second.class), classesOf(creator.initialWeights(1, 3, "P00001", "P00003")));
+		// Second failed before Third succeeded, and Extra had its own evidence
+		assertEquals(Arrays.asList(Second.class, Extra.class),
+				classesOf(creator.initialWeights(1, 4, "P00001", "P00004")));
+		// nothing before either left evidence, whether or not the pair was in the file
+		assertEquals(Arrays.asList(Second.class, Extra.class),
+				classesOf(creator.initialWeights(1, 5, "P00001", "P00005")));
+		assertEquals(Arrays.asList(Second.class, Extra.class),
+				classesOf(creator.initialWeights(1, 6, "P00001", "P00006")));
+		assertEquals(null, creator.nextWeight(1, 3, "P00001", "P00003", 1, true, null));
+	}
+
+}
@@ -34,6 +34,32 @@ public class NeedlemanWunschWeightTest {
 		 */
 		double prob = weight.assignWeight(0, 1, "P02185", "P00720");
 		assertEquals(0.3828903187777678, prob, PRECISION);
+		assertTrue("The upper bound is lower than the weight", weight.upperBound() >= prob);
+	}
+
+	@Test
+	public void testUpperBound() throws Exception {
+		ResidueCounts.putSequenceLength("Q00001", 100);
+		ResidueCounts.putSequenceLength("Q00002", 50);
+		ResidueCounts.putSequenceLength("Q00003", 100);
+		GammaScorer gamma = NeedlemanWunschWeight.getGamma();
+		NeedlemanWunschWeight weight = new NeedlemanWunschWeight();
+		try {
+			// the Webber and Barton density only falls from 0 identity, so the ratio can't lower the bound
+			weight.setIds(0, 1, "Q00001", "Q00002");
+			assertEquals(gamma.score(null, 0), weight.upperBound(), PRECISION);
+			assertTrue(gamma.getPeak() < 0);
+			// one that peaks at about 90% identity is capped at 50% by a length ratio of 2
+			GammaScorer shifted = new GammaScorer(25.54, 4.0, 0.2);
+			NeedlemanWunschWeight.setGamma(shifted);
+			double capped = weight.upperBound();
+			assertEquals(shifted.score(null, 0.5), capped, PRECISION);
+			weight.setIds(0, 2, "Q00001", "Q00003");
+			assertEquals(shifted.score(null, shifted.getPeak()), weight.upperBound(), PRECISION);
+			assertTrue("The length ratio didn't lower the bound", capped < weight.upperBound());
+		} finally {
+			NeedlemanWunschWeight.setGamma(gamma);
+		}
 	}
 	
 }
@@ -0,0 +1,108 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import edu.uci.ics.jung.graph.util.Pair;
+
+public class PfamWeightTest {
+
+	private static final double PRECISION = 0.000001;
+
+	@Test
+	public void testLoad() throws IOException {
+		File file = File.createTempFile("pfam", ".tsv");
+		file.deleteOnExit();
+		try (PrintWriter pw = new PrintWriter(new FileWriter(file))) {
+			pw.println("uniprot_acc\tseq_version\tcrc64\tmd5\tpfamA_acc\tseq_start\tseq_end");
+			pw.println("P12345\t1\t0\t0\tPF00069\t10\t200");
+			pw.println("P12345\t1\t0\t0\tPF00017.20\t220\t300");
+			pw.println("P12345\t1\t0\t0\tPF00069\t310\t500"); // a repeat
+			pw.println("Q99999\t2\t0\t0\tPF00069\t1\t100");
+			pw.println("O00000\t1\t0\t0\tPF00001\t1\t100");
+		}
+		PfamIndex index = new PfamIndex();
+		Set<String> only = new HashSet<>();
+		only.add("P12345");
+		only.add("Q99999");
+		index.load(file, only);
+		assertEquals(2, index.size());
+		assertArrayEquals(new int[] { 17, 69 }, index.getFamilies("P12345"));
+		assertArrayEquals(new int[] { 69 }, index.getFamilies("Q99999"));
+		assertNull(index.getFamilies("O00000"));
+	}
+
+	@Test
+	public void testWeight() throws Exception {
+		PfamIndex index = new PfamIndex();
+		index.put("A", 1, 2);
+		index.put("B", 2, 1);
+		index.put("C", 2, 3);
+		index.put("D", 4);
+		PfamIndex original = PfamWeight.getIndex();
+		PfamWeight.setIndex(index);
+		try {
+			assertEquals(0.5, new PfamWeight(0.5).assignWeight(1, 2, "A", "B"), PRECISION);
+			assertEquals(0.5 / 3, new PfamWeight(0.5).assignWeight(1, 3, "A", "C"), PRECISION);
+			PfamWeight weight = new PfamWeight(0.5);
+			weight.setIds(1, 4, "A", "D");
+			assertTrue(weight.call().isFailed());
+			try {
+				weight.setIds(1, 5, "A", "E");
+				throw new AssertionError("E has no families");
+			} catch (WeightException e) {
+				// expected
+			}
+		} finally {
+			PfamWeight.setIndex(original);
+		}
+	}
+
+	@Test
+	public void testSharingPairs() {
+		PfamIndex index = new PfamIndex();
+		index.put("A", 1, 2);
+		index.put("B", 1, 2);
+		index.put("C", 2);
+		index.put("D", 3);
+		Map<Integer, String> uniProtIds = new HashMap<>();
+		uniProtIds.put(1, "A");
+		uniProtIds.put(2, "B");
+		uniProtIds.put(3, "C");
+		uniProtIds.put(4, "D");
+		uniProtIds.put(5, "E");
+		Map<Pair<Integer>, Integer> pairs = index.getSharingPairs(uniProtIds);
+		assertEquals(3, pairs.size());
+		assertEquals(2, (int) pairs.get(new Pair<Integer>(1, 2)));
+		assertEquals(1, (int) pairs.get(new Pair<Integer>(1, 3)));
+		assertEquals(1, (int) pairs.get(new Pair<Integer>(2, 3)));
+	}
+
+}
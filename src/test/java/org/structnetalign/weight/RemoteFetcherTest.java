@@ -0,0 +1,173 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.biojava3.core.sequence.ProteinSequence;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.structnetalign.util.IdentifierMapping;
+import org.structnetalign.util.IdentifierMappingFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Runs {@link RemoteFetcher} and {@link SequenceFetcher} against a local stand-in server that counts its hits.
+ */
+public class RemoteFetcherTest {
+
+	private static final String FASTA_A = ">sp|P00001|ONE_TEST\nMKVLAAGIVGLLLA\n";
+	private static final String FASTA_B = ">sp|P00002|TWO_TEST\nMKTAYIAKQRQISF\n";
+	private static final String FASTA_C = ">sp|P00003|THREE_TEST\nMSDNELLKQLAEAL\n";
+
+	private final AtomicInteger nHits = new AtomicInteger(0);
+
+	private String root;
+
+	private HttpServer server;
+
+	@Before
+	public void setUp() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/slow", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				nHits.incrementAndGet();
+				try {
+					Thread.sleep(200);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				respond(exchange, "slow body");
+			}
+		});
+		server.createContext("/fasta", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				nHits.incrementAndGet();
+				String query = exchange.getRequestURI().getQuery();
+				StringBuilder sb = new StringBuilder();
+				if (query.contains("P00001")) sb.append(FASTA_A);
+				if (query.contains("P00002")) sb.append(FASTA_B);
+				if (query.contains("P00003")) sb.append(FASTA_C);
+				respond(exchange, sb.toString());
+			}
+		});
+		server.setExecutor(Executors.newFixedThreadPool(4));
+		server.start();
+		root = "http://localhost:" + server.getAddress().getPort();
+	}
+
+	@After
+	public void tearDown() {
+		server.stop(0);
+	}
+
+	@Test
+	public void testCoalescing() throws Exception {
+		final RemoteFetcher fetcher = new RemoteFetcher(10, 5000);
+		ExecutorService pool = Executors.newFixedThreadPool(8);
+		List<Future<String>> futures = new ArrayList<>();
+		for (int i = 0; i < 8; i++) {
+			futures.add(pool.submit(new Callable<String>() {
+				@Override
+				public String call() throws Exception {
+					return fetcher.fetch(root + "/slow");
+				}
+			}));
+		}
+		for (Future<String> future : futures) {
+			assertEquals("slow body", future.get());
+		}
+		pool.shutdown();
+		assertEquals("Concurrent requests for the same URL were not coalesced", 1, nHits.get());
+		assertEquals("slow body", fetcher.fetch(root + "/slow"));
+		assertEquals("A cached body was fetched again", 1, nHits.get());
+		assertEquals(1, fetcher.getNRequests());
+	}
+
+	@Test
+	public void testBatching() throws Exception {
+		RemoteFetcher fetcher = new RemoteFetcher(10, 5000);
+		SequenceFetcher sequences = new SequenceFetcher(fetcher, root + "/fasta?id=%s", root + "/fasta?ids=%s", ",");
+		Map<String, ProteinSequence> found = sequences.getSequences(Arrays.asList("P00001", "P00002", "P00003"));
+		assertEquals(3, found.size());
+		assertEquals("MKTAYIAKQRQISF", found.get("P00002").getSequenceAsString());
+		assertEquals("Three missing sequences were not fetched in one request", 1, nHits.get());
+		assertEquals("MKVLAAGIVGLLLA", sequences.getSequence("P00001").getSequenceAsString());
+		assertEquals("A fetched sequence was fetched again", 1, nHits.get());
+	}
+
+	@Test
+	public void testPrefill() throws Exception {
+		SequenceFetcher sequences = new SequenceFetcher(new RemoteFetcher(10, 5000), root + "/fasta?id=%s", root
+				+ "/fasta?ids=%s", ",");
+		sequences.setBatchSize(2);
+		Map<Integer, String> uniProtIds = new TreeMap<>();
+		uniProtIds.put(1, "P00001");
+		uniProtIds.put(2, "P00003");
+		uniProtIds.put(3, "P00001");
+		uniProtIds.put(4, "P00009"); // not on the server
+		IdentifierMapping mapping = IdentifierMappingFactory.getMapping();
+		IdentifierMappingFactory.setMapping(new IdentifierMapping() {
+			@Override
+			public String uniProtToPdb(String uniProtId) {
+				return "P00001".equals(uniProtId) ? "9zzz.A" : null;
+			}
+			@Override
+			public String uniProtToScop(String uniProtId) {
+				return null;
+			}
+		});
+		try {
+			assertEquals(2, ResidueCounts.prefill(uniProtIds, sequences));
+		} finally {
+			IdentifierMappingFactory.setMapping(mapping);
+		}
+		assertEquals(Integer.valueOf(14), ResidueCounts.getSequenceLength("P00003"));
+		assertEquals("A chain wasn't given its sequence's length", Integer.valueOf(14),
+				ResidueCounts.getChainLength("9zzz.A"));
+		assertNull(ResidueCounts.getSequenceLength("P00009"));
+		assertEquals("Sequences weren't fetched in batches", 2, nHits.get());
+	}
+
+	private static void respond(HttpExchange exchange, String body) throws IOException {
+		byte[] bytes = body.getBytes("UTF-8");
+		exchange.sendResponseHeaders(200, bytes.length);
+		try (OutputStream os = exchange.getResponseBody()) {
+			os.write(bytes);
+		}
+	}
+
+}
@@ -0,0 +1,177 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ResourcePairMemoTest {
+
+	private static class CountingScore implements ResourcePairMemo.Comparison<Double> {
+		private final AtomicInteger nCalls = new AtomicInteger(0);
+		private final AtomicInteger nReversed = new AtomicInteger(0);
+		private final Double score;
+		public CountingScore(Double score) {
+			this.score = score;
+		}
+		@Override
+		public Double compare(boolean reversed) throws Exception {
+			nCalls.incrementAndGet();
+			if (reversed) nReversed.incrementAndGet();
+			Thread.sleep(100);
+			return score;
+		}
+	}
+
+	@Before
+	public void setUp() {
+		// P1 belongs to two vertices, so anything mapped from it is shared
+		Map<Integer, String> uniProtIds = new HashMap<>();
+		uniProtIds.put(0, "P1");
+		uniProtIds.put(1, "P1");
+		uniProtIds.put(2, "P2");
+		uniProtIds.put(3, "P3");
+		ResourcePairMemo.startRun(uniProtIds);
+	}
+
+	@After
+	public void tearDown() {
+		ResourcePairMemo.startRun(new HashMap<Integer, String>());
+	}
+
+	@Test
+	public void testOncePerPair() throws Exception {
+		final ResourcePairMemo<Double> memo = new ResourcePairMemo<>();
+		final CountingScore score = new CountingScore(0.8);
+		ExecutorService pool = Executors.newFixedThreadPool(6);
+		List<Future<Double>> futures = new ArrayList<>();
+		for (int i = 0; i < 6; i++) {
+			final boolean reversed = i % 2 == 1;
+			futures.add(pool.submit(new Callable<Double>() {
+				@Override
+				public Double call() throws Exception {
+					if (reversed) return memo.get("1abc.B", "P2", "1abc.A", "P1", score);
+					return memo.get("1abc.A", "P1", "1abc.B", "P2", score);
+				}
+			}));
+		}
+		for (Future<Double> future : futures) {
+			assertEquals(0.8, future.get(), 0);
+		}
+		pool.shutdown();
+		assertEquals("The same pair of resources was computed more than once", 1, score.nCalls.get());
+		assertEquals(1, memo.size());
+		CountingScore none = new CountingScore(null);
+		assertNull(memo.get("1abc.A", "P1", "1abc.C", "P3", none));
+		assertNull(memo.get("1abc.A", "P1", "1abc.C", "P3", none));
+		assertEquals("A missing score was not remembered", 1, none.nCalls.get());
+	}
+
+	@Test
+	public void testOrientation() throws Exception {
+		ResourcePairMemo<Double> memo = new ResourcePairMemo<>();
+		CountingScore score = new CountingScore(0.8);
+		memo.get("1abc.B", "P2", "1abc.A", "P3", score);
+		memo.get("1abc.A", "P3", "1abc.B", "P2", score);
+		assertEquals(2, score.nCalls.get());
+		assertEquals("The pair wasn't always compared in the same order", 1, score.nReversed.get());
+	}
+
+	@Test
+	public void testUnshared() throws Exception {
+		ResourcePairMemo<Double> memo = new ResourcePairMemo<>();
+		CountingScore score = new CountingScore(0.8);
+		memo.get("1abc.B", "P2", "1abc.C", "P3", score);
+		memo.get("1abc.B", "P2", "1abc.C", "P3", score);
+		assertEquals("A pair that can't come up again was remembered", 0, memo.size());
+		assertEquals(2, score.nCalls.get());
+		// now 1abc.C stands for two UniProt Ids, so a pair with it can come up again
+		memo.get("1abc.D", "P4", "1abc.C", "P5", score);
+		memo.get("1abc.D", "P4", "1abc.C", "P5", score);
+		assertEquals(1, memo.size());
+		assertEquals(3, score.nCalls.get());
+	}
+
+	@Test
+	public void testBounded() throws Exception {
+		ResourcePairMemo<Double> memo = new ResourcePairMemo<>(2);
+		CountingScore score = new CountingScore(0.8);
+		memo.get("1abc.A", "P1", "1abc.B", "P2", score);
+		memo.get("1abc.A", "P1", "1abc.C", "P3", score);
+		memo.get("1abc.A", "P1", "1abc.D", "P4", score);
+		assertEquals(2, memo.size());
+		memo.get("1abc.A", "P1", "1abc.D", "P4", score);
+		assertEquals(3, score.nCalls.get());
+		memo.get("1abc.A", "P1", "1abc.B", "P2", score);
+		assertEquals("The oldest pair wasn't forgotten", 4, score.nCalls.get());
+	}
+
+	@Test
+	public void testStartRun() throws Exception {
+		ResourcePairMemo<Double> memo = new ResourcePairMemo<>();
+		CountingScore score = new CountingScore(0.8);
+		memo.get("1abc.A", "P1", "1abc.B", "P2", score);
+		assertEquals(1, memo.size());
+		Map<Integer, String> uniProtIds = new HashMap<>();
+		uniProtIds.put(0, "P1");
+		uniProtIds.put(1, "P2");
+		ResourcePairMemo.startRun(uniProtIds);
+		assertEquals("A new run didn't forget the last", 0, memo.size());
+		memo.get("1abc.A", "P1", "1abc.B", "P2", score);
+		assertEquals(0, memo.size());
+		assertEquals(2, score.nCalls.get());
+	}
+
+	@Test
+	public void testFailuresForgotten() throws Exception {
+		ResourcePairMemo<Double> memo = new ResourcePairMemo<>();
+		try {
+			memo.get("1abc.A", "P1", "1abc.B", "P2", new ResourcePairMemo.Comparison<Double>() {
+				@Override
+				public Double compare(boolean reversed) throws Exception {
+					throw new IOException("Couldn't download");
+				}
+			});
+			fail("The exception was swallowed");
+		} catch (IOException e) {
+			// expected
+		}
+		assertEquals(0, memo.size());
+		assertEquals(0.5, memo.get("1abc.A", "P1", "1abc.B", "P2", new CountingScore(0.5)), 0);
+	}
+
+	@Test
+	public void testDigest() {
+		assertEquals(ResourcePairMemo.digest("MKVLAAGIVGLLLA"), ResourcePairMemo.digest("MKVLAAGIVGLLLA"));
+		assertEquals(40, ResourcePairMemo.digest("MKVLAAGIVGLLLA").length());
+	}
+
+}
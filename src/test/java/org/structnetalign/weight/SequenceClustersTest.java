@@ -0,0 +1,63 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.biojava3.core.sequence.ProteinSequence;
+import org.junit.Test;
+
+public class SequenceClustersTest {
+
+	private static final double PRECISION = 0.000001;
+
+	private static final String A = "MKVLAAGIVGLLLAMSDNELLKQLAEALKTAYIAKQRQISFVKSHFSRQLEERLGLIEVQ";
+
+	/**
+	 * A with two substitutions.
+	 */
+	private static final String A_VARIANT = "MKVLAAGIVGLLLAMSDNELLKQWAEALKTAYIAKQRQISFVKSHFSRQLEERLGLIEVR";
+
+	private static final String B = "GSHMTTPLVHVASVEKGRSYEDFQKVYNAIALKLREDDEYDNYIGYGPVLVRLAWHTSGT";
+
+	@Test
+	public void testClustering() {
+		Map<Integer, ProteinSequence> sequences = new HashMap<>();
+		sequences.put(1, new ProteinSequence(A));
+		sequences.put(2, new ProteinSequence(A_VARIANT));
+		sequences.put(3, new ProteinSequence(A));
+		sequences.put(4, new ProteinSequence(B));
+		sequences.put(5, new ProteinSequence(A.substring(0, 30))); // too short to reach 90%
+		SequenceClusters clusters = new SequenceClusters(0.9);
+		clusters.clusterSequences(sequences);
+		assertEquals(3, clusters.getNClusters());
+		assertEquals(1, clusters.getRepresentative(1));
+		assertEquals(1, clusters.getRepresentative(2));
+		assertEquals(1, clusters.getRepresentative(3));
+		assertEquals(4, clusters.getRepresentative(4));
+		assertEquals(5, clusters.getRepresentative(5));
+		assertEquals(1, clusters.getIdentity(3), PRECISION);
+		assertEquals(58.0 / 60.0, clusters.getIdentity(2), PRECISION);
+		assertTrue(clusters.getErrorBound(2, 4) <= 2 * (1 - clusters.getIdentity()));
+		assertTrue(clusters.contains(5));
+		assertFalse(clusters.contains(6));
+	}
+
+}
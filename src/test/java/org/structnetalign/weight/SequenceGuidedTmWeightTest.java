@@ -0,0 +1,91 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class SequenceGuidedTmWeightTest {
+
+	private static final double PRECISION = 0.000001;
+
+	/**
+	 * 40 alpha carbons of an idealized helix.
+	 */
+	private static double[][] helix() {
+		double[][] x = new double[40][];
+		for (int i = 0; i < x.length; i++) {
+			x[i] = new double[] { 2.3 * Math.cos(i * 1.745), 2.3 * Math.sin(i * 1.745), 1.5 * i };
+		}
+		return x;
+	}
+
+	/**
+	 * Rotates {@code p} about z and then x, and translates it.
+	 */
+	private static double[] move(double[] p) {
+		double t = 0.9;
+		double[] a = { p[0] * Math.cos(t) - p[1] * Math.sin(t), p[0] * Math.sin(t) + p[1] * Math.cos(t), p[2] };
+		double[] b = { a[0], a[1] * Math.cos(t) - a[2] * Math.sin(t), a[1] * Math.sin(t) + a[2] * Math.cos(t) };
+		return new double[] { b[0] + 10, b[1] - 4, b[2] + 7 };
+	}
+
+	@Test
+	public void testRigidMotion() {
+		double[][] x = helix();
+		double[][] y = new double[x.length][];
+		for (int i = 0; i < x.length; i++) {
+			y[i] = move(x[i]);
+		}
+		assertEquals(1, SequenceGuidedTmWeight.tmScore(x, y, 40, 0), PRECISION);
+		// only 20 of 40 residues are aligned
+		double[][] half = new double[20][];
+		double[][] halfMoved = new double[20][];
+		System.arraycopy(x, 0, half, 0, 20);
+		System.arraycopy(y, 0, halfMoved, 0, 20);
+		assertEquals(0.5, SequenceGuidedTmWeight.tmScore(half, halfMoved, 40, 0), PRECISION);
+	}
+
+	@Test
+	public void testRefinement() {
+		double[][] x = helix();
+		double[][] y = new double[x.length][];
+		for (int i = 0; i < x.length; i++) {
+			if (i < 30) {
+				y[i] = move(x[i]);
+			} else { // the last 10 residues moved 4 Angstroms
+				y[i] = move(new double[] { x[i][0] + 4, x[i][1], x[i][2] });
+			}
+		}
+		double rigid = SequenceGuidedTmWeight.tmScore(x, y, 40, 0);
+		double refined = SequenceGuidedTmWeight.tmScore(x, y, 40, 3);
+		assertTrue("Refining didn't help", refined > rigid);
+		assertTrue(refined > 0.75);
+	}
+
+	@Test
+	public void testNoReflection() {
+		double[][] x = helix();
+		double[][] mirrored = new double[x.length][];
+		for (int i = 0; i < x.length; i++) {
+			mirrored[i] = new double[] { x[i][0], x[i][1], -x[i][2] };
+		}
+		assertTrue("A left-handed helix was superposed onto a right-handed one",
+				SequenceGuidedTmWeight.tmScore(x, mirrored, 40, 3) < 0.5);
+	}
+
+}
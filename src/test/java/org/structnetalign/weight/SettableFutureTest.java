@@ -0,0 +1,82 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Test;
+
+public class SettableFutureTest {
+
+	@Test
+	public void testSet() throws Exception {
+		final SettableFuture<String> future = new SettableFuture<>();
+		try {
+			future.get(10, TimeUnit.MILLISECONDS);
+			fail("An unset future returned");
+		} catch (TimeoutException e) {
+			// expected
+		}
+		new Thread(new Runnable() {
+			@Override
+			public void run() {
+				future.set("done");
+			}
+		}).start();
+		assertEquals("done", future.get(5, TimeUnit.SECONDS));
+		assertTrue(future.isDone());
+		assertFalse("A completed future was set again", future.set("again"));
+		assertFalse(future.cancel(true));
+		assertEquals("done", future.get());
+	}
+
+	@Test
+	public void testException() throws Exception {
+		SettableFuture<String> future = new SettableFuture<>();
+		IOException thrown = new IOException("Couldn't fetch");
+		assertTrue(future.setException(thrown));
+		try {
+			future.get();
+			fail("The exception was swallowed");
+		} catch (ExecutionException e) {
+			assertSame(thrown, e.getCause());
+		}
+	}
+
+	@Test
+	public void testCancel() throws Exception {
+		SettableFuture<String> future = new SettableFuture<>();
+		assertTrue(future.cancel(false));
+		assertTrue(future.isCancelled());
+		assertFalse(future.set("too late"));
+		try {
+			future.get();
+			fail("A cancelled future returned");
+		} catch (CancellationException e) {
+			// expected
+		}
+	}
+
+}
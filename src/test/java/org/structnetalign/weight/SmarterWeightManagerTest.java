@@ -15,14 +15,18 @@
 package org.structnetalign.weight;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.biojava.bio.structure.scop.ScopCategory;
 import org.junit.Test;
@@ -109,6 +113,8 @@ public class SmarterWeightManagerTest {
 		assertEquals("Wrong number of homology edges", 15, hom.getEdgeCount());
 
 		assertEquals(0.3+0.8-0.3*0.8, hom.findEdge(1, 2).getWeight(), PRECISION);
+		assertEquals(0.8, hom.findEdge(1, 2).getEvidence("ScopWeight"), PRECISION);
+		assertEquals(2, hom.findEdge(1, 2).getEvidence().size());
 		assertEquals(0.3+0.1-0.1*0.3, hom.findEdge(1, 3).getWeight(), PRECISION);
 		assertEquals(0.3, hom.findEdge(1, 4).getWeight(), PRECISION);
 		assertEquals(0.3, hom.findEdge(1, 5).getWeight(), PRECISION);
@@ -120,16 +126,25 @@ public class SmarterWeightManagerTest {
 		assertEquals(0.3+0.4-0.3*0.4, hom.findEdge(4, 5).getWeight(), PRECISION);
 	}
 
-	@Test
-	public void testWithFailure() {
-		WeightCreator creator = new WeightCreator() {
+	static WeightCreator failingCreator() {
+		return failingCreator(false);
+	}
+
+	/**
+	 * Runs 0.25 then 0.4 on every pair, except that 0.25 fails on (2, 3) and (4, 5), and 0.4 fails on (4, 5).
+	 * 
+	 * @param asResults
+	 *            Fail by returning failed WeightResults instead of throwing WeightExceptions
+	 */
+	static WeightCreator failingCreator(final boolean asResults) {
+		return new WeightCreator() {
 			@Override
 			public Weight nextWeight(int a, int b, String uniProtIdA, String uniProtIdB, int n, boolean isFail, Class<? extends Weight> failed) {
 				if (n == 1) {
 					Set<Pair<Integer>> failOn = new HashSet<>();
 					// we won't get to add the 0.4
 					failOn.add(new Pair<Integer>(4,5));
-					Weight weight = reallySimpleWeight(0.4, failOn);
+					Weight weight = reallySimpleWeight(0.4, failOn, asResults);
 					try {
 						weight.setIds(a, b, uniProtIdA, uniProtIdB);
 					} catch (WeightException e) {
@@ -145,7 +160,7 @@ public class SmarterWeightManagerTest {
 				Set<Pair<Integer>> failOn = new HashSet<>();
 				failOn.add(new Pair<Integer>(2,3));
 				failOn.add(new Pair<Integer>(4,5));
-				Weight weight = reallySimpleWeight(0.25, failOn);
+				Weight weight = reallySimpleWeight(0.25, failOn, asResults);
 				try {
 					weight.setIds(a, b, uniProtIdA, uniProtIdB);
 				} catch (WeightException e) {
@@ -155,8 +170,31 @@ public class SmarterWeightManagerTest {
 				return weights;
 			}
 		};
-		SmarterWeightManager manager = new SmarterWeightManager(creator, 2);
+	}
+
+	@Test
+	public void testWithFailure() {
+		SmarterWeightManager manager = new SmarterWeightManager(failingCreator(), 2);
+		UndirectedGraph<Integer,HomologyEdge> hom = WeightManagerTest.testSimple(manager);
+		assertWithFailure(hom);
+	}
+
+	@Test
+	public void testWithFailedResults() {
+		SmarterWeightManager manager = new SmarterWeightManager(failingCreator(true), 2);
+		UndirectedGraph<Integer,HomologyEdge> hom = WeightManagerTest.testSimple(manager);
+		assertWithFailure(hom);
+	}
+
+	@Test
+	public void testOneInFlight() {
+		SmarterWeightManager manager = new SmarterWeightManager(failingCreator(), 2);
+		manager.setMaxInFlight(1); // fallbacks have to wait for the pair before them to be combined
 		UndirectedGraph<Integer,HomologyEdge> hom = WeightManagerTest.testSimple(manager);
+		assertWithFailure(hom);
+	}
+
+	static void assertWithFailure(UndirectedGraph<Integer,HomologyEdge> hom) {
 		assertEquals("Wrong number of homology edges", 14, hom.getEdgeCount());
 
 		assertEquals(0.55, hom.findEdge(1, 2).getWeight(), PRECISION);
@@ -171,7 +209,360 @@ public class SmarterWeightManagerTest {
 		assertEquals(null, hom.findEdge(4, 5));
 	}
 
+	@Test
+	public void testSaturation() {
+		WeightCreator creator = new WeightCreator() {
+			@Override
+			public Weight nextWeight(int a, int b, String uniProtIdA, String uniProtIdB, int n, boolean isFail, Class<? extends Weight> failed) {
+				return null;
+			}
+			@Override
+			public List<Weight> initialWeights(int a, int b, String uniProtIdA, String uniProtIdB) {
+				List<Weight> weights = new ArrayList<Weight>(2);
+				// pairs with 1 saturate on the first weight; the rest need both
+				double first = a == 1 ? 0.6 : 0.2;
+				Weight weight1 = reallySimpleWeight(first, null);
+				Weight weight2 = reallySimpleWeight(0.3, null);
+				try {
+					weight1.setIds(a, b, uniProtIdA, uniProtIdB);
+					weight2.setIds(a, b, uniProtIdA, uniProtIdB);
+				} catch (WeightException e) {
+					throw new RuntimeException(e);
+				}
+				weights.add(weight1);
+				weights.add(weight2);
+				return weights;
+			}
+		};
+		SmarterWeightManager manager = new SmarterWeightManager(creator, 2);
+		manager.setSaturation(new SaturationPolicy(0.5));
+		UndirectedGraph<Integer,HomologyEdge> hom = WeightManagerTest.testSimple(manager);
+		assertEquals("Wrong number of homology edges", 15, hom.getEdgeCount());
+		assertEquals(0.6, hom.findEdge(1, 2).getWeight(), PRECISION);
+		assertEquals(0.6, hom.findEdge(1, 5).getWeight(), PRECISION);
+		assertEquals(0.2+0.3-0.2*0.3, hom.findEdge(2, 3).getWeight(), PRECISION);
+		assertEquals(0.2+0.3-0.2*0.3, hom.findEdge(4, 5).getWeight(), PRECISION);
+	}
+
+	/**
+	 * Takes far longer than the test should.
+	 */
+	static class SlowWeight implements Weight {
+		private int a;
+		private int b;
+		private String uniProtIdA;
+		private String uniProtIdB;
+		@Override
+		public WeightResult call() throws Exception {
+			Thread.sleep(60 * 1000);
+			return new WeightResult(0.2, a, b, uniProtIdA, uniProtIdB, SlowWeight.class);
+		}
+		@Override
+		public double assignWeight(int v1, int v2, String uniProtId1, String uniProtId2) throws Exception {
+			setIds(v1, v2, uniProtId1, uniProtId2);
+			return call().getWeight();
+		}
+		@Override
+		public void setIds(int v1, int v2, String uniProtId1, String uniProtId2) throws WeightException {
+			this.a = v1;
+			this.b = v2;
+			this.uniProtIdA = uniProtId1;
+			this.uniProtIdB = uniProtId2;
+		}
+		int getA() {
+			return a;
+		}
+		int getB() {
+			return b;
+		}
+	}
+
+	/**
+	 * Runs a {@link SlowWeight}, then a weight of 0.5 if it fails.
+	 */
+	private static WeightCreator slowThenFast() {
+		return new WeightCreator() {
+			@Override
+			public Weight nextWeight(int a, int b, String uniProtIdA, String uniProtIdB, int n, boolean isFail, Class<? extends Weight> failed) {
+				if (n != 1 || !isFail) return null;
+				Weight weight = reallySimpleWeight(0.5, null);
+				try {
+					weight.setIds(a, b, uniProtIdA, uniProtIdB);
+				} catch (WeightException e) {
+					throw new RuntimeException(e);
+				}
+				return weight;
+			}
+			@Override
+			public List<Weight> initialWeights(int a, int b, String uniProtIdA, String uniProtIdB) {
+				List<Weight> weights = new ArrayList<Weight>(1);
+				Weight weight = new SlowWeight();
+				try {
+					weight.setIds(a, b, uniProtIdA, uniProtIdB);
+				} catch (WeightException e) {
+					throw new RuntimeException(e);
+				}
+				weights.add(weight);
+				return weights;
+			}
+		};
+	}
+
+	@Test
+	public void testBudget() {
+		SmarterWeightManager manager = new SmarterWeightManager(slowThenFast(), 2);
+		manager.setBudget(SlowWeight.class, 50L);
+		long start = System.currentTimeMillis();
+		UndirectedGraph<Integer,HomologyEdge> hom = WeightManagerTest.testSimple(manager);
+		assertTrue("Slow weights should have been cancelled", System.currentTimeMillis() - start < 30 * 1000);
+		assertEquals("Wrong number of homology edges", 15, hom.getEdgeCount());
+		for (HomologyEdge edge : hom.getEdges()) {
+			assertEquals("The fallback should have run after the slow weight was cancelled", 0.5, edge.getWeight(), PRECISION);
+		}
+	}
+
+	/**
+	 * Waits as if on a remote service.
+	 */
+	static class WaitingWeight extends SlowWeight {
+		@Override
+		public WeightResult call() throws Exception {
+			Thread.sleep(200);
+			return new WeightResult(0.3, getA(), getB(), null, null, WaitingWeight.class);
+		}
+	}
+
+	@Test
+	public void testIoThreads() {
+		WeightCreator creator = new WeightCreator() {
+			@Override
+			public Weight nextWeight(int a, int b, String uniProtIdA, String uniProtIdB, int n, boolean isFail, Class<? extends Weight> failed) {
+				return null;
+			}
+			@Override
+			public List<Weight> initialWeights(int a, int b, String uniProtIdA, String uniProtIdB) {
+				List<Weight> weights = new ArrayList<Weight>(1);
+				Weight weight = new WaitingWeight();
+				try {
+					weight.setIds(a, b, uniProtIdA, uniProtIdB);
+				} catch (WeightException e) {
+					throw new RuntimeException(e);
+				}
+				weights.add(weight);
+				return weights;
+			}
+		};
+		SmarterWeightManager manager = new SmarterWeightManager(creator, 1);
+		manager.setIoThreads(15);
+		manager.setIoBound(WaitingWeight.class, true);
+		long start = System.currentTimeMillis();
+		UndirectedGraph<Integer,HomologyEdge> hom = WeightManagerTest.testSimple(manager);
+		// with only the single core this would take 3 seconds
+		assertTrue("Waiting weights should have run together", System.currentTimeMillis() - start < 2000);
+		assertEquals("Wrong number of homology edges", 15, hom.getEdgeCount());
+		assertEquals(0.3, hom.findEdge(1, 2).getWeight(), PRECISION);
+	}
+
+	/**
+	 * Returns 0.3 if it was prepared as part of a batch and 0.1 otherwise.
+	 */
+	static class BatchingWeight extends SlowWeight implements BatchWeight {
+		private static final AtomicInteger nPrepared = new AtomicInteger(0);
+		private boolean prepared;
+		@Override
+		public WeightResult call() throws Exception {
+			return new WeightResult(prepared ? 0.3 : 0.1, getA(), getB(), null, null, BatchingWeight.class);
+		}
+		@Override
+		public String getBatchKey() {
+			return null; // batch by UniProt Id
+		}
+		@Override
+		public void prepareBatch(List<? extends Weight> batch) throws Exception {
+			nPrepared.incrementAndGet();
+			for (Weight weight : batch) {
+				((BatchingWeight) weight).prepared = true;
+			}
+		}
+	}
+
+	@Test
+	public void testBatching() {
+		WeightCreator creator = new WeightCreator() {
+			@Override
+			public Weight nextWeight(int a, int b, String uniProtIdA, String uniProtIdB, int n, boolean isFail, Class<? extends Weight> failed) {
+				return null;
+			}
+			@Override
+			public List<Weight> initialWeights(int a, int b, String uniProtIdA, String uniProtIdB) {
+				List<Weight> weights = new ArrayList<Weight>(1);
+				Weight weight = new BatchingWeight();
+				try {
+					weight.setIds(a, b, uniProtIdA, uniProtIdB);
+				} catch (WeightException e) {
+					throw new RuntimeException(e);
+				}
+				weights.add(weight);
+				return weights;
+			}
+		};
+		BatchingWeight.nPrepared.set(0);
+		SmarterWeightManager manager = new SmarterWeightManager(creator, 2);
+		UndirectedGraph<Integer,HomologyEdge> hom = WeightManagerTest.testSimple(manager);
+		assertEquals("Wrong number of homology edges", 15, hom.getEdgeCount());
+		// vertices 1 through 4 each have several later vertices to share a batch with; 5 only has 6
+		assertEquals(4, BatchingWeight.nPrepared.get());
+		assertEquals(0.3, hom.findEdge(1, 6).getWeight(), PRECISION);
+		assertEquals(0.3, hom.findEdge(4, 5).getWeight(), PRECISION);
+		assertEquals(0.1, hom.findEdge(5, 6).getWeight(), PRECISION);
+	}
+
+	/**
+	 * A CeWeight that returns 0.3 if it was prepared as part of a batch and 0.1 otherwise, without loading structures.
+	 */
+	static class PreparedCeWeight extends CeWeight {
+		private static final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<Integer>());
+		private int a;
+		private int b;
+		private boolean prepared;
+		@Override
+		public WeightResult call() throws Exception {
+			return new WeightResult(prepared ? 0.3 : 0.1, a, b, null, null, CeWeight.class);
+		}
+		@Override
+		public void prepareBatch(List<? extends Weight> batch) throws Exception {
+			batchSizes.add(batch.size());
+			for (Weight weight : batch) {
+				((PreparedCeWeight) weight).prepared = true;
+			}
+		}
+		@Override
+		public void setIds(int v1, int v2, String uniProtId1, String uniProtId2, String pdbIdAndChain1,
+				String pdbIdAndChain2) {
+			super.setIds(v1, v2, uniProtId1, uniProtId2, pdbIdAndChain1, pdbIdAndChain2);
+			a = v1;
+			b = v2;
+		}
+	}
+
+	@Test
+	public void testFallbackBatching() {
+		// different UniProt Ids that map to the same chain
+		final Map<Integer, String> chains = new HashMap<>();
+		chains.put(1, "1abc.A");
+		chains.put(2, "1abc.A");
+		chains.put(3, "2def.A");
+		chains.put(4, "2def.A");
+		chains.put(5, "3ghi.A");
+		chains.put(6, "4jkl.A");
+		WeightCreator creator = new WeightCreator() {
+			@Override
+			public Weight nextWeight(int a, int b, String uniProtIdA, String uniProtIdB, int n, boolean isFail, Class<? extends Weight> failed) {
+				if (!isFail || n > 1) return null;
+				PreparedCeWeight weight = new PreparedCeWeight();
+				weight.setIds(a, b, uniProtIdA, uniProtIdB, chains.get(a), chains.get(b));
+				return weight;
+			}
+			@Override
+			public List<Weight> initialWeights(int a, int b, String uniProtIdA, String uniProtIdB) {
+				List<Weight> weights = new ArrayList<Weight>(1);
+				Weight weight = reallySimpleWeight(0.5, Collections.singleton(new Pair<Integer>(a, b)), true);
+				try {
+					weight.setIds(a, b, uniProtIdA, uniProtIdB);
+				} catch (WeightException e) {
+					throw new RuntimeException(e);
+				}
+				weights.add(weight);
+				return weights;
+			}
+		};
+		PreparedCeWeight.batchSizes.clear();
+		SmarterWeightManager manager = new SmarterWeightManager(creator, 2);
+		UndirectedGraph<Integer,HomologyEdge> hom = WeightManagerTest.testSimple(manager);
+		assertEquals("Wrong number of homology edges", 15, hom.getEdgeCount());
+		// CE on 1abc.A for vertices 1 and 2, and on 2def.A for 3 and 4; 3ghi.A has only (5, 6)
+		assertEquals(new HashSet<Integer>(Arrays.asList(9, 5)), new HashSet<Integer>(PreparedCeWeight.batchSizes));
+		assertEquals(2, PreparedCeWeight.batchSizes.size());
+		assertEquals(0.3, hom.findEdge(1, 2).getWeight(), PRECISION);
+		assertEquals(0.3, hom.findEdge(2, 6).getWeight(), PRECISION);
+		assertEquals(0.3, hom.findEdge(4, 5).getWeight(), PRECISION);
+		assertEquals(0.1, hom.findEdge(5, 6).getWeight(), PRECISION);
+	}
+
+	@Test
+	public void testHedging() {
+		WeightCreator creator = slowThenFast();
+		HedgingPolicy hedging = new HedgingPolicy(50, 1);
+		hedging.record(SlowWeight.class, 1000 * 1000); // hedge after 1ms
+		SmarterWeightManager manager = new SmarterWeightManager(creator, 32); // enough to run every job at once
+		manager.setHedging(hedging);
+		long start = System.currentTimeMillis();
+		UndirectedGraph<Integer,HomologyEdge> hom = WeightManagerTest.testSimple(manager);
+		assertTrue("Slow weights should have been abandoned", System.currentTimeMillis() - start < 30 * 1000);
+		assertEquals("Wrong number of homology edges", 15, hom.getEdgeCount());
+		for (HomologyEdge edge : hom.getEdges()) {
+			assertEquals("The slow weight's result should not have been used", 0.5, edge.getWeight(), PRECISION);
+		}
+	}
+
+	/**
+	 * Returns 0.6 right away, except on pairs with vertex 1, where it can't exceed 0.3 and is very slow.
+	 */
+	static class CappedWeight extends SlowWeight implements BoundedWeight {
+		@Override
+		public WeightResult call() throws Exception {
+			if (getA() == 1) return super.call();
+			return new WeightResult(0.6, getA(), getB(), null, null, CappedWeight.class);
+		}
+		@Override
+		public double upperBound() {
+			return getA() == 1 ? 0.3 : 1;
+		}
+	}
+
+	@Test
+	public void testPruneBelow() {
+		WeightCreator creator = new WeightCreator() {
+			@Override
+			public Weight nextWeight(int a, int b, String uniProtIdA, String uniProtIdB, int n, boolean isFail, Class<? extends Weight> failed) {
+				if (!isFail || n > 1) return null;
+				Weight weight = reallySimpleWeight(0.4, null);
+				try {
+					weight.setIds(a, b, uniProtIdA, uniProtIdB);
+				} catch (WeightException e) {
+					throw new RuntimeException(e);
+				}
+				return weight;
+			}
+			@Override
+			public List<Weight> initialWeights(int a, int b, String uniProtIdA, String uniProtIdB) {
+				List<Weight> weights = new ArrayList<Weight>(1);
+				Weight weight = new CappedWeight();
+				try {
+					weight.setIds(a, b, uniProtIdA, uniProtIdB);
+				} catch (WeightException e) {
+					throw new RuntimeException(e);
+				}
+				weights.add(weight);
+				return weights;
+			}
+		};
+		SmarterWeightManager manager = new SmarterWeightManager(creator, 2);
+		manager.setPruneBelow(0.5);
+		long start = System.currentTimeMillis();
+		UndirectedGraph<Integer,HomologyEdge> hom = WeightManagerTest.testSimple(manager);
+		assertTrue("Weights that can't reach 0.5 should not have run", System.currentTimeMillis() - start < 30 * 1000);
+		assertEquals("Wrong number of homology edges", 15, hom.getEdgeCount());
+		assertEquals("A skipped weight should move on to the next", 0.4, hom.findEdge(1, 2).getWeight(), PRECISION);
+		assertEquals(null, hom.findEdge(1, 2).getEvidence(WeightResult.sourceOf(CappedWeight.class)));
+		assertEquals(0.6, hom.findEdge(2, 3).getWeight(), PRECISION);
+	}
+
 	static Weight reallySimpleWeight(final double value, final Collection<Pair<Integer>> failOn) {
+		return reallySimpleWeight(value, failOn, false);
+	}
+
+	static Weight reallySimpleWeight(final double value, final Collection<Pair<Integer>> failOn, final boolean asResult) {
 		return new Weight() {
 			private int a;
 			private int b;
@@ -179,7 +570,10 @@ public class SmarterWeightManagerTest {
 			private String uniProtIdB;
 			@Override
 			public WeightResult call() throws Exception {
-				if (failOn != null && failOn.contains(new Pair<Integer>(a,b))) throw new WeightException("", a, b, uniProtIdA, uniProtIdB, false, false);
+				if (failOn != null && failOn.contains(new Pair<Integer>(a,b))) {
+					if (asResult) return WeightResult.failed(WeightResult.Status.MISSING_INPUT, "", a, b, uniProtIdA, uniProtIdB, null);
+					throw new WeightException("", a, b, uniProtIdA, uniProtIdB, false, false);
+				}
 				return new WeightResult(value, a, b, uniProtIdA, uniProtIdB, null);
 			}
 			@Override
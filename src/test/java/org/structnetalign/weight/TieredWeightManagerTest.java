@@ -0,0 +1,146 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.structnetalign.CleverGraph;
+import org.structnetalign.HomologyEdge;
+
+import edu.uci.ics.jung.graph.UndirectedGraph;
+import edu.uci.ics.jung.graph.util.Pair;
+
+public class TieredWeightManagerTest {
+
+	/**
+	 * Stands in for a structural weight; needs its own class so that it can have a ceiling.
+	 */
+	static class ExpensiveWeight implements Weight {
+		static final AtomicInteger nCalls = new AtomicInteger(0);
+		private int a;
+		private int b;
+		private String uniProtIdA;
+		private String uniProtIdB;
+		@Override
+		public WeightResult call() throws Exception {
+			nCalls.incrementAndGet();
+			return new WeightResult(0.4, a, b, uniProtIdA, uniProtIdB, ExpensiveWeight.class);
+		}
+		@Override
+		public double assignWeight(int v1, int v2, String uniProtId1, String uniProtId2) throws Exception {
+			setIds(v1, v2, uniProtId1, uniProtId2);
+			return call().getWeight();
+		}
+		@Override
+		public void setIds(int v1, int v2, String uniProtId1, String uniProtId2) throws WeightException {
+			this.a = v1;
+			this.b = v2;
+			this.uniProtIdA = uniProtId1;
+			this.uniProtIdB = uniProtId2;
+		}
+	}
+
+	private static final double PRECISION = 0.001;
+
+	/**
+	 * Returns 0.3 on every pair except (1, 2) and (4, 5), where it fails.
+	 */
+	private static WeightCreator cheap() {
+		return new WeightCreator() {
+			@Override
+			public Weight nextWeight(int a, int b, String uniProtIdA, String uniProtIdB, int n, boolean isFail, Class<? extends Weight> failed) {
+				return null;
+			}
+			@Override
+			public List<Weight> initialWeights(int a, int b, String uniProtIdA, String uniProtIdB) {
+				List<Weight> weights = new ArrayList<Weight>(1);
+				Set<Pair<Integer>> failOn = new HashSet<>();
+				failOn.add(new Pair<Integer>(1, 2));
+				failOn.add(new Pair<Integer>(4, 5));
+				Weight weight = SmarterWeightManagerTest.reallySimpleWeight(0.3, failOn);
+				try {
+					weight.setIds(a, b, uniProtIdA, uniProtIdB);
+				} catch (WeightException e) {
+					throw new RuntimeException(e);
+				}
+				weights.add(weight);
+				return weights;
+			}
+		};
+	}
+
+	@Test
+	public void testSkipped() {
+		ExpensiveWeight.nCalls.set(0);
+		TieredWeightManager manager = new TieredWeightManager(cheap(), new FallbackWeightCreator(ExpensiveWeight.class), 0.5, 2);
+		manager.setCeiling(ExpensiveWeight.class, 0.4); // 0 + 0.4 < 0.5
+		UndirectedGraph<Integer,HomologyEdge> hom = WeightManagerTest.testSimple(manager);
+		assertEquals("Expensive weight should never run", 0, ExpensiveWeight.nCalls.get());
+		assertEquals("Wrong number of homology edges", 13, hom.getEdgeCount());
+		assertNull(hom.findEdge(1, 2));
+		assertEquals(0.3, hom.findEdge(2, 3).getWeight(), PRECISION);
+	}
+
+	@Test
+	public void testDefaultCeilings() {
+		// the real CE, which would need the network if it ran
+		WeightCreator expensive = new WeightCreator() {
+			@Override
+			public Weight nextWeight(int a, int b, String uniProtIdA, String uniProtIdB, int n, boolean isFail, Class<? extends Weight> failed) {
+				return null;
+			}
+			@Override
+			public List<Weight> initialWeights(int a, int b, String uniProtIdA, String uniProtIdB) {
+				CeWeight weight = new CeWeight();
+				weight.setIds(a, b, uniProtIdA, uniProtIdB, "1abc.A", "2def.B");
+				List<Weight> weights = new ArrayList<Weight>(1);
+				weights.add(weight);
+				return weights;
+			}
+		};
+		TieredWeightManager manager = new TieredWeightManager(cheap(), expensive, 0.5, 2);
+		UndirectedGraph<Integer,HomologyEdge> hom = WeightManagerTest.testSimple(manager);
+		assertEquals("CE should be skipped on both pairs the cheap tier couldn't weight", 2, manager.getNSkipped());
+		assertNull(hom.findEdge(1, 2));
+		assertNull(hom.findEdge(4, 5));
+		CleverGraph graph = new CleverGraph();
+		manager.setTau(0.4);
+		assertTrue("CE should run when tau is below its ceiling",
+				manager.canReachTau(graph, 1, 2, expensive.initialWeights(1, 2, "P00001", "P00002")));
+	}
+
+	@Test
+	public void testFallback() {
+		ExpensiveWeight.nCalls.set(0);
+		TieredWeightManager manager = new TieredWeightManager(cheap(), new FallbackWeightCreator(ExpensiveWeight.class), 0.5, 2);
+		UndirectedGraph<Integer,HomologyEdge> hom = WeightManagerTest.testSimple(manager);
+		assertEquals("Expensive weight should run only where the cheap one failed", 2, ExpensiveWeight.nCalls.get());
+		assertEquals("Wrong number of homology edges", 15, hom.getEdgeCount());
+		assertEquals(0.4, hom.findEdge(1, 2).getWeight(), PRECISION);
+		assertEquals(0.4, hom.findEdge(4, 5).getWeight(), PRECISION);
+		assertEquals(0.3, hom.findEdge(2, 3).getWeight(), PRECISION);
+		assertNull(hom.findEdge(2, 3).getEvidence("ExpensiveWeight"));
+	}
+
+}
@@ -0,0 +1,96 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.structnetalign.HomologyEdge;
+
+import edu.uci.ics.jung.graph.UndirectedGraph;
+
+public class TransitiveWeightManagerTest {
+
+	/**
+	 * Gives 0.9 to pairs in the same family, {1, 2, 3} or {4, 5, 6}, and 0 to every other pair.
+	 */
+	static class FamilyWeight implements Weight {
+		static final AtomicInteger nCalls = new AtomicInteger(0);
+		private int a;
+		private int b;
+		private String uniProtIdA;
+		private String uniProtIdB;
+		@Override
+		public WeightResult call() throws Exception {
+			nCalls.incrementAndGet();
+			double weight = (a <= 3) == (b <= 3) ? 0.9 : 0;
+			return new WeightResult(weight, a, b, uniProtIdA, uniProtIdB, FamilyWeight.class);
+		}
+		@Override
+		public double assignWeight(int v1, int v2, String uniProtId1, String uniProtId2) throws Exception {
+			setIds(v1, v2, uniProtId1, uniProtId2);
+			return call().getWeight();
+		}
+		@Override
+		public void setIds(int v1, int v2, String uniProtId1, String uniProtId2) throws WeightException {
+			this.a = v1;
+			this.b = v2;
+			this.uniProtIdA = uniProtId1;
+			this.uniProtIdB = uniProtId2;
+		}
+	}
+
+	private static final double PRECISION = 0.001;
+
+	@Test
+	public void testInference() {
+		WeightCreator creator = new WeightCreator() {
+			@Override
+			public Weight nextWeight(int a, int b, String uniProtIdA, String uniProtIdB, int n, boolean isFail, Class<? extends Weight> failed) {
+				return null;
+			}
+			@Override
+			public List<Weight> initialWeights(int a, int b, String uniProtIdA, String uniProtIdB) {
+				List<Weight> weights = new ArrayList<Weight>(1);
+				Weight weight = new FamilyWeight();
+				try {
+					weight.setIds(a, b, uniProtIdA, uniProtIdB);
+				} catch (WeightException e) {
+					throw new RuntimeException(e);
+				}
+				weights.add(weight);
+				return weights;
+			}
+		};
+		FamilyWeight.nCalls.set(0);
+		TransitiveWeightManager manager = new TransitiveWeightManager(creator, 0.5, 2);
+		manager.setNPivots(2); // 1 and 4
+		UndirectedGraph<Integer,HomologyEdge> hom = WeightManagerTest.testSimple(manager);
+		assertEquals("Only the pairs with pivots should have been weighted", 9, FamilyWeight.nCalls.get());
+		assertEquals("Wrong number of homology edges", 6, hom.getEdgeCount());
+		assertEquals(0.9, hom.findEdge(1, 2).getWeight(), PRECISION);
+		assertEquals(0.9, hom.findEdge(4, 6).getWeight(), PRECISION);
+		// 0.9 + 0.9 - 1
+		assertEquals(0.8, hom.findEdge(2, 3).getWeight(), PRECISION);
+		assertEquals(0.8, hom.findEdge(5, 6).getWeight(), PRECISION);
+		assertNull(hom.findEdge(2, 5));
+	}
+
+}
@@ -0,0 +1,85 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.structnetalign.util.IdentifierMapping;
+import org.structnetalign.util.IdentifierMappingFactory;
+
+public class VertexCapabilitiesTest {
+
+	/**
+	 * Maps A to a PDB chain and a SCOP domain, B to only a PDB chain, and C to neither.
+	 */
+	private static class CountingMapping implements IdentifierMapping {
+		private final AtomicInteger nLookups = new AtomicInteger(0);
+		@Override
+		public String uniProtToPdb(String uniProtId) {
+			nLookups.incrementAndGet();
+			if (uniProtId.equals("C")) return null;
+			return "1abc." + uniProtId;
+		}
+		@Override
+		public String uniProtToScop(String uniProtId) {
+			nLookups.incrementAndGet();
+			if (uniProtId.equals("A")) return "d1abca_";
+			return null;
+		}
+	}
+
+	@Test
+	public void testSelection() {
+		IdentifierMapping original = IdentifierMappingFactory.getMapping();
+		CountingMapping mapping = new CountingMapping();
+		IdentifierMappingFactory.setMapping(mapping);
+		try {
+			VertexCapabilities capabilities = new VertexCapabilities();
+			Map<Integer, String> uniProtIds = new HashMap<>();
+			uniProtIds.put(1, "A");
+			uniProtIds.put(2, "B");
+			uniProtIds.put(3, "C");
+			capabilities.precompute(uniProtIds);
+			assertEquals(VertexCapabilities.SEQUENCE | VertexCapabilities.PDB | VertexCapabilities.SCOP
+					| VertexCapabilities.STRUCTURE, capabilities.get(1, "A"));
+			assertEquals(VertexCapabilities.SEQUENCE, capabilities.get(3, "C"));
+
+			FallbackWeightCreator creator = new FallbackWeightCreator(ScopWeight.class, CeWeight.class,
+					NeedlemanWunschWeight.class);
+			creator.setCapabilities(capabilities);
+			// B has no SCOP domain, so CE comes first
+			List<Weight> weights = creator.initialWeights(1, 2, "A", "B");
+			assertEquals(1, weights.size());
+			assertTrue(weights.get(0) instanceof CeWeight);
+			assertEquals("1abc.B", ((CeWeight) weights.get(0)).getPdbIdAndChain2());
+			// C has no structure either
+			assertTrue(creator.initialWeights(1, 3, "A", "C").get(0) instanceof NeedlemanWunschWeight);
+			assertNull(creator.nextWeight(1, 3, "A", "C", 1, true, NeedlemanWunschWeight.class));
+
+			assertEquals("Ids were mapped more than once per vertex", 6, mapping.nLookups.get());
+		} finally {
+			IdentifierMappingFactory.setMapping(original);
+		}
+	}
+
+}